@@ -0,0 +1,62 @@
+package at.asit.pdfover.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.asit.pdfover.gui.bku.mobile.ATrustParser;
+
+/**
+ * {@link ATrustParser#Parse} over the pages of a mobile signature session
+ *
+ * The pages in {@code /atrust} are reduced copies of the A-Trust pages, keeping everything the
+ * parser looks at (form, hidden ASP.NET state, links and the top-level blocks).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ATrustParserBenchmark {
+
+	private static final URI BASE_URI = URI.create("https://www.a-trust.at/mobile/https-security-layer-request/");
+
+	@Param({ "Signature.aspx", "sms.aspx", "qr.aspx", "error.aspx" })
+	public String page;
+
+	URI pageURI;
+	String content;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		this.pageURI = BASE_URI.resolve(this.page + "?sid=ABCDEF0123456789");
+		try (InputStream is = ATrustParserBenchmark.class.getResourceAsStream("/atrust/" + this.page + ".html")) {
+			if (is == null)
+				throw new IOException("No recorded page " + this.page);
+			this.content = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		/* fail early if the page is not recognized any more */
+		ATrustParser.Parse(this.pageURI, "text/html", this.content);
+	}
+
+	@Benchmark
+	public ATrustParser.Result parse() {
+		return ATrustParser.Parse(this.pageURI, "text/html", this.content);
+	}
+}
@@ -0,0 +1,107 @@
+package at.asit.pdfover.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.gui.utils.ConfigProvisioner;
+import iaik.security.provider.IAIK;
+
+/**
+ * Shared setup for the benchmarks
+ *
+ * The benchmarks run in forked JVMs whose {@code user.home} is {@value #BENCH_HOME}, so the PDF-AS
+ * configuration and the caches they create do not touch the user's PDF-Over configuration.
+ */
+public final class BenchmarkEnvironment {
+
+	/** user.home of the forked benchmark JVMs (relative to the working directory) */
+	public static final String BENCH_HOME = "target/bench-home";
+	/** JVM argument setting {@link #BENCH_HOME}, for {@code @Fork(jvmArgsAppend = ...)} */
+	public static final String BENCH_HOME_ARG = "-Duser.home=" + BENCH_HOME;
+
+	/** the bundled test keystore (cf. pdf-over-gui's dummy-sign profile) */
+	public static final String KEYSTORE_RESOURCE = "/keystore.jks";
+	public static final String KEYSTORE_TYPE = "JKS";
+	public static final String KEYSTORE_ALIAS = "test-applet signer";
+	public static final String KEYSTORE_STOREPASS = "storepass";
+	public static final String KEYSTORE_KEYPASS = "keypass";
+
+	private static boolean initialized = false;
+
+	/**
+	 * Register the IAIK provider and extract the PDF-AS configuration, like PDF-Over does on startup
+	 * @throws IOException if the configuration cannot be extracted
+	 */
+	public static synchronized void initialize() throws IOException {
+		if (initialized)
+			return;
+		IAIK.addAsProvider();
+
+		File configDir = new File(Constants.CONFIG_DIRECTORY);
+		Files.createDirectories(configDir.toPath());
+		try (InputStream manifest = BenchmarkEnvironment.class.getResourceAsStream(Constants.RES_CFG_MANIFEST);
+				InputStream zip = BenchmarkEnvironment.class.getResourceAsStream(Constants.RES_CFG_ZIP)) {
+			new ConfigProvisioner(manifest).provision(zip, configDir, "cfg", new File(configDir, "cfg_backup.zip"));
+		}
+		initialized = true;
+	}
+
+	/**
+	 * Extract the test keystore to a temporary file
+	 * @return the keystore file (deleted on exit)
+	 * @throws IOException on failure
+	 */
+	public static File extractKeystore() throws IOException {
+		File keystore = File.createTempFile("pdfover-bench", ".jks");
+		keystore.deleteOnExit();
+		try (InputStream is = BenchmarkEnvironment.class.getResourceAsStream(KEYSTORE_RESOURCE)) {
+			if (is == null)
+				throw new IOException("Test keystore " + KEYSTORE_RESOURCE + " is not on the classpath");
+			Files.copy(is, keystore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return keystore;
+	}
+
+	/**
+	 * Create a synthetic A4 document with a few lines of text on every page
+	 * @param pages number of pages
+	 * @return the PDF
+	 * @throws IOException on failure
+	 */
+	public static byte[] createDocument(int pages) throws IOException {
+		try (PDDocument document = new PDDocument()) {
+			for (int i = 1; i <= pages; ++i) {
+				PDPage page = new PDPage(PDRectangle.A4);
+				document.addPage(page);
+				try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+					content.beginText();
+					content.setFont(PDType1Font.HELVETICA, 11);
+					content.setLeading(14);
+					content.newLineAtOffset(72, PDRectangle.A4.getHeight() - 72);
+					content.showText("PDF-Over benchmark document, page " + i + " of " + pages);
+					for (int line = 0; line < 40; ++line) {
+						content.newLine();
+						content.showText("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor " + line);
+					}
+					content.endText();
+				}
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			document.save(out);
+			return out.toByteArray();
+		}
+	}
+
+	private BenchmarkEnvironment() {}
+}
@@ -0,0 +1,58 @@
+package at.asit.pdfover.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.asit.pdfover.signer.Emblem;
+
+/**
+ * {@link Emblem#getCachedFileName} for an emblem that is already cached, i.e. what every
+ * placeholder rendering and signature pays
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkEnvironment.BENCH_HOME_ARG)
+public class EmblemBenchmark {
+
+	File emblemFile;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		/* larger than the maximum emblem size, so it gets reduced */
+		BufferedImage image = new BufferedImage(1200, 1200, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.RED);
+		g.fillOval(100, 100, 1000, 1000);
+		g.dispose();
+		this.emblemFile = File.createTempFile("pdfover-bench-emblem", ".png");
+		this.emblemFile.deleteOnExit();
+		ImageIO.write(image, "png", this.emblemFile);
+
+		new Emblem(this.emblemFile.getAbsolutePath()).getCachedFileName();
+	}
+
+	@Benchmark
+	public String getCachedFileName() {
+		return new Emblem(this.emblemFile.getAbsolutePath()).getCachedFileName();
+	}
+}
@@ -0,0 +1,55 @@
+package at.asit.pdfover.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.signer.SignaturePosition;
+import at.asit.pdfover.signer.pdfas.PdfAs4FreeSpaceFinder;
+
+/**
+ * {@link PdfAs4FreeSpaceFinder#find} on the synthetic benchmark documents
+ *
+ * {@link #lastPage} finds room on the last page, which is the usual case; {@link #noRoom} looks for a
+ * block too tall for any page, so every page is parsed and searched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = BenchmarkEnvironment.BENCH_HOME_ARG)
+public class FreeSpaceFinderBenchmark {
+
+	@Param({ "1", "50", "1000" })
+	public int pages;
+
+	byte[] document;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.document = BenchmarkEnvironment.createDocument(this.pages);
+	}
+
+	@Benchmark
+	public SignaturePosition lastPage() throws Exception {
+		return new PdfAs4FreeSpaceFinder(this.document, new CancellationToken()).find(200, 80);
+	}
+
+	@Benchmark
+	public SignaturePosition noRoom() throws Exception {
+		return new PdfAs4FreeSpaceFinder(this.document, new CancellationToken()).find(200, 300);
+	}
+}
@@ -0,0 +1,74 @@
+package at.asit.pdfover.bench;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.asit.pdfover.commons.utils.ImageUtil;
+
+/**
+ * {@link ImageUtil#convertToSWT} for the image types PDF-AS and PDFBox produce
+ *
+ * The default size is that of a signature block preview (rendered at 4x).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageConversionBenchmark {
+
+	@Param({ "INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_INDEXED" })
+	public String type;
+
+	@Param({ "1000x400" })
+	public String size;
+
+	BufferedImage image;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		String[] dimensions = this.size.split("x");
+		int width = Integer.parseInt(dimensions[0]);
+		int height = Integer.parseInt(dimensions[1]);
+		this.image = new BufferedImage(width, height, imageType(this.type));
+		Graphics2D g = this.image.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, Color.WHITE, width, height, new Color(0x40, 0x80, 0xC0, 0x80)));
+		g.fillRect(0, 0, width, height);
+		g.setColor(Color.BLACK);
+		g.drawString("PDF-Over", width / 4, height / 2);
+		g.dispose();
+	}
+
+	private static int imageType(String type) {
+		switch (type) {
+			case "INT_RGB": return BufferedImage.TYPE_INT_RGB;
+			case "INT_ARGB": return BufferedImage.TYPE_INT_ARGB;
+			case "3BYTE_BGR": return BufferedImage.TYPE_3BYTE_BGR;
+			case "BYTE_INDEXED": return BufferedImage.TYPE_BYTE_INDEXED;
+			default: throw new IllegalArgumentException(type);
+		}
+	}
+
+	@Benchmark
+	public ImageData convertToSWT() {
+		return ImageUtil.convertToSWT(this.image);
+	}
+}
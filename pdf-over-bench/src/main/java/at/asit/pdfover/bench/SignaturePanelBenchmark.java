@@ -0,0 +1,65 @@
+package at.asit.pdfover.bench;
+
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.asit.pdfover.gui.composites.SignaturePanel;
+
+/**
+ * Page rendering in the positioning view's {@link SignaturePanel}
+ *
+ * Each call switches to the next page, which renders it at screen resolution. The panel sizes
+ * pages to the screen, so this needs a display (it fails in headless environments).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SignaturePanelBenchmark {
+
+	@Param({ "1", "50" })
+	public int pages;
+
+	PDDocument document;
+	SignaturePanel panel;
+	int page = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		if (GraphicsEnvironment.isHeadless())
+			throw new IllegalStateException("SignaturePanel rendering needs a display");
+		this.document = PDDocument.load(BenchmarkEnvironment.createDocument(this.pages));
+		this.panel = new SignaturePanel();
+		this.panel.setDocument(this.document);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		this.document.close();
+	}
+
+	@Benchmark
+	public SignaturePanel showPage() {
+		/* cycle through the pages and the blank "new last page"; showPage does nothing for the current page */
+		this.page = (this.page % (this.pages + 1)) + 1;
+		this.panel.showPage(this.page);
+		return this.panel;
+	}
+}
@@ -0,0 +1,89 @@
+package at.asit.pdfover.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.asit.pdfover.commons.BKUs;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.SignResult;
+import at.asit.pdfover.signer.pdfas.PdfAs4Helper;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+import at.asit.pdfover.signer.pdfas.PdfAs4Signer;
+import at.asit.pdfover.signer.pdfas.PdfAs4SigningState;
+
+/**
+ * {@link PdfAs4Signer#prepare} and {@link PdfAs4Signer#sign} with the bundled test keystore
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = BenchmarkEnvironment.BENCH_HOME_ARG)
+public class SigningBenchmark {
+
+	@Param({ "1", "50", "500" })
+	public int pages;
+
+	File keystore;
+	byte[] document;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		BenchmarkEnvironment.initialize();
+		this.keystore = BenchmarkEnvironment.extractKeystore();
+		this.document = BenchmarkEnvironment.createDocument(this.pages);
+		PdfAs4Helper.getPdfAs();
+	}
+
+	PdfAs4SignatureParameter parameter() {
+		PdfAs4SignatureParameter parameter = new PdfAs4SignatureParameter();
+		parameter.inputDocument = new ByteArrayDocumentSource(this.document);
+		parameter.signatureDevice = BKUs.KS;
+		return parameter;
+	}
+
+	PdfAs4SigningState prepareSigning() throws Exception {
+		PdfAs4SigningState state = PdfAs4Signer.prepare(parameter(), new CancellationToken());
+		state.setKeystoreSigner(this.keystore.getAbsolutePath(), BenchmarkEnvironment.KEYSTORE_ALIAS,
+				BenchmarkEnvironment.KEYSTORE_STOREPASS, BenchmarkEnvironment.KEYSTORE_KEYPASS, BenchmarkEnvironment.KEYSTORE_TYPE);
+		return state;
+	}
+
+	/**
+	 * A freshly prepared signing state for every {@link SigningBenchmark#sign} call
+	 */
+	@State(Scope.Thread)
+	public static class Prepared {
+		PdfAs4SigningState state;
+
+		@Setup(Level.Invocation)
+		public void prepare(SigningBenchmark benchmark) throws Exception {
+			this.state = benchmark.prepareSigning();
+		}
+	}
+
+	@Benchmark
+	public PdfAs4SigningState prepare() throws Exception {
+		return PdfAs4Signer.prepare(parameter(), new CancellationToken());
+	}
+
+	@Benchmark
+	public SignResult sign(Prepared prepared) throws Exception {
+		return PdfAs4Signer.sign(prepared.state);
+	}
+}
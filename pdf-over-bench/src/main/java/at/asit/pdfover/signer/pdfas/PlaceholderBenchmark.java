@@ -0,0 +1,77 @@
+package at.asit.pdfover.signer.pdfas;
+
+import java.awt.Image;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.asit.pdfover.bench.BenchmarkEnvironment;
+import at.asit.pdfover.commons.Profile;
+
+/**
+ * Time to the first signature block preview
+ *
+ * {@link #getPlaceholder} renders it with {@link PdfAs4SignatureParameter#getPlaceholder}, which is
+ * what the positioning view waited for before placeholders were cached. {@link #firstPreviewFromDisk}
+ * is the first request after a restart, served by the disk cache, and {@link #firstPreviewPrecomputed}
+ * a request for the placeholder precomputed during startup.
+ *
+ * Lives in the signer's package since getPlaceholder is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = BenchmarkEnvironment.BENCH_HOME_ARG)
+public class PlaceholderBenchmark {
+
+	@Param({ "SIGNATURBLOCK_SMALL", "AMTSSIGNATURBLOCK" })
+	public Profile profile;
+
+	PdfAs4SignatureParameter parameter;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		BenchmarkEnvironment.initialize();
+		PdfAs4Helper.getPdfAs();
+		this.parameter = new PdfAs4SignatureParameter();
+		this.parameter.signatureProfile = this.profile;
+		this.parameter.signatureNote = "PDF-Over benchmark";
+		request(); // fills the disk cache
+	}
+
+	private PdfAs4SignaturePlaceholder request() throws Exception {
+		CompletableFuture<PdfAs4SignaturePlaceholder> placeholder = new CompletableFuture<>();
+		PdfAs4SignaturePlaceholder.For(this.parameter, placeholder::complete);
+		return placeholder.get();
+	}
+
+	@Benchmark
+	public Image getPlaceholder() {
+		return this.parameter.getPlaceholder();
+	}
+
+	@Benchmark
+	public PdfAs4SignaturePlaceholder firstPreviewFromDisk() throws Exception {
+		PdfAs4SignaturePlaceholder.clearMemoryCache();
+		return request();
+	}
+
+	@Benchmark
+	public PdfAs4SignaturePlaceholder firstPreviewPrecomputed() throws Exception {
+		return request();
+	}
+}
@@ -0,0 +1,4 @@
+package at.asit.pdfover.bench.jmh_generated;
+public class ATrustParserBenchmark_jmhType extends ATrustParserBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package at.asit.pdfover.bench.jmh_generated;
+public class EmblemBenchmark_jmhType extends EmblemBenchmark_jmhType_B3 {
+}
+
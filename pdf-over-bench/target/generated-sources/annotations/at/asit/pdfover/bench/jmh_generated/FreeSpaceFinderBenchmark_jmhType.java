@@ -0,0 +1,4 @@
+package at.asit.pdfover.bench.jmh_generated;
+public class FreeSpaceFinderBenchmark_jmhType extends FreeSpaceFinderBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package at.asit.pdfover.bench.jmh_generated;
+public class ImageConversionBenchmark_jmhType extends ImageConversionBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package at.asit.pdfover.bench.jmh_generated;
+public class SignaturePanelBenchmark_jmhType extends SignaturePanelBenchmark_jmhType_B3 {
+}
+
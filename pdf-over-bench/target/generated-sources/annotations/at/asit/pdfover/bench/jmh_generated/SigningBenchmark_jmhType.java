@@ -0,0 +1,4 @@
+package at.asit.pdfover.bench.jmh_generated;
+public class SigningBenchmark_jmhType extends SigningBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package at.asit.pdfover.signer.pdfas.jmh_generated;
+public class PlaceholderBenchmark_jmhType extends PlaceholderBenchmark_jmhType_B3 {
+}
+
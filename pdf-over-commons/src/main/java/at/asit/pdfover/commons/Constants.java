@@ -86,6 +86,9 @@ public class Constants {
 	/** The configuration version file name */
 	public static final String CONFIG_VERSION_FILENAME = ".version";
 
+	/** The journal of an unfinished batch of documents */
+	public static final String BATCH_JOURNAL_FILENAME = "batch.journal";
+
 	/**
 	 * The minimum PDF-Over version that does not need a PDF-AS update */
 	public static final String MIN_PDF_AS_CONFIG_VERSION = "4.4.6";
@@ -219,6 +222,9 @@ public class Constants {
 
 	public static final String CFG_FIDO2_BY_DEFAULT = "FIDO2_DEFAULT";
 
+	/** Whether signed documents are synced to disk before they are reported as saved */
+	public static final String CFG_SYNC_OUTPUT = "SYNC_OUTPUT";
+
 	/** Download URL for accepted Certificates*/
 	public static final String CFG_DOWNLOAD_URL="DOWNLOAD_URL";
 
@@ -362,6 +368,9 @@ public class Constants {
 	/** Zipped configuration resource */
 	public static final String RES_CFG_ZIP = "/cfg/PDFASConfig.zip";
 
+	/** SHA-256 checksums of the files in {@link #RES_CFG_ZIP} */
+	public static final String RES_CFG_MANIFEST = "/cfg/PDFASConfig.sha256";
+
 	/** Accepted certificate resource path */
 	public static final String RES_CERT_PATH = "/certificates/";
 
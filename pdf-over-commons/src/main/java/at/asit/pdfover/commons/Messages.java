@@ -17,10 +17,10 @@ package at.asit.pdfover.commons;
 
 import java.nio.charset.StandardCharsets;
 // Imports
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -34,7 +34,8 @@ public class Messages {
 
 	private static final String BUNDLE_NAME = "at.asit.pdfover.gui.messages";
 
-	private static HashMap<Locale, ResourceBundle> bundles = new HashMap<>();
+	/** bundles may be preloaded in the background, see {@link #preloadBundles()} */
+	private static ConcurrentHashMap<Locale, ResourceBundle> bundles = new ConcurrentHashMap<>();
 
 	private static Locale currentLocale = getDefaultLocale();
 
@@ -63,24 +64,30 @@ public class Messages {
 	}
 
 	private static ResourceBundle getBundle(Locale locale) {
-		if(!bundles.containsKey(locale)) {
-			log.debug("Loading resource bundle for {}", locale);
+		return bundles.computeIfAbsent(locale, (l) -> {
+			log.debug("Loading resource bundle for {}", l);
 			ResourceBundle tmp = null;
 			try {
-				tmp = ResourceBundle.getBundle(BUNDLE_NAME, locale);
+				tmp = ResourceBundle.getBundle(BUNDLE_NAME, l);
 				log.debug("Received bundle for {}", tmp.getLocale());
 			} catch(Exception e) {
-				log.error("NO RESOURCE BUNDLE FOR {} {}", locale, e);
+				log.error("NO RESOURCE BUNDLE FOR {} {}", l, e);
 				tmp = ResourceBundle.getBundle(BUNDLE_NAME);
 			}
 			if(tmp == null) {
-				log.error("NO RESOURCE BUNDLE FOR {}", locale);
+				log.error("NO RESOURCE BUNDLE FOR {}", l);
 				tmp = ResourceBundle.getBundle(BUNDLE_NAME);
 			}
-			bundles.put(locale, tmp);
 			return tmp;
-		}
-		return bundles.get(locale);
+		});
+	}
+
+	/**
+	 * Load the bundles of all supported locales (so the first lookup need not wait for it)
+	 */
+	public static void preloadBundles() {
+		for (Locale l : Constants.SUPPORTED_LOCALES)
+			getBundle(l);
 	}
 
 	/**
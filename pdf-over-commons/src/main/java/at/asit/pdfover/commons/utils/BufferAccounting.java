@@ -0,0 +1,254 @@
+package at.asit.pdfover.commons.utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Accounts the buffers that hold (copies of) a document while it is signed
+ *
+ * Every signature gets a {@link Ledger}. The signing code reports each buffer it allocates for the
+ * document and when the buffer is no longer needed; the ledger keeps track of the peak number of
+ * bytes buffered at the same time. It also measures how many bytes the threads working on the
+ * signature actually allocated on the heap, buffers or not, while they were {@linkplain Ledger#enter() in} it.
+ *
+ * Accounting is off unless the system property {@value #ENABLE_PROPERTY} is {@code true} or
+ * {@value #REPORT_PROPERTY} names a file, to which one JSON line per signature is appended.
+ */
+@Slf4j
+public final class BufferAccounting {
+
+	/** system property enabling the accounting */
+	public static final String ENABLE_PROPERTY = "pdfover.memory.accounting";
+	/** system property naming the file to append the per-signature reports to */
+	public static final String REPORT_PROPERTY = "pdfover.memory.report";
+
+	/** a ledger that records nothing */
+	public static final Ledger NONE = new Ledger(false, null, 0);
+
+	/**
+	 * @return whether accounting is enabled
+	 */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean(ENABLE_PROPERTY) || (System.getProperty(REPORT_PROPERTY) != null);
+	}
+
+	/**
+	 * Start accounting a signature
+	 * @param name name of the document (for the report)
+	 * @param documentSize size of the document to be signed
+	 * @return the ledger; it does nothing if accounting is disabled
+	 */
+	public static Ledger open(String name, long documentSize) {
+		return new Ledger(isEnabled(), name, documentSize);
+	}
+
+	/**
+	 * Buffers of one signature
+	 */
+	public static final class Ledger {
+		private final boolean enabled;
+		private final String name;
+		private final long documentSize;
+		/** stage -> bytes currently buffered */
+		private final Map<String, Long> live = new LinkedHashMap<>();
+		/** stage -> bytes allocated in total */
+		private final Map<String, Long> allocated = new LinkedHashMap<>();
+		/** thread id -> the thread's allocation counter when it entered */
+		private final Map<Long, Long> entered = new HashMap<>();
+		private long buffered = 0;
+		private long peakBuffered = 0;
+		private long heapAllocated = 0;
+		private boolean closed = false;
+
+		private Ledger(boolean enabled, String name, long documentSize) {
+			this.enabled = enabled;
+			this.name = name;
+			this.documentSize = documentSize;
+			enter();
+		}
+
+		/**
+		 * Count the current thread's heap allocations towards this signature until it {@linkplain #leave() leaves}
+		 *
+		 * The thread opening the ledger enters it automatically.
+		 */
+		public synchronized void enter() {
+			if (!this.enabled || this.closed)
+				return;
+			long allocated = getCurrentThreadAllocatedBytes();
+			if (allocated >= 0)
+				this.entered.putIfAbsent(Thread.currentThread().getId(), allocated);
+		}
+
+		/**
+		 * Stop counting the current thread's heap allocations
+		 *
+		 * Threads that do not leave are counted until the ledger is closed, as long as they are still
+		 * alive then; what a thread allocated before it ended is lost unless it left.
+		 */
+		public synchronized void leave() {
+			if (!this.enabled || this.closed)
+				return;
+			Long start = this.entered.remove(Thread.currentThread().getId());
+			if (start != null)
+				this.heapAllocated += getCurrentThreadAllocatedBytes() - start;
+		}
+
+		/**
+		 * @return whether this ledger records anything
+		 */
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		/**
+		 * Record a buffer holding (part of) the document
+		 * @param stage which stage allocated it, e.g. "input"
+		 * @param bytes its size
+		 */
+		public synchronized void allocate(String stage, long bytes) {
+			if (!this.enabled || this.closed)
+				return;
+			this.live.merge(stage, bytes, Long::sum);
+			this.allocated.merge(stage, bytes, Long::sum);
+			this.buffered += bytes;
+			this.peakBuffered = Math.max(this.peakBuffered, this.buffered);
+		}
+
+		/**
+		 * Record that the buffers of a stage are no longer referenced
+		 * @param stage the stage passed to {@link #allocate(String, long)}
+		 */
+		public synchronized void release(String stage) {
+			if (!this.enabled || this.closed)
+				return;
+			Long bytes = this.live.remove(stage);
+			if (bytes != null)
+				this.buffered -= bytes;
+		}
+
+		/**
+		 * @return the most bytes that were buffered at the same time
+		 */
+		public synchronized long getPeakBufferedBytes() {
+			return this.peakBuffered;
+		}
+
+		/**
+		 * @return {@link #getPeakBufferedBytes()} in multiples of the document size
+		 */
+		public synchronized double getPeakBufferedRatio() {
+			return (this.documentSize > 0) ? ((double) this.peakBuffered / this.documentSize) : 0;
+		}
+
+		/**
+		 * @return the bytes allocated per stage, in order of allocation
+		 */
+		public synchronized Map<String, Long> getAllocatedBytes() {
+			return new LinkedHashMap<>(this.allocated);
+		}
+
+		/**
+		 * @return the bytes the threads allocated on the heap while they were in the ledger, counted as they
+		 * leave or when the ledger is closed
+		 */
+		public synchronized long getHeapAllocatedBytes() {
+			return this.heapAllocated;
+		}
+
+		/**
+		 * @return the size of the document
+		 */
+		public long getDocumentSize() {
+			return this.documentSize;
+		}
+
+		/**
+		 * Finish accounting, and log and report the figures
+		 */
+		public synchronized void close() {
+			if (!this.enabled || this.closed)
+				return;
+			for (Map.Entry<Long, Long> thread : this.entered.entrySet()) {
+				long allocated = getThreadAllocatedBytes(thread.getKey());
+				if (allocated >= 0)
+					this.heapAllocated += allocated - thread.getValue();
+			}
+			this.entered.clear();
+			this.closed = true;
+			log.info("Buffers for {} ({} bytes): peak {} bytes ({}x), heap allocated {} bytes, per stage {}",
+					this.name, this.documentSize, this.peakBuffered, String.format("%.2f", getPeakBufferedRatio()),
+					this.heapAllocated, this.allocated);
+			writeReport(this);
+		}
+
+		private String toJson() {
+			StringBuilder json = new StringBuilder("{");
+			json.append("\"document\":\"").append(this.name.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",");
+			json.append("\"documentBytes\":").append(this.documentSize).append(',');
+			json.append("\"peakBufferedBytes\":").append(this.peakBuffered).append(',');
+			json.append("\"heapAllocatedBytes\":").append(this.heapAllocated).append(',');
+			json.append("\"stageBytes\":{");
+			boolean first = true;
+			for (Map.Entry<String, Long> e : this.allocated.entrySet()) {
+				if (!first)
+					json.append(',');
+				first = false;
+				json.append('"').append(e.getKey()).append("\":").append(e.getValue());
+			}
+			json.append("}}");
+			return json.toString();
+		}
+	}
+
+	/**
+	 * @return the bytes the current thread allocated on the heap so far, or -1 if the JVM does not measure them
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		com.sun.management.ThreadMXBean allocation = getAllocationBean();
+		return (allocation != null) ? allocation.getCurrentThreadAllocatedBytes() : -1;
+	}
+
+	/**
+	 * @param threadId the thread's id
+	 * @return the bytes the thread allocated on the heap so far, or -1 if it has ended or the JVM does not measure them
+	 */
+	private static long getThreadAllocatedBytes(long threadId) {
+		com.sun.management.ThreadMXBean allocation = getAllocationBean();
+		return (allocation != null) ? allocation.getThreadAllocatedBytes(threadId) : -1;
+	}
+
+	private static com.sun.management.ThreadMXBean getAllocationBean() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+			if (allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled())
+				return allocation;
+		}
+		return null;
+	}
+
+	private static synchronized void writeReport(Ledger ledger) {
+		String reportFile = System.getProperty(REPORT_PROPERTY);
+		if (reportFile == null)
+			return;
+		try {
+			Files.write(Path.of(reportFile), (ledger.toJson() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			log.warn("Failed to write memory report to {}", reportFile, e);
+		}
+	}
+
+	private BufferAccounting() {}
+}
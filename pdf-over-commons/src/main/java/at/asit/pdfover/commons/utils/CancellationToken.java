@@ -0,0 +1,89 @@
+package at.asit.pdfover.commons.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cooperative cancellation flag shared between the UI and a background task
+ *
+ * The task checks {@link #throwIfCancelled()} between its steps; blocking operations
+ * (HTTP requests, waits for user input) register an {@link #onCancel(Runnable) abort action}
+ * so they return early when the token is cancelled.
+ */
+@Slf4j
+public final class CancellationToken {
+
+	/**
+	 * Handle for an abort action; closing it unregisters the action
+	 */
+	public interface Registration extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	private volatile boolean cancelled = false;
+	/** abort actions; set to null once cancelled, guarded by this */
+	private List<Runnable> actions = new ArrayList<>();
+
+	/**
+	 * Cancel the token, running all registered abort actions (on the calling thread)
+	 *
+	 * Cancelling more than once has no further effect.
+	 */
+	public void cancel() {
+		List<Runnable> toRun;
+		synchronized (this) {
+			if (this.cancelled)
+				return;
+			this.cancelled = true;
+			toRun = this.actions;
+			this.actions = null;
+		}
+		for (Runnable action : toRun) {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				log.warn("Abort action failed", e);
+			}
+		}
+	}
+
+	/**
+	 * @return whether {@link #cancel()} was called
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * @throws CancellationException if the token was cancelled
+	 */
+	public void throwIfCancelled() {
+		if (this.cancelled)
+			throw new CancellationException();
+	}
+
+	/**
+	 * Register an action to be run when the token is cancelled
+	 * @param action the abort action; run immediately if the token is already cancelled
+	 * @return a registration that removes the action again (use with try-with-resources)
+	 */
+	public Registration onCancel(Runnable action) {
+		synchronized (this) {
+			if (!this.cancelled) {
+				this.actions.add(action);
+				return () -> {
+					synchronized (CancellationToken.this) {
+						if (this.actions != null)
+							this.actions.remove(action);
+					}
+				};
+			}
+		}
+		action.run();
+		return () -> {};
+	}
+}
@@ -0,0 +1,122 @@
+package at.asit.pdfover.commons.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by PDF-Over
+ *
+ * Recording is started with the {@code -jfr} command line argument (or the usual JVM options). Events
+ * are cheap when no recording is running; their duration is the time between {@code begin()} and
+ * {@code commit()}.
+ */
+public final class FlightRecorderEvents {
+
+	/** category all PDF-Over events are listed under */
+	public static final String CATEGORY = "PDF-Over";
+
+	/**
+	 * One run of a workflow state
+	 */
+	@Name("at.asit.pdfover.StateRun")
+	@Label("State Run")
+	@Description("A workflow state's run() on the UI thread")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class StateRun extends Event {
+		@Label("State")
+		public String state;
+
+		@Label("Next State")
+		public String nextState;
+	}
+
+	/**
+	 * Preparing a document for signing, or signing a prepared document
+	 */
+	@Name("at.asit.pdfover.SigningPhase")
+	@Label("Signing Phase")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class SigningPhase extends Event {
+		/** phase: preparing the document */
+		public static final String PREPARE = "prepare";
+		/** phase: signing (including all security layer requests) */
+		public static final String SIGN = "sign";
+
+		@Label("Phase")
+		public String phase;
+
+		@Label("Signature Profile")
+		public String profile;
+
+		@Label("Document Size")
+		@DataAmount
+		public long documentSize;
+	}
+
+	/**
+	 * One security layer request to a signature device
+	 */
+	@Name("at.asit.pdfover.SLRequest")
+	@Label("Security Layer Request")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class SLRequest extends Event {
+		@Label("Connector")
+		public String connector;
+
+		@Label("Bytes Sent")
+		@Description("Size of the request and the data to be signed")
+		@DataAmount
+		public long bytesSent;
+
+		@Label("Bytes Received")
+		@DataAmount
+		public long bytesReceived;
+	}
+
+	/**
+	 * Rendering one page of the document for positioning
+	 */
+	@Name("at.asit.pdfover.PageRender")
+	@Label("Page Render")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class PageRender extends Event {
+		@Label("Page")
+		public int page;
+
+		@Label("Pages")
+		public int pages;
+
+		@Label("Width")
+		public int width;
+
+		@Label("Height")
+		public int height;
+	}
+
+	/**
+	 * Generating the signature block preview
+	 */
+	@Name("at.asit.pdfover.PlaceholderGeneration")
+	@Label("Placeholder Generation")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static final class PlaceholderGeneration extends Event {
+		@Label("Signature Profile")
+		public String profile;
+
+		@Label("Cached")
+		@Description("Whether the preview was taken from the cache")
+		public boolean cached;
+	}
+
+	private FlightRecorderEvents() {}
+}
@@ -1,15 +1,26 @@
 package at.asit.pdfover.commons.utils;
 
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 
+import java.awt.Transparency;
+import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
-import java.awt.image.DirectColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.ImageData;
@@ -96,6 +107,7 @@ class EXIFRotation {
 	}
 }
 
+@Slf4j
 public final class ImageUtil {
 	
 	/**
@@ -103,6 +115,19 @@ public final class ImageUtil {
 	 * (which the default, for some reason, does not)
 	 */
 	public static final BufferedImage readImageWithEXIFRotation(File input) throws IOException
+	{
+		return readImageWithEXIFRotation(input, 0, 0);
+	}
+
+	/**
+	 * ImageIO.read, except it honors EXIF rotation metadata, and the result is reduced to fit the given size
+	 *
+	 * Large images are subsampled while decoding (so the full-resolution raster is never held in memory),
+	 * then rotated, then scaled down to the exact size with proper filtering.
+	 * @param maxWidth maximum width of the result (after rotation), or 0 for no limit
+	 * @param maxHeight maximum height of the result (after rotation), or 0 for no limit
+	 */
+	public static final BufferedImage readImageWithEXIFRotation(File input, int maxWidth, int maxHeight) throws IOException
 	{
 		if (input == null)
 			throw new IllegalArgumentException("input == null");
@@ -122,29 +147,36 @@ public final class ImageUtil {
 
 		ImageReader reader = iter.next();
 		boolean isJPEG = reader.getFormatName().equals("JPEG");
+		EXIFRotation rotation = isJPEG ? EXIFRotation.For(input) : EXIFRotation.NONE;
+		boolean isSideways = ((rotation.rotationInQuarters % 2) == 1);
 		ImageReadParam param = reader.getDefaultReadParam();
 		reader.setInput(stream, true, false);
 		BufferedImage image;
 		try {
+			if ((maxWidth > 0) && (maxHeight > 0)) {
+				/* limits in the orientation of the stored image */
+				int maxSourceWidth = isSideways ? maxHeight : maxWidth;
+				int maxSourceHeight = isSideways ? maxWidth : maxHeight;
+				int subsampling = getSubsamplingFactor(reader.getWidth(0), reader.getHeight(0), maxSourceWidth, maxSourceHeight);
+				if (subsampling > 1) {
+					log.debug("Subsampling {}x{} image by {}", reader.getWidth(0), reader.getHeight(0), subsampling);
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				}
+			}
 			image = reader.read(0, param);
 		} finally {
 			reader.dispose();
 			stream.close();
 		}
 
-		if (!isJPEG)
-			return image;
-
-		EXIFRotation rotation = EXIFRotation.For(input);
 		if (rotation.rotationInQuarters > 0)
 		{
-			boolean isSideways = ((rotation.rotationInQuarters % 2) == 1);
 			int sourceWidth = image.getWidth();
 			int sourceHeight = image.getHeight();
 			int targetWidth = isSideways ? sourceHeight : sourceWidth;
 			int targetHeight = isSideways ? sourceWidth : sourceHeight;
 			
-			BufferedImage result = new BufferedImage(targetWidth, targetHeight, image.getType());
+			BufferedImage result = new BufferedImage(targetWidth, targetHeight, getCompatibleType(image));
 			Graphics2D g = result.createGraphics();
 			g.translate((targetWidth - sourceWidth)/2, (targetHeight - sourceHeight)/2);
 			g.rotate(rotation.rotationInQuarters * Math.PI / 2, sourceWidth/2, sourceHeight/2);
@@ -157,15 +189,83 @@ public final class ImageUtil {
 		{
 			int width = image.getWidth();
 			int height = image.getHeight();
-			BufferedImage result = new BufferedImage(width, height, image.getType());
+			BufferedImage result = new BufferedImage(width, height, getCompatibleType(image));
 			Graphics2D g = result.createGraphics();
 			g.drawImage(image, width, 0, -width, height, null);
 			g.dispose();
 			image = result;
 		}
+
+		if ((maxWidth > 0) && (maxHeight > 0))
+			image = reduceImageSizeIfNecessary(image, maxWidth, maxHeight);
 		return image;
 	}
 
+	/**
+	 * largest integer subsampling factor that keeps the decoded image at least as large as the result
+	 * of the final downscale, so that step still has enough detail to work with
+	 *
+	 * The result fits the limits with its aspect ratio kept, so the dimension that exceeds its limit
+	 * by more decides; for a 20000x100 image and 1000x1000 limits, that is the width.
+	 */
+	static int getSubsamplingFactor(int width, int height, int maxWidth, int maxHeight) {
+		double scale = Math.max(((double) width) / maxWidth, ((double) height) / maxHeight);
+		return Math.max(1, (int) Math.floor(scale));
+	}
+
+	private static int getCompatibleType(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_CUSTOM)
+			return image.getType();
+		return image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+	}
+
+	/**
+	 * Scale the image down (keeping its aspect ratio) so it fits within maxWidth x maxHeight
+	 *
+	 * Halves the size in bilinear steps before the final step, which avoids the aliasing a
+	 * single large bilinear (or nearest-neighbor) reduction produces.
+	 * @return the image itself if it already fits
+	 */
+	public static BufferedImage reduceImageSizeIfNecessary(BufferedImage img, int maxWidth, int maxHeight) {
+		int oheight = img.getHeight();
+		int owidth = img.getWidth();
+
+		double ratio = (double)owidth/(double)oheight;
+
+		int height = oheight;
+		int width = owidth;
+		if (height > maxHeight) {
+			height = maxHeight;
+			width = (int) (maxHeight * ratio);
+		}
+		if (width > maxWidth) {
+			width = maxWidth;
+			height = (int) (maxWidth / ratio);
+		}
+		width = Math.max(1, width);
+		height = Math.max(1, height);
+		if (width == owidth && height == oheight)
+			return img;
+
+		log.debug("Scaling image: " + owidth + "x" + oheight + " to " + width + "x" + height);
+		int type = getCompatibleType(img);
+		BufferedImage result = img;
+		int currentWidth = owidth;
+		int currentHeight = oheight;
+		do {
+			currentWidth = Math.max(width, currentWidth / 2);
+			currentHeight = Math.max(height, currentHeight / 2);
+			BufferedImage step = new BufferedImage(currentWidth, currentHeight, type);
+			Graphics2D g = step.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(result, 0, 0, currentWidth, currentHeight, null);
+			g.dispose();
+			result = step;
+		} while ((currentWidth != width) || (currentHeight != height));
+		return result;
+	}
+
 	public static java.awt.Image debugDisplayImage(java.awt.Image image) {
 		JPanel panel = new JPanel();
 		panel.add(new JLabel(new ImageIcon(image)));
@@ -202,6 +302,9 @@ public final class ImageUtil {
 	/**
 	 * Convert AWT Image to SWT Image
 	 *
+	 * Works on whole rows of the underlying raster where the layout is known,
+	 * and falls back to {@link BufferedImage#getRGB} (one row at a time) otherwise.
+	 *
 	 * @param bufferedImage
 	 * @return SWT Image data
 	 */
@@ -212,78 +315,155 @@ public final class ImageUtil {
 		if ((bufferedImage.getWidth() <= 0) || (bufferedImage.getHeight() <= 0))
 			return null;
 
-		if (bufferedImage.getColorModel() instanceof DirectColorModel) {
-			DirectColorModel colorModel = (DirectColorModel) bufferedImage
-					.getColorModel();
-			PaletteData palette = new PaletteData(colorModel.getRedMask(),
-					colorModel.getGreenMask(), colorModel.getBlueMask());
-			ImageData data = new ImageData(bufferedImage.getWidth(),
-					bufferedImage.getHeight(), colorModel.getPixelSize(),
-					palette);
-			WritableRaster raster = bufferedImage.getRaster();
-			int[] pixelArray = new int[3];
-			for (int y = 0; y < data.height; y++) {
-				for (int x = 0; x < data.width; x++) {
-					raster.getPixel(x, y, pixelArray);
-					int pixel = palette.getPixel(new RGB(pixelArray[0],
-							pixelArray[1], pixelArray[2]));
-					data.setPixel(x, y, pixel);
-				}
+		ColorModel colorModel = bufferedImage.getColorModel();
+		WritableRaster raster = bufferedImage.getRaster();
+		if ((colorModel instanceof IndexColorModel) && (colorModel.getPixelSize() == 8) &&
+				(raster.getDataBuffer() instanceof DataBufferByte) &&
+				(raster.getSampleModel() instanceof ComponentSampleModel))
+			return convertIndexedToSWT(bufferedImage, (IndexColorModel) colorModel);
+
+		return convertDirectToSWT(bufferedImage);
+	}
+
+	/**
+	 * 8-bit palette images: copy the index rows verbatim, and translate the palette
+	 */
+	private static ImageData convertIndexedToSWT(BufferedImage bufferedImage, IndexColorModel colorModel) {
+		int width = bufferedImage.getWidth();
+		int height = bufferedImage.getHeight();
+		int size = colorModel.getMapSize();
+		byte[] reds = new byte[size];
+		byte[] greens = new byte[size];
+		byte[] blues = new byte[size];
+		colorModel.getReds(reds);
+		colorModel.getGreens(greens);
+		colorModel.getBlues(blues);
+		RGB[] rgbs = new RGB[size];
+		for (int i = 0; i < rgbs.length; i++) {
+			rgbs[i] = new RGB(reds[i] & 0xFF, greens[i] & 0xFF, blues[i] & 0xFF);
+		}
+		ImageData data = new ImageData(width, height, 8, new PaletteData(rgbs));
+
+		WritableRaster raster = bufferedImage.getRaster();
+		ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+		byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+		int srcStride = sampleModel.getScanlineStride();
+		int srcOffset = raster.getDataBuffer().getOffset() + sampleModel.getOffset(
+				-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+		if (sampleModel.getPixelStride() == 1) {
+			for (int y = 0; y < height; ++y)
+				System.arraycopy(src, srcOffset + y * srcStride, data.data, y * data.bytesPerLine, width);
+		} else {
+			int pixelStride = sampleModel.getPixelStride();
+			for (int y = 0; y < height; ++y) {
+				int s = srcOffset + y * srcStride;
+				int d = y * data.bytesPerLine;
+				for (int x = 0; x < width; ++x, s += pixelStride)
+					data.data[d + x] = src[s];
 			}
-			return data;
-		} else if (bufferedImage.getColorModel() instanceof IndexColorModel) {
-			IndexColorModel colorModel = (IndexColorModel) bufferedImage
-					.getColorModel();
-			int size = colorModel.getMapSize();
-			byte[] reds = new byte[size];
-			byte[] greens = new byte[size];
-			byte[] blues = new byte[size];
-			colorModel.getReds(reds);
-			colorModel.getGreens(greens);
-			colorModel.getBlues(blues);
-			RGB[] rgbs = new RGB[size];
-			for (int i = 0; i < rgbs.length; i++) {
-				rgbs[i] = new RGB(reds[i] & 0xFF, greens[i] & 0xFF,
-						blues[i] & 0xFF);
+		}
+
+		if (colorModel.getTransparency() == Transparency.TRANSLUCENT) {
+			byte[] alphas = new byte[size];
+			colorModel.getAlphas(alphas);
+			data.alphaData = new byte[width * height];
+			for (int y = 0; y < height; ++y) {
+				int s = y * data.bytesPerLine;
+				int d = y * width;
+				for (int x = 0; x < width; ++x)
+					data.alphaData[d + x] = alphas[data.data[s + x] & 0xFF];
 			}
-			PaletteData palette = new PaletteData(rgbs);
-			ImageData data = new ImageData(bufferedImage.getWidth(),
-					bufferedImage.getHeight(), colorModel.getPixelSize(),
-					palette);
+		} else {
 			data.transparentPixel = colorModel.getTransparentPixel();
-			WritableRaster raster = bufferedImage.getRaster();
-			int[] pixelArray = new int[1];
-			for (int y = 0; y < data.height; y++) {
-				for (int x = 0; x < data.width; x++) {
-					raster.getPixel(x, y, pixelArray);
-					data.setPixel(x, y, pixelArray[0]);
+		}
+		return data;
+	}
+
+	/**
+	 * everything else ends up as 32-bit XRGB, which is the in-memory layout of TYPE_INT_(A)RGB
+	 */
+	private static ImageData convertDirectToSWT(BufferedImage bufferedImage) {
+		int width = bufferedImage.getWidth();
+		int height = bufferedImage.getHeight();
+		ImageData data = new ImageData(width, height, 32, new PaletteData(0xFF0000, 0x00FF00, 0x0000FF));
+		boolean hasAlpha = bufferedImage.getColorModel().hasAlpha();
+		if (hasAlpha)
+			data.alphaData = new byte[width * height];
+
+		/* SWT stores 32-bit pixels most significant byte first */
+		IntBuffer target = ByteBuffer.wrap(data.data).asIntBuffer();
+		int[] row = new int[width];
+
+		WritableRaster raster = bufferedImage.getRaster();
+		SampleModel sampleModel = raster.getSampleModel();
+		int type = bufferedImage.getType();
+		if (((type == BufferedImage.TYPE_INT_RGB) || (type == BufferedImage.TYPE_INT_ARGB)) &&
+				(raster.getDataBuffer() instanceof DataBufferInt) &&
+				(sampleModel instanceof SinglePixelPackedSampleModel)) {
+			int[] src = ((DataBufferInt) raster.getDataBuffer()).getData();
+			int srcStride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+			int srcOffset = raster.getDataBuffer().getOffset() + ((SinglePixelPackedSampleModel) sampleModel).getOffset(
+					-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+			if ((srcStride == width) && !hasAlpha) {
+				target.put(src, srcOffset, width * height);
+			} else {
+				for (int y = 0; y < height; ++y) {
+					System.arraycopy(src, srcOffset + y * srcStride, row, 0, width);
+					putRow(data, target, row, y, hasAlpha);
 				}
 			}
-			return data;
-		} else if (bufferedImage.getColorModel() instanceof ComponentColorModel) {
-			ComponentColorModel colorModel = (ComponentColorModel)bufferedImage.getColorModel();
-
-			//ASSUMES: 3 BYTE BGR IMAGE TYPE
-
-			PaletteData palette = new PaletteData(0x0000FF, 0x00FF00,0xFF0000);
-			ImageData data = new ImageData(bufferedImage.getWidth(), bufferedImage.getHeight(), colorModel.getPixelSize(), palette);
-
-			//This is valid because we are using a 3-byte Data model with no transparent pixels
-			data.transparentPixel = -1;
-
-			WritableRaster raster = bufferedImage.getRaster();
-			int[] pixelArray = new int[bufferedImage.getColorModel().getNumComponents()];
-			for (int y = 0; y < data.height; y++) {
-				for (int x = 0; x < data.width; x++) {
-					raster.getPixel(x, y, pixelArray);
-					int pixel = palette.getPixel(new RGB(pixelArray[0], pixelArray[1], pixelArray[2]));
-					data.setPixel(x, y, pixel);
-					if (3 < pixelArray.length)
-						data.setAlpha(x, y, pixelArray[3]);
+		} else if (isInterleaved8BitSRGB(bufferedImage)) {
+			PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) sampleModel;
+			byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+			int[] bandOffsets = interleaved.getBandOffsets();
+			int pixelStride = interleaved.getPixelStride();
+			int srcStride = interleaved.getScanlineStride();
+			int srcOffset = raster.getDataBuffer().getOffset() + interleaved.getOffset(
+					-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+			int r = bandOffsets[0], g = bandOffsets[1], b = bandOffsets[2];
+			int a = hasAlpha ? bandOffsets[3] : -1;
+			for (int y = 0; y < height; ++y) {
+				int s = srcOffset + y * srcStride;
+				for (int x = 0; x < width; ++x, s += pixelStride) {
+					row[x] = ((a < 0) ? 0xFF000000 : ((src[s + a] & 0xFF) << 24))
+							| ((src[s + r] & 0xFF) << 16)
+							| ((src[s + g] & 0xFF) << 8)
+							| (src[s + b] & 0xFF);
 				}
+				putRow(data, target, row, y, hasAlpha);
+			}
+		} else {
+			/* getRGB handles any color model (including premultiplied alpha) and returns non-premultiplied sRGB */
+			for (int y = 0; y < height; ++y) {
+				bufferedImage.getRGB(0, y, width, 1, row, 0, width);
+				putRow(data, target, row, y, hasAlpha);
 			}
-			return data;
 		}
-		throw new RuntimeException("could not convert image with model " + bufferedImage.getColorModel().getClass().getName());
+		return data;
+	}
+
+	private static void putRow(ImageData data, IntBuffer target, int[] row, int y, boolean hasAlpha) {
+		target.put(y * data.width, row, 0, data.width);
+		if (hasAlpha) {
+			int d = y * data.width;
+			for (int x = 0; x < data.width; ++x)
+				data.alphaData[d + x] = (byte) (row[x] >>> 24);
+		}
+	}
+
+	/**
+	 * whether this is a byte-per-sample (A)RGB image (e.g. TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR)
+	 */
+	private static boolean isInterleaved8BitSRGB(BufferedImage bufferedImage) {
+		ColorModel colorModel = bufferedImage.getColorModel();
+		Raster raster = bufferedImage.getRaster();
+		if (!(colorModel instanceof ComponentColorModel) || colorModel.isAlphaPremultiplied())
+			return false;
+		if (!colorModel.getColorSpace().isCS_sRGB())
+			return false;
+		if (!(raster.getDataBuffer() instanceof DataBufferByte) || !(raster.getSampleModel() instanceof PixelInterleavedSampleModel))
+			return false;
+		int expectedBands = colorModel.hasAlpha() ? 4 : 3;
+		return (raster.getNumBands() == expectedBands) && (colorModel.getNumComponents() == expectedBands);
 	}
 }
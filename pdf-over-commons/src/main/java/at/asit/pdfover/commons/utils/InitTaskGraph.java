@@ -0,0 +1,119 @@
+package at.asit.pdfover.commons.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Initialization steps that run concurrently (on the {@link TaskExecutor}), each as soon as the steps
+ * it depends on are done
+ *
+ * Steps are started when they are added; dependencies must have been added before. If a step fails,
+ * all steps depending on it fail with the same exception, which is rethrown by {@link #await(String)}.
+ */
+@Slf4j
+public final class InitTaskGraph {
+
+	/**
+	 * One initialization step
+	 */
+	public interface Task {
+		void run() throws Exception;
+	}
+
+	private final Map<String, CompletableFuture<Void>> tasks = new ConcurrentHashMap<>();
+	private final Map<String, Long> durations = new ConcurrentHashMap<>();
+
+	/**
+	 * Add a step and start it once its dependencies are done
+	 * @param name unique name of the step
+	 * @param task the step
+	 * @param dependencies names of steps that have to be done before this one starts
+	 * @return this
+	 */
+	public InitTaskGraph add(String name, Task task, String... dependencies) {
+		CompletableFuture<?>[] before = new CompletableFuture<?>[dependencies.length];
+		for (int i = 0; i < dependencies.length; ++i) {
+			before[i] = this.tasks.get(dependencies[i]);
+			if (before[i] == null)
+				throw new IllegalArgumentException("Unknown dependency " + dependencies[i] + " of init task " + name);
+		}
+
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		if (this.tasks.putIfAbsent(name, future) != null)
+			throw new IllegalArgumentException("Duplicate init task " + name);
+
+		CompletableFuture.allOf(before).whenComplete((v, failure) -> {
+			if (failure != null) {
+				future.completeExceptionally(unwrap(failure));
+				return;
+			}
+			TaskExecutor.submit("init-" + name, () -> {
+				long startedAt = System.nanoTime();
+				try {
+					task.run();
+					this.durations.put(name, (System.nanoTime() - startedAt) / 1000000);
+					log.debug("Init task {} took {} ms", name, this.durations.get(name));
+					future.complete(null);
+				} catch (Exception | Error e) {
+					log.warn("Init task {} failed", name, e);
+					future.completeExceptionally(e);
+				}
+			});
+		});
+		return this;
+	}
+
+	/**
+	 * Run an action once a step is done (on the thread that finished it, or immediately if it is done already);
+	 * the action is not run if the step failed
+	 * @param name the step
+	 * @param action the action
+	 */
+	public void whenDone(String name, Runnable action) {
+		get(name).thenRun(action);
+	}
+
+	/**
+	 * Wait for a step
+	 * @param name the step
+	 * @throws Exception the exception the step (or one of its dependencies) failed with
+	 */
+	public void await(String name) throws Exception {
+		try {
+			get(name).join();
+		} catch (CompletionException | CancellationException e) {
+			Throwable cause = unwrap(e);
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw e;
+		}
+	}
+
+	/**
+	 * @return run time (in ms) of each step that completed successfully, sorted by name
+	 */
+	public Map<String, Long> getDurations() {
+		return new TreeMap<>(this.durations);
+	}
+
+	private CompletableFuture<Void> get(String name) {
+		CompletableFuture<Void> future = this.tasks.get(name);
+		if (future == null)
+			throw new IllegalArgumentException("Unknown init task " + name);
+		return future;
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		while ((t instanceof CompletionException) && (t.getCause() != null))
+			t = t.getCause();
+		return t;
+	}
+}
@@ -0,0 +1,188 @@
+package at.asit.pdfover.commons.utils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shared executor for all background work of the application (document preparation, signing,
+ * placeholder generation, update checks, ...)
+ *
+ * Tasks are identified by a short name; the executing thread carries that name while the task runs,
+ * and queue wait, run time and failures are recorded per name (see {@link #getMetrics()}).
+ *
+ * On JDKs with virtual threads, each task gets its own virtual thread; otherwise a pool of daemon
+ * platform threads is used. Either way, at most {@link #MAX_CONCURRENT_TASKS} tasks run at once.
+ * Several tasks block on user interaction (e.g. signing waits for the BKU), so the bound is generous.
+ */
+@Slf4j
+public final class TaskExecutor {
+
+	/** maximum number of tasks running at the same time */
+	public static final int MAX_CONCURRENT_TASKS = 16;
+	/** set this system property to "false" to use platform threads even if virtual threads are available */
+	public static final String VIRTUAL_THREADS_PROPERTY = "pdfover.virtualthreads";
+
+	private static final String THREAD_NAME_PREFIX = "pdf-over-";
+
+	private static final ExecutorService executor;
+	/** only used for virtual threads, platform threads are bounded by the pool size */
+	private static final Semaphore permits = new Semaphore(MAX_CONCURRENT_TASKS);
+	private static final boolean usesVirtualThreads;
+	static {
+		ExecutorService virtual = null;
+		if (!"false".equals(System.getProperty(VIRTUAL_THREADS_PROPERTY)))
+			virtual = createVirtualThreadExecutor();
+		usesVirtualThreads = (virtual != null);
+		if (virtual != null) {
+			executor = virtual;
+		} else {
+			AtomicInteger threadCount = new AtomicInteger();
+			ThreadFactory factory = (r) -> {
+				Thread t = new Thread(r, THREAD_NAME_PREFIX + "worker-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			};
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_CONCURRENT_TASKS, MAX_CONCURRENT_TASKS,
+					30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		log.debug("Background tasks run on {} threads", usesVirtualThreads ? "virtual" : "platform");
+	}
+
+	/**
+	 * Thread.ofVirtual() only exists from Java 21 on, and we build for 17
+	 * @return a thread-per-task executor using virtual threads, or null if not supported
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX + "vworker-", 1L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method newExecutor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Accumulated statistics for all tasks of one name
+	 */
+	public static final class TaskMetrics {
+		private final AtomicLong submitted = new AtomicLong();
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong totalQueueNanos = new AtomicLong();
+		private final AtomicLong maxQueueNanos = new AtomicLong();
+		private final AtomicLong totalRunNanos = new AtomicLong();
+		private final AtomicLong maxRunNanos = new AtomicLong();
+
+		public long getSubmitted() { return this.submitted.get(); }
+		/** number of tasks that finished, including failed ones */
+		public long getCompleted() { return this.completed.get(); }
+		public long getFailed() { return this.failed.get(); }
+		public long getTotalQueueMillis() { return TimeUnit.NANOSECONDS.toMillis(this.totalQueueNanos.get()); }
+		public long getMaxQueueMillis() { return TimeUnit.NANOSECONDS.toMillis(this.maxQueueNanos.get()); }
+		public long getTotalRunMillis() { return TimeUnit.NANOSECONDS.toMillis(this.totalRunNanos.get()); }
+		public long getMaxRunMillis() { return TimeUnit.NANOSECONDS.toMillis(this.maxRunNanos.get()); }
+
+		@Override
+		public String toString() {
+			return String.format("%d submitted, %d completed, %d failed, queue wait %d ms total/%d ms max, run time %d ms total/%d ms max",
+					getSubmitted(), getCompleted(), getFailed(),
+					getTotalQueueMillis(), getMaxQueueMillis(), getTotalRunMillis(), getMaxRunMillis());
+		}
+	}
+
+	private static final Map<String, TaskMetrics> metrics = new ConcurrentHashMap<>();
+
+	/**
+	 * @return a snapshot of the per-task-name metrics, sorted by name
+	 */
+	public static Map<String, TaskMetrics> getMetrics() {
+		return new TreeMap<>(metrics);
+	}
+
+	/**
+	 * Log the metrics of all tasks (at debug level)
+	 */
+	public static void logMetrics() {
+		if (!log.isDebugEnabled())
+			return;
+		getMetrics().forEach((name, m) -> log.debug("Task {}: {}", name, m));
+	}
+
+	/**
+	 * @return whether tasks run on virtual threads
+	 */
+	public static boolean usesVirtualThreads() {
+		return usesVirtualThreads;
+	}
+
+	/**
+	 * Run a task in the background
+	 * @param name short task name (used for the thread name and metrics)
+	 * @param task the task; uncaught exceptions are logged and counted as failures
+	 * @return the future for the task
+	 */
+	public static Future<?> submit(String name, Runnable task) {
+		return submit(name, () -> { task.run(); return null; });
+	}
+
+	/**
+	 * Run a task in the background
+	 * @param name short task name (used for the thread name and metrics)
+	 * @param task the task; exceptions are counted as failures and reported through the future
+	 * @return the future for the task
+	 */
+	public static <T> Future<T> submit(String name, Callable<T> task) {
+		TaskMetrics m = metrics.computeIfAbsent(name, (k) -> new TaskMetrics());
+		m.submitted.incrementAndGet();
+		final long submittedAt = System.nanoTime();
+		return executor.submit(() -> {
+			if (usesVirtualThreads)
+				permits.acquire();
+			Thread thread = Thread.currentThread();
+			String threadName = thread.getName();
+			thread.setName(THREAD_NAME_PREFIX + name);
+			long startedAt = System.nanoTime();
+			record(m.totalQueueNanos, m.maxQueueNanos, startedAt - submittedAt);
+			try {
+				return task.call();
+			} catch (Throwable t) {
+				m.failed.incrementAndGet();
+				log.warn("Background task {} failed", name, t);
+				throw t;
+			} finally {
+				record(m.totalRunNanos, m.maxRunNanos, System.nanoTime() - startedAt);
+				m.completed.incrementAndGet();
+				thread.setName(threadName);
+				if (usesVirtualThreads)
+					permits.release();
+			}
+		});
+	}
+
+	private static void record(AtomicLong total, AtomicLong max, long nanos) {
+		total.addAndGet(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	private TaskExecutor() {}
+}
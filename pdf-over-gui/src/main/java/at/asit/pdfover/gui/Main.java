@@ -22,7 +22,14 @@ import java.io.IOException;
 import javax.swing.JOptionPane;
 
 import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.commons.Messages;
+import at.asit.pdfover.commons.utils.TaskExecutor;
+import at.asit.pdfover.gui.service.HeadlessSigner;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
+import at.asit.pdfover.gui.utils.StartupMetrics;
 import at.asit.pdfover.gui.workflow.StateMachine;
+import at.asit.pdfover.gui.workflow.config.ConfigWriter;
+import at.asit.pdfover.signer.pdfas.PdfAs4Helper;
 
 import iaik.security.provider.IAIK;
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +39,15 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class Main {
+
+	/** init task: register the IAIK JCE provider */
+	public static final String INIT_IAIK = "iaik";
+	/** init task: load the localized messages */
+	public static final String INIT_MESSAGES = "messages";
+	/** init task: create the JAXB context for security layer requests */
+	public static final String INIT_SL_MARSHALLER = "sl-marshaller";
+	/** how long to wait for pending configuration writes before exiting */
+	private static final long CONFIG_FLUSH_TIMEOUT_MILLIS = 5000;
 //	private static URL url=null;
 
 	/**
@@ -39,6 +55,11 @@ public class Main {
 	 * @throws IOException
 	 */
 	public static void main(String[] args) throws IOException {
+		if (HeadlessSigner.isRequested(args)) {
+			// resident signing service or folder watcher instead of the user interface, runs until terminated
+			System.exit(HeadlessSigner.runHeadless(args));
+		}
+
 		try {
 			log.info("This is " + Constants.APP_NAME_VERSION + ", " +
 			  "running on " + System.getProperty("os.arch") + " " + System.getProperty("os.name") + ", " +
@@ -49,18 +70,31 @@ public class Main {
 				configDir.mkdir();
 			}
 
-			// force loading the IAIK JCE (cf. #95)
-			IAIK.addAsProvider();
-
 			// force keystore type (Adoptium JRE 17 still ships with JKS, cf. #95)
 			System.setProperty("javax.net.ssl.trustStoreType", "jks");
 
 			// disable display scaling for AWT components embedded in SWT (cf. #106)
 			System.setProperty("sun.java2d.uiScale", "1");
 
+			StateMachine stateMachine = new StateMachine(args);
+
+			// these run while the main window is being set up; further tasks are added by PrepareConfigurationState
+			stateMachine.startup
+				// force loading the IAIK JCE (cf. #95)
+				.add(INIT_IAIK, IAIK::addAsProvider)
+				.add(INIT_MESSAGES, Messages::preloadBundles)
+				.add(INIT_SL_MARSHALLER, PdfAs4Helper::initializeSLMarshaller);
+
 			log.debug("Starting stateMachine ...");
-			(new StateMachine(args)).start();
+			stateMachine.start();
 			log.debug("Ended stateMachine ...");
+			ConfigWriter.flush(CONFIG_FLUSH_TIMEOUT_MILLIS);
+			stateMachine.status.journal.flush(CONFIG_FLUSH_TIMEOUT_MILLIS);
+			StartupMetrics.writeReport(stateMachine.startup.getDurations());
+			TaskExecutor.logMetrics();
+			int liveImages = SWTImageRegistry.getLiveHandleCount();
+			if (liveImages > 0)
+				log.warn("{} cached image handles were not disposed with the display", liveImages);
 		}
 		catch (Throwable e) {
 
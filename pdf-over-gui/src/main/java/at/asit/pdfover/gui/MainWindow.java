@@ -16,8 +16,6 @@
 package at.asit.pdfover.gui;
 
 // Imports
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.EnumMap;
 import java.util.Map;
 
@@ -29,8 +27,6 @@ import org.eclipse.swt.events.MouseAdapter;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.ShellAdapter;
 import org.eclipse.swt.events.ShellEvent;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
@@ -52,6 +48,7 @@ import at.asit.pdfover.gui.controls.MainBarMiddleButton;
 import at.asit.pdfover.gui.controls.MainBarRectangleButton;
 import at.asit.pdfover.gui.controls.MainBarStartButton;
 import at.asit.pdfover.gui.osx.CocoaUIEnhancer;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.gui.workflow.StateMachine;
@@ -225,19 +222,13 @@ public class MainWindow {
 			public void shellClosed(ShellEvent e) {
 				log.debug("Closing main window");
 				MainWindow.this.stateMachine.configProvider.setMainWindowSizePersistent(getShell().getSize());
-				try {
-					MainWindow.this.stateMachine.configProvider.saveToDisk();
-				} catch (IOException e1) {
-					log.error("Error saving configuration", e);
-				}
+				// written in the background, Main waits for it before exiting
+				MainWindow.this.stateMachine.configProvider.saveToDisk();
 				getShell().dispose();
 			}
 		});
 
-		ImageData data = new ImageData(this.getClass().getResourceAsStream(Constants.RES_ICON));
-		Image shellicon = new Image(getShell().getDisplay(), data);
-
-		getShell().setImage(shellicon);
+		getShell().setImage(SWTImageRegistry.of(getShell().getDisplay()).get(Constants.RES_ICON));
 
 		getShell().setLayout(new FormLayout());
 
@@ -264,12 +255,9 @@ public class MainWindow {
 		});
 		this.buttonMap.put(Buttons.CONFIG, this.btn_config);
 
-		InputStream is = this.getClass().getResourceAsStream(Constants.RES_IMG_CONFIG);
-		((MainBarRectangleButton) this.btn_config).setEnabledImage(
-				new Image(Display.getDefault(), new ImageData(is)));
-		is = this.getClass().getResourceAsStream(Constants.RES_IMG_CONFIG_DISABLED);
-		((MainBarRectangleButton) this.btn_config).setDisabledImage(
-				new Image(Display.getDefault(), new ImageData(is)));
+		SWTImageRegistry images = SWTImageRegistry.of(Display.getDefault());
+		((MainBarRectangleButton) this.btn_config).setEnabledImage(images.get(Constants.RES_IMG_CONFIG));
+		((MainBarRectangleButton) this.btn_config).setDisabledImage(images.get(Constants.RES_IMG_CONFIG_DISABLED));
 
 		Composite mainbarContainer = new Composite(this.mainbar, SWT.NONE);
 		mainbarContainer.setLayout(new FormLayout());
@@ -29,6 +29,7 @@ import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
 
 import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.commons.utils.CancellationToken;
 import at.asit.pdfover.gui.utils.FileUploadSource;
 import at.asit.pdfover.signer.BkuSlConnector;
 import at.asit.pdfover.signer.SignatureException;
@@ -74,6 +75,16 @@ public class LocalBKUConnector implements BkuSlConnector {
 	 */
 	public final static String BKU_RESPONSE_HEADER_SIGNATURE_LAYOUT = "SignatureLayout";
 
+	private final CancellationToken cancellation;
+
+	/**
+	 * Constructor
+	 * @param cancellation aborts the pending request when cancelled
+	 */
+	public LocalBKUConnector(CancellationToken cancellation) {
+		this.cancellation = cancellation;
+	}
+
 	/* (non-Javadoc)
 	 * @see at.asit.pdfover.signator.BkuSlConnector#handleSLRequest(java.lang.String)
 	 */
@@ -99,14 +110,16 @@ public class LocalBKUConnector implements BkuSlConnector {
 			}
 			log.trace("SL REQUEST: " + sl_request);
 
-			int returnCode = client.executeMethod(method);
+			try (CancellationToken.Registration abort = this.cancellation.onCancel(method::abort)) {
+				int returnCode = client.executeMethod(method);
 
-			if (returnCode != HttpStatus.SC_OK) {
-				throw new HttpException(
-						method.getResponseBodyAsString());
-			}
+				if (returnCode != HttpStatus.SC_OK) {
+					throw new HttpException(
+							method.getResponseBodyAsString());
+				}
 
-			return method.getResponseBodyAsString();
+				return method.getResponseBodyAsString();
+			}
 		} catch (HttpException e) {
 			log.error("LocalBKUConnector: ", e);
 			throw new SignatureException(e);
@@ -29,6 +29,7 @@ import org.apache.hc.core5.http.ParseException;
 import org.apache.hc.core5.http.ProtocolException;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.io.CloseMode;
 import org.json.JSONObject;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -36,6 +37,7 @@ import org.jsoup.nodes.Element;
 
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.Messages;
+import at.asit.pdfover.commons.utils.CancellationToken;
 import at.asit.pdfover.gui.bku.mobile.ATrustParser;
 import at.asit.pdfover.gui.utils.HttpClientUtils;
 import at.asit.pdfover.gui.workflow.states.MobileBKUState;
@@ -71,19 +73,29 @@ public class MobileBKUConnector implements BkuSlConnector {
     @Override
 	public String handleSLRequest(PdfAs4SLRequest slRequest) throws SignatureException, UserCancelledException {
         log.debug("Got security layer request: (has file part: {})\n{}", (slRequest.signatureData != null), slRequest.xmlRequest);
-        try (final CloseableHttpClient httpClient = HttpClientUtils.builderWithSettings().disableRedirectHandling().build()) {
+        final CancellationToken cancellation = this.state.getSigningState().cancellation;
+        try (final CloseableHttpClient httpClient = HttpClientUtils.builderWithSettings().disableRedirectHandling().build();
+             /* abort pending requests if the user navigates away */
+             CancellationToken.Registration abort = cancellation.onCancel(() -> httpClient.close(CloseMode.IMMEDIATE))) {
             ClassicHttpRequest currentRequest = buildInitialRequest(slRequest);
             ATrustParser.Result response;
-            while ((response = sendHTTPRequest(httpClient, currentRequest)).slResponse == null)
+            while ((response = sendHTTPRequest(httpClient, currentRequest)).slResponse == null) {
+                if (cancellation.isCancelled())
+                    throw new UserCancelledException();
                 currentRequest = presentResponseToUserAndReturnNextRequest(response.html);
+            }
             log.debug("Returning security layer response:\n{}", response.slResponse);
             return response.slResponse;
         } catch (UserDisplayedError e) {
+            if (cancellation.isCancelled())
+                throw new UserCancelledException(e);
             state.showUnrecoverableError(e.getMessage());
             throw new IllegalStateException("unreachable", e); /* showUnrecoverableError always throws */
         } catch (UserCancelledException e) {
             throw e;
         } catch (Exception e) {
+            if (cancellation.isCancelled())
+                throw new UserCancelledException(e);
             throw new SignatureException(e);
         }
     }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.cliarguments;
+
+// Imports
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import at.asit.pdfover.gui.exceptions.InitializationException;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import at.asit.pdfover.commons.Messages;
+
+/**
+ * CLI Argument to record a Java Flight Recorder file
+ *
+ * The recording uses the JDK's default settings plus all PDF-Over events and is written when
+ * PDF-Over exits.
+ */
+@Slf4j
+public class FlightRecordingArgument extends Argument {
+	/**
+	 * Constructor
+	 */
+	public FlightRecordingArgument() {
+		super(new String[] {"-jfr"}, "argument.help.jfr");
+	}
+
+	/* (non-Javadoc)
+	 * @see at.asit.pdfover.gui.cliarguments.CLIArgument#handleArgument(java.lang.String[], int, at.asit.pdfover.gui.workflow.StateMachine, at.asit.pdfover.gui.cliarguments.ArgumentHandler)
+	 */
+	@Override
+	public int handleArgument(String[] args, int argOffset,
+			ArgumentHandler handler)
+			throws InitializationException {
+		try {
+			if (args.length > argOffset + 1) {
+
+				Path destination = Paths.get(args[argOffset + 1]).toAbsolutePath();
+
+				@SuppressWarnings("resource") // closed by the JVM after dumping on exit
+				Recording recording = new Recording(Configuration.getConfiguration("default"));
+				recording.setName("PDF-Over");
+				recording.setDestination(destination);
+				recording.setDumpOnExit(true);
+				recording.start();
+				log.info("Recording Flight Recorder events to {}", destination);
+
+				return argOffset + 1;
+			}
+		} catch (Exception ex) {
+			log.error("Flight Recording Argument invalid!", ex);
+			throw new InitializationException(
+					Messages.getString("argument.invalid.jfr") + this.getHelpText(), ex);
+		}
+
+		throw new InitializationException(
+				Messages.getString("argument.invalid.jfr") + this.getHelpText(), null);
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.cliarguments;
+
+// Imports
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import at.asit.pdfover.gui.exceptions.InitializationException;
+import lombok.extern.slf4j.Slf4j;
+import at.asit.pdfover.commons.Messages;
+
+/**
+ * CLI Argument to sign the documents put into a folder instead of running the user interface
+ *
+ * @see at.asit.pdfover.gui.service.WatchFolderService
+ */
+@Slf4j
+public class WatchFolderArgument extends Argument {
+	/** the command option */
+	public static final String OPTION = "-watch";
+
+	/**
+	 * Constructor
+	 */
+	public WatchFolderArgument() {
+		super(new String[] {OPTION}, "argument.help.watch");
+	}
+
+	/* (non-Javadoc)
+	 * @see at.asit.pdfover.gui.cliarguments.CLIArgument#handleArgument(java.lang.String[], int, at.asit.pdfover.gui.workflow.StateMachine, at.asit.pdfover.gui.cliarguments.ArgumentHandler)
+	 */
+	@Override
+	public int handleArgument(String[] args, int argOffset,
+			ArgumentHandler handler)
+			throws InitializationException {
+		try {
+			if (args.length > argOffset + 1) {
+				String watchFolder = args[argOffset + 1];
+
+				File watchFolderDir = new File(watchFolder);
+				if(!watchFolderDir.exists()) {
+					throw new FileNotFoundException(watchFolder);
+				}
+				if(!watchFolderDir.isDirectory()) {
+					throw new IOException(watchFolderDir + " " + Messages.getString("argument.error.output"));
+				}
+
+				getConfiguration().setWatchFolderOverlay(watchFolder);
+
+				return argOffset + 1;
+			}
+		} catch (Exception ex) {
+			log.error("Watch folder argument invalid!", ex);
+			throw new InitializationException(
+					Messages.getString("argument.invalid.watch") + this.getHelpText(), ex);
+		}
+
+		throw new InitializationException(
+				Messages.getString("argument.invalid.watch") + this.getHelpText(), null);
+	}
+
+}
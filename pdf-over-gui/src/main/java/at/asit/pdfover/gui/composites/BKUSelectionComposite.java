@@ -17,8 +17,6 @@ package at.asit.pdfover.gui.composites;
 
 // Imports
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
@@ -26,6 +24,7 @@ import org.eclipse.swt.widgets.Composite;
 import at.asit.pdfover.commons.BKUs;
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.gui.controls.ClickableCanvas;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.gui.workflow.states.State;
 
@@ -84,15 +83,13 @@ public class BKUSelectionComposite extends StateComposite {
 
 		this.cc_mobile = new ClickableCanvas(this, SWT.NATIVE | SWT.RESIZE);
 		SWTUtils.anchor(cc_mobile).right(50, -5).top(40, -20);
-		Image mobile = new Image(getDisplay(), new ImageData(this.getClass().getResourceAsStream(Constants.RES_IMG_MOBILE)));
-		cc_mobile.setImage(mobile);
+		cc_mobile.setImage(SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_MOBILE));
 		SWTUtils.setFontHeight(cc_mobile, Constants.TEXT_SIZE_BUTTON);
 		SWTUtils.addMouseDownListener(cc_mobile, () -> { setSelected(BKUs.MOBILE); });
 
 		this.cc_karte = new ClickableCanvas(this, SWT.NATIVE | SWT.RESIZE);
 		SWTUtils.anchor(cc_karte).left(50, 5).top(40, -20);
-		Image karte = new Image(getDisplay(), this.getClass().getResourceAsStream(Constants.RES_IMG_CARD));
-		cc_karte.setImage(karte);
+		cc_karte.setImage(SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_CARD));
 		SWTUtils.setFontHeight(cc_karte, Constants.TEXT_SIZE_BUTTON);
 		SWTUtils.addMouseDownListener(cc_karte, () -> { setSelected(BKUs.LOCAL); });
 
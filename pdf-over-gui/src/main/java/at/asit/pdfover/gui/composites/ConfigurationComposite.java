@@ -15,7 +15,6 @@
  */
 package at.asit.pdfover.gui.composites;
 
-import java.io.IOException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -339,20 +338,31 @@ public class ConfigurationComposite extends StateComposite {
 		for (ConfigurationCompositeBase c : composites())
 			c.storeConfiguration(this.configProvider);
 
-		while (true) {
-			// Save current config to file
-			try {
-				this.configProvider.saveToDisk();
-				return true;
-			} catch (IOException e) {
-				log.error("Failed to save configuration to file!", e);
-				ErrorDialog dialog = new ErrorDialog(getShell(),
-						Messages.getString("error.FailedToSaveSettings"), BUTTONS.RETRY_CANCEL);
-				int rc = dialog.open();
-				if (rc == SWT.CANCEL)
-					return false;
-			}
-		}
+		// Save current config to file (in the background)
+		saveToDisk(this.configProvider, getShell());
+		return true;
+	}
+
+	/**
+	 * Saves the configuration in the background, offering to retry if that fails
+	 *
+	 * @param configProvider the configuration
+	 * @param shell the shell to show the error on
+	 */
+	private static void saveToDisk(ConfigurationManager configProvider, Shell shell) {
+		configProvider.saveToDisk().exceptionally((e) -> {
+			log.error("Failed to save configuration to file!", e);
+			if (!shell.isDisposed())
+				shell.getDisplay().asyncExec(() -> {
+					if (shell.isDisposed())
+						return;
+					ErrorDialog dialog = new ErrorDialog(shell,
+							Messages.getString("error.FailedToSaveSettings"), BUTTONS.RETRY_CANCEL);
+					if (dialog.open() == SWT.RETRY)
+						saveToDisk(configProvider, shell);
+				});
+			return null;
+		});
 	}
 
 	/**
@@ -18,8 +18,6 @@ package at.asit.pdfover.gui.composites;
 // Imports
 import java.awt.Desktop;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
 import org.apache.commons.io.FilenameUtils;
@@ -46,10 +44,12 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Link;
 
 import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.commons.utils.TaskExecutor;
 import at.asit.pdfover.gui.controls.Dialog;
 import at.asit.pdfover.gui.controls.Dialog.BUTTONS;
 import at.asit.pdfover.gui.controls.Dialog.ICON;
 import at.asit.pdfover.gui.controls.ErrorDialog;
+import at.asit.pdfover.gui.utils.OutputWriter;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.gui.workflow.states.OutputState;
@@ -81,6 +81,10 @@ public class OutputComposite extends StateComposite {
 
 	private boolean saveFailed = false;
 
+	private boolean saving = false;
+
+	private boolean syncOutput = false;
+
 	private String postFix = null;
 
 	/**
@@ -276,10 +280,32 @@ public class OutputComposite extends StateComposite {
 
 	/**
 	 * Return whether the last save was successful
-	 * @return whether the last save was successful
+	 * @return whether the last save was successful (false while still saving)
 	 */
 	public boolean getSaveSuccessful() {
-		return !this.saveFailed;
+		return !this.saving && !this.saveFailed;
+	}
+
+	/**
+	 * @return the file the signed document was saved as, or null if it has not been saved
+	 */
+	public File getOutputFile() {
+		return this.outputFile;
+	}
+
+	/**
+	 * Return whether the signed document is currently being written
+	 * @return whether a save is in progress
+	 */
+	public boolean isSaving() {
+		return this.saving;
+	}
+
+	/**
+	 * @param syncOutput whether to sync the signed document to disk before reporting it as saved
+	 */
+	public void setSyncOutput(boolean syncOutput) {
+		this.syncOutput = syncOutput;
 	}
 
 	private void enableSaveButton(boolean doEnable)
@@ -341,23 +367,21 @@ public class OutputComposite extends StateComposite {
 		}
 		log.debug("Trying to save to '" + outputFileName + "'");
 
-		this.outputFile = saveResultAsFile(inputFolder, outputFileName);
-		this.saveFailed = (this.outputFile == null);
-
-		// If saving failed, enable save button
-		enableSaveButton(this.saveFailed);
-		reloadResources();
-		layout(true);
+		File targetFile = getTargetFile(inputFolder, outputFileName);
+		if (targetFile == null)
+			saveFinished(null);
+		else
+			saveResultAsFile(targetFile);
 	}
 
 	/**
-	 * Save the signed document under the given filename
+	 * Resolve the filename to save the signed document as
 	 * @param inputFolder the Folder the original document is located at
 	 * @param target the filename to save the document as
 	 *
-	 * @return saved File (or null if unsuccessful)
+	 * @return target File (or null if the user cancelled)
 	 */
-	private File saveResultAsFile(File inputFolder, String target) {
+	private File getTargetFile(File inputFolder, String target) {
 		if (target == null)
 			return null;
 
@@ -375,44 +399,90 @@ public class OutputComposite extends StateComposite {
 			}
 		}
 
-		DocumentSource source = this.getSignedDocument();
-		boolean retry;
+		return targetFile;
+	}
 
-		do {
-			retry = false;
+	/**
+	 * Save the signed document to the given file in the background
+	 *
+	 * The state machine is updated once the document has been saved (or saving was given up).
+	 * @param targetFile the file to save the document as
+	 */
+	private void saveResultAsFile(final File targetFile) {
+		this.saving = true;
+		enableSaveButton(false);
+		showProgress(targetFile, 0);
+
+		final Display display = getDisplay();
+		final DocumentSource source = this.getSignedDocument();
+		final OutputWriter writer = new OutputWriter(this.syncOutput,
+				(this.tempDirectory != null) ? new File(this.tempDirectory) : null,
+				new OutputWriter.ProgressListener() {
+					private int lastPercent = 0;
+
+					@Override
+					public void onProgress(long written, long total) {
+						int percent = (total > 0) ? (int) (written * 100 / total) : 100;
+						if (percent == this.lastPercent)
+							return;
+						this.lastPercent = percent;
+						display.asyncExec(() -> {
+							if (!isDisposed() && OutputComposite.this.saving)
+								showProgress(targetFile, percent);
+						});
+					}
+				});
+
+		TaskExecutor.submit("output-writer", () -> {
+			IOException error = null;
 			try {
-				FileOutputStream outstream = new FileOutputStream(targetFile);
-				outstream.write(source.getByteArray(), 0,
-						source.getByteArray().length);
-				outstream.close();
-			} catch (FileNotFoundException e) {
-				log.warn("Failed to open output file", e);
-				ErrorDialog dialog = new ErrorDialog(getShell(),
-						Messages.formatString("output.save_failed",
-								targetFile.getName(), e.getLocalizedMessage()),
-						BUTTONS.RETRY_CANCEL);
-				if (dialog.open() == SWT.CANCEL)
-					return null;
-				retry = true;
+				writer.write(source, targetFile);
 			} catch (IOException e) {
-				log.error("I/O Error", e);
-				ErrorDialog dialog = new ErrorDialog(getShell(),
-						Messages.formatString("output.save_failed",
-								targetFile.getName(), e.getLocalizedMessage()),
-						BUTTONS.RETRY_CANCEL);
-				if (dialog.open() == SWT.CANCEL)
-					return null;
-				retry = true;
+				error = e;
 			}
-		} while (retry);
+			final IOException result = error;
+			display.asyncExec(() -> {
+				if (!isDisposed())
+					writeFinished(targetFile, result);
+			});
+		});
+	}
 
-		if (!targetFile.exists())
-		{
+	private void writeFinished(File targetFile, IOException error) {
+		if (error != null) {
+			log.error("Failed to save signed document", error);
+			ErrorDialog dialog = new ErrorDialog(getShell(),
+					Messages.formatString("output.save_failed",
+							targetFile.getName(), error.getLocalizedMessage()),
+					BUTTONS.RETRY_CANCEL);
+			if (dialog.open() == SWT.RETRY) {
+				saveResultAsFile(targetFile);
+				return;
+			}
+			targetFile = null;
+		} else if (!targetFile.exists()) {
 			log.error("Tried to save file " + targetFile.getName() +
 					", but it doesn't exist");
-			return null;
+			targetFile = null;
 		}
-		return targetFile;
+		saveFinished(targetFile);
+		this.state.updateStateMachine();
+	}
+
+	private void saveFinished(File savedFile) {
+		this.saving = false;
+		this.outputFile = savedFile;
+		this.saveFailed = (savedFile == null);
+
+		// If saving failed, enable save button
+		enableSaveButton(this.saveFailed);
+		reloadResources();
+		layout(true);
+	}
+
+	private void showProgress(File targetFile, int percent) {
+		this.lnk_saved_file.setText(Messages.formatString("output.saving", targetFile.getName(), percent));
+		layout(true);
 	}
 
 	/**
@@ -459,7 +529,9 @@ public class OutputComposite extends StateComposite {
 	@Override
 	public void reloadResources() {
 		SWTUtils.setLocalizedText(lbl_success_message, "output.success_message");
-		if (this.outputFile == null) {
+		if (this.saving) {
+			// progress text is updated by the writer
+		} else if (this.outputFile == null) {
 			SWTUtils.setLocalizedText(lnk_saved_file, "output.link_save_message");
 		} else {
 			SWTUtils.setLocalizedText(lnk_saved_file, "output.link_open_message");
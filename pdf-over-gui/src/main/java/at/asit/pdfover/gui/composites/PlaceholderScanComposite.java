@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.composites;
+
+// Imports
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.ProgressBar;
+
+import at.asit.pdfover.gui.utils.SWTUtils;
+import at.asit.pdfover.gui.workflow.states.State;
+
+/**
+ * Shown while the opened document is searched for signature placeholders
+ */
+public class PlaceholderScanComposite extends StateComposite {
+	private Label lbl_description;
+	private Button btn_cancel;
+	private Runnable cancelListener = null;
+	private ProgressBar busyProgress;
+	private ProgressBar pageProgress;
+
+	/**
+	 * Show how many pages have been scanned (instead of just a busy indicator)
+	 * @param done pages scanned
+	 * @param total pages to scan
+	 */
+	public void setProgress(int done, int total) {
+		if (isDisposed())
+			return;
+		this.pageProgress.setMaximum(Math.max(1, total));
+		this.pageProgress.setSelection(done);
+		if (!this.pageProgress.isVisible()) {
+			this.busyProgress.setVisible(false);
+			this.pageProgress.setVisible(true);
+		}
+	}
+
+	/**
+	 * Set the action to run when the user cancels the scan
+	 * @param listener the action (called on the UI thread)
+	 */
+	public void setCancelListener(Runnable listener) {
+		this.cancelListener = listener;
+	}
+
+	/**
+	 * Create the composite.
+	 * @param parent
+	 * @param style
+	 * @param state
+	 */
+	public PlaceholderScanComposite(Composite parent, int style, State state) {
+		super(parent, style, state);
+		setLayout(new FormLayout());
+
+		this.lbl_description = new Label(this, SWT.NATIVE);
+		SWTUtils.anchor(lbl_description).bottom(50, -10).left(0, 10).right(100, -10);
+		this.lbl_description.setAlignment(SWT.CENTER);
+
+		this.busyProgress = new ProgressBar(this, SWT.HORIZONTAL | SWT.INDETERMINATE);
+		SWTUtils.anchor(busyProgress).top(50, 10).bottom(50, 40).left(50, -100).right(50, 100);
+
+		/* replaces the busy indicator once the number of pages to scan is known */
+		this.pageProgress = new ProgressBar(this, SWT.HORIZONTAL | SWT.SMOOTH);
+		SWTUtils.anchor(pageProgress).top(50, 10).bottom(50, 40).left(50, -100).right(50, 100);
+		this.pageProgress.setVisible(false);
+
+		this.btn_cancel = new Button(this, SWT.NONE);
+		SWTUtils.anchor(btn_cancel).top(busyProgress, 24).right(busyProgress, 0, SWT.RIGHT);
+		SWTUtils.addSelectionListener(btn_cancel, (e) -> {
+			if (this.cancelListener != null)
+				this.cancelListener.run();
+		});
+
+		reloadResources();
+	}
+
+	/* (non-Javadoc)
+	 * @see at.asit.pdfover.gui.composites.StateComposite#reloadResources()
+	 */
+	@Override
+	public void reloadResources() {
+		SWTUtils.setLocalizedText(lbl_description, "dataSourceSelection.scanningForPlaceholders");
+		SWTUtils.setLocalizedText(btn_cancel, "common.Cancel");
+	}
+}
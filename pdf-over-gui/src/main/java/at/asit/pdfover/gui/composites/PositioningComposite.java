@@ -27,6 +27,10 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.Point2D;
+import java.util.List;
+
+import javax.swing.JScrollPane;
+import javax.swing.ScrollPaneConstants;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.eclipse.swt.SWT;
@@ -40,6 +44,7 @@ import org.eclipse.swt.widgets.ScrollBar;
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.gui.workflow.states.State;
+import at.asit.pdfover.signer.DocumentAnalysis;
 import at.asit.pdfover.signer.SignaturePosition;
 import lombok.extern.slf4j.Slf4j;
 
@@ -49,6 +54,7 @@ import lombok.extern.slf4j.Slf4j;
 public class PositioningComposite extends StateComposite {
 
 	SignaturePanel viewer = null;
+	ThumbnailPanel thumbnails = null;
 	Frame frame = null;
 	Composite mainArea = null;
 	Composite bottomBar = null;
@@ -100,6 +106,16 @@ public class PositioningComposite extends StateComposite {
 				Constants.MAINBAR_ACTIVE_BACK_DARK.getBlue()));
 		this.frame.add(this.viewer, BorderLayout.CENTER);
 
+		this.thumbnails = new ThumbnailPanel(page -> {
+			showPage(page);
+			requestFocus();
+		});
+		JScrollPane thumbnailScroller = new JScrollPane(this.thumbnails,
+				ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
+				ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+		thumbnailScroller.getVerticalScrollBar().setUnitIncrement(16);
+		this.frame.add(thumbnailScroller, BorderLayout.WEST);
+
 		SWTUtils.addSelectionListener(btnNewPage, () -> {
 			if (this.currentPage > this.numPages)
 				showPage(this.numPages);
@@ -123,10 +139,14 @@ public class PositioningComposite extends StateComposite {
 	 *
 	 * @param document
 	 *            document to display
+	 * @param pages
+	 *            the document's page sizes, if known (may be null)
 	 */
-	public void displayDocument(final PDDocument document) {
+	public void displayDocument(final PDDocument document, final List<DocumentAnalysis.PageInfo> pages) {
 		EventQueue.invokeLater(() -> {
 			this.viewer.setDocument(document);
+			this.thumbnails.setDocument(document, pages);
+			this.thumbnails.setCurrentPage(this.currentPage);
 			getDisplay().asyncExec(() -> this.btnSign.setEnabled(true));
 		});
 
@@ -141,6 +161,7 @@ public class PositioningComposite extends StateComposite {
 	@Override
 	public void dispose() {
 		this.viewer.setDocument(null);
+		EventQueue.invokeLater(this.thumbnails::dispose);
 		super.dispose();
 	}
 
@@ -291,6 +312,7 @@ public class PositioningComposite extends StateComposite {
 		});
 		EventQueue.invokeLater(() -> {
 			PositioningComposite.this.viewer.showPage(page);
+			PositioningComposite.this.thumbnails.setCurrentPage(page);
 		});
 	}
 
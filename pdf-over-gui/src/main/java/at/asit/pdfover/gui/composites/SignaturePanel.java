@@ -37,6 +37,8 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
 import at.asit.pdfover.commons.Messages;
+import at.asit.pdfover.commons.utils.FlightRecorderEvents;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignaturePlaceholder;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -173,9 +175,9 @@ public class SignaturePanel extends JPanel {
 	 */
 	public void setSignaturePlaceholder(Image placeholder) {
 		this.sigPlaceholder = placeholder;
-		// TODO figure out why this is divided by 4 (factor ported from old code)
-		this.sigPageWidth = placeholder.getWidth(null) / 4;
-		this.sigPageHeight = placeholder.getHeight(null) / 4;
+		// placeholders are rendered at a higher resolution than page space
+		this.sigPageWidth = placeholder.getWidth(null) / PdfAs4SignaturePlaceholder.PIXELS_PER_PDF_UNIT;
+		this.sigPageHeight = placeholder.getHeight(null) / PdfAs4SignaturePlaceholder.PIXELS_PER_PDF_UNIT;
 		renderPageToImage();
 		if (this.sigPagePos != null)
 			setSignaturePosition(this.sigPagePos.getX(), this.sigPagePos.getY());
@@ -279,12 +281,27 @@ public class SignaturePanel extends JPanel {
 		{
 			int whichPage = Math.min(this.currentPageNo, this.numPages);
 
+			FlightRecorderEvents.PageRender event = new FlightRecorderEvents.PageRender();
+			event.begin();
 			try {
-				this.currentImage = renderer.renderImage(whichPage-1, this.pageToImageScale);
+				// the thumbnail strip renders from the same document on a background thread
+				synchronized (this.pdf) {
+					this.currentImage = renderer.renderImage(whichPage-1, this.pageToImageScale);
+				}
 			} catch (IOException e) {
 				log.error(String.format("Failed to render image for page %d of %d", whichPage, this.numPages), e);
 				this.currentImage = null;
 			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.page = whichPage;
+				event.pages = this.numPages;
+				if (this.currentImage != null) {
+					event.width = this.currentImage.getWidth(null);
+					event.height = this.currentImage.getHeight(null);
+				}
+				event.commit();
+			}
 		}
 
 		if (this.sigPagePos == null)
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.composites;
+
+// Imports
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+import javax.swing.JPanel;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import at.asit.pdfover.signer.DocumentAnalysis;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Vertical strip of page thumbnails, used to jump directly to a page
+ *
+ * Tiles are laid out from the page dimensions only, so differently sized
+ * pages are visible immediately. The page content is rendered lazily on a
+ * background thread, and only for tiles that are currently visible.
+ */
+@Slf4j
+public class ThumbnailPanel extends JPanel {
+
+	/** Default serial version ID */
+	private static final long serialVersionUID = 1L;
+
+	/** Width (in pixels) of the widest page's thumbnail */
+	private static final int THUMBNAIL_WIDTH = 96;
+	/** Gap (in pixels) around each tile */
+	private static final int GAP = 8;
+	/** Height (in pixels) reserved for the page number below each tile */
+	private static final int LABEL_HEIGHT = 14;
+	/** Maximum number of rendered thumbnails kept in memory */
+	private static final int MAX_CACHED_THUMBNAILS = 200;
+
+	private static final Color HIGHLIGHT_COLOR = new Color(0x3C, 0x78, 0xC8);
+
+	/** Renders thumbnails in the background; PDFBox documents are not thread-safe, so one thread is enough */
+	private final ExecutorService renderPool = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "pdf-over-thumbnails");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	/** Rendered thumbnails, least recently used first; guarded by itself */
+	private final Map<Integer, BufferedImage> cache = new LinkedHashMap<Integer, BufferedImage>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+			return size() > MAX_CACHED_THUMBNAILS;
+		}
+	};
+	/** Pages that are queued for rendering; guarded by {@link #cache} */
+	private final Set<Integer> pending = new HashSet<>();
+
+	private PDDocument pdf = null;
+	private PDFRenderer renderer = null;
+	/** Incremented whenever the document changes, to discard results for stale documents */
+	private volatile int generation = 0;
+
+	/** Tile sizes and vertical offsets, indexed by page - 1 */
+	private int[] tileWidth = new int[0];
+	private int[] tileHeight = new int[0];
+	private int[] tileY = new int[0];
+	/** Render scale per page (PDF units to pixels) */
+	private float[] tileScale = new float[0];
+
+	/** Range of currently visible pages (1-based, inclusive) */
+	private volatile int firstVisiblePage = 0;
+	private volatile int lastVisiblePage = -1;
+
+	private int currentPage = 0;
+	private final IntConsumer pageSelectedListener;
+
+	/**
+	 * Create a new thumbnail panel
+	 * @param pageSelectedListener called (on the AWT thread) with the page number when a tile is clicked
+	 */
+	public ThumbnailPanel(IntConsumer pageSelectedListener) {
+		this.pageSelectedListener = pageSelectedListener;
+		setBackground(Color.LIGHT_GRAY);
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent evt) {
+				if (evt.getButton() != MouseEvent.BUTTON1)
+					return;
+				int page = pageAt(evt.getY());
+				if (page > 0)
+					ThumbnailPanel.this.pageSelectedListener.accept(page);
+			}
+		});
+		setDocument(null);
+	}
+
+	/**
+	 * Set a new document to be displayed
+	 *
+	 * Must be called on the AWT thread.
+	 * @param pdf the document, or null to clear the panel
+	 */
+	public void setDocument(PDDocument pdf) {
+		setDocument(pdf, null);
+	}
+
+	/**
+	 * Set a new document to be displayed
+	 *
+	 * Must be called on the AWT thread.
+	 * @param pdf the document, or null to clear the panel
+	 * @param pages the document's page sizes if known, so the pages need not be visited for the layout (may be null)
+	 */
+	public void setDocument(PDDocument pdf, List<DocumentAnalysis.PageInfo> pages) {
+		++this.generation;
+		synchronized (this.cache) {
+			this.cache.clear();
+			this.pending.clear();
+		}
+		this.pdf = pdf;
+		this.renderer = (pdf != null) ? new PDFRenderer(pdf) : null;
+		this.currentPage = 0;
+
+		int numPages = (pdf != null) ? pdf.getNumberOfPages() : 0;
+		float[] pageWidth = new float[numPages];
+		float[] pageHeight = new float[numPages];
+		float maxWidth = 1;
+		if ((pages != null) && (pages.size() == numPages)) {
+			for (int i = 0; i < numPages; ++i) {
+				pageWidth[i] = pages.get(i).getDisplayWidth();
+				pageHeight[i] = pages.get(i).getDisplayHeight();
+				maxWidth = Math.max(maxWidth, pageWidth[i]);
+			}
+		} else {
+			for (int i = 0; i < numPages; ++i) {
+				PDPage page = pdf.getPage(i);
+				boolean isRotated = ((page.getRotation() % 180) == 90);
+				PDRectangle box = page.getCropBox();
+				pageWidth[i] = isRotated ? box.getHeight() : box.getWidth();
+				pageHeight[i] = isRotated ? box.getWidth() : box.getHeight();
+				maxWidth = Math.max(maxWidth, pageWidth[i]);
+			}
+		}
+
+		/* all pages share one scale, so size differences between pages remain visible */
+		float scale = THUMBNAIL_WIDTH / maxWidth;
+		this.tileWidth = new int[numPages];
+		this.tileHeight = new int[numPages];
+		this.tileY = new int[numPages];
+		this.tileScale = new float[numPages];
+		int y = GAP;
+		for (int i = 0; i < numPages; ++i) {
+			this.tileWidth[i] = Math.max(1, Math.round(pageWidth[i] * scale));
+			this.tileHeight[i] = Math.max(1, Math.round(pageHeight[i] * scale));
+			this.tileScale[i] = scale;
+			this.tileY[i] = y;
+			y += this.tileHeight[i] + LABEL_HEIGHT + GAP;
+		}
+
+		setPreferredSize(new Dimension(THUMBNAIL_WIDTH + 2 * GAP, y));
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Highlight the given page and scroll it into view
+	 *
+	 * Must be called on the AWT thread.
+	 * @param page the page number (1-based); pages past the end are not highlighted
+	 */
+	public void setCurrentPage(int page) {
+		if (this.currentPage == page)
+			return;
+		this.currentPage = page;
+		if ((page >= 1) && (page <= this.tileY.length))
+			scrollRectToVisible(tileBounds(page));
+		repaint();
+	}
+
+	/**
+	 * Stop the background renderer; the panel must not be used afterwards
+	 */
+	public void dispose() {
+		this.renderPool.shutdownNow();
+		setDocument(null);
+	}
+
+	private Rectangle tileBounds(int page) {
+		int i = page - 1;
+		return new Rectangle(GAP + (THUMBNAIL_WIDTH - this.tileWidth[i]) / 2, this.tileY[i],
+				this.tileWidth[i], this.tileHeight[i] + LABEL_HEIGHT);
+	}
+
+	/**
+	 * @param y vertical panel coordinate
+	 * @return the page whose tile slot contains y, or 0 if none
+	 */
+	private int pageAt(int y) {
+		int i = Arrays.binarySearch(this.tileY, y);
+		if (i < 0)
+			i = -i - 2;
+		if ((i < 0) || (i >= this.tileY.length))
+			return 0;
+		return i + 1;
+	}
+
+	@Override
+	public void paint(Graphics g) {
+		g.setColor(getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+		int numPages = this.tileY.length;
+		if (numPages == 0)
+			return;
+
+		Rectangle visible = getVisibleRect();
+		this.firstVisiblePage = Math.max(1, pageAt(visible.y));
+		this.lastVisiblePage = Math.max(1, pageAt(visible.y + visible.height));
+
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = visible;
+		int first = Math.max(1, pageAt(clip.y));
+		int last = Math.max(1, pageAt(clip.y + clip.height));
+		for (int page = first; page <= last; ++page) {
+			int i = page - 1;
+			Rectangle bounds = tileBounds(page);
+
+			BufferedImage thumbnail;
+			synchronized (this.cache) {
+				thumbnail = this.cache.get(page);
+			}
+			if (thumbnail != null) {
+				g.drawImage(thumbnail, bounds.x, bounds.y, this.tileWidth[i], this.tileHeight[i], null);
+			} else {
+				g.setColor(Color.WHITE);
+				g.fillRect(bounds.x, bounds.y, this.tileWidth[i], this.tileHeight[i]);
+				requestThumbnail(page);
+			}
+
+			g.setColor((page == this.currentPage) ? HIGHLIGHT_COLOR : Color.GRAY);
+			g.drawRect(bounds.x - 1, bounds.y - 1, this.tileWidth[i] + 1, this.tileHeight[i] + 1);
+			if (page == this.currentPage)
+				g.drawRect(bounds.x - 2, bounds.y - 2, this.tileWidth[i] + 3, this.tileHeight[i] + 3);
+
+			String label = Integer.toString(page);
+			int labelWidth = g.getFontMetrics().stringWidth(label);
+			g.setColor(Color.BLACK);
+			g.drawString(label, GAP + (THUMBNAIL_WIDTH - labelWidth) / 2,
+					bounds.y + this.tileHeight[i] + LABEL_HEIGHT - 2);
+		}
+	}
+
+	private void requestThumbnail(final int page) {
+		synchronized (this.cache) {
+			if (!this.pending.add(page))
+				return;
+		}
+		final int requestGeneration = this.generation;
+		final PDDocument document = this.pdf;
+		final PDFRenderer renderer = this.renderer;
+		final float scale = this.tileScale[page - 1];
+		final Rectangle bounds = tileBounds(page);
+		this.renderPool.execute(() -> {
+			boolean done = true;
+			try {
+				/* skip tiles that were scrolled out of view while queued; they are re-requested on repaint */
+				if ((requestGeneration != this.generation) ||
+						(page < this.firstVisiblePage) || (page > this.lastVisiblePage))
+					return;
+
+				BufferedImage thumbnail;
+				synchronized (document) {
+					thumbnail = renderer.renderImage(page - 1, scale, ImageType.RGB);
+				}
+
+				if (requestGeneration != this.generation)
+					return;
+				synchronized (this.cache) {
+					this.cache.put(page, thumbnail);
+				}
+				repaint(bounds);
+			} catch (IOException | RuntimeException e) {
+				/* leave the page marked as pending, so it is not retried on every repaint */
+				log.warn("Failed to render thumbnail for page {}", page, e);
+				done = false;
+			} finally {
+				if (done && (requestGeneration == this.generation)) {
+					synchronized (this.cache) {
+						this.pending.remove(page);
+					}
+				}
+			}
+		});
+	}
+}
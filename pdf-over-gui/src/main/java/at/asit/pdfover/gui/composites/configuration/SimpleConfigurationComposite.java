@@ -223,6 +223,8 @@ public class SimpleConfigurationComposite extends ConfigurationCompositeBase {
 			}
 		});
 
+		this.txtSignatureNote.addModifyListener(e -> scheduleSignatureBlockPreviewUpdate());
+
 		Composite compSignatureNoteButtonContainer = new Composite(this.grpSignatureNote, SWT.NONE);
 		compSignatureNoteButtonContainer.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false, 2, 1));
 		compSignatureNoteButtonContainer.setLayout(new FormLayout());
@@ -261,6 +263,7 @@ public class SimpleConfigurationComposite extends ConfigurationCompositeBase {
 		{
 			configurationContainer.logoOnlyTargetSize = sclLogoOnlyTargetSize.getSelection();
 			this.updateLogoOnlyTargetSizeCurrentValueLabel();
+			scheduleSignatureBlockPreviewUpdate();
 		});
 		sclLogoOnlyTargetSize.addFocusListener(new FocusAdapter() {
 			public void focusLost(FocusEvent e) { signatureBlockPreviewChanged(); };
@@ -429,6 +432,24 @@ public class SimpleConfigurationComposite extends ConfigurationCompositeBase {
 		this.doLayout();
 	}
 
+	/** how long to wait after the last edit before regenerating the preview (in ms) */
+	private static final int PREVIEW_UPDATE_DELAY = 400;
+	private final Runnable delayedPreviewUpdate = () -> {
+		if (this.isDisposed())
+			return;
+		this.configurationContainer.signatureNote = this.txtSignatureNote.getText();
+		signatureBlockPreviewChanged();
+	};
+
+	/**
+	 * Regenerate the preview once the user stops editing for a moment,
+	 * so the placeholder is usually cached by the time it is needed
+	 */
+	void scheduleSignatureBlockPreviewUpdate() {
+		// re-scheduling an already scheduled runnable resets its timer
+		getDisplay().timerExec(PREVIEW_UPDATE_DELAY, this.delayedPreviewUpdate);
+	}
+
 	void signatureBlockPreviewChanged() {
 		try {
 			PdfAs4SignatureParameter param = new PdfAs4SignatureParameter();
@@ -446,7 +467,8 @@ public class SimpleConfigurationComposite extends ConfigurationCompositeBase {
 			}
 
 			this.sigPreviewParam = param;
-			PdfAs4SignaturePlaceholder.For(param, (p) -> {
+			// previews of settings that are still being edited are not worth keeping on disk
+			PdfAs4SignaturePlaceholder.For(param, false, (p) -> {
 				if (this.isDisposed())
 					return;
 
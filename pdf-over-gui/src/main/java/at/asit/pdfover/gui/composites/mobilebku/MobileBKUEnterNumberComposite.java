@@ -21,7 +21,6 @@ import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
@@ -33,6 +32,7 @@ import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.gui.bku.mobile.MobileBKUValidator;
 import at.asit.pdfover.gui.composites.StateComposite;
 import at.asit.pdfover.gui.exceptions.InvalidPasswordException;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.gui.workflow.states.State;
@@ -173,11 +173,11 @@ public class MobileBKUEnterNumberComposite extends StateComposite {
 		this.lbl_number.setAlignment(SWT.RIGHT);
 		SWTUtils.anchor(lbl_number).bottom(50, -10).right(50, -10);
 
-		ImageData mobileIconData = new ImageData(this.getClass().getResourceAsStream(Constants.RES_IMG_MOBILE)).scaledTo(90, 90);
-		Image mobileIcon = new Image(getDisplay(), mobileIconData);
+		Image mobileIcon = SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_MOBILE, 90, 90);
+		int mobileIconWidth = mobileIcon.getBounds().width;
 
 		Label lbl_image = new Label(containerComposite, SWT.NATIVE);
-		SWTUtils.anchor(lbl_image).top(20, -1 * (mobileIconData.width / 2)).bottom(20, mobileIconData.width / 2).left(0, 10).width(mobileIconData.width);
+		SWTUtils.anchor(lbl_image).top(20, -1 * (mobileIconWidth / 2)).bottom(20, mobileIconWidth / 2).left(0, 10).width(mobileIconWidth);
 		lbl_image.setImage(mobileIcon);
 
 		this.txt_password = new Text(containerComposite, SWT.SINGLE | SWT.PASSWORD | SWT.BORDER | SWT.NATIVE);
@@ -23,7 +23,6 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
@@ -37,6 +36,7 @@ import com.beust.jcommander.internal.Nullable;
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.gui.composites.StateComposite;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.gui.workflow.states.State;
 import at.asit.webauthnclient.WebAuthN;
@@ -198,10 +198,11 @@ public class MobileBKUEnterTANComposite extends StateComposite {
 		SWTUtils.setLocalizedText(lblRefValLabel, "tanEnter.ReferenceValue");
 		this.lblRefValLabel.setAlignment(SWT.RIGHT);
 
-		ImageData mobileIcon = new ImageData(this.getClass().getResourceAsStream(Constants.RES_IMG_MOBILE)).scaledTo(90, 90);
+		Image mobileIcon = SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_MOBILE, 90, 90);
+		int mobileIconWidth = mobileIcon.getBounds().width;
 		Label lbl_image = new Label(containerComposite, SWT.NATIVE);
-		SWTUtils.anchor(lbl_image).top(50, -1 * (mobileIcon.width / 2)).bottom(50, mobileIcon.width / 2).left(0, 10).width(mobileIcon.width);
-		lbl_image.setImage(new Image(getDisplay(), mobileIcon));
+		SWTUtils.anchor(lbl_image).top(50, -1 * (mobileIconWidth / 2)).bottom(50, mobileIconWidth / 2).left(0, 10).width(mobileIconWidth);
+		lbl_image.setImage(mobileIcon);
 
 		this.lblRefVal = new Label(containerComposite, SWT.NATIVE);
 		SWTUtils.anchor(lblRefVal).left(50,10).right(100,-20).bottom(50,-10);
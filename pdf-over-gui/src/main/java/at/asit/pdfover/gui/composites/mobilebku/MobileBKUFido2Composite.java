@@ -3,8 +3,6 @@ package at.asit.pdfover.gui.composites.mobilebku;
 import java.net.URI;
 
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
@@ -12,8 +10,10 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Link;
 
+import at.asit.pdfover.commons.utils.TaskExecutor;
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.gui.composites.StateComposite;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.gui.workflow.states.State;
 import at.asit.webauthnclient.PublicKeyCredential;
@@ -56,7 +56,7 @@ public class MobileBKUFido2Composite extends StateComposite {
 
         SWTUtils.setLocalizedText(btn_authenticate, "common.working");
         btn_authenticate.setEnabled(false);
-        new Thread(() -> {
+        TaskExecutor.submit("fido2-authentication", () -> {
             try {
                 this.credential = WebAuthN.buildGetFromJSON(this.fido2OptionsString).get("https://service.a-trust.at");
             } catch (Throwable t) {
@@ -67,7 +67,7 @@ public class MobileBKUFido2Composite extends StateComposite {
                 this.getDisplay().syncExec(() -> { btn_authenticate.setEnabled(true); this.reloadResources(); });
                 this.getDisplay().wake();
             }
-        }).start();
+        });
     }    
 
     public MobileBKUFido2Composite(Composite parent, int style, State state) {
@@ -87,16 +87,14 @@ public class MobileBKUFido2Composite extends StateComposite {
         containerComposite.setLayout(new FormLayout());
         SWTUtils.anchor(containerComposite).top(50, -145).bottom(50, 120).left(50, -200).right(50, 200);
 
-        ImageData webauthnLogoImg = new ImageData(this.getClass().getResourceAsStream(Constants.RES_IMG_WEBAUTHN));
         Label webauthnLogo = new Label(containerComposite, SWT.NATIVE);
         SWTUtils.anchor(webauthnLogo).top(0,0).left(0, 10).height(50).width(187);
         webauthnLogo.setBackground(getBackground());
-        webauthnLogo.setImage(new Image(getDisplay(), webauthnLogoImg.scaledTo(187, 50)));
+        webauthnLogo.setImage(SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_WEBAUTHN, 187, 50));
 
-        ImageData fidoLogoImg = new ImageData(this.getClass().getResourceAsStream(Constants.RES_IMG_FIDO2));
         Label fidoLogo = new Label(containerComposite, SWT.NATIVE);
         SWTUtils.anchor(fidoLogo).left(0, 10).bottom(100, -10).height(50).width(81);
-        fidoLogo.setImage(new Image(getDisplay(), fidoLogoImg.scaledTo(81, 50)));
+        fidoLogo.setImage(SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_FIDO2, 81, 50));
 
         this.btn_authenticate = new Button(containerComposite, SWT.NATIVE);
         SWTUtils.anchor(btn_authenticate).top(50, -15).left(0, 90).right(100, -90);
@@ -37,6 +37,7 @@ import org.eclipse.swt.widgets.Link;
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.gui.composites.StateComposite;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.gui.workflow.states.State;
 import at.asit.webauthnclient.WebAuthN;
@@ -107,7 +108,10 @@ public class MobileBKUQRComposite extends StateComposite {
 		if (targetSize <= 0)
 			return;
 		
+		Image previous = this.lblQR.getImage();
 		this.lblQR.setImage(new Image(this.lblQR.getDisplay(), this.currentQRImage.scaledTo(targetSize, targetSize)));
+		if (previous != null)
+			previous.dispose();
 	}
 
 	/**
@@ -174,10 +178,11 @@ public class MobileBKUQRComposite extends StateComposite {
 		SWTUtils.anchor(lblRefValLabel).right(50, -10).top(30, -10);
 		this.lblRefValLabel.setAlignment(SWT.RIGHT);
 
-		ImageData mobileIcon = new ImageData(this.getClass().getResourceAsStream(Constants.RES_IMG_MOBILE)).scaledTo(90, 90);
+		Image mobileIcon = SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_MOBILE, 90, 90);
+		int mobileIconWidth = mobileIcon.getBounds().width;
 		Label lbl_image = new Label(containerComposite, SWT.NATIVE);
-		SWTUtils.anchor(lbl_image).top(50, -1 * (mobileIcon.width / 2)).bottom(50, mobileIcon.width / 2).left(0, 10).width(mobileIcon.width);
-		lbl_image.setImage(new Image(getDisplay(), mobileIcon));
+		SWTUtils.anchor(lbl_image).top(50, -1 * (mobileIconWidth / 2)).bottom(50, mobileIconWidth / 2).left(0, 10).width(mobileIconWidth);
+		lbl_image.setImage(mobileIcon);
 
 		this.lblRefVal = new Label(containerComposite, SWT.NATIVE);
 		SWTUtils.anchor(lblRefVal).left(50, 10).right(100, -20).top(30, -10);
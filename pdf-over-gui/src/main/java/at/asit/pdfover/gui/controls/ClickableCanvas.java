@@ -26,6 +26,8 @@ import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Event;
 
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
+
 /**
  *
  */
@@ -102,14 +104,12 @@ public class ClickableCanvas extends Canvas {
 			//log.debug("Width: " + width + " Height: " + height);
 
 			int w = 0;
-			Image tmp = null;
-			if(this.image.getImageData().width < width) {
-				tmp = new Image(getDisplay(), this.image.getImageData());
-				w = (width - this.image.getImageData().width) / 2;
-			} else if(this.image.getImageData().width > width) {
-				tmp = new Image(getDisplay(), this.image.getImageData().scaledTo(width, width));
-			} else {
-				tmp = new Image(getDisplay(), this.image.getImageData());
+			Image tmp = this.image;
+			int imageWidth = this.image.getBounds().width;
+			if (imageWidth < width) {
+				w = (width - imageWidth) / 2;
+			} else if (imageWidth > width) {
+				tmp = SWTImageRegistry.of(getDisplay()).getScaled(this.image, width, width);
 			}
 
 			e.gc.drawImage(tmp, w, w);
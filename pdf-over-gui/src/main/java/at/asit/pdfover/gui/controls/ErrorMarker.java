@@ -16,17 +16,15 @@
 package at.asit.pdfover.gui.controls;
 
 // Imports
-import java.io.InputStream;
-
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
 
 import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
 
 /**
  *
@@ -45,9 +43,7 @@ public class ErrorMarker extends Label {
 			String message) {
 		super(parent, style);
 
-		InputStream stream = this.getClass().getResourceAsStream(Constants.RES_IMG_ERROR);
-
-		this.errorImg = new Image(getDisplay(), new ImageData(stream));
+		this.errorImg = SWTImageRegistry.of(getDisplay()).get(Constants.RES_IMG_ERROR);
 
 		this.addPaintListener(new PaintListener() {
 			final Rectangle imgSize = ErrorMarker.this.errorImg.getBounds();
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.service;
+
+// Imports
+import java.io.File;
+import java.nio.file.Path;
+
+import at.asit.pdfover.commons.BKUs;
+import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.gui.cliarguments.ArgumentHandler;
+import at.asit.pdfover.gui.cliarguments.ConfigFileArgument;
+import at.asit.pdfover.gui.cliarguments.EmblemArgument;
+import at.asit.pdfover.gui.cliarguments.KeystoreAliasArgument;
+import at.asit.pdfover.gui.cliarguments.KeystoreFileArgument;
+import at.asit.pdfover.gui.cliarguments.KeystoreKeyPassArgument;
+import at.asit.pdfover.gui.cliarguments.KeystoreStorePassArgument;
+import at.asit.pdfover.gui.cliarguments.KeystoreTypeArgument;
+import at.asit.pdfover.gui.cliarguments.OutputFolderArgument;
+import at.asit.pdfover.gui.cliarguments.ServiceArgument;
+import at.asit.pdfover.gui.cliarguments.WatchFolderArgument;
+import at.asit.pdfover.gui.exceptions.InitializationException;
+import at.asit.pdfover.gui.workflow.StateMachine;
+import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
+import at.asit.pdfover.gui.workflow.states.PrepareConfigurationState;
+import at.asit.pdfover.signer.Emblem;
+import at.asit.pdfover.signer.SignResult;
+import at.asit.pdfover.signer.SignatureException;
+import at.asit.pdfover.signer.SignaturePosition;
+import at.asit.pdfover.signer.UserCancelledException;
+import at.asit.pdfover.signer.pdfas.PdfAs4Helper;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+import at.asit.pdfover.signer.pdfas.PdfAs4Signer;
+import at.asit.pdfover.signer.pdfas.PdfAs4SigningState;
+import at.gv.egiz.pdfas.lib.api.sign.IPlainSigner;
+import iaik.security.provider.IAIK;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Signs documents without the user interface, for the resident signing modes
+ *
+ * Holds what all signatures share: the keystore signer, which is unlocked once, the configuration
+ * providing the default signature parameters, and the signature logo, which is scaled once.
+ */
+@Slf4j
+public class HeadlessSigner {
+
+	private final IPlainSigner signer;
+	private final ConfigurationManager config;
+	private final Emblem emblem;
+
+	/**
+	 * Constructor
+	 * @param signer the unlocked keystore signer
+	 * @param config default signature parameters
+	 */
+	public HeadlessSigner(IPlainSigner signer, ConfigurationManager config) {
+		this.signer = signer;
+		this.config = config;
+		String emblemPath = config.getDefaultEmblemPath();
+		this.emblem = (emblemPath != null && !emblemPath.isEmpty()) ? new Emblem(emblemPath) : null;
+		if (this.emblem != null)
+			this.emblem.getCachedFileName(); // create the scaled logo now, not in several signatures at once
+	}
+
+	/**
+	 * @return the configuration
+	 */
+	public ConfigurationManager getConfiguration() {
+		return this.config;
+	}
+
+	/**
+	 * @return signature parameters as configured; the input document is still to be set
+	 */
+	public PdfAs4SignatureParameter createParameter() {
+		PdfAs4SignatureParameter parameter = new PdfAs4SignatureParameter();
+		parameter.signatureDevice = BKUs.KS;
+		parameter.emblem = this.emblem;
+		parameter.signatureLanguage = this.config.getSignatureLocale().getLanguage();
+		parameter.enablePDFACompat = this.config.getSignaturePdfACompat();
+		parameter.targetLogoSize = this.config.getLogoOnlyTargetSize();
+		parameter.signatureProfile = this.config.getSignatureProfile();
+		String note = this.config.getSignatureNote();
+		if (note != null && !note.isEmpty())
+			parameter.signatureNote = note;
+		// nobody is there to place the signature
+		parameter.signaturePosition = new SignaturePosition();
+		return parameter;
+	}
+
+	/**
+	 * @return how many documents are best signed at the same time
+	 */
+	public int getParallelism() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sign a document with the keystore (blocking)
+	 * @param parameter the signature parameters, including the input document
+	 * @return the signature result
+	 * @throws SignatureException
+	 * @throws UserCancelledException
+	 */
+	public SignResult sign(PdfAs4SignatureParameter parameter) throws SignatureException, UserCancelledException {
+		PdfAs4SigningState state = PdfAs4Signer.prepare(parameter, new CancellationToken());
+		state.setKeystoreSigner(this.signer);
+		return PdfAs4Signer.sign(state);
+	}
+
+	/**
+	 * @param args the command line arguments
+	 * @return whether a resident signing mode was requested instead of the user interface
+	 */
+	public static boolean isRequested(String[] args) {
+		for (String arg : args)
+			if (ServiceArgument.OPTION.equals(arg) || WatchFolderArgument.OPTION.equals(arg))
+				return true;
+		return false;
+	}
+
+	static int getIntProperty(String name, int defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			int i = Integer.parseInt(value.trim());
+			if (i >= 0)
+				return i;
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		log.warn("Ignoring invalid value \"{}\" of {}", value, name);
+		return defaultValue;
+	}
+
+	/**
+	 * Load the configuration and command line overrides like the user interface does and unlock the keystore
+	 * @param args the command line arguments
+	 * @param initializePdfAs whether to initialize PDF-AS now rather than with the first signature
+	 * @return the signer
+	 * @throws Exception if the signer cannot be initialized
+	 */
+	static HeadlessSigner initialize(String[] args, boolean initializePdfAs) throws Exception {
+		IAIK.addAsProvider();
+
+		// same configuration and command line overrides as the user interface
+		StateMachine stateMachine = new StateMachine(args);
+		ConfigurationManager config = stateMachine.configProvider;
+		ArgumentHandler configFileHandler = new ArgumentHandler(stateMachine);
+		configFileHandler.addCLIArgument(ConfigFileArgument.class);
+		configFileHandler.handleArguments(args);
+		PrepareConfigurationState.prepareConfigurationDirectory(new File(Constants.CONFIG_DIRECTORY));
+		config.loadFromDisk();
+
+		ArgumentHandler handler = new ArgumentHandler(stateMachine);
+		handler.addCLIArgument(ServiceArgument.class);
+		handler.addCLIArgument(WatchFolderArgument.class);
+		handler.addCLIArgument(OutputFolderArgument.class);
+		handler.addCLIArgument(KeystoreFileArgument.class);
+		handler.addCLIArgument(KeystoreTypeArgument.class);
+		handler.addCLIArgument(KeystoreStorePassArgument.class);
+		handler.addCLIArgument(KeystoreAliasArgument.class);
+		handler.addCLIArgument(KeystoreKeyPassArgument.class);
+		handler.addCLIArgument(EmblemArgument.class);
+		handler.handleArguments(args);
+
+		if (config.getKeyStoreStorePass() == null || config.getKeyStoreKeyPass() == null)
+			throw new InitializationException("The keystore and key passwords must be configured or given with -kspass and -kskeypass", null);
+		IPlainSigner keystoreSigner = PdfAs4SigningState.createKeystoreSigner(config.getKeyStoreFile(), config.getKeyStoreAlias(),
+				config.getKeyStoreStorePass(), config.getKeyStoreKeyPass(), config.getKeyStoreType());
+		if (initializePdfAs)
+			PdfAs4Helper.getPdfAs();
+		return new HeadlessSigner(keystoreSigner, config);
+	}
+
+	/**
+	 * Run the requested signing service and/or folder watcher until the process is terminated
+	 * @param args the command line arguments
+	 * @return the exit code
+	 */
+	public static int runHeadless(String[] args) {
+		try {
+			// with worker processes, the keystore is still unlocked here so a wrong password fails early
+			int processes = getIntProperty(ProcessPoolSigner.PROCESSES_PROPERTY, 0);
+			HeadlessSigner signer = initialize(args, processes == 0);
+			ConfigurationManager config = signer.getConfiguration();
+			ProcessPoolSigner pool = null;
+			if (processes > 0) {
+				pool = ProcessPoolSigner.create(config, processes, args);
+				pool.start();
+				signer = pool;
+			}
+
+			SigningService service = null;
+			if (config.getServicePort() > 0) {
+				int workers = Math.max(1, getIntProperty(SigningService.WORKERS_PROPERTY, signer.getParallelism()));
+				service = new SigningService(config.getServicePort(), workers,
+						getIntProperty(SigningService.QUEUE_PROPERTY, SigningService.DEFAULT_QUEUE_LENGTH),
+						getIntProperty(SigningService.MAX_DOCUMENT_PROPERTY, SigningService.DEFAULT_MAX_DOCUMENT_BYTES),
+						getIntProperty(SigningService.MAX_BUFFERED_PROPERTY, SigningService.DEFAULT_MAX_BUFFERED_BYTES), signer,
+						Path.of(Constants.CONFIG_DIRECTORY, SigningService.TOKEN_FILE));
+			}
+			WatchFolderService watcher = null;
+			if (config.getWatchFolder() != null)
+				watcher = WatchFolderService.create(signer);
+
+			final SigningService runningService = service;
+			final WatchFolderService runningWatcher = watcher;
+			final ProcessPoolSigner runningPool = pool;
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				if (runningService != null)
+					runningService.stop(5);
+				if (runningWatcher != null)
+					runningWatcher.stop(5);
+				if (runningPool != null)
+					runningPool.close();
+			}, "pdf-over-service-shutdown"));
+
+			if (watcher != null)
+				watcher.start();
+			if (service != null)
+				service.start();
+			if (service != null)
+				service.awaitStop();
+			if (watcher != null)
+				watcher.awaitStop();
+			return 0;
+		} catch (Exception e) {
+			log.error("Failed to run the signing service", e);
+			return 1;
+		}
+	}
+}
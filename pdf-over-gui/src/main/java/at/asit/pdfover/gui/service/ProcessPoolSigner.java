@@ -0,0 +1,387 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.service;
+
+// Imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
+import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.SignResult;
+import at.asit.pdfover.signer.SignatureException;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Signs documents in a pool of {@link SigningWorker} processes
+ *
+ * PDF-AS is not thread-safe, so within one process documents are signed one after the other. Every
+ * worker process has its own PDF-AS and keystore signer, so the pool signs as many documents at the
+ * same time as it has workers.
+ *
+ * The documents wait in one queue, and every worker takes the next document as soon as it is idle,
+ * so a worker busy with a large document never holds up the small ones behind it. Idle workers are
+ * pinged every {@value #HEALTH_CHECK_MILLIS} ms and must answer within {@value #PING_TIMEOUT_MILLIS} ms.
+ * A worker that does not answer in time, or does not sign within the timeout
+ * ({@value #TIMEOUT_PROPERTY}), is killed, and a worker that died is restarted; the document it
+ * was signing is handed to the next idle worker once, and fails if that worker dies as well. Once the
+ * last attempt to start each worker has failed, the waiting documents fail rather than wait for a
+ * worker that may never come.
+ */
+@Slf4j
+public class ProcessPoolSigner extends HeadlessSigner implements AutoCloseable {
+
+	/** System property: number of worker processes; 0 signs within the process */
+	public static final String PROCESSES_PROPERTY = "pdfover.workers.processes";
+	/** System property: seconds a worker may take to start or to sign a document */
+	public static final String TIMEOUT_PROPERTY = "pdfover.workers.timeout";
+
+	static final int DEFAULT_TIMEOUT_SECONDS = 300;
+	static final long HEALTH_CHECK_MILLIS = 10000;
+	/** how long an idle worker may take to answer a health check */
+	static final long PING_TIMEOUT_MILLIS = 5000;
+	/** how often a document is handed to a worker before it fails */
+	static final int MAX_ATTEMPTS = 2;
+	private static final long MAX_RESTART_DELAY_MILLIS = 30000;
+
+	private static class Job {
+		final PdfAs4SignatureParameter parameter;
+		final CompletableFuture<byte[]> result = new CompletableFuture<>();
+		int attempts = 0;
+
+		Job(PdfAs4SignatureParameter parameter) {
+			this.parameter = parameter;
+		}
+	}
+
+	private final List<String> command;
+	private final String[] args;
+	private final long timeoutMillis;
+	private final BlockingDeque<Job> jobs = new LinkedBlockingDeque<>();
+	private final List<Worker> workers = new ArrayList<>();
+	private final ScheduledExecutorService watchdog;
+	private final CountDownLatch started;
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructor
+	 * @param config default signature parameters
+	 * @param processes number of worker processes
+	 * @param command the command line starting a worker process
+	 * @param args the command line arguments handed to the workers
+	 * @param timeoutMillis how long a worker may take to start or to sign a document
+	 */
+	ProcessPoolSigner(ConfigurationManager config, int processes, List<String> command, String[] args, long timeoutMillis) {
+		super(null, config);
+		this.command = command;
+		this.args = args;
+		this.timeoutMillis = timeoutMillis;
+		this.started = new CountDownLatch(processes);
+		for (int i = 0; i < processes; ++i)
+			this.workers.add(new Worker(i + 1));
+		this.watchdog = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "pdf-over-worker-watchdog");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Create a pool of worker processes running on the same Java runtime and class path as this one
+	 * @param config default signature parameters
+	 * @param processes number of worker processes
+	 * @param args the command line arguments, which the workers handle like this process
+	 * @return the pool (not started)
+	 */
+	public static ProcessPoolSigner create(ConfigurationManager config, int processes, String[] args) {
+		List<String> command = new ArrayList<>();
+		command.add(ProcessHandle.current().info().command()
+				.orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+		for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			// a debugger or profiler can only attach to one of the processes
+			if (option.startsWith("-agentlib") || option.startsWith("-agentpath") || option.startsWith("-javaagent")
+					|| option.startsWith("-Xrunjdwp") || option.startsWith("-XX:StartFlightRecording"))
+				continue;
+			command.add(option);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SigningWorker.class.getName());
+		long timeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(1, getIntProperty(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_SECONDS)));
+		return new ProcessPoolSigner(config, processes, command, args, timeoutMillis);
+	}
+
+	/**
+	 * Start the worker processes and wait until they are ready
+	 * @throws IOException if not a single worker process could be started
+	 * @throws InterruptedException
+	 */
+	public void start() throws IOException, InterruptedException {
+		for (Worker worker : this.workers) {
+			Thread thread = new Thread(worker, "pdf-over-worker-" + worker.id);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		this.started.await();
+		long ready = this.workers.stream().filter((w) -> w.process != null).count();
+		if (ready == 0)
+			throw new IOException("No signing worker process could be started, see the log for details");
+		log.info("{} of {} signing worker processes ready", ready, this.workers.size());
+	}
+
+	@Override
+	public int getParallelism() {
+		return this.workers.size();
+	}
+
+	/**
+	 * Sign a document in the next idle worker process (blocking)
+	 */
+	@Override
+	public SignResult sign(PdfAs4SignatureParameter parameter) throws SignatureException {
+		if (this.closed)
+			throw new SignatureException("The signing worker processes are stopped");
+		SigningWorker.checkSignRequest(parameter);
+		Job job = new Job(parameter);
+		this.jobs.offerLast(job);
+		/* the last worker may have given up just before the document was queued */
+		if (!isAnyWorkerAvailable())
+			failQueuedJobs();
+		byte[] signed;
+		try {
+			signed = job.result.get();
+		} catch (InterruptedException e) {
+			this.jobs.remove(job);
+			Thread.currentThread().interrupt();
+			throw new SignatureException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SignatureException)
+				throw (SignatureException) e.getCause();
+			throw new SignatureException(e.getCause());
+		}
+		SignResult result = new SignResult();
+		result.setSignedDocument(new ByteArrayDocumentSource(signed));
+		return result;
+	}
+
+	private boolean isAnyWorkerAvailable() {
+		return this.workers.stream().anyMatch((w) -> !w.startFailed);
+	}
+
+	private void failQueuedJobs() {
+		Job job;
+		while ((job = this.jobs.poll()) != null)
+			job.result.completeExceptionally(new SignatureException("No signing worker process could be started, see the log for details"));
+	}
+
+	/**
+	 * Stop the worker processes; documents not yet signed fail
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		for (Worker worker : this.workers) {
+			worker.destroy();
+			log.info("Signing worker {}: {} documents signed, {} restarts", worker.id, worker.signedCount, worker.restartCount);
+		}
+		Job job;
+		while ((job = this.jobs.poll()) != null)
+			job.result.completeExceptionally(new SignatureException("The signing worker processes are stopped"));
+		this.watchdog.shutdownNow();
+	}
+
+	/**
+	 * Kill the process if it takes longer than the timeout
+	 * @throws IOException if the pool has been closed
+	 */
+	private ScheduledFuture<?> watch(Process process, long timeoutMillis) throws IOException {
+		try {
+			return this.watchdog.schedule(() -> {
+				if (process.isAlive()) {
+					log.warn("Signing worker process {} did not answer in time, killing it", process.pid());
+					process.destroyForcibly();
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			throw new IOException("The signing worker processes are stopped", e);
+		}
+	}
+
+	/**
+	 * Runs one worker process, and restarts it when it dies
+	 */
+	private class Worker implements Runnable {
+		final int id;
+		volatile Process process = null;
+		/** whether the process could not be started the last time it was tried */
+		volatile boolean startFailed = false;
+		private DataInputStream input;
+		private DataOutputStream output;
+		int signedCount = 0;
+		int restartCount = 0;
+
+		Worker(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public void run() {
+			long restartDelay = 0;
+			boolean first = true;
+			while (!ProcessPoolSigner.this.closed) {
+				try {
+					if (this.process == null) {
+						try {
+							startProcess();
+						} finally {
+							this.startFailed = (this.process == null);
+							if (first)
+								ProcessPoolSigner.this.started.countDown();
+							first = false;
+							if (this.startFailed && !isAnyWorkerAvailable())
+								failQueuedJobs();
+						}
+					}
+					Job job = ProcessPoolSigner.this.jobs.pollFirst(HEALTH_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+					if (job == null) {
+						if (!ProcessPoolSigner.this.closed)
+							ping();
+						continue;
+					}
+					execute(job);
+					restartDelay = 0;
+				} catch (InterruptedException e) {
+					break;
+				} catch (IOException e) {
+					if (ProcessPoolSigner.this.closed)
+						break;
+					log.warn("Signing worker {} failed, restarting it", this.id, e);
+					destroy();
+					++this.restartCount;
+					// back off in case the worker cannot start at all
+					restartDelay = Math.min(Math.max(1000, restartDelay * 2), MAX_RESTART_DELAY_MILLIS);
+					try {
+						Thread.sleep(restartDelay);
+					} catch (InterruptedException e1) {
+						break;
+					}
+				}
+			}
+			destroy();
+		}
+
+		private void startProcess() throws IOException {
+			Process process = new ProcessBuilder(ProcessPoolSigner.this.command).redirectError(Redirect.INHERIT).start();
+			this.input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+			ScheduledFuture<?> kill = null;
+			try {
+				kill = watch(process, ProcessPoolSigner.this.timeoutMillis);
+				SigningWorker.writeArguments(this.output, ProcessPoolSigner.this.args);
+				this.output.flush();
+				SigningWorker.readReady(this.input);
+			} catch (IOException e) {
+				process.destroyForcibly();
+				throw e;
+			} finally {
+				if (kill != null)
+					kill.cancel(false);
+			}
+			this.process = process;
+			log.debug("Signing worker {} started as process {}", this.id, process.pid());
+		}
+
+		private void ping() throws IOException {
+			ScheduledFuture<?> kill = watch(this.process, PING_TIMEOUT_MILLIS);
+			try {
+				this.output.writeByte(SigningWorker.PING);
+				this.output.flush();
+				SigningWorker.readResponse(this.input);
+			} catch (SignatureException e) {
+				throw new IOException(e);
+			} finally {
+				kill.cancel(false);
+			}
+		}
+
+		private void execute(Job job) throws IOException {
+			++job.attempts;
+			long start = System.nanoTime();
+			byte[] signed;
+			ScheduledFuture<?> kill = watch(this.process, ProcessPoolSigner.this.timeoutMillis);
+			try {
+				SigningWorker.writeSignRequest(this.output, job.parameter);
+				this.output.flush();
+				signed = SigningWorker.readResponse(this.input);
+			} catch (SignatureException e) {
+				job.result.completeExceptionally(e);
+				return;
+			} catch (IOException e) {
+				if (job.attempts < MAX_ATTEMPTS && !ProcessPoolSigner.this.closed)
+					ProcessPoolSigner.this.jobs.offerFirst(job);
+				else
+					job.result.completeExceptionally(new SignatureException("The signing worker process failed", e));
+				throw e;
+			} catch (RuntimeException e) {
+				// the request could not be written; the worker has to start over, the document would fail again
+				job.result.completeExceptionally(new SignatureException(e));
+				throw new IOException(e);
+			} finally {
+				kill.cancel(false);
+			}
+			++this.signedCount;
+			job.result.complete(signed);
+			log.debug("Signing worker {} signed a document in {} ms", this.id, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+
+		void destroy() {
+			Process process = this.process;
+			this.process = null;
+			if (process == null)
+				return;
+			try {
+				// closing the input makes the worker exit
+				this.output.close();
+				if (process.waitFor(1, TimeUnit.SECONDS))
+					return;
+			} catch (IOException e) {
+				// ignore
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			process.destroyForcibly();
+		}
+	}
+}
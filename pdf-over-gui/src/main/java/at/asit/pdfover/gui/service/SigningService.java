@@ -0,0 +1,470 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.service;
+
+// Imports
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import at.asit.pdfover.commons.Profile;
+import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.DocumentSource;
+import at.asit.pdfover.signer.SignResult;
+import at.asit.pdfover.signer.SignatureException;
+import at.asit.pdfover.signer.SignaturePosition;
+import at.asit.pdfover.signer.UserCancelledException;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local signing service
+ *
+ * Started with {@code -service <port>} instead of the user interface. Listens on the loopback
+ * interface only and signs documents with the configured keystore, which is unlocked once at startup:
+ *
+ * <pre>POST /sign?profile=SIGNATURBLOCK_SMALL&amp;position=auto&amp;note=...   (body: the PDF)</pre>
+ *
+ * All query parameters are optional and default to the configuration; {@code position} is either
+ * {@code auto} or {@code x,y[,page]} in PDF units. The response is the signed PDF.
+ *
+ * Since any local process (and any web page, through the browser) can reach the port, requests must
+ * carry {@code Authorization: Bearer <token>}. The token is created anew on every start and written
+ * to {@value #TOKEN_FILE} in the configuration directory, readable by the user only. Requests with a
+ * Host other than the loopback interface (DNS rebinding) or with an Origin (browsers) are refused.
+ *
+ * At most {@value #WORKERS_PROPERTY} documents are signed at the same time and at most
+ * {@value #QUEUE_PROPERTY} further requests wait for a worker; requests beyond that are answered
+ * with 429 right away, so clients can back off instead of piling up uploads in memory.
+ * Uploads are read into memory, so they also share a budget of {@value #MAX_BUFFERED_PROPERTY}
+ * bytes (default: a quarter of the heap): a request takes its Content-Length from it before
+ * reading the body and returns it once answered. A request that does not fit into what is left
+ * is answered with 429, one larger than the whole budget with 413. Uploads without Content-Length
+ * take the largest accepted document size until they have been read.
+ */
+@Slf4j
+public class SigningService {
+
+	/** system property: number of documents signed at the same time (default: number of processors) */
+	public static final String WORKERS_PROPERTY = "pdfover.service.workers";
+	/** system property: number of requests that may wait for a worker */
+	public static final String QUEUE_PROPERTY = "pdfover.service.queue";
+	/** system property: largest accepted document, in bytes */
+	public static final String MAX_DOCUMENT_PROPERTY = "pdfover.service.maxdocument";
+	/** system property: most bytes of uploads held in memory at the same time */
+	public static final String MAX_BUFFERED_PROPERTY = "pdfover.service.maxbuffered";
+
+	/** the signing endpoint */
+	public static final String SIGN_PATH = "/sign";
+	/** name of the file holding the access token, in the configuration directory */
+	public static final String TOKEN_FILE = "service.token";
+
+	static final int DEFAULT_QUEUE_LENGTH = 32;
+	static final int DEFAULT_MAX_DOCUMENT_BYTES = 256 * 1024 * 1024;
+	static final int DEFAULT_MAX_BUFFERED_BYTES = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4);
+	/** threads beyond the admitted requests, for turning away requests with 429 */
+	private static final int REJECTING_THREADS = 2;
+
+	private final HttpServer server;
+	private final ThreadPoolExecutor dispatcher;
+	/** requests being signed or waiting for a worker */
+	private final Semaphore admitted;
+	/** requests being signed */
+	private final Semaphore workers;
+	/** bytes of uploads that may still be read into memory */
+	private final Semaphore buffered;
+	private final int maxDocumentBytes;
+	private final int maxBufferedBytes;
+	private final HeadlessSigner signer;
+	private final Path tokenFile;
+	/** expected Authorization header */
+	private final byte[] authorization;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	/**
+	 * Constructor
+	 * @param port the port to listen on (loopback only)
+	 * @param workers number of documents signed at the same time
+	 * @param queueLength number of requests that may wait for a worker
+	 * @param maxDocumentBytes largest accepted document
+	 * @param maxBufferedBytes most bytes of uploads held in memory at the same time
+	 * @param signer signs with the keystore and provides the default parameters
+	 * @param tokenFile where to write the access token on {@link #start()}
+	 * @throws IOException if the port cannot be bound
+	 */
+	public SigningService(int port, int workers, int queueLength, int maxDocumentBytes, int maxBufferedBytes,
+			HeadlessSigner signer, Path tokenFile) throws IOException {
+		this.admitted = new Semaphore(workers + queueLength);
+		this.workers = new Semaphore(workers);
+		this.buffered = new Semaphore(maxBufferedBytes);
+		this.maxDocumentBytes = maxDocumentBytes;
+		this.maxBufferedBytes = maxBufferedBytes;
+		this.signer = signer;
+		this.tokenFile = tokenFile;
+		byte[] token = new byte[32];
+		new SecureRandom().nextBytes(token);
+		this.authorization = ("Bearer " + Base64.getUrlEncoder().withoutPadding().encodeToString(token)).getBytes(StandardCharsets.US_ASCII);
+
+		AtomicInteger threadCount = new AtomicInteger();
+		int threads = workers + queueLength + REJECTING_THREADS;
+		this.dispatcher = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+			Thread t = new Thread(r, "pdf-over-service-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.dispatcher.allowCoreThreadTimeOut(true);
+
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.server.createContext(SIGN_PATH, this::handle);
+		this.server.setExecutor(this.dispatcher);
+	}
+
+	/**
+	 * Write the access token and start accepting requests
+	 * @throws IOException if the token file cannot be written
+	 */
+	public void start() throws IOException {
+		writeTokenFile();
+		this.server.start();
+		log.info("Signing service listening on http://{}:{}{}, access token in {}",
+				this.server.getAddress().getHostString(), this.server.getAddress().getPort(), SIGN_PATH, this.tokenFile);
+	}
+
+	/**
+	 * Stop accepting requests and wait a little for running ones
+	 * @param delaySeconds how long to wait for running requests
+	 */
+	public void stop(int delaySeconds) {
+		this.server.stop(delaySeconds);
+		this.dispatcher.shutdown();
+		try {
+			Files.deleteIfExists(this.tokenFile);
+		} catch (IOException e) {
+			log.warn("Failed to delete {}", this.tokenFile, e);
+		}
+		this.stopped.countDown();
+		log.info("Signing service stopped");
+	}
+
+	/**
+	 * Write the token next to its final place and move it there, so no one sees a partial or
+	 * world-readable file
+	 */
+	private void writeTokenFile() throws IOException {
+		Path dir = this.tokenFile.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path temp;
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+			temp = Files.createTempFile(dir, TOKEN_FILE, ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		else
+			temp = Files.createTempFile(dir, TOKEN_FILE, ".tmp"); // only the user may access their profile
+		try {
+			Files.write(temp, Arrays.copyOfRange(this.authorization, "Bearer ".length(), this.authorization.length));
+			Files.move(temp, this.tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Wait until {@link #stop(int)} has been called
+	 * @throws InterruptedException
+	 */
+	public void awaitStop() throws InterruptedException {
+		this.stopped.await();
+	}
+
+	/**
+	 * @return the port the service listens on
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host"))) {
+				sendError(exchange, 403, "Only requests to the loopback interface are accepted");
+				return;
+			}
+			if (exchange.getRequestHeaders().containsKey("Origin")) {
+				sendError(exchange, 403, "Requests from web pages are not accepted");
+				return;
+			}
+			String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+			if ((authorization == null) || !MessageDigest.isEqual(this.authorization, authorization.getBytes(StandardCharsets.US_ASCII))) {
+				exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+				sendError(exchange, 401, "Missing or invalid access token, see " + this.tokenFile);
+				return;
+			}
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				sendError(exchange, 405, "Only POST is supported");
+				return;
+			}
+			if (!this.admitted.tryAcquire()) {
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				sendError(exchange, 429, "Too many documents queued");
+				return;
+			}
+			try (Reservation reservation = new Reservation()) {
+				handleSignRequest(exchange, reservation);
+			} finally {
+				this.admitted.release();
+			}
+		} catch (IOException e) {
+			log.debug("Signing request failed", e);
+		} catch (RuntimeException e) {
+			log.error("Signing request failed", e);
+		}
+	}
+
+	private void handleSignRequest(HttpExchange exchange, Reservation reservation) throws IOException {
+		long started = System.nanoTime();
+		PdfAs4SignatureParameter parameter;
+		try {
+			parameter = createParameter(parseQuery(exchange.getRequestURI().getRawQuery()));
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 400, e.getMessage());
+			return;
+		}
+
+		byte[] document = readDocument(exchange, reservation);
+		if (document == null)
+			return;
+		parameter.inputDocument = new ByteArrayDocumentSource(document);
+
+		SignResult result;
+		try {
+			this.workers.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sendError(exchange, 503, "Shutting down");
+			return;
+		}
+		try {
+			result = this.signer.sign(parameter);
+		} catch (SignatureException | UserCancelledException | RuntimeException e) {
+			log.error("Failed to sign document", e);
+			sendError(exchange, 500, "Signing failed: " + e.getMessage());
+			return;
+		} finally {
+			this.workers.release();
+		}
+
+		DocumentSource signed = result.getSignedDocument();
+		exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+		exchange.sendResponseHeaders(200, signed.getLength());
+		/* stream the signed document from its buffer */
+		try (OutputStream body = exchange.getResponseBody();
+				WritableByteChannel out = Channels.newChannel(body)) {
+			ByteBuffer buffer = signed.getByteBuffer();
+			while (buffer.hasRemaining())
+				out.write(buffer);
+		}
+		log.debug("Signed {} bytes in {} ms", document.length, (System.nanoTime() - started) / 1000000);
+	}
+
+	/**
+	 * Bytes of the upload budget taken by one request
+	 */
+	private final class Reservation implements AutoCloseable {
+		private int bytes = 0;
+
+		/**
+		 * @return whether the bytes were available
+		 */
+		boolean take(int n) {
+			if (!SigningService.this.buffered.tryAcquire(n))
+				return false;
+			this.bytes += n;
+			return true;
+		}
+
+		/**
+		 * Return what is taken beyond the given size
+		 */
+		void shrink(int n) {
+			if (n < this.bytes) {
+				SigningService.this.buffered.release(this.bytes - n);
+				this.bytes = n;
+			}
+		}
+
+		@Override
+		public void close() {
+			shrink(0);
+		}
+	}
+
+	/**
+	 * @return the request body, or null if an error has been sent
+	 */
+	private byte[] readDocument(HttpExchange exchange, Reservation reservation) throws IOException {
+		String lengthHeader = exchange.getRequestHeaders().getFirst("Content-Length");
+		long length = -1;
+		if (lengthHeader != null) {
+			try {
+				length = Long.parseLong(lengthHeader.trim());
+			} catch (NumberFormatException e) {
+				sendError(exchange, 400, "Invalid Content-Length");
+				return null;
+			}
+		}
+		if (length > this.maxDocumentBytes) {
+			sendError(exchange, 413, "Document larger than " + this.maxDocumentBytes + " bytes");
+			return null;
+		}
+		int reserved = (length >= 0) ? (int) length : this.maxDocumentBytes;
+		if (reserved > this.maxBufferedBytes) {
+			sendError(exchange, 413, "Document larger than " + this.maxBufferedBytes + " bytes");
+			return null;
+		}
+		if (!reservation.take(reserved)) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			sendError(exchange, 429, "Too many bytes being uploaded");
+			return null;
+		}
+
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] document;
+			if (length >= 0) {
+				document = new byte[(int) length];
+				if (in.readNBytes(document, 0, document.length) < document.length) {
+					sendError(exchange, 400, "Document truncated");
+					return null;
+				}
+			} else {
+				/* chunked upload */
+				document = in.readNBytes(this.maxDocumentBytes + 1);
+				if (document.length > this.maxDocumentBytes) {
+					sendError(exchange, 413, "Document larger than " + this.maxDocumentBytes + " bytes");
+					return null;
+				}
+				reservation.shrink(document.length);
+			}
+			if (document.length == 0) {
+				sendError(exchange, 400, "No document");
+				return null;
+			}
+			return document;
+		}
+	}
+
+	private PdfAs4SignatureParameter createParameter(Map<String, String> query) {
+		PdfAs4SignatureParameter parameter = this.signer.createParameter();
+
+		String profile = query.get("profile");
+		if (profile != null)
+			parameter.signatureProfile = Profile.valueOf(profile.toUpperCase(Locale.ROOT));
+
+		String note = query.get("note");
+		if (note != null)
+			parameter.signatureNote = note.isEmpty() ? null : note;
+
+		parameter.signaturePosition = parsePosition(query.get("position"));
+		return parameter;
+	}
+
+	/**
+	 * @param host the Host header
+	 * @return whether it names the loopback interface, with any port
+	 */
+	static boolean isLoopbackHost(String host) {
+		if (host == null)
+			return false;
+		host = host.trim().toLowerCase(Locale.ROOT);
+		if (host.startsWith("[")) {
+			int end = host.indexOf(']');
+			if (end < 0)
+				return false;
+			String port = host.substring(end + 1);
+			return host.substring(1, end).equals("::1") && (port.isEmpty() || port.matches(":\\d+"));
+		}
+		int colon = host.indexOf(':');
+		String port = (colon < 0) ? "" : host.substring(colon);
+		host = (colon < 0) ? host : host.substring(0, colon);
+		return (host.equals("localhost") || host.matches("127(\\.\\d{1,3}){3}")) && (port.isEmpty() || port.matches(":\\d+"));
+	}
+
+	/**
+	 * @param position "auto" or "x,y[,page]"; null for automatic positioning
+	 */
+	static SignaturePosition parsePosition(String position) {
+		if (position == null || position.equalsIgnoreCase("auto"))
+			return new SignaturePosition();
+		String[] parts = position.split(",");
+		try {
+			if (parts.length == 2)
+				return new SignaturePosition(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+			if (parts.length == 3)
+				return new SignaturePosition(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Integer.parseInt(parts[2]));
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IllegalArgumentException("Invalid position \"" + position + "\", expected auto or x,y[,page]");
+	}
+
+	static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<>();
+		if (rawQuery == null || rawQuery.isEmpty())
+			return query;
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = URLDecoder.decode((eq < 0) ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+			String value = (eq < 0) ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+			query.put(key, value);
+		}
+		return query;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
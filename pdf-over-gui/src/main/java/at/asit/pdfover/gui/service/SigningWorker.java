@@ -0,0 +1,271 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.service;
+
+// Imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.slf4j.LoggerFactory;
+
+import at.asit.pdfover.commons.Profile;
+import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.DocumentSource;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
+import at.asit.pdfover.signer.SignatureException;
+import at.asit.pdfover.signer.SignaturePosition;
+import at.asit.pdfover.signer.UserCancelledException;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A signing worker process, started by {@link ProcessPoolSigner}
+ *
+ * The worker talks to the coordinator over its standard input and output; its log goes to standard
+ * error. It first reads the coordinator's command line arguments, loads the configuration and
+ * unlocks the keystore like the coordinator, answers {@link #READY} and then serves requests
+ * until its input is closed:
+ *
+ * <pre>
+ * request:  {@link #SIGN} profile position note ({@link #DOCUMENT_FILE} path | {@link #DOCUMENT_BYTES} length bytes)
+ *           {@link #PING}
+ * response: {@link #OK} length bytes | {@link #FAILED} message
+ * </pre>
+ *
+ * Every worker has its own PdfAs instance, so workers sign in parallel even though PDF-AS does not.
+ */
+@Slf4j
+public class SigningWorker {
+
+	/** worker: initialized and waiting for requests */
+	static final byte READY = 'R';
+	/** request: sign a document */
+	static final byte SIGN = 'S';
+	/** request: health check */
+	static final byte PING = 'P';
+	/** document: the path of a file the worker reads itself */
+	static final byte DOCUMENT_FILE = 'F';
+	/** document: the document follows */
+	static final byte DOCUMENT_BYTES = 'B';
+	/** response: the signed document follows (empty for {@link #PING}) */
+	static final byte OK = 'O';
+	/** response: signing failed, the message follows */
+	static final byte FAILED = 'X';
+
+	/** position: automatic positioning */
+	private static final String AUTO = "auto";
+	/** most bytes {@link DataOutputStream#writeUTF} can write */
+	static final int MAX_UTF_BYTES = 0xFFFF;
+
+	/**
+	 * @param args ignored; the arguments are read from standard input
+	 */
+	public static void main(String[] args) {
+		// standard output carries the protocol, so everything else printed goes to standard error
+		PrintStream protocol = System.out;
+		System.setOut(System.err);
+		// the coordinator owns the log file
+		org.slf4j.Logger root = LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+		if (root instanceof ch.qos.logback.classic.Logger)
+			((ch.qos.logback.classic.Logger) root).detachAppender("LOGFILE");
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(protocol));
+			HeadlessSigner signer = HeadlessSigner.initialize(readArguments(in), true);
+			serve(signer, in, out);
+			System.exit(0);
+		} catch (Exception e) {
+			log.error("Signing worker failed", e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Answer {@link #READY} and serve requests until the input is closed
+	 * @param signer signs the documents
+	 * @param input requests
+	 * @param output responses
+	 * @throws IOException if the coordinator cannot be talked to
+	 */
+	static void serve(HeadlessSigner signer, DataInputStream input, DataOutputStream output) throws IOException {
+		output.writeByte(READY);
+		output.flush();
+		while (true) {
+			int request = input.read();
+			if (request < 0)
+				return;
+			if (request == PING) {
+				output.writeByte(OK);
+				output.writeInt(0);
+				output.flush();
+				continue;
+			}
+			if (request != SIGN)
+				throw new IOException("Unknown request " + request);
+
+			PdfAs4SignatureParameter parameter = signer.createParameter();
+			readParameter(input, parameter);
+			DocumentSource signed;
+			try {
+				signed = signer.sign(parameter).getSignedDocument();
+			} catch (SignatureException | UserCancelledException | RuntimeException e) {
+				log.error("Failed to sign document", e);
+				output.writeByte(FAILED);
+				output.writeUTF(truncateUTF(String.valueOf(e.getMessage())));
+				output.flush();
+				continue;
+			}
+			output.writeByte(OK);
+			output.writeInt(signed.getLength());
+			/* write straight from the document's buffer */
+			WritableByteChannel channel = Channels.newChannel(output);
+			ByteBuffer buffer = signed.getByteBuffer();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			output.flush();
+		}
+	}
+
+	/**
+	 * Send the coordinator's command line arguments to a new worker
+	 */
+	static void writeArguments(DataOutputStream output, String[] args) throws IOException {
+		output.writeInt(args.length);
+		for (String arg : args)
+			output.writeUTF(arg);
+	}
+
+	static String[] readArguments(DataInputStream input) throws IOException {
+		String[] args = new String[input.readInt()];
+		for (int i = 0; i < args.length; ++i)
+			args[i] = input.readUTF();
+		return args;
+	}
+
+	/**
+	 * @return the number of bytes {@link DataOutputStream#writeUTF} writes for the string, without the length
+	 */
+	static int getUTFLength(String s) {
+		int length = 0;
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF) ? 2 : 3;
+		}
+		return length;
+	}
+
+	private static String truncateUTF(String s) {
+		if (getUTFLength(s) <= MAX_UTF_BYTES)
+			return s;
+		// 3 bytes per character at most
+		return s.substring(0, MAX_UTF_BYTES / 3);
+	}
+
+	/**
+	 * Check that a signature request can be sent, before any of it is written
+	 * @throws SignatureException if a string is too long for {@link DataOutputStream#writeUTF}
+	 */
+	static void checkSignRequest(PdfAs4SignatureParameter parameter) throws SignatureException {
+		if ((parameter.signatureNote != null) && (getUTFLength(parameter.signatureNote) > MAX_UTF_BYTES))
+			throw new SignatureException("The signature note is too long");
+		if ((parameter.inputDocument instanceof PDFFileDocumentSource)
+				&& (getUTFLength(((PDFFileDocumentSource) parameter.inputDocument).getFile().getAbsolutePath()) > MAX_UTF_BYTES))
+			throw new SignatureException("The document path is too long");
+	}
+
+	/**
+	 * Send a signature request; only what may differ from the configured defaults is sent
+	 */
+	static void writeSignRequest(DataOutputStream output, PdfAs4SignatureParameter parameter) throws IOException {
+		output.writeByte(SIGN);
+		output.writeUTF(parameter.signatureProfile.name());
+		SignaturePosition position = parameter.signaturePosition;
+		output.writeUTF((position == null || position.useAutoPositioning()) ? AUTO :
+				(position.getX() + "," + position.getY() + "," + position.getPage()));
+		output.writeUTF((parameter.signatureNote != null) ? parameter.signatureNote : "");
+
+		DocumentSource document = parameter.inputDocument;
+		if (document instanceof PDFFileDocumentSource) {
+			output.writeByte(DOCUMENT_FILE);
+			output.writeUTF(((PDFFileDocumentSource) document).getFile().getAbsolutePath());
+			return;
+		}
+		output.writeByte(DOCUMENT_BYTES);
+		output.writeInt(document.getLength());
+		WritableByteChannel channel = Channels.newChannel(output);
+		ByteBuffer buffer = document.getByteBuffer();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static void readParameter(DataInputStream input, PdfAs4SignatureParameter parameter) throws IOException {
+		parameter.signatureProfile = Profile.valueOf(input.readUTF());
+		parameter.signaturePosition = SigningService.parsePosition(input.readUTF());
+		String note = input.readUTF();
+		parameter.signatureNote = note.isEmpty() ? null : note;
+
+		int type = input.readByte();
+		if (type == DOCUMENT_FILE) {
+			parameter.inputDocument = new PDFFileDocumentSource(new File(input.readUTF()));
+		} else if (type == DOCUMENT_BYTES) {
+			byte[] document = new byte[input.readInt()];
+			input.readFully(document);
+			parameter.inputDocument = new ByteArrayDocumentSource(document);
+		} else {
+			throw new IOException("Unknown document type " + type);
+		}
+	}
+
+	/**
+	 * Read a response
+	 * @return the signed document (empty for {@link #PING})
+	 * @throws SignatureException if the worker failed to sign
+	 * @throws IOException if the worker cannot be talked to (e.g. it died)
+	 */
+	static byte[] readResponse(DataInputStream input) throws SignatureException, IOException {
+		int response = input.read();
+		if (response < 0)
+			throw new EOFException("Worker exited");
+		if (response == FAILED)
+			throw new SignatureException(input.readUTF());
+		if (response != OK)
+			throw new IOException("Unknown response " + response);
+		byte[] signed = new byte[input.readInt()];
+		input.readFully(signed);
+		return signed;
+	}
+
+	/**
+	 * Wait for {@link #READY}
+	 * @throws IOException if the worker did not start
+	 */
+	static void readReady(InputStream input) throws IOException {
+		int ready = input.read();
+		if (ready != READY)
+			throw new EOFException("Worker did not start");
+	}
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.service;
+
+// Imports
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FilenameUtils;
+
+import at.asit.pdfover.gui.utils.OutputWriter;
+import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
+import at.asit.pdfover.signer.DocumentSource;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
+import at.asit.pdfover.signer.SignResult;
+import at.asit.pdfover.signer.SignatureException;
+import at.asit.pdfover.signer.UserCancelledException;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Signs the documents put into a folder
+ *
+ * Started with {@code -watch <folder>} instead of the user interface. Every PDF document that
+ * appears in the folder is signed with the configured keystore, profile and automatic positioning;
+ * the signed document is written to the default output folder (or the {@value #SIGNED_FOLDER}
+ * subfolder) with the configured postfix and the original is removed. Documents that cannot be
+ * signed are moved to the {@value #ERROR_FOLDER} subfolder, together with a file stating the error.
+ * Existing files are never replaced: if the name is taken, a number is appended, as in
+ * {@code document_signed-2.pdf}. This also holds for files other processes create in the
+ * meantime; the next number is tried then.
+ *
+ * A document is only picked up once its size and modification time have not changed for
+ * {@value #SETTLE_PROPERTY} milliseconds, so documents that are still being copied are left alone.
+ * At most {@value #WORKERS_PROPERTY} documents are signed at the same time; settled documents wait
+ * in the folder while all workers are busy.
+ */
+@Slf4j
+public class WatchFolderService {
+
+	/** system property: number of documents signed at the same time (default: number of processors) */
+	public static final String WORKERS_PROPERTY = "pdfover.watch.workers";
+	/** system property: how long a document must be unchanged before it is signed, in milliseconds */
+	public static final String SETTLE_PROPERTY = "pdfover.watch.settle";
+
+	/** subfolder of the watched folder for documents that could not be signed */
+	public static final String ERROR_FOLDER = "failed";
+	/** subfolder of the watched folder for signed documents, if there is no default output folder */
+	public static final String SIGNED_FOLDER = "signed";
+
+	/** appended to the name of a failed document for the file stating the error */
+	static final String ERROR_SUFFIX = ".error.txt";
+
+	static final int DEFAULT_SETTLE_MILLIS = 2000;
+	/** how many names are tried for a document before giving up */
+	private static final int MAX_NAME_ATTEMPTS = 10;
+	/** how often the throughput is logged */
+	private static final long STATS_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * A document seen in the folder that has not settled yet
+	 */
+	private static final class Candidate {
+		final long detected = System.nanoTime();
+		long size = -1;
+		long modified = -1;
+		long lastChange = this.detected;
+	}
+
+	private final Path inputFolder;
+	private final Path outputFolder;
+	private final Path errorFolder;
+	private final String postfix;
+	private final long settleNanos;
+	private final HeadlessSigner signer;
+	/* the original is removed once the signed document is written, so make sure it is on disk */
+	private final OutputWriter writer = new OutputWriter(true, null, null);
+
+	private final ThreadPoolExecutor workers;
+	/** documents being signed */
+	private final Semaphore busy;
+	/** documents handed to a worker and not done yet */
+	private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+	/** documents waiting to settle; only used by the watcher thread */
+	private final Map<Path, Candidate> pending = new LinkedHashMap<>();
+	/** signed documents that could not be removed -> their modification time, so they are not signed again */
+	private final Map<Path, Long> leftBehind = new ConcurrentHashMap<>();
+	/** names chosen for documents that are being written; guarded by itself */
+	private final Set<Path> reservedNames = new HashSet<>();
+
+	private final Thread watcher;
+	private WatchService watchService;
+	private volatile boolean running = false;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private final AtomicLong signedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong signedBytes = new AtomicLong();
+	private final AtomicLong latencyNanos = new AtomicLong();
+	private final long startedNanos = System.nanoTime();
+	private long statsNanos = this.startedNanos;
+	private long statsSigned = 0;
+
+	/**
+	 * Constructor
+	 * @param inputFolder the folder to watch
+	 * @param outputFolder where signed documents are written; must differ from the watched folder
+	 * @param errorFolder where documents that cannot be signed are moved to
+	 * @param workers number of documents signed at the same time
+	 * @param settleMillis how long a document must be unchanged before it is signed
+	 * @param signer signs with the keystore and provides the signature parameters
+	 * @throws IOException if the output or error folder cannot be created
+	 */
+	public WatchFolderService(Path inputFolder, Path outputFolder, Path errorFolder, int workers, long settleMillis,
+			HeadlessSigner signer) throws IOException {
+		this.inputFolder = inputFolder.toAbsolutePath().normalize();
+		this.outputFolder = outputFolder.toAbsolutePath().normalize();
+		this.errorFolder = errorFolder.toAbsolutePath().normalize();
+		if (this.outputFolder.equals(this.inputFolder))
+			throw new IllegalArgumentException("The output folder must not be the watched folder " + this.inputFolder);
+		Files.createDirectories(this.outputFolder);
+		Files.createDirectories(this.errorFolder);
+		this.postfix = signer.getConfiguration().getSaveFilePostFix();
+		this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+		this.signer = signer;
+		this.busy = new Semaphore(workers);
+
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+			Thread t = new Thread(r, "pdf-over-watch-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.workers.allowCoreThreadTimeOut(true);
+
+		this.watcher = new Thread(this::watch, "pdf-over-watch");
+		this.watcher.setDaemon(true);
+	}
+
+	/**
+	 * Create the folder watcher for the configured folders
+	 * @param signer signs with the keystore and provides the configuration
+	 * @return the folder watcher (not started)
+	 * @throws IOException if the output or error folder cannot be created
+	 */
+	public static WatchFolderService create(HeadlessSigner signer) throws IOException {
+		ConfigurationManager config = signer.getConfiguration();
+		Path input = Path.of(config.getWatchFolder());
+		String output = config.getDefaultOutputFolder();
+		return new WatchFolderService(input,
+				(output != null && !output.isEmpty()) ? Path.of(output) : input.resolve(SIGNED_FOLDER),
+				input.resolve(ERROR_FOLDER),
+				Math.max(1, HeadlessSigner.getIntProperty(WORKERS_PROPERTY, signer.getParallelism())),
+				HeadlessSigner.getIntProperty(SETTLE_PROPERTY, DEFAULT_SETTLE_MILLIS), signer);
+	}
+
+	/**
+	 * Start watching; documents already in the folder are signed as well
+	 * @throws IOException if the folder cannot be watched
+	 */
+	public void start() throws IOException {
+		this.watchService = this.inputFolder.getFileSystem().newWatchService();
+		this.inputFolder.register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY, OVERFLOW);
+		this.running = true;
+		this.watcher.start();
+		log.info("Watching {}, signed documents are written to {}", this.inputFolder, this.outputFolder);
+	}
+
+	/**
+	 * Stop watching and wait a little for documents being signed
+	 * @param delaySeconds how long to wait for documents being signed
+	 */
+	public void stop(int delaySeconds) {
+		if (!this.running)
+			return;
+		this.running = false;
+		try {
+			this.watchService.close();
+		} catch (IOException e) {
+			log.debug("Failed to close watch service", e);
+		}
+		this.workers.shutdown();
+		try {
+			if (!this.workers.awaitTermination(delaySeconds, TimeUnit.SECONDS))
+				log.warn("Stopped while documents were still being signed");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logTotals();
+		this.stopped.countDown();
+	}
+
+	/**
+	 * Wait until {@link #stop(int)} has been called
+	 * @throws InterruptedException
+	 */
+	public void awaitStop() throws InterruptedException {
+		this.stopped.await();
+	}
+
+	/**
+	 * @return number of documents signed so far
+	 */
+	public long getSignedCount() {
+		return this.signedCount.get();
+	}
+
+	/**
+	 * @return number of documents that could not be signed so far
+	 */
+	public long getFailedCount() {
+		return this.failedCount.get();
+	}
+
+	private void watch() {
+		long pollMillis = Math.max(50, TimeUnit.NANOSECONDS.toMillis(this.settleNanos) / 4);
+		scan();
+		try {
+			while (this.running) {
+				WatchKey key = this.watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == OVERFLOW)
+							scan();
+						else
+							consider(this.inputFolder.resolve((Path) event.context()));
+					}
+					if (!key.reset()) {
+						log.error("{} can no longer be watched", this.inputFolder);
+						break;
+					}
+				}
+				dispatchSettled();
+				logThroughput();
+			}
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Consider all documents currently in the folder (at startup, and if events were lost)
+	 */
+	private void scan() {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.inputFolder)) {
+			for (Path file : files)
+				consider(file);
+		} catch (IOException e) {
+			log.error("Failed to list {}", this.inputFolder, e);
+		}
+	}
+
+	private void consider(Path file) {
+		String name = file.getFileName().toString();
+		// skip hidden and temporary files, e.g. the ones OutputWriter writes
+		if (name.startsWith(".") || !name.toLowerCase(Locale.ROOT).endsWith(".pdf"))
+			return;
+		if (this.inFlight.contains(file))
+			return;
+		Long signedVersion = this.leftBehind.get(file);
+		if (signedVersion != null) {
+			try {
+				if (Files.getLastModifiedTime(file).toMillis() == signedVersion)
+					return;
+			} catch (IOException e) {
+				// gone or unreadable; forget it either way
+			}
+			this.leftBehind.remove(file);
+		}
+		this.pending.computeIfAbsent(file, (f) -> new Candidate());
+	}
+
+	/**
+	 * Hand documents that have not changed for the settle time to the workers, while workers are free
+	 */
+	private void dispatchSettled() {
+		long now = System.nanoTime();
+		Iterator<Map.Entry<Path, Candidate>> it = this.pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Path, Candidate> entry = it.next();
+			Path file = entry.getKey();
+			Candidate candidate = entry.getValue();
+
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			} catch (NoSuchFileException e) {
+				it.remove();
+				continue;
+			} catch (IOException e) {
+				log.debug("Cannot read attributes of {}", file, e);
+				continue;
+			}
+			if (!attributes.isRegularFile()) {
+				it.remove();
+				continue;
+			}
+
+			long modified = attributes.lastModifiedTime().toMillis();
+			if (attributes.size() != candidate.size || modified != candidate.modified) {
+				candidate.size = attributes.size();
+				candidate.modified = modified;
+				candidate.lastChange = now;
+				continue;
+			}
+			if (candidate.size == 0 || (now - candidate.lastChange) < this.settleNanos)
+				continue;
+			if (!this.busy.tryAcquire())
+				return; // the rest waits for a free worker
+
+			it.remove();
+			this.inFlight.add(file);
+			this.workers.execute(() -> process(file, candidate.detected));
+		}
+	}
+
+	private void process(Path file, long detected) {
+		long started = System.nanoTime();
+		try {
+			long size = Files.size(file);
+			long modified = Files.getLastModifiedTime(file).toMillis();
+			Path target;
+			try {
+				PdfAs4SignatureParameter parameter = this.signer.createParameter();
+				parameter.inputDocument = new PDFFileDocumentSource(file.toFile());
+				SignResult result = this.signer.sign(parameter);
+
+				target = writeSigned(getSignedFileName(file.getFileName().toString()), result.getSignedDocument());
+			} catch (SignatureException | UserCancelledException | IOException | RuntimeException e) {
+				log.error("Failed to sign {}", file, e);
+				moveToErrorFolder(file, e);
+				this.failedCount.incrementAndGet();
+				return;
+			}
+
+			long done = System.nanoTime();
+			this.signedCount.incrementAndGet();
+			this.signedBytes.addAndGet(size);
+			this.latencyNanos.addAndGet(done - detected);
+			log.info("Signed {} to {} in {} ms ({} ms after it appeared)", file.getFileName(), target,
+					TimeUnit.NANOSECONDS.toMillis(done - started), TimeUnit.NANOSECONDS.toMillis(done - detected));
+
+			/* the document is signed; failing to clean up is no reason to report it as failed */
+			try {
+				Files.delete(file);
+			} catch (NoSuchFileException e) {
+				// removed by someone else
+			} catch (IOException e) {
+				log.error("Signed {} to {}, but cannot remove it from {}; it will not be signed again unless it changes",
+						file.getFileName(), target, this.inputFolder, e);
+				this.leftBehind.put(file, modified);
+			}
+		} catch (IOException e) {
+			log.debug("{} disappeared before it could be signed", file, e);
+		} finally {
+			this.inFlight.remove(file);
+			this.busy.release();
+		}
+	}
+
+	/**
+	 * Choose a name in the folder that is neither taken nor about to be, appending a number to the name if needed
+	 * @param folder the folder
+	 * @param name the preferred name
+	 * @return the chosen file; release it with {@link #releaseName(Path)} once it is written
+	 */
+	private Path reserveName(Path folder, String name) {
+		String base = FilenameUtils.removeExtension(name);
+		String extension = FilenameUtils.getExtension(name);
+		extension = extension.isEmpty() ? "" : (FilenameUtils.EXTENSION_SEPARATOR + extension);
+		synchronized (this.reservedNames) {
+			Path file = folder.resolve(name);
+			for (int i = 2; Files.exists(file) || Files.exists(file.resolveSibling(file.getFileName() + ERROR_SUFFIX))
+					|| this.reservedNames.contains(file); ++i)
+				file = folder.resolve(base + "-" + i + extension);
+			this.reservedNames.add(file);
+			return file;
+		}
+	}
+
+	private void releaseName(Path file) {
+		synchronized (this.reservedNames) {
+			this.reservedNames.remove(file);
+		}
+	}
+
+	/**
+	 * Write a signed document to the output folder without replacing any file
+	 * @param name the preferred name
+	 * @param signed the signed document
+	 * @return the file written
+	 */
+	private Path writeSigned(String name, DocumentSource signed) throws IOException {
+		for (int attempt = 1; ; ++attempt) {
+			/* names are only reserved within this process */
+			Path target = reserveName(this.outputFolder, name);
+			try {
+				this.writer.writeNew(signed, target.toFile());
+				return target;
+			} catch (FileAlreadyExistsException e) {
+				if (attempt >= MAX_NAME_ATTEMPTS)
+					throw e;
+				log.debug("{} was created in the meantime, trying the next name", target);
+			} finally {
+				releaseName(target);
+			}
+		}
+	}
+
+	private String getSignedFileName(String name) {
+		String extension = FilenameUtils.getExtension(name);
+		return FilenameUtils.removeExtension(name) + this.postfix + FilenameUtils.EXTENSION_SEPARATOR + extension;
+	}
+
+	private void moveToErrorFolder(Path file, Exception error) {
+		String name = file.getFileName().toString();
+		StringBuilder reason = new StringBuilder();
+		for (Throwable t = error; t != null; t = t.getCause())
+			reason.append(t).append(System.lineSeparator());
+		for (int attempt = 1; ; ++attempt) {
+			Path target = reserveName(this.errorFolder, name);
+			try {
+				Files.move(file, target);
+				Files.write(target.resolveSibling(target.getFileName() + ERROR_SUFFIX), reason.toString().getBytes(StandardCharsets.UTF_8));
+				return;
+			} catch (FileAlreadyExistsException e) {
+				if (attempt >= MAX_NAME_ATTEMPTS) {
+					log.error("Failed to move {} to {}, the names were taken in the meantime", file, this.errorFolder, e);
+					return;
+				}
+			} catch (IOException e) {
+				log.error("Failed to move {} to {}", file, this.errorFolder, e);
+				return;
+			} finally {
+				releaseName(target);
+			}
+		}
+	}
+
+	/**
+	 * Log the throughput once per interval, if anything was signed
+	 */
+	private void logThroughput() {
+		long now = System.nanoTime();
+		if (now - this.statsNanos < STATS_INTERVAL_NANOS)
+			return;
+		long signed = this.signedCount.get();
+		long count = signed - this.statsSigned;
+		if (count > 0)
+			log.info("Signed {} documents in the last {} s ({} per minute), {} waiting, {} failed so far",
+					count, TimeUnit.NANOSECONDS.toSeconds(now - this.statsNanos),
+					String.format("%.1f", count * 60.0 * 1e9 / (now - this.statsNanos)),
+					this.pending.size(), this.failedCount.get());
+		this.statsNanos = now;
+		this.statsSigned = signed;
+	}
+
+	private void logTotals() {
+		long signed = this.signedCount.get();
+		long elapsed = Math.max(1, System.nanoTime() - this.startedNanos);
+		log.info("Stopped watching {}: {} documents ({} bytes) signed, {} failed, {} per minute, average latency {} ms",
+				this.inputFolder, signed, this.signedBytes.get(), this.failedCount.get(),
+				String.format("%.1f", signed * 60.0 * 1e9 / elapsed),
+				(signed > 0) ? TimeUnit.NANOSECONDS.toMillis(this.latencyNanos.get() / signed) : 0);
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.utils;
+
+// Imports
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Brings an extracted configuration (e.g. PDF-AS') up to date with a bundled zip, touching only what changed
+ *
+ * The bundled zip comes with a manifest of SHA-256 checksums (in {@code sha256sum} format). Only files
+ * that are missing or differ from the manifest are extracted. Files that get overwritten, and files in
+ * the managed directory that are not part of the bundle any more, are saved to a backup zip first.
+ */
+@Slf4j
+public class ConfigProvisioner {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** entry name -> SHA-256 (hex) */
+	private final Map<String, String> manifest;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * @param manifest the manifest of the bundled zip
+	 * @throws IOException if the manifest cannot be read
+	 */
+	public ConfigProvisioner(InputStream manifest) throws IOException {
+		this.manifest = readManifest(manifest);
+	}
+
+	/**
+	 * Parse a manifest in {@code sha256sum} format
+	 * @param is the manifest
+	 * @return entry name -> SHA-256 (hex), in manifest order
+	 * @throws IOException on read errors or malformed lines
+	 */
+	public static Map<String, String> readManifest(InputStream is) throws IOException {
+		Map<String, String> manifest = new LinkedHashMap<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank())
+					continue;
+				int sep = line.indexOf("  ");
+				if (sep != 64)
+					throw new IOException("Malformed manifest line: " + line);
+				manifest.put(line.substring(sep + 2), line.substring(0, sep).toLowerCase());
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Bring the files below targetDir up to date
+	 * @param zip the bundled zip
+	 * @param targetDir the directory the zip is extracted to
+	 * @param managedDir directory (relative to targetDir) whose files not contained in the bundle are removed; may be null
+	 * @param backupZip where to save the files that get overwritten or removed (only created if there are any)
+	 * @return the number of files that were extracted
+	 * @throws IOException on failure, or if an extracted file does not match the manifest
+	 */
+	public int provision(InputStream zip, File targetDir, String managedDir, File backupZip) throws IOException {
+		Path target = targetDir.toPath().toAbsolutePath().normalize();
+
+		Set<String> toExtract = new HashSet<>();
+		List<Path> toBackup = new ArrayList<>();
+		for (Map.Entry<String, String> e : this.manifest.entrySet()) {
+			Path file = resolve(target, e.getKey());
+			if (!Files.isRegularFile(file)) {
+				toExtract.add(e.getKey());
+			} else if (!e.getValue().equals(sha256(file))) {
+				toExtract.add(e.getKey());
+				toBackup.add(file);
+			}
+		}
+
+		List<Path> toRemove = new ArrayList<>();
+		if (managedDir != null) {
+			Path managed = resolve(target, managedDir);
+			if (Files.isDirectory(managed)) {
+				try (Stream<Path> files = Files.walk(managed)) {
+					files.filter(Files::isRegularFile)
+						.filter(f -> !this.manifest.containsKey(target.relativize(f).toString().replace(File.separatorChar, '/')))
+						.forEach(toRemove::add);
+				}
+			}
+		}
+		log.debug("Config provisioning: {} of {} files to extract, {} obsolete", toExtract.size(), this.manifest.size(), toRemove.size());
+
+		if (!toBackup.isEmpty() || !toRemove.isEmpty()) {
+			List<Path> backup = new ArrayList<>(toBackup);
+			backup.addAll(toRemove);
+			writeBackup(target, backup, backupZip);
+		}
+		if (!toExtract.isEmpty())
+			extract(zip, target, toExtract);
+		for (Path f : toRemove)
+			Files.deleteIfExists(f);
+		return toExtract.size();
+	}
+
+	private void writeBackup(Path root, List<Path> files, File backupZip) throws IOException {
+		Path tmp = Files.createTempFile(backupZip.getAbsoluteFile().getParentFile().toPath(), backupZip.getName(), ".tmp");
+		try {
+			try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(tmp))) {
+				for (Path f : files) {
+					zos.putNextEntry(new ZipEntry(root.relativize(f).toString().replace(File.separatorChar, '/')));
+					Files.copy(f, zos);
+					zos.closeEntry();
+				}
+			}
+			Files.move(tmp, backupZip.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		log.info("Backed up {} configuration files to {}", files.size(), backupZip);
+	}
+
+	private void extract(InputStream zip, Path root, Set<String> names) throws IOException {
+		int remaining = names.size();
+		ZipInputStream zis = new ZipInputStream(zip);
+		ZipEntry entry;
+		while ((remaining > 0) && ((entry = zis.getNextEntry()) != null)) {
+			String expected = entry.isDirectory() ? null : this.manifest.get(entry.getName());
+			if ((expected == null) || !names.contains(entry.getName()))
+				continue;
+
+			Path file = resolve(root, entry.getName());
+			Files.createDirectories(file.getParent());
+			Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try {
+				MessageDigest digest = newDigest();
+				try (OutputStream out = Files.newOutputStream(tmp)) {
+					int len;
+					while ((len = zis.read(this.buffer)) >= 0) {
+						out.write(this.buffer, 0, len);
+						digest.update(this.buffer, 0, len);
+					}
+				}
+				if (!expected.equals(HexFormat.of().formatHex(digest.digest())))
+					throw new IOException("Bundled " + entry.getName() + " does not match its manifest entry");
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			--remaining;
+		}
+		if (remaining > 0)
+			throw new IOException(remaining + " files listed in the manifest are missing from the bundle");
+	}
+
+	private String sha256(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		try (InputStream in = Files.newInputStream(file)) {
+			int len;
+			while ((len = in.read(this.buffer)) >= 0)
+				digest.update(this.buffer, 0, len);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Path resolve(Path root, String name) throws IOException {
+		Path file = root.resolve(name).normalize();
+		if (!file.startsWith(root))
+			throw new IOException("Bad zip entry");
+		return file;
+	}
+}
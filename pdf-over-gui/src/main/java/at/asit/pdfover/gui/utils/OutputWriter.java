@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.utils;
+
+// Imports
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import at.asit.pdfover.signer.DocumentSource;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes a signed document to its target file
+ *
+ * The document is written to a temporary file next to the target, which is then renamed over the
+ * target, so the target is never left half-written. If the document is a file in the temporary
+ * directory, it is simply moved to the target instead.
+ *
+ * {@link #writeNew} never replaces an existing target, not even one created by another process
+ * while the document is written: the document is hard-linked to the target, which fails if the target
+ * exists. Where the file system has no hard links, it is moved without replacing instead, which
+ * Windows does in one step, but elsewhere checks for the target just before the move.
+ */
+@Slf4j
+public class OutputWriter {
+
+	/** how much is transferred between two progress reports */
+	private static final long CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * Receives progress reports (from the writing thread)
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		/**
+		 * @param written bytes written so far
+		 * @param total total bytes to write
+		 */
+		void onProgress(long written, long total);
+	}
+
+	private final boolean sync;
+	private final Path tempDirectory;
+	private final ProgressListener progress;
+
+	/**
+	 * @param sync whether to sync the document to disk before it replaces the target
+	 * @param tempDirectory documents in this directory may be moved instead of copied; may be null
+	 * @param progress progress listener; may be null
+	 */
+	public OutputWriter(boolean sync, File tempDirectory, ProgressListener progress) {
+		this.sync = sync;
+		this.tempDirectory = (tempDirectory != null) ? tempDirectory.toPath().toAbsolutePath().normalize() : null;
+		this.progress = (progress != null) ? progress : (w, t) -> {};
+	}
+
+	/**
+	 * Write the document to the target file (blocking)
+	 * @param source the document
+	 * @param target the target file; replaced if it exists
+	 * @throws IOException on failure; the target is unchanged then
+	 */
+	public void write(DocumentSource source, File target) throws IOException {
+		write(source, target, true);
+	}
+
+	/**
+	 * Write the document to a new file (blocking)
+	 * @param source the document
+	 * @param target the target file
+	 * @throws java.nio.file.FileAlreadyExistsException if the target exists; it is unchanged then
+	 * @throws IOException on other failures; no target is created then
+	 */
+	public void writeNew(DocumentSource source, File target) throws IOException {
+		write(source, target, false);
+	}
+
+	private void write(DocumentSource source, File target, boolean replace) throws IOException {
+		Path targetPath = target.toPath().toAbsolutePath().normalize();
+		Path sourcePath = (source instanceof PDFFileDocumentSource) ?
+				((PDFFileDocumentSource) source).getFile().toPath().toAbsolutePath().normalize() : null;
+
+		if ((sourcePath != null) && isTemporary(sourcePath) && moveTemporary(sourcePath, targetPath, replace))
+			return;
+
+		Path tmp = Files.createTempFile(targetPath.getParent(), "." + targetPath.getFileName(), ".tmp");
+		try {
+			try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				if (sourcePath != null) {
+					try (FileChannel in = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+						long total = in.size();
+						long written = 0;
+						while (written < total) {
+							long n = in.transferTo(written, Math.min(CHUNK_SIZE, total - written), out);
+							if (n <= 0)
+								throw new IOException("Document ended after " + written + " of " + total + " bytes");
+							written += n;
+							this.progress.onProgress(written, total);
+						}
+					}
+				} else {
+					/* write straight from the document's buffer, without copying it to a stream */
+					ByteBuffer in = source.getByteBuffer();
+					int total = in.remaining();
+					int end = in.limit();
+					while (in.position() < end) {
+						in.limit((int) Math.min(end, in.position() + CHUNK_SIZE));
+						while (in.hasRemaining())
+							out.write(in);
+						this.progress.onProgress(total - (end - in.position()), total);
+					}
+				}
+				if (this.sync)
+					out.force(true);
+			}
+			if (replace)
+				replace(tmp, targetPath);
+			else
+				moveNew(tmp, targetPath);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		log.debug("Wrote {}", targetPath);
+	}
+
+	private boolean isTemporary(Path file) {
+		return (this.tempDirectory != null) && file.startsWith(this.tempDirectory);
+	}
+
+	/**
+	 * Rename a temporary document to the target
+	 * @return whether the document was moved (false if the target is on a different file system, or
+	 * cannot be linked to)
+	 */
+	private boolean moveTemporary(Path file, Path target, boolean replace) throws IOException {
+		long size = Files.size(file);
+		if (this.sync) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+		}
+		try {
+			if (replace) {
+				Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} else {
+				Files.createLink(target, file);
+				deleteLinked(file);
+			}
+		} catch (AtomicMoveNotSupportedException e) {
+			log.debug("Cannot move {} to {}, copying instead", file, target);
+			return false;
+		} catch (FileAlreadyExistsException e) {
+			throw e;
+		} catch (FileSystemException | UnsupportedOperationException e) {
+			log.debug("Cannot link {} to {}, copying instead", file, target, e);
+			return false;
+		}
+		this.progress.onProgress(size, size);
+		log.debug("Moved {} to {}", file, target);
+		return true;
+	}
+
+	private static void replace(Path tmp, Path target) throws IOException {
+		try {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			// e.g. some network shares
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Move a file next to the target to the target, unless the target exists
+	 * @throws FileAlreadyExistsException if the target exists
+	 */
+	private static void moveNew(Path tmp, Path target) throws IOException {
+		try {
+			Files.createLink(target, tmp);
+		} catch (FileAlreadyExistsException e) {
+			throw e;
+		} catch (FileSystemException | UnsupportedOperationException e) {
+			// e.g. FAT and some network shares
+			log.debug("Cannot link {} to {}, moving it", tmp, target, e);
+			Files.move(tmp, target);
+			return;
+		}
+		deleteLinked(tmp);
+	}
+
+	/**
+	 * Remove the old name of a file that was linked to its target; the target is written by then
+	 */
+	private static void deleteLinked(Path file) {
+		try {
+			Files.delete(file);
+		} catch (IOException e) {
+			log.warn("Failed to remove {}", file, e);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package at.asit.pdfover.gui.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Display;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Display-scoped cache of SWT images loaded from classpath resources, and of scaled variants of images.
+ *
+ * Images handed out by the registry are shared; callers must not dispose them. They are all
+ * disposed together when the display is disposed.
+ */
+@Slf4j
+public final class SWTImageRegistry {
+
+	private static final Map<Display, SWTImageRegistry> registries = new HashMap<>();
+
+	/**
+	 * @param display the display the images will be used on
+	 * @return the registry for that display
+	 */
+	public static SWTImageRegistry of(Display display) {
+		synchronized (registries) {
+			SWTImageRegistry registry = registries.get(display);
+			if (registry == null) {
+				registry = new SWTImageRegistry(display);
+				registries.put(display, registry);
+			}
+			return registry;
+		}
+	}
+
+	/**
+	 * @return the number of native image handles currently held by all registries
+	 */
+	public static int getLiveHandleCount() {
+		synchronized (registries) {
+			return registries.values().stream().mapToInt(SWTImageRegistry::size).sum();
+		}
+	}
+
+	private final Display display;
+	/** "resource" or "resource@WxH" -> image */
+	private final Map<String, Image> resourceImages = new HashMap<>();
+	/** source image -> its most recently requested scaled variant; keyed by identity, Image.equals compares handles */
+	private final Map<Image, Image> scaledImages = new IdentityHashMap<>();
+
+	private SWTImageRegistry(Display display) {
+		this.display = display;
+		display.disposeExec(this::dispose);
+	}
+
+	/**
+	 * Get the image stored in a classpath resource
+	 * @param resource resource path (cf. Constants.RES_IMG_*)
+	 * @return the shared image
+	 * @throws SWTException if the resource is missing or cannot be decoded
+	 */
+	public Image get(String resource) {
+		return get(resource, 0, 0);
+	}
+
+	/**
+	 * Get the image stored in a classpath resource, scaled to the given size
+	 * @param resource resource path (cf. Constants.RES_IMG_*)
+	 * @param width target width, or 0 to keep the original size
+	 * @param height target height, or 0 to keep the original size
+	 * @return the shared image
+	 * @throws SWTException if the resource is missing or cannot be decoded
+	 */
+	public Image get(String resource, int width, int height) {
+		boolean scaled = (width > 0) && (height > 0);
+		String key = scaled ? (resource + "@" + width + "x" + height) : resource;
+		synchronized (this) {
+			Image image = this.resourceImages.get(key);
+			if (image == null) {
+				ImageData data = loadImageData(resource);
+				if (scaled)
+					data = data.scaledTo(width, height);
+				image = new Image(this.display, data);
+				this.resourceImages.put(key, image);
+				log.trace("Created image {} ({} live handles)", key, size());
+			}
+			return image;
+		}
+	}
+
+	/**
+	 * Get a scaled variant of the given image; repeated calls for the same size return the same image
+	 *
+	 * Only the latest variant of each source is kept: asking for another size disposes the previous
+	 * one, so a control being resized does not leave an image behind for every width it passed
+	 * through. Use the result right away (e.g. in a paint listener) instead of holding on to it.
+	 * @param source the image to scale
+	 * @param width target width
+	 * @param height target height
+	 * @return the shared scaled image, or source itself if it already has that size
+	 */
+	public Image getScaled(Image source, int width, int height) {
+		Rectangle bounds = source.getBounds();
+		if ((bounds.width == width) && (bounds.height == height))
+			return source;
+		synchronized (this) {
+			Image image = this.scaledImages.get(source);
+			if (image != null) {
+				Rectangle current = image.getBounds();
+				if ((current.width == width) && (current.height == height))
+					return image;
+				image.dispose();
+			}
+			// variants of sources that were disposed in the meantime are no longer of any use
+			this.scaledImages.entrySet().removeIf((entry) -> {
+				if (!entry.getKey().isDisposed())
+					return false;
+				entry.getValue().dispose();
+				return true;
+			});
+			image = new Image(this.display, source.getImageData().scaledTo(width, height));
+			this.scaledImages.put(source, image);
+			log.trace("Created {}x{} variant of {} ({} live handles)", width, height, source, size());
+			return image;
+		}
+	}
+
+	private ImageData loadImageData(String resource) {
+		try (InputStream stream = SWTImageRegistry.class.getResourceAsStream(resource)) {
+			if (stream == null)
+				throw new SWTException("Missing image resource " + resource);
+			return new ImageData(stream);
+		} catch (IOException e) {
+			throw new SWTException("Failed to read image resource " + resource + ": " + e.getMessage());
+		}
+	}
+
+	private synchronized int size() {
+		return this.resourceImages.size() + this.scaledImages.size();
+	}
+
+	private void dispose() {
+		synchronized (registries) {
+			registries.remove(this.display);
+		}
+		synchronized (this) {
+			log.debug("Disposing {} cached images", size());
+			this.resourceImages.values().forEach(Image::dispose);
+			this.resourceImages.clear();
+			this.scaledImages.values().forEach(Image::dispose);
+			this.scaledImages.clear();
+		}
+	}
+}
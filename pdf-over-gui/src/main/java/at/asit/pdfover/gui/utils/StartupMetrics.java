@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.utils;
+
+// Imports
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records how long it takes from process start until the main window is shown
+ * ({@link #WINDOW_SHOWN}) and until the first document is signed ({@link #FIRST_SIGNATURE})
+ *
+ * If the system property {@value #REPORT_PROPERTY} names a file, one JSON line with these
+ * times and the run times of the init tasks is appended to it on exit.
+ */
+@Slf4j
+public final class StartupMetrics {
+
+	/** system property naming the file to append the startup report to */
+	public static final String REPORT_PROPERTY = "pdfover.startup.report";
+
+	public static final String WINDOW_SHOWN = "timeToWindowMs";
+	public static final String FIRST_SIGNATURE = "timeToFirstSignatureMs";
+
+	private static final long processStart = ProcessHandle.current().info().startInstant()
+			.orElseGet(Instant::now).toEpochMilli();
+	private static final Map<String, Long> marks = new ConcurrentHashMap<>();
+
+	/**
+	 * Record that an event happened now (only the first occurrence counts)
+	 * @param event {@link #WINDOW_SHOWN} or {@link #FIRST_SIGNATURE}
+	 */
+	public static void mark(String event) {
+		long elapsed = System.currentTimeMillis() - processStart;
+		if (marks.putIfAbsent(event, elapsed) == null)
+			log.info("Startup: {} = {}", event, elapsed);
+	}
+
+	/**
+	 * Append the report to the file named by {@value #REPORT_PROPERTY}, if set
+	 * @param initTaskDurations run time of each init task, in ms
+	 */
+	public static void writeReport(Map<String, Long> initTaskDurations) {
+		String reportFile = System.getProperty(REPORT_PROPERTY);
+		if (reportFile == null)
+			return;
+
+		StringBuilder json = new StringBuilder("{");
+		json.append('"').append(WINDOW_SHOWN).append("\":").append(marks.get(WINDOW_SHOWN)).append(',');
+		json.append('"').append(FIRST_SIGNATURE).append("\":").append(marks.get(FIRST_SIGNATURE)).append(',');
+		json.append("\"initTasksMs\":{");
+		boolean first = true;
+		for (Map.Entry<String, Long> e : initTaskDurations.entrySet()) {
+			if (!first)
+				json.append(',');
+			first = false;
+			json.append('"').append(e.getKey()).append("\":").append(e.getValue());
+		}
+		json.append("}}").append(System.lineSeparator());
+
+		try {
+			Files.write(Path.of(reportFile), json.toString().getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			log.warn("Failed to write startup report to {}", reportFile, e);
+		}
+	}
+
+	private StartupMetrics() {}
+}
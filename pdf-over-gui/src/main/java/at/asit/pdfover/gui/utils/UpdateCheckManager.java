@@ -5,6 +5,7 @@ import java.util.function.Consumer;
 
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.Messages;
+import at.asit.pdfover.commons.utils.TaskExecutor;
 import at.asit.pdfover.gui.controls.Dialog;
 import at.asit.pdfover.gui.controls.Dialog.BUTTONS;
 import at.asit.pdfover.gui.controls.Dialog.ICON;
@@ -19,7 +20,7 @@ import org.eclipse.swt.widgets.Shell;
 
 @Slf4j
 public final class UpdateCheckManager {
-    private static Thread updateCheckThread = null;
+    private static boolean checkRunning = false;
     private static boolean needsCheck = false;
 
     public enum Status { NOT_CHECKED, CHECKING, OUTDATED, UP_TO_DATE, FAILED };
@@ -78,11 +79,12 @@ public final class UpdateCheckManager {
             return;
 
         synchronized (UpdateCheckManager.class) {
-            if (updateCheckThread != null)
+            if (checkRunning)
                 return;
 
             needsCheck = true;
-            updateCheckThread = new Thread(() -> {
+            checkRunning = true;
+            TaskExecutor.submit("update-check", () -> {
                 synchronized(UpdateCheckManager.class) {
                     setStatus(Status.CHECKING);
                 }
@@ -91,7 +93,7 @@ public final class UpdateCheckManager {
                     synchronized (UpdateCheckManager.class) {
                         if (!UpdateCheckManager.needsCheck) {
                             setStatus(status);
-                            UpdateCheckManager.updateCheckThread = null;
+                            UpdateCheckManager.checkRunning = false;
                             return;
                         }
                         UpdateCheckManager.needsCheck = false;
@@ -99,7 +101,6 @@ public final class UpdateCheckManager {
                     }
                 }
             });
-            updateCheckThread.start();
         }
     }
 }
@@ -16,15 +16,12 @@
 package at.asit.pdfover.gui.utils;
 
 // Imports
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -38,6 +35,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class Zipper {
 
+	/** shared by all entries of one zip file */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	/**
 	 * Compresses the source path to Zip File output stream
 	 * @param sourcePath
@@ -74,12 +74,7 @@ public class Zipper {
 			URI path = root.relativize(f.toURI());
 			ZipEntry entry = new ZipEntry(path.toString());
 			zos.putNextEntry(entry);
-			byte[] buffer = new byte[4 * 1024 * 1024];
-			int len;
-			BufferedInputStream is = new BufferedInputStream(new FileInputStream(f));
-			while ((len = is.read(buffer)) >= 0)
-				zos.write(buffer, 0, len);
-			is.close();
+			Files.copy(f.toPath(), zos);
 			zos.closeEntry();
 			if (doDelete)
 				f.delete();
@@ -104,6 +99,7 @@ public class Zipper {
 	public static void unzip(InputStream is, String targetPath) throws IOException {
 		ZipInputStream zis = new ZipInputStream(is);
 		ZipEntry entry;
+		byte[] buffer = new byte[BUFFER_SIZE];
 		// while there are entries I process them
 		while ((entry = zis.getNextEntry()) != null) {
 			log.debug("entry: " + entry.getName() + ", "  ////
@@ -121,16 +117,12 @@ public class Zipper {
 				}
 				continue;
 			}
-			byte[] buffer = new byte[4 * 1024 * 1024];
 			int len;
 
-			BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(
-				sanitizePath(targetPath, entry.getName()).toFile()));
-
-			while ((len = zis.read(buffer)) >= 0)
-				out.write(buffer, 0, len);
-
-			out.close();
+			try (OutputStream out = Files.newOutputStream(sanitizePath(targetPath, entry.getName()))) {
+				while ((len = zis.read(buffer)) >= 0)
+					out.write(buffer, 0, len);
+			}
 		}
 	}
 }
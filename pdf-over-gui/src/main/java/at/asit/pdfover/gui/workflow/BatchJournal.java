@@ -0,0 +1,581 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.workflow;
+
+// Imports
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Journal of a batch of documents, so an interrupted batch can be resumed
+ *
+ * For every document of the batch, the journal records when it was enqueued, prepared, signed and
+ * saved, with the SHA-256 of the input document and of the saved signed document. Records are
+ * appended by a background thread and synced to disk one by one; a crash loses at most the last
+ * few records, which only means that a document is signed once more. Once every document has been
+ * saved, the journal is deleted.
+ *
+ * One record per line, tab separated: time (ms since the epoch), {@link Record}, document path,
+ * followed by the size and hash of the input for {@link Record#PREPARED} and the output path, size
+ * and hash for {@link Record#SAVED}. When resuming, a saved document is only skipped if both the
+ * document and its signed copy are still the files that were journaled.
+ */
+@Slf4j
+public class BatchJournal {
+
+	/**
+	 * Record types
+	 */
+	public enum Record {
+		/** a new batch starts */
+		BATCH,
+		/** the batch is resumed after a restart */
+		RESUMED,
+		/** a document was added to the batch */
+		ENQUEUED,
+		/** a document was prepared for signing */
+		PREPARED,
+		/** a document was signed */
+		SIGNED,
+		/** a signed document was saved */
+		SAVED
+	}
+
+	/** smaller batches are not journaled */
+	static final int MIN_BATCH_SIZE = 2;
+
+	private static final String NO_HASH = "-";
+
+	private final Path file;
+	/** appends the records in order; guarded by this */
+	private ExecutorService writer = null;
+	/** only used by the writer thread */
+	private FileChannel channel = null;
+
+	/* batch state, guarded by this */
+	private boolean loaded = false;
+	private boolean active = false;
+	/** document path -> last record */
+	private final Map<String, Record> documents = new LinkedHashMap<>();
+	/** document path -> the document when it was prepared; only known for interrupted batches */
+	private final Map<String, Fingerprint> inputs = new LinkedHashMap<>();
+	/** document path -> saved signed document; only known for interrupted batches */
+	private final Map<String, Fingerprint> outputs = new LinkedHashMap<>();
+	private int saved = 0;
+	/** signing time of earlier sessions of this batch */
+	private long earlierSessionsMillis = 0;
+	private long sessionStart = 0;
+
+	/**
+	 * @param file the journal file; created when a batch starts
+	 */
+	public BatchJournal(File file) {
+		this.file = file.toPath().toAbsolutePath();
+	}
+
+	/**
+	 * @return whether a batch is being journaled
+	 */
+	public synchronized boolean isActive() {
+		return this.active;
+	}
+
+	/**
+	 * Read the journal left by an earlier run
+	 * @return the documents of the interrupted batch that still need to be signed, in order; empty if
+	 * there is none
+	 */
+	public synchronized List<File> getUnfinished() {
+		if (this.active)
+			return List.of();
+		load();
+		List<File> unfinished = new ArrayList<>();
+		for (Map.Entry<String, Record> e : this.documents.entrySet()) {
+			File document = new File(e.getKey());
+			if (e.getValue() == Record.SAVED && isSigned(e.getKey()))
+				continue;
+			if (!document.isFile()) {
+				log.warn("{} of the interrupted batch no longer exists", document);
+				continue;
+			}
+			unfinished.add(document);
+		}
+		return unfinished;
+	}
+
+	/**
+	 * @return whether the signed copy of a saved document still exists, and the document has not
+	 * been changed since
+	 */
+	private boolean isSigned(String path) {
+		Fingerprint input = this.inputs.get(path);
+		Fingerprint output = this.outputs.get(path);
+		if (output == null || !output.matches()) {
+			log.info("Signed copy of {} is missing or was changed, signing it again", path);
+			return false;
+		}
+		if (input == null || !input.matches()) {
+			log.info("{} was changed since it was signed, signing it again", path);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of documents in the current (or interrupted) batch
+	 */
+	public synchronized int getDocumentCount() {
+		return this.documents.size();
+	}
+
+	/**
+	 * @return number of documents of the current (or interrupted) batch that have been saved
+	 */
+	public synchronized int getSavedCount() {
+		return this.saved;
+	}
+
+	/**
+	 * Start journaling a new batch; replaces any earlier journal
+	 * @param batch the documents, in order; batches of a single document are not journaled
+	 */
+	public synchronized void start(List<File> batch) {
+		reset();
+		if (batch.size() < MIN_BATCH_SIZE) {
+			delete();
+			return;
+		}
+		this.active = true;
+		this.sessionStart = System.currentTimeMillis();
+		/* one sync for the whole batch, not one per document */
+		StringBuilder records = new StringBuilder(line(Record.BATCH, ""));
+		for (File document : batch) {
+			String path = pathOf(document);
+			if (this.documents.putIfAbsent(path, Record.ENQUEUED) == null)
+				records.append('\n').append(line(Record.ENQUEUED, escape(path)));
+		}
+		String block = records.toString();
+		submit(() -> block, true);
+		log.debug("Journaling a batch of {} documents in {}", batch.size(), this.file);
+	}
+
+	/**
+	 * Continue journaling the interrupted batch
+	 * @param unfinished the documents still to be signed, as returned by {@link #getUnfinished()}
+	 */
+	public synchronized void resume(List<File> unfinished) {
+		load();
+		Set<String> remaining = new LinkedHashSet<>();
+		for (File document : unfinished)
+			remaining.add(pathOf(document));
+		/* drop documents that are gone, and sign documents whose signed copy is gone once more */
+		this.documents.entrySet().removeIf((e) -> (e.getValue() != Record.SAVED) && !remaining.contains(e.getKey()));
+		for (String path : remaining) {
+			if (this.documents.get(path) == Record.SAVED)
+				--this.saved;
+			this.documents.put(path, Record.ENQUEUED);
+		}
+		this.active = true;
+		this.sessionStart = System.currentTimeMillis();
+		append(Record.RESUMED, "");
+		log.info("Resuming batch: {} of {} documents saved", this.saved, this.documents.size());
+	}
+
+	/**
+	 * Forget the current (or interrupted) batch
+	 */
+	public synchronized void discard() {
+		reset();
+		delete();
+	}
+
+	/**
+	 * Add a document to the batch
+	 * @param document the document
+	 */
+	public synchronized void enqueue(File document) {
+		String path = pathOf(document);
+		if (!this.active || this.documents.containsKey(path))
+			return;
+		this.documents.put(path, Record.ENQUEUED);
+		append(Record.ENQUEUED, escape(path));
+	}
+
+	/**
+	 * Record that a document of the batch has been prepared for signing
+	 * @param document the document
+	 */
+	public synchronized void prepared(File document) {
+		if (!advance(document, Record.PREPARED))
+			return;
+		Path path = document.toPath();
+		submit(() -> line(Record.PREPARED, escape(pathOf(document)) + "\t" + sizeOf(path) + "\t" + hash(path)), false);
+	}
+
+	/**
+	 * Record that a document of the batch has been signed
+	 * @param document the document
+	 */
+	public synchronized void signed(File document) {
+		if (advance(document, Record.SIGNED))
+			append(Record.SIGNED, escape(pathOf(document)));
+	}
+
+	/**
+	 * Record that a document of the batch has been saved; the journal is deleted once all are
+	 * @param document the document
+	 * @param output the saved signed document
+	 */
+	public synchronized void saved(File document, File output) {
+		if (output == null || !advance(document, Record.SAVED))
+			return;
+		String path = pathOf(document);
+		Path outputPath = output.toPath().toAbsolutePath();
+		++this.saved;
+		submit(() -> line(Record.SAVED, escape(path) + "\t" + escape(outputPath.toString()) + "\t"
+				+ sizeOf(outputPath) + "\t" + hash(outputPath)), false);
+
+		long elapsed = getSigningMillis();
+		String perMinute = String.format("%.1f", (elapsed > 0) ? (this.saved * 60000.0 / elapsed) : 0);
+		if (this.saved < this.documents.size()) {
+			log.info("Batch: {} of {} documents saved ({} per minute)", this.saved, this.documents.size(), perMinute);
+			return;
+		}
+		log.info("Batch of {} documents finished in {} s ({} per minute)", this.saved, elapsed / 1000, perMinute);
+		reset();
+		delete();
+	}
+
+	/**
+	 * Wait until the records have been written (e.g. before exiting)
+	 * @param timeoutMillis how long to wait at most
+	 */
+	public void flush(long timeoutMillis) {
+		ExecutorService writer;
+		synchronized (this) {
+			writer = this.writer;
+		}
+		if (writer == null)
+			return;
+		try {
+			writer.submit(() -> {}).get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			log.warn("Batch journal still not written after {} ms", timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// failures have been logged already
+		}
+	}
+
+	/**
+	 * @return time spent on the batch in this and earlier sessions
+	 */
+	private long getSigningMillis() {
+		return this.earlierSessionsMillis + (System.currentTimeMillis() - this.sessionStart);
+	}
+
+	/**
+	 * Move a document of the batch to a later stage
+	 * @return whether it is part of the batch and was not in that stage already
+	 */
+	private boolean advance(File document, Record record) {
+		if (!this.active || document == null)
+			return false;
+		String path = pathOf(document);
+		Record last = this.documents.get(path);
+		if (last == null || last == record)
+			return false;
+		this.documents.put(path, record);
+		return true;
+	}
+
+	private void reset() {
+		this.active = false;
+		this.loaded = true; // nothing left to load
+		this.documents.clear();
+		this.inputs.clear();
+		this.outputs.clear();
+		this.saved = 0;
+		this.earlierSessionsMillis = 0;
+	}
+
+	/**
+	 * Replay the journal file (once)
+	 */
+	private void load() {
+		if (this.loaded)
+			return;
+		this.loaded = true;
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(this.file, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return;
+		} catch (IOException e) {
+			log.warn("Failed to read batch journal {}", this.file, e);
+			return;
+		}
+
+		long sessionFirst = -1;
+		long sessionLast = -1;
+		for (String line : lines) {
+			String[] fields = line.split("\t", -1);
+			long time;
+			Record record;
+			try {
+				time = Long.parseLong(fields[0]);
+				record = Record.valueOf(fields[1]);
+			} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+				// e.g. the last line was not completely written
+				log.debug("Ignoring batch journal line \"{}\"", line);
+				continue;
+			}
+			if (record == Record.BATCH || record == Record.RESUMED) {
+				if (record == Record.BATCH) {
+					this.documents.clear();
+					this.inputs.clear();
+					this.outputs.clear();
+					this.earlierSessionsMillis = 0;
+				} else if (sessionFirst >= 0) {
+					this.earlierSessionsMillis += sessionLast - sessionFirst;
+				}
+				sessionFirst = time;
+				sessionLast = time;
+				continue;
+			}
+			if (fields.length < 3)
+				continue;
+			sessionLast = time;
+			String path = unescape(fields[2]);
+			if (record == Record.ENQUEUED) {
+				this.documents.putIfAbsent(path, record);
+				continue;
+			}
+			if (!this.documents.containsKey(path))
+				continue;
+			if (record == Record.PREPARED) {
+				Fingerprint input = Fingerprint.parse(path, fields, 3);
+				if (input == null)
+					continue;
+				this.inputs.put(path, input);
+			} else if (record == Record.SAVED) {
+				Fingerprint output = (fields.length > 3) ? Fingerprint.parse(unescape(fields[3]), fields, 4) : null;
+				if (output == null)
+					continue;
+				this.outputs.put(path, output);
+			}
+			this.documents.put(path, record);
+		}
+		if (sessionFirst >= 0)
+			this.earlierSessionsMillis += sessionLast - sessionFirst;
+		this.saved = (int) this.documents.values().stream().filter((r) -> r == Record.SAVED).count();
+	}
+
+	private void append(Record record, String fields) {
+		String line = line(record, fields);
+		submit(() -> line, false);
+	}
+
+	private ExecutorService getWriter() {
+		if (this.writer == null) {
+			this.writer = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "pdf-over-journal");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return this.writer;
+	}
+
+	private static String line(Record record, String fields) {
+		return System.currentTimeMillis() + "\t" + record + (fields.isEmpty() ? "" : ("\t" + fields));
+	}
+
+	/**
+	 * Queue a record for the writer thread
+	 * @param record the record line(s), computed on the writer thread
+	 * @param truncate whether to start a new journal file
+	 */
+	private void submit(Supplier<String> record, boolean truncate) {
+		getWriter().execute(() -> {
+			try {
+				if (truncate) {
+					closeChannel();
+					this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.TRUNCATE_EXISTING);
+				}
+				String separator = "";
+				if (this.channel == null) {
+					// the last line may be incomplete after a crash
+					if (!endsWithNewline(this.file))
+						separator = "\n";
+					this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.APPEND);
+				}
+				ByteBuffer buffer = ByteBuffer.wrap((separator + record.get() + "\n").getBytes(StandardCharsets.UTF_8));
+				while (buffer.hasRemaining())
+					this.channel.write(buffer);
+				this.channel.force(false);
+			} catch (IOException | RuntimeException e) {
+				log.error("Failed to write batch journal {}", this.file, e);
+			}
+		});
+	}
+
+	private void delete() {
+		if (this.writer == null && !Files.exists(this.file))
+			return;
+		getWriter().execute(() -> {
+			try {
+				closeChannel();
+				Files.deleteIfExists(this.file);
+			} catch (IOException e) {
+				log.error("Failed to delete batch journal {}", this.file, e);
+			}
+		});
+	}
+
+	private static boolean endsWithNewline(Path file) throws IOException {
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (in.size() == 0)
+				return true;
+			ByteBuffer last = ByteBuffer.allocate(1);
+			in.read(last, in.size() - 1);
+			return last.get(0) == '\n';
+		} catch (NoSuchFileException e) {
+			return true;
+		}
+	}
+
+	private void closeChannel() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+
+	private static String pathOf(File document) {
+		return document.getAbsolutePath();
+	}
+
+	private static long sizeOf(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the SHA-256 of the file, or {@value #NO_HASH} if it cannot be read
+	 */
+	static String hash(Path file) {
+		try (InputStream in = Files.newInputStream(file)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (IOException | NoSuchAlgorithmException e) {
+			log.debug("Cannot hash {}", file, e);
+			return NO_HASH;
+		}
+	}
+
+	/**
+	 * A file as journaled
+	 */
+	private static final class Fingerprint {
+		final Path path;
+		final long size;
+		final String hash;
+
+		Fingerprint(Path path, long size, String hash) {
+			this.path = path;
+			this.size = size;
+			this.hash = hash;
+		}
+
+		/**
+		 * @param fields the record's fields, with the size and hash at from and from + 1
+		 * @return the fingerprint, or null if the fields are missing or malformed
+		 */
+		static Fingerprint parse(String path, String[] fields, int from) {
+			if (fields.length < from + 2)
+				return null;
+			try {
+				return new Fingerprint(Path.of(path), Long.parseLong(fields[from]), fields[from + 1]);
+			} catch (NumberFormatException | InvalidPathException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return whether the file still has the journaled size and hash; never if these were not known
+		 */
+		boolean matches() {
+			if (this.size < 0 || NO_HASH.equals(this.hash) || sizeOf(this.path) != this.size)
+				return false;
+			return this.hash.equals(hash(this.path));
+		}
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String s) {
+		StringBuilder result = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char n = s.charAt(++i);
+				result.append((n == 't') ? '\t' : (n == 'n') ? '\n' : (n == 'r') ? '\r' : n);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+}
@@ -22,11 +22,15 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
 
+import at.asit.pdfover.commons.utils.FlightRecorderEvents;
+import at.asit.pdfover.commons.utils.InitTaskGraph;
 import at.asit.pdfover.gui.MainWindow;
 import at.asit.pdfover.gui.composites.StateComposite;
 import at.asit.pdfover.gui.controls.Dialog.BUTTONS;
 import at.asit.pdfover.gui.controls.ErrorDialog;
 import at.asit.pdfover.commons.Messages;
+import at.asit.pdfover.gui.utils.SWTImageRegistry;
+import at.asit.pdfover.gui.utils.StartupMetrics;
 import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
 import at.asit.pdfover.gui.workflow.states.PrepareConfigurationState;
 import at.asit.pdfover.gui.workflow.states.State;
@@ -42,6 +46,8 @@ public class StateMachine {
 	public final Status status;
 	public final ConfigurationManager configProvider;
 	public final String[] cmdLineArgs;
+	/** initialization steps running in the background, see {@link PrepareConfigurationState} */
+	public final InitTaskGraph startup = new InitTaskGraph();
 
 	/**
 	 * Default constructor
@@ -64,6 +70,11 @@ public class StateMachine {
 	 * @param state
 	 */
 	public void jumpToState(State state) {
+		State current = this.status.getCurrentState();
+		if ((current != null) && (current != state)) {
+			log.debug("Cancelling " + current);
+			current.cancel();
+		}
 		this.status.setCurrentState(state);
 		this.invokeUpdate();
 	}
@@ -75,6 +86,8 @@ public class StateMachine {
 		State next = null;
 		while (this.status.getCurrentState() != null) {
 			State current = this.status.getCurrentState();
+			FlightRecorderEvents.StateRun event = new FlightRecorderEvents.StateRun();
+			event.begin();
 			try {
 				current.run();
 			} catch (Exception e) {
@@ -85,11 +98,17 @@ public class StateMachine {
 				//jumpToState(errorState);
 				errorState.open();
 				this.exit();
+			} finally {
+				event.end();
 			}
 
 			if (this.exit) {
 				// exit request ignore
 				next = null;
+				if (event.shouldCommit()) {
+					event.state = current.getClass().getSimpleName();
+					event.commit();
+				}
 				this.status.setCurrentState(next);
 			} else {
 
@@ -102,6 +121,11 @@ public class StateMachine {
 				
 				// TODO: i really want this to be a return value from run()
 				next = current.nextState();
+				if (event.shouldCommit()) {
+					event.state = current.getClass().getSimpleName();
+					event.nextState = (next != null) ? next.getClass().getSimpleName() : null;
+					event.commit();
+				}
 				if (next == current) {
 					break;
 				}
@@ -164,6 +188,7 @@ public class StateMachine {
 
 			this.shell.open();
 			this.shell.layout();
+			StartupMetrics.mark(StartupMetrics.WINDOW_SHOWN);
 		} catch (Exception e) {
 			log.warn("Main-Window creation FAILED.", e);
 			this.display = null;
@@ -257,6 +282,7 @@ public class StateMachine {
 					display.sleep();
 				}
 			}
+			log.debug("Disposing the display with {} cached image handles", SWTImageRegistry.getLiveHandleCount());
 			display.dispose();
 		}
 	}
@@ -21,6 +21,7 @@ import java.util.ArrayDeque;
 import java.util.Queue;
 
 import at.asit.pdfover.commons.BKUs;
+import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.gui.MainWindowBehavior;
 import at.asit.pdfover.gui.workflow.states.State;
 import at.asit.pdfover.signer.SignResult;
@@ -34,6 +35,9 @@ public class Status {
 	public File document = null;
 	public Queue<File> pendingDocuments = new ArrayDeque<>();
 
+	/** progress of the current batch (document and pending documents), survives restarts */
+	public final BatchJournal journal = new BatchJournal(new File(Constants.CONFIG_DIRECTORY, Constants.BATCH_JOURNAL_FILENAME));
+
 	public SignaturePosition signaturePosition = null;
 
 	public BKUs bku = BKUs.NONE;
@@ -50,6 +54,9 @@ public class Status {
 
 	public boolean searchForPlacehoderSignature = false;
 
+	/** the empty signature field the user picked for this document, or null */
+	public String signatureFieldName = null;
+
 	public Status() {
 		this.behavior = new MainWindowBehavior();
 	}
@@ -72,6 +79,17 @@ public class Status {
 		this.currentState = newState;
 	}
 
+	/**
+	 * Abort the signing process in progress (if any), and drop its document buffers
+	 */
+	public void cancelSigning() {
+		PdfAs4SigningState signing = this.signingState;
+		if (signing == null)
+			return;
+		this.signingState = null;
+		signing.cancellation.cancel();
+	}
+
 	public State getPreviousState() {
 		return this.previousState;
 	}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.gui.workflow.config;
+
+// Imports
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import at.asit.pdfover.commons.utils.TaskExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes configuration files in the background
+ *
+ * Writes to the same file that are requested within {@value #COALESCE_MILLIS} ms of each other are
+ * coalesced, so only the latest content is written. Files are written to a temporary sibling, synced
+ * to disk and then renamed over the target, so the target is never left half-written.
+ */
+@Slf4j
+public final class ConfigWriter {
+
+	/** how long to wait for further changes before writing */
+	static final long COALESCE_MILLIS = 250;
+
+	private static final class PendingWrite {
+		byte[] content;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		PendingWrite(byte[] content) {
+			this.content = content;
+		}
+	}
+
+	/** target -> content not yet written; guarded by itself */
+	private static final Map<Path, PendingWrite> pending = new HashMap<>();
+	/** serializes writes to the same target */
+	private static final Map<Path, Object> targetLocks = new ConcurrentHashMap<>();
+	/** writes that have not completed yet, see {@link #flush(long)} */
+	private static final Set<CompletableFuture<Void>> outstanding = ConcurrentHashMap.newKeySet();
+	/** counted down to skip the coalescing delay when flushing */
+	private static volatile CountDownLatch flushSignal = new CountDownLatch(1);
+
+	/**
+	 * Write a file in the background
+	 * @param target the file
+	 * @param content the complete new content
+	 * @return completes once the content (or newer content for the same file) has been written
+	 */
+	public static CompletableFuture<Void> write(File target, byte[] content) {
+		Path path = target.toPath().toAbsolutePath().normalize();
+		PendingWrite write;
+		synchronized (pending) {
+			write = pending.get(path);
+			if (write != null) {
+				write.content = content;
+				return write.done;
+			}
+			write = new PendingWrite(content);
+			pending.put(path, write);
+			outstanding.add(write.done);
+		}
+		final CompletableFuture<Void> done = write.done;
+		done.whenComplete((v, e) -> outstanding.remove(done));
+		TaskExecutor.submit("config-writer", () -> writePending(path));
+		return done;
+	}
+
+	/**
+	 * Wait for all pending writes (e.g. before exiting)
+	 * @param timeoutMillis how long to wait at most
+	 */
+	public static void flush(long timeoutMillis) {
+		CountDownLatch signal = flushSignal;
+		flushSignal = new CountDownLatch(1);
+		signal.countDown();
+		try {
+			CompletableFuture.allOf(outstanding.toArray(new CompletableFuture<?>[0]))
+				.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			log.warn("Configuration files still not written after {} ms", timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			// failures have been logged already
+		}
+	}
+
+	private static void writePending(Path path) {
+		try {
+			flushSignal.await(COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (targetLocks.computeIfAbsent(path, (p) -> new Object())) {
+			PendingWrite write;
+			synchronized (pending) {
+				write = pending.remove(path);
+			}
+			if (write == null)
+				return;
+			try {
+				writeAtomically(path, write.content);
+				log.debug("Wrote {}", path);
+				write.done.complete(null);
+			} catch (IOException | RuntimeException e) {
+				log.error("Failed to write {}", path, e);
+				write.done.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Write a file via a synced temporary sibling that is renamed over the target
+	 * @param target the file
+	 * @param content the complete new content
+	 * @throws IOException on failure; the target is unchanged then
+	 */
+	public static void writeAtomically(Path target, byte[] content) throws IOException {
+		Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.wrap(content);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				channel.force(true);
+			}
+			try {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private ConfigWriter() {}
+}
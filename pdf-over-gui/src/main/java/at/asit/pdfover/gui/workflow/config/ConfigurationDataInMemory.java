@@ -151,6 +151,12 @@ public class ConfigurationDataInMemory {
 	/** Whether to skip the output state */
 	public boolean skipFinish = false;
 
+	/** Port of the local signing service, or -1 to run the user interface */
+	public int servicePort = -1;
+
+	/** Folder whose documents are signed automatically, or null */
+	public String watchFolder = null;
+
 	/** Whether to use an existing signature marker. */
 	protected boolean useMarker = false;
 	public boolean getUseMarker() { return this.useMarker; }
@@ -182,6 +188,9 @@ public class ConfigurationDataInMemory {
 	/** whether fido2 authentication should be selected by default */
 	public boolean fido2ByDefault = false;
 
+	/** whether signed documents are synced to disk before they are reported as saved */
+	public boolean syncOutput = false;
+
 	public String lastOpenedDirectory = null;
 
 }
@@ -16,13 +16,14 @@
 package at.asit.pdfover.gui.workflow.config;
 
 // Imports
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 import at.asit.pdfover.commons.Profile;
 
@@ -267,6 +268,8 @@ public class ConfigurationManager {
 
 		setFido2ByDefaultPersistent(Constants.TRUE.equalsIgnoreCase(diskConfig.getProperty(Constants.CFG_FIDO2_BY_DEFAULT)));
 
+		setSyncOutputPersistent(Constants.TRUE.equalsIgnoreCase(diskConfig.getProperty(Constants.CFG_SYNC_OUTPUT)));
+
 		setLastOpenedDirectory(diskConfig.getProperty(Constants.CFG_LAST_DIRECTORY));
 		
 		log.info("Successfully loaded config from: " + getConfigurationFileName());
@@ -276,8 +279,13 @@ public class ConfigurationManager {
 	private void setProperty(@NonNull Properties props, @NonNull String key, @NonNull String value) { props.setProperty(key, value); }
 	private void setPropertyIfNotNull(@NonNull Properties props, @NonNull String key, String value) { if (value != null) setProperty(props, key, value); }
 	private void setPropertyIfNotBlank(@NonNull Properties props, @NonNull String key, @NonNull String value) { if (!value.isEmpty()) setProperty(props, key, value); }
-	/* save to file */
-	public void saveToDisk() throws IOException {
+	/**
+	 * Save the persistent configuration to file
+	 *
+	 * The configuration is snapshotted on the calling thread and written in the background by {@link ConfigWriter}.
+	 * @return completes once the configuration is on disk
+	 */
+	public CompletableFuture<Void> saveToDisk() {
 		String filename = this.getConfigurationFileName();
 		File configFile = new File(Constants.CONFIG_DIRECTORY + File.separator + filename);
 
@@ -370,16 +378,22 @@ public class ConfigurationManager {
 		if (getFido2ByDefault())
 			setProperty(props, Constants.CFG_FIDO2_BY_DEFAULT, Constants.TRUE);
 
+		if (getSyncOutput())
+			setProperty(props, Constants.CFG_SYNC_OUTPUT, Constants.TRUE);
+
 		setProperty(props, Constants.SIGNATURE_PROFILE, getSignatureProfile().name());
 
 		setPropertyIfNotNull(props, Constants.CFG_LAST_DIRECTORY, getLastOpenedDirectory());
 
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try {
+			props.store(content, "Configuration file was generated!");
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
 
-		FileOutputStream outputstream = new FileOutputStream(configFile, false);
-
-		props.store(outputstream, "Configuration file was generated!");
-
-		log.info("Configuration file saved to " + configFile.getAbsolutePath());
+		return ConfigWriter.write(configFile, content.toByteArray()).thenRun(
+				() -> log.info("Configuration file saved to " + configFile.getAbsolutePath()));
 	}
 
 	static private <T> T fallThroughOnNull(T one, T two) { return (one != null) ? one : two; }
@@ -863,6 +877,22 @@ public class ConfigurationManager {
 		this.configurationOverlay.skipFinish = skipFinish;
 	}
 
+	public int getServicePort() {
+		return this.configurationOverlay.servicePort;
+	}
+
+	public void setServicePortOverlay(int port) {
+		this.configurationOverlay.servicePort = port;
+	}
+
+	public String getWatchFolder() {
+		return this.configurationOverlay.watchFolder;
+	}
+
+	public void setWatchFolderOverlay(String folder) {
+		this.configurationOverlay.watchFolder = folder;
+	}
+
 	public boolean getUseSignatureFields() {
 		return this.configuration.getUseSignatureFields();
 	}
@@ -913,6 +943,14 @@ public class ConfigurationManager {
 		return this.configuration.fido2ByDefault;
 	}
 
+	public void setSyncOutputPersistent(boolean bool) {
+		this.configuration.syncOutput = bool;
+	}
+
+	public boolean getSyncOutput() {
+		return this.configuration.syncOutput;
+	}
+
 	public void setLastOpenedDirectory(String path) {
 		this.configuration.lastOpenedDirectory = path;
 	}
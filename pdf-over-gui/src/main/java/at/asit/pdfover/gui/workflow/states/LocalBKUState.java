@@ -23,6 +23,8 @@ import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.eclipse.swt.SWT;
 
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.commons.utils.TaskExecutor;
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.gui.MainWindow.Buttons;
 import at.asit.pdfover.gui.MainWindowBehavior;
@@ -104,7 +106,14 @@ public class LocalBKUState extends State {
 
 				String sl_request = NULL_OPERATION_REQUEST;
 				method.addParameter("XMLRequest", sl_request);
-				int returnCode = client.executeMethod(method);
+				int returnCode;
+				try (CancellationToken.Registration abort = this.signingState.cancellation.onCancel(method::abort)) {
+					returnCode = client.executeMethod(method);
+				}
+				if (this.signingState.cancellation.isCancelled()) {
+					log.debug("Local BKU request cancelled");
+					return;
+				}
 
 				if (returnCode != HttpStatus.SC_OK) {
 					this.state.threadException = new HttpException(
@@ -118,11 +127,16 @@ public class LocalBKUState extends State {
 					this.signingState.useBase64Request = LocalBKUState.this.useBase64Request;
 				}
 			} catch (Exception e) {
+				if (this.signingState.cancellation.isCancelled()) {
+					log.debug("Local BKU request cancelled");
+					return;
+				}
 				log.error("SignLocalBKUThread: ", e);
 
 				this.state.threadException = e;
 			} finally {
-				this.state.updateStateMachine();
+				if (!this.signingState.cancellation.isCancelled())
+					this.state.updateStateMachine();
 			}
 		}
 
@@ -154,11 +168,10 @@ public class LocalBKUState extends State {
 
 		if ((signingState.signatureResponse == null)
 				&& this.threadException == null) {
-			Thread t = new Thread(new SignLocalBKUThread(this, signingState));
-			t.start();
+			TaskExecutor.submit("local-bku-request", new SignLocalBKUThread(this, signingState));
 			return;
 		}
-		signingState.bkuConnector = new LocalBKUConnector();
+		signingState.bkuConnector = new LocalBKUConnector(signingState.cancellation);
 
 		if (this.threadException != null) {
 			ErrorDialog dialog = new ErrorDialog(
@@ -189,6 +202,16 @@ public class LocalBKUState extends State {
 		// No composite - no cleanup necessary
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see at.asit.pdfover.gui.workflow.states.State#cancel()
+	 */
+	@Override
+	public void cancel() {
+		getStateMachine().status.cancelSigning();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -145,6 +145,21 @@ public class MobileBKUState extends State {
 		return this.signingState;
 	}
 
+	/**
+	 * @return whether the signing process was abandoned, e.g. because the user navigated away
+	 */
+	private boolean isCancelled() {
+		return (this.signingState != null) && this.signingState.cancellation.isCancelled();
+	}
+
+	/**
+	 * Leave a wait loop without touching the UI; it already belongs to another state
+	 */
+	private void throwIfCancelled() throws UserCancelledException {
+		if (isCancelled())
+			throw new UserCancelledException();
+	}
+
 	/**
 	 * Display an error message
 	 *
@@ -292,11 +307,12 @@ public class MobileBKUState extends State {
 				getStateMachine().display(ui);
 
 				Display display = getStateMachine().getMainShell().getDisplay();
-				while (!ui.userAck && !ui.userCancel) {
+				while (!ui.userAck && !ui.userCancel && !isCancelled()) {
 					if (!display.readAndDispatch()) {
 						display.sleep();
 					}
 				}
+				throwIfCancelled();
 			}
 
 			updateRememberPasswordSetting(ui.isRememberPassword(), !ui.userCancel);
@@ -341,11 +357,12 @@ public class MobileBKUState extends State {
 			getStateMachine().display(tan);
 
 			Display display = getStateMachine().getMainShell().getDisplay();
-			while (!tan.isDone()) {
+			while (!tan.isDone() && !isCancelled()) {
 				if (!display.readAndDispatch()) {
 					display.sleep();
 				}
 			}
+			throwIfCancelled();
 			getStateMachine().display(getWaitingComposite());
 
 			if (tan.isUserCancel())
@@ -401,11 +418,12 @@ public class MobileBKUState extends State {
 			MobileBKUQRComposite qr = getMobileBKUQRComposite();
 
 			Display display = getStateMachine().getMainShell().getDisplay();
-			while (!qr.isDone()) {
+			while (!qr.isDone() && !isCancelled()) {
 				if (!display.readAndDispatch()) {
 					display.sleep();
 				}
 			}
+			throwIfCancelled();
 
 			getStateMachine().display(this.getWaitingComposite());
 
@@ -461,10 +479,11 @@ public class MobileBKUState extends State {
 			WaitingForAppComposite wfa = getWaitingForAppComposite();
 
 			Display display = wfa.getDisplay();
-			while (!wfa.isDone()) {
+			while (!wfa.isDone() && !isCancelled()) {
 				if (!display.readAndDispatch())
 					display.sleep();
 			}
+			throwIfCancelled();
 
 			getStateMachine().display(this.getWaitingComposite());
 
@@ -521,10 +540,11 @@ public class MobileBKUState extends State {
 			MobileBKUFingerprintComposite bio = getMobileBKUFingerprintComposite();
 
 			Display display = bio.getDisplay();
-			while (!bio.isDone()) {
+			while (!bio.isDone() && !isCancelled()) {
 				if (!display.readAndDispatch())
 					display.sleep();
 			}
+			throwIfCancelled();
 
 			getStateMachine().display(this.getWaitingComposite());
 
@@ -572,10 +592,11 @@ public class MobileBKUState extends State {
 			getStateMachine().display(fido2);
 
 			Display display = fido2.getDisplay();
-			while (!fido2.isDone()) {
+			while (!fido2.isDone() && !isCancelled()) {
 				if (!display.readAndDispatch())
 					display.sleep();
 			}
+			throwIfCancelled();
 
 			getStateMachine().display(this.getWaitingComposite());
 
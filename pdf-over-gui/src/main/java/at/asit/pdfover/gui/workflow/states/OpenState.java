@@ -16,39 +16,38 @@
 package at.asit.pdfover.gui.workflow.states;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-
-import at.gv.egiz.pdfas.lib.impl.pdfbox2.placeholder.SignatureFieldsAndPlaceHolderExtractor;
-
-import org.apache.pdfbox.pdmodel.PDDocument;
+import java.util.concurrent.CancellationException;
 
 //Imports
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.MessageBox;
 
-import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.commons.utils.TaskExecutor;
 import at.asit.pdfover.gui.MainWindow.Buttons;
 import at.asit.pdfover.gui.bku.LocalBKUConnector;
 import at.asit.pdfover.gui.MainWindowBehavior;
 import at.asit.pdfover.gui.PlaceholderSelectionGui;
 import at.asit.pdfover.gui.composites.DataSourceSelectComposite;
+import at.asit.pdfover.gui.composites.PlaceholderScanComposite;
 import at.asit.pdfover.gui.utils.SWTUtils;
 import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.commons.Profile;
 import at.asit.pdfover.gui.workflow.StateMachine;
 import at.asit.pdfover.gui.workflow.Status;
 import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
+import at.asit.pdfover.signer.DocumentAnalysis;
 import at.asit.pdfover.signer.SignaturePosition;
+import at.asit.pdfover.signer.pdfas.PdfAs4PlaceholderScanner;
 import at.gv.egiz.pdfas.lib.impl.placeholder.SignaturePlaceholderData;
 import lombok.extern.slf4j.Slf4j;
 
-import org.apache.commons.configuration.PropertiesConfiguration;
-import org.apache.commons.configuration.PropertiesConfigurationLayout;
-
 
 /**
  * Selects the data source for the signature process.
@@ -63,8 +62,6 @@ public class OpenState extends State {
 		super(stateMachine);
 	}
 
-	private static final String advancedConfig = Constants.CONFIG_DIRECTORY + File.separator + "/cfg/advancedconfig.properties";
-
 	private DataSourceSelectComposite selectionComposite = null;
 
 	private DataSourceSelectComposite getSelectionComposite() {
@@ -75,11 +72,163 @@ public class OpenState extends State {
 		return this.selectionComposite;
 	}
 
+	private PlaceholderScanComposite scanComposite = null;
+
+	private PlaceholderScanComposite getScanComposite() {
+		if (this.scanComposite == null) {
+			this.scanComposite =
+					getStateMachine().createComposite(PlaceholderScanComposite.class, SWT.RESIZE, this);
+			this.scanComposite.setCancelListener(this::skipPlaceholderScan);
+		}
+		return this.scanComposite;
+	}
+
+	/**
+	 * Placeholders found in the opened document
+	 */
+	private static final class PlaceholderScanResult {
+		List<String> emptySignatureFields = Collections.emptyList();
+		SignaturePlaceholderData unusedPlaceholder = null;
+	}
+
+	/**
+	 * Searches the document for placeholders, off the UI thread
+	 */
+	private final class PlaceholderScanThread implements Runnable {
+
+		private final File document;
+		private final boolean useSignatureFields;
+		private final boolean useMarker;
+		private final CancellationToken cancellation;
+
+		/**
+		 * @param document the document to scan
+		 * @param useSignatureFields whether to look for empty signature fields
+		 * @param useMarker whether to look for QR code markers (if useSignatureFields is false)
+		 * @param cancellation cancelled if the scan result is no longer needed
+		 */
+		public PlaceholderScanThread(File document, boolean useSignatureFields, boolean useMarker, CancellationToken cancellation) {
+			this.document = document;
+			this.useSignatureFields = useSignatureFields;
+			this.useMarker = useMarker;
+			this.cancellation = cancellation;
+		}
+
+		@Override
+		public void run() {
+			PlaceholderScanResult result = new PlaceholderScanResult();
+			long startedAt = System.nanoTime();
+			try {
+				// re-opened documents need not be scanned again
+				DocumentAnalysis analysis = DocumentAnalysis.of(this.document);
+				if (this.useSignatureFields && (analysis.emptySignatureFields != null)) {
+					result.emptySignatureFields = analysis.emptySignatureFields;
+				} else if (!this.useSignatureFields && this.useMarker && analysis.markerScanned) {
+					result.unusedPlaceholder = analysis.unusedMarker;
+				} else if (this.useSignatureFields || this.useMarker) {
+					PdfAs4PlaceholderScanner scanner = new PdfAs4PlaceholderScanner(
+							Files.readAllBytes(this.document.toPath()), this.cancellation);
+					this.cancellation.throwIfCancelled();
+					//first check the signature fields placeholder
+					if (this.useSignatureFields) {
+						result.emptySignatureFields = scanner.findEmptySignatureFields();
+						analysis.emptySignatureFields = result.emptySignatureFields;
+					// second check if qr code placeholder search is enabled
+					} else {
+						result.unusedPlaceholder = scanner.findFirstUnusedPlaceholder((done, total) -> {
+							Display.getDefault().asyncExec(() -> {
+								if (!this.cancellation.isCancelled() && (OpenState.this.scanComposite != null))
+									OpenState.this.scanComposite.setProgress(done, total);
+							});
+						});
+						analysis.markerScanned = true;
+						analysis.unusedMarker = result.unusedPlaceholder;
+						if (scanner.getExistingSignatureLocations() != null)
+							analysis.existingSignatureLocations = scanner.getExistingSignatureLocations();
+					}
+					analysis.save();
+				}
+			} catch (CancellationException e) {
+				// handled below
+			} catch (IOException | RuntimeException e) {
+				// fail silently, just proceed with the usual process
+				log.debug("Placeholder scan failed", e);
+			}
+
+			if (this.cancellation.isCancelled()) {
+				log.debug("Placeholder scan cancelled");
+				return;
+			}
+			log.debug("Placeholder scan took {} ms", (System.nanoTime() - startedAt) / 1000000);
+			OpenState.this.scanResult = result;
+			updateStateMachine();
+		}
+	}
+
+	/** result of the placeholder scan for the current document; null while not (yet) available */
+	private volatile PlaceholderScanResult scanResult = null;
+	/** set while a placeholder scan is in progress */
+	private CancellationToken scanCancellation = null;
+	private boolean initialized = false;
+
+	/**
+	 * Stop waiting for the placeholder scan, and continue as if no placeholders had been found
+	 */
+	private void skipPlaceholderScan() {
+		if (this.scanCancellation == null)
+			return;
+		this.scanCancellation.cancel();
+		this.scanCancellation = null;
+		this.scanResult = new PlaceholderScanResult();
+		updateStateMachine();
+	}
+
+	/**
+	 * @return the current document followed by the pending ones
+	 */
+	private static List<File> getBatch(Status status) {
+		List<File> batch = new ArrayList<>();
+		batch.add(status.document);
+		batch.addAll(status.pendingDocuments);
+		return batch;
+	}
+
+	/**
+	 * Offer to resume the batch that was interrupted when PDF-Over last exited
+	 */
+	private void resumeBatch(Status status) {
+		List<File> unfinished = status.journal.getUnfinished();
+		if (unfinished.isEmpty()) {
+			status.journal.discard();
+			return;
+		}
+		MessageBox dialog = new MessageBox(getStateMachine().getMainShell(), SWT.ICON_QUESTION | SWT.YES | SWT.NO);
+		SWTUtils.setLocalizedText(dialog, "dataSourceSelection.resumeBatchTitle");
+		dialog.setMessage(Messages.formatString("dataSourceSelection.resumeBatchText",
+				unfinished.size(), status.journal.getDocumentCount()));
+		if (dialog.open() != SWT.YES) {
+			status.journal.discard();
+			return;
+		}
+		status.journal.resume(unfinished);
+		status.document = unfinished.get(0);
+		status.pendingDocuments.addAll(unfinished.subList(1, unfinished.size()));
+	}
+
+	/**
+	 * Go back to document selection
+	 */
+	private void discardDocument() {
+		getStateMachine().status.document = null;
+		this.scanResult = null;
+		getStateMachine().display(this.getSelectionComposite());
+	}
+
 	@Override
 	public void run() {
 		ConfigurationManager config = getStateMachine().configProvider;
 		Status status = getStateMachine().status;
-		if (!(status.getPreviousState() instanceof PrepareConfigurationState)
+		if (!this.initialized && !(status.getPreviousState() instanceof PrepareConfigurationState)
 				&& !(status.getPreviousState() instanceof OpenState)) {
 			status.bku = config.getDefaultBKU();
 			
@@ -95,6 +244,14 @@ public class OpenState extends State {
 			/* ensure that files get closed */
 			status.getPreviousState().cleanUp();
 		}
+		if (!this.initialized && (status.getPreviousState() instanceof PrepareConfigurationState)) {
+			if (status.document == null)
+				resumeBatch(status);
+			else
+				status.journal.start(getBatch(status));
+		}
+		/* run() is called again when the placeholder scan completes; don't reset the document then */
+		this.initialized = true;
 
 		/* force static initialization and start polling */
 		LocalBKUConnector.IsAvailable();
@@ -119,6 +276,7 @@ public class OpenState extends State {
 				// Not selected yet
 				return;
 			}
+			status.journal.start(getBatch(status));
 
 			config.setLastOpenedDirectory(status.document.toPath().toAbsolutePath().getParent().toString());
 		}
@@ -127,129 +285,105 @@ public class OpenState extends State {
 		// scan for signature placeholders
 		// - see if we want to scan for placeholders in the settings
 		if (config.getEnablePlaceholderUsage()) {
-			try (PDDocument pddocument = PDDocument.load(getStateMachine().status.document)) {
-				// - scan for placeholders
-				boolean useSignatureFields = config.getUseSignatureFields();
-				boolean useMarker = config.getUseMarker();
-				log.debug("Placeholder usage enabled. Signature fields: {}, QR Markers: {}", useSignatureFields, useMarker);
-				//first check the signature fields placeholder
-				if (useSignatureFields) {
-
-					List<String> fields = SignatureFieldsAndPlaceHolderExtractor.findEmptySignatureFields(pddocument);
-
-					if (fields.size() > 0) {
-						while (true)
-						{
-							// create a dialog with ok and cancel buttons and a question
-							// icon
-							MessageBox dialog = new MessageBox(getStateMachine().getMainShell(),
-									SWT.ICON_QUESTION | SWT.YES | SWT.NO | SWT.CANCEL);
-							SWTUtils.setLocalizedText(dialog, "dataSourceSelection.usePlaceholderTitle");
-							dialog.setMessage(Messages.getString("dataSourceSelection.usePlaceholderText"));
-
-							// open dialog and await user selection
-							int result = dialog.open();
-							if (result == SWT.YES) {
-
-								if (fields.size() == 1) {
-									addPlaceholderSelectionToConfig(fields.get(0));
-									this.setNextState(new BKUSelectionState(getStateMachine()));
-									return;
-
-								} else if (fields.size() > 1) {
-
-									PlaceholderSelectionGui gui = new PlaceholderSelectionGui(
-											getStateMachine().getMainShell(), 65570, "text",
-											"select the fields", fields);
-									int res = gui.open();
-									if (res != -1) {
-										getStateMachine().status.searchForPlacehoderSignature = true;
-										addPlaceholderSelectionToConfig(fields.get(res));
-										this.setNextState(new BKUSelectionState(getStateMachine()));
-									}
-									else
-										continue;
-								}
-
-							} else if (result == SWT.NO) {
-								getStateMachine().status.searchForPlacehoderSignature = false;
-							} else {
-								status.document = null;
-								return;
-							}
-							break;
-						}
-					}
-					// second check if qr code placeholder search is enabled
-				} else if (useMarker) {
-
-					SignaturePlaceholderData signaturePlaceholderData = SignatureFieldsAndPlaceHolderExtractor.getNextUnusedSignaturePlaceHolder(pddocument);
-
-					if (null != signaturePlaceholderData) {
-
-						// create a dialog with ok and cancel buttons and a question icon
-						MessageBox dialog = new MessageBox(getStateMachine().getMainShell(),
-								SWT.ICON_QUESTION | SWT.YES | SWT.NO | SWT.CANCEL);
-						SWTUtils.setLocalizedText(dialog, "dataSourceSelection.usePlaceholderTitle");
-						dialog.setMessage(Messages.getString("dataSourceSelection.usePlaceholderText"));
-
-						// open dialog and await user selection
-						int result = dialog.open();
-						if (result == SWT.YES) {
-
-							// if the user chooses to use the signature placeholder
-							// - fill the position information so that we skip to
-							// the
-							// next stages without breaking stuff
-							status.signaturePosition = new SignaturePosition(
-									signaturePlaceholderData.getTablePos().getPosX(),
-									signaturePlaceholderData.getTablePos().getPosY(),
-									signaturePlaceholderData.getTablePos().getPage());
+			PlaceholderScanResult scan = this.scanResult;
+			if (scan == null) {
+				// - scan for placeholders in the background, and come back here once done
+				if (this.scanCancellation == null) {
+					boolean useSignatureFields = config.getUseSignatureFields();
+					boolean useMarker = config.getUseMarker();
+					log.debug("Placeholder usage enabled. Signature fields: {}, QR Markers: {}", useSignatureFields, useMarker);
+					this.scanCancellation = new CancellationToken();
+					TaskExecutor.submit("placeholder-scan", new PlaceholderScanThread(status.document,
+							useSignatureFields, useMarker, this.scanCancellation));
+				}
+				getStateMachine().display(this.getScanComposite());
+				return;
+			}
+			this.scanCancellation = null;
+			status.signatureFieldName = null;
+
+			List<String> fields = scan.emptySignatureFields;
+			SignaturePlaceholderData signaturePlaceholderData = scan.unusedPlaceholder;
+			//first check the signature fields placeholder
+			if (fields.size() > 0) {
+				while (true)
+				{
+					// create a dialog with ok and cancel buttons and a question
+					// icon
+					MessageBox dialog = new MessageBox(getStateMachine().getMainShell(),
+							SWT.ICON_QUESTION | SWT.YES | SWT.NO | SWT.CANCEL);
+					SWTUtils.setLocalizedText(dialog, "dataSourceSelection.usePlaceholderTitle");
+					dialog.setMessage(Messages.getString("dataSourceSelection.usePlaceholderText"));
+
+					// open dialog and await user selection
+					int result = dialog.open();
+					if (result == SWT.YES) {
+
+						if (fields.size() == 1) {
+							status.signatureFieldName = fields.get(0);
+							this.setNextState(new BKUSelectionState(getStateMachine()));
+							return;
 
-							getStateMachine().status.searchForPlacehoderSignature = true;
+						} else if (fields.size() > 1) {
 
-						} else if (result == SWT.NO) {
-							getStateMachine().status.searchForPlacehoderSignature = false;
-						} else {
-							status.document = null;
-							return;
+							PlaceholderSelectionGui gui = new PlaceholderSelectionGui(
+									getStateMachine().getMainShell(), 65570, "text",
+									"select the fields", fields);
+							int res = gui.open();
+							if (res != -1) {
+								getStateMachine().status.searchForPlacehoderSignature = true;
+								status.signatureFieldName = fields.get(res);
+								this.setNextState(new BKUSelectionState(getStateMachine()));
+							}
+							else
+								continue;
 						}
-						// TODO: why does this use a different logic (via PositioningState) than the signature placeholders?
-					}
 
+					} else if (result == SWT.NO) {
+						getStateMachine().status.searchForPlacehoderSignature = false;
+					} else {
+						discardDocument();
+						return;
+					}
+					break;
+				}
+			// second check if qr code placeholder search is enabled
+			} else if (null != signaturePlaceholderData) {
+
+				// create a dialog with ok and cancel buttons and a question icon
+				MessageBox dialog = new MessageBox(getStateMachine().getMainShell(),
+						SWT.ICON_QUESTION | SWT.YES | SWT.NO | SWT.CANCEL);
+				SWTUtils.setLocalizedText(dialog, "dataSourceSelection.usePlaceholderTitle");
+				dialog.setMessage(Messages.getString("dataSourceSelection.usePlaceholderText"));
+
+				// open dialog and await user selection
+				int result = dialog.open();
+				if (result == SWT.YES) {
+
+					// if the user chooses to use the signature placeholder
+					// - fill the position information so that we skip to
+					// the
+					// next stages without breaking stuff
+					status.signaturePosition = new SignaturePosition(
+							signaturePlaceholderData.getTablePos().getPosX(),
+							signaturePlaceholderData.getTablePos().getPosY(),
+							signaturePlaceholderData.getTablePos().getPage());
+
+					getStateMachine().status.searchForPlacehoderSignature = true;
+
+				} else if (result == SWT.NO) {
+					getStateMachine().status.searchForPlacehoderSignature = false;
 				} else {
-					// Do nothing
+					discardDocument();
+					return;
 				}
-
-			} catch (IOException e) {
-				// fail silently. In case we got here no dialog has been shown.
-				// Just
-				// proceed with the usual process.
+				// TODO: why does this use a different logic (via PositioningState) than the signature placeholders?
 			}
 		}
 
 		this.setNextState(new PositioningState(getStateMachine()));
 	}
 
-	/**
-	 * The selected placeholder is added to the configuration file
-	 * @param selection
-	 */
-	private void addPlaceholderSelectionToConfig(String selection) {
-		try {
-	        PropertiesConfiguration config = new PropertiesConfiguration();
-	        PropertiesConfigurationLayout layout = new PropertiesConfigurationLayout(config);
-	        layout.load(new InputStreamReader(new FileInputStream(advancedConfig)));
-
-	        config.setProperty(Constants.SIGNATURE_FIELD_NAME_CONF, selection);
-	        layout.save(new FileWriter(advancedConfig, false));
-
-		} catch (Exception e) {
-			log.error("Failed to add placeholder selection to config", e);
-		}
-
-	}
-
 	/**
 	 * Open the input document selection dialog
 	 */
@@ -265,6 +399,17 @@ public class OpenState extends State {
 	public void cleanUp() {
 		if (this.selectionComposite != null)
 			this.selectionComposite.dispose();
+		if (this.scanComposite != null)
+			this.scanComposite.dispose();
+	}
+
+	/* (non-Javadoc)
+	 * @see at.asit.pdfover.gui.workflow.states.State#cancel()
+	 */
+	@Override
+	public void cancel() {
+		if (this.scanCancellation != null)
+			this.scanCancellation.cancel();
 	}
 
 	/* (non-Javadoc)
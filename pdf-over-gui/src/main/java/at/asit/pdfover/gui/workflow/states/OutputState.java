@@ -17,6 +17,7 @@ package at.asit.pdfover.gui.workflow.states;
 
 //Imports
 import java.io.File;
+import java.util.ArrayList;
 
 import org.eclipse.swt.SWT;
 
@@ -27,6 +28,7 @@ import at.asit.pdfover.gui.controls.ErrorDialog;
 import at.asit.pdfover.gui.controls.Dialog.BUTTONS;
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.Messages;
+import at.asit.pdfover.gui.utils.StartupMetrics;
 import at.asit.pdfover.gui.workflow.StateMachine;
 import at.asit.pdfover.gui.workflow.Status;
 import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
@@ -62,12 +64,13 @@ public class OutputState extends State {
 
 			this.outputComposite.setOutputDir(config.getDefaultOutputFolder());
 			this.outputComposite.setSaveFilePostFix(config.getSaveFilePostFix());
+			this.outputComposite.setSyncOutput(config.getSyncOutput());
 			this.outputComposite.setTempDir(tmpDir.getAbsolutePath());
 			this.outputComposite.setInputFile(status.document);
 
 			this.outputComposite.setSignedDocument(status.signResult.getSignedDocument());
 
-			// Save signed document
+			// Save signed document (in the background, the state machine is updated once it is done)
 			this.outputComposite.saveDocument();
 		}
 
@@ -91,7 +94,10 @@ public class OutputState extends State {
 
 		OutputComposite outputComposite = this.getOutputComposite();
 
+		// not while the signed document is still being written
 		if (outputComposite.getSaveSuccessful()) {
+			StartupMetrics.mark(StartupMetrics.FIRST_SIGNATURE);
+			status.journal.saved(status.document, outputComposite.getOutputFile());
 			if (!getStateMachine().status.pendingDocuments.isEmpty()) {
 				this.setNextState(new OpenState(getStateMachine()));
 				return;
@@ -137,13 +143,18 @@ public class OutputState extends State {
 	}
 
 	public void enqueueNewDocuments(@NonNull String[] pathStrs) {
+		var journal = getStateMachine().status.journal;
+		var queue = getStateMachine().status.pendingDocuments;
 		for (String pathStr : pathStrs) {
 			if (pathStr == null) continue;
 			var path = new File(pathStr);
-			var queue = getStateMachine().status.pendingDocuments;
-			if (!queue.contains(path))
+			if (!queue.contains(path)) {
 				queue.add(path);
+				journal.enqueue(path);
+			}
 		}
+		if (!journal.isActive())
+			journal.start(new ArrayList<>(queue));
 		if (outputComposite.getSaveSuccessful()) {
 			this.setNextState(new OpenState(getStateMachine()));
 			this.updateStateMachine();
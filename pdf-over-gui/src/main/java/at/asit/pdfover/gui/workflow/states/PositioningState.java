@@ -18,8 +18,12 @@ package at.asit.pdfover.gui.workflow.states;
 //Imports
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
 import org.eclipse.swt.SWT;
 
@@ -32,6 +36,7 @@ import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.gui.workflow.StateMachine;
 import at.asit.pdfover.gui.workflow.Status;
 import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
+import at.asit.pdfover.signer.DocumentAnalysis;
 import at.asit.pdfover.signer.Emblem;
 import at.asit.pdfover.signer.SignaturePosition;
 import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
@@ -58,6 +63,11 @@ public class PositioningState extends State {
 
 	private File loadedDocumentPath = null;
 	private PDDocument document = null;
+	/** page sizes of {@link #document}, from the document analysis index */
+	private List<DocumentAnalysis.PageInfo> documentPages = null;
+
+	/** when the placeholder was first requested, for time-to-first-preview logging */
+	private long previewRequestedAt = 0;
 
 	private void closePDFDocument() {
 
@@ -66,12 +76,16 @@ public class PositioningState extends State {
 			try { this.document.close(); } catch (IOException e) { log.warn("Failed to close PDF", e); }
 			this.document = null;
 		}
+		this.documentPages = null;
 		this.loadedDocumentPath = null;
 	}
 
 	private void openPDFDocument() throws IOException {
 		closePDFDocument();
 		File documentPath = getStateMachine().status.document;
+		DocumentAnalysis analysis = DocumentAnalysis.of(documentPath);
+		if (Boolean.TRUE.equals(analysis.encrypted))
+			throw new IOException(Messages.getString("error.PDFPwdProtected"));
 		PDDocument pdf = null;
 		try
 		{
@@ -82,26 +96,34 @@ public class PositioningState extends State {
 				throw new IOException();
 		}
 		catch (InvalidPasswordException e) {
+			analysis.encrypted = true;
+			analysis.save();
 			throw new IOException(Messages.getString("error.PDFPwdProtected"), e);
 		}
 		catch (IOException e) {
 			throw new IOException(Messages.getString("error.MayNotBeAPDF"), e);
 		}
+		if (analysis.pages == null) {
+			List<DocumentAnalysis.PageInfo> pages = new ArrayList<>(pdf.getNumberOfPages());
+			for (PDPage page : pdf.getPages()) {
+				PDRectangle box = page.getCropBox();
+				pages.add(new DocumentAnalysis.PageInfo(box.getWidth(), box.getHeight(), page.getRotation()));
+			}
+			analysis.encrypted = false;
+			analysis.pages = pages;
+			analysis.save();
+		}
 		this.document = pdf;
+		this.documentPages = analysis.pages;
 		this.loadedDocumentPath = documentPath;
 	}
 
-	private PositioningComposite getPositioningComposite(PDDocument document) {
-		StateMachine stateMachine = getStateMachine();
-		if (this.positionComposite == null) {
-			this.positionComposite =
-					stateMachine.createComposite(PositioningComposite.class, SWT.RESIZE, this);
-			log.debug("Displaying " +  stateMachine.status.document);
-			this.positionComposite.displayDocument(document);
-		}
-
-		ConfigurationManager config = stateMachine.configProvider;
-
+	/**
+	 * Build the signature parameters that determine the placeholder for the current configuration
+	 * @param config the configuration
+	 * @return the placeholder parameters (without document or position)
+	 */
+	static PdfAs4SignatureParameter getPlaceholderParameter(ConfigurationManager config) {
 		PdfAs4SignatureParameter param = new PdfAs4SignatureParameter();
 		param.signatureProfile = config.getSignatureProfile();
 
@@ -114,8 +136,25 @@ public class PositioningState extends State {
 		param.signatureLanguage = config.getSignatureLocale().getLanguage();
 		param.enablePDFACompat = config.getSignaturePdfACompat();
 		param.targetLogoSize = Math.min(120.0, config.getLogoOnlyTargetSize()); // TODO WORKAROUND FOR #117
+		return param;
+	}
+
+	private PositioningComposite getPositioningComposite(PDDocument document) {
+		StateMachine stateMachine = getStateMachine();
+		if (this.positionComposite == null) {
+			this.positionComposite =
+					stateMachine.createComposite(PositioningComposite.class, SWT.RESIZE, this);
+			log.debug("Displaying " +  stateMachine.status.document);
+			this.positionComposite.displayDocument(document, this.documentPages);
+		}
 
-		PdfAs4SignaturePlaceholder.For(param, (p) -> {
+		final boolean logPreviewTime = (this.previewRequestedAt == 0);
+		if (logPreviewTime)
+			this.previewRequestedAt = System.nanoTime();
+		PdfAs4SignaturePlaceholder.For(getPlaceholderParameter(stateMachine.configProvider), (p) -> {
+			if (logPreviewTime)
+				log.info("Signature preview available {} ms after positioning was shown",
+						(System.nanoTime() - this.previewRequestedAt) / 1000000);
 			if (p.hasImage())
 				this.positionComposite.setPlaceholder(p.getAWTImage());
 		});
@@ -20,29 +20,30 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 
 import org.eclipse.swt.SWT;
 
 import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.gui.Main;
 import at.asit.pdfover.gui.cliarguments.*;
 import at.asit.pdfover.gui.controls.Dialog.BUTTONS;
 import at.asit.pdfover.gui.controls.ErrorDialog;
 import at.asit.pdfover.gui.exceptions.InitializationException;
 import at.asit.pdfover.commons.Messages;
+import at.asit.pdfover.gui.utils.ConfigProvisioner;
 import at.asit.pdfover.gui.utils.UpdateCheckManager;
 import at.asit.pdfover.gui.utils.VersionComparator;
-import at.asit.pdfover.gui.utils.Zipper;
 import at.asit.pdfover.gui.workflow.StateMachine;
 import at.asit.pdfover.gui.workflow.Status;
 import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
 import at.asit.pdfover.signer.SignaturePosition;
+import at.asit.pdfover.signer.pdfas.PdfAs4Helper;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignaturePlaceholder;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -53,6 +54,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class PrepareConfigurationState extends State {
 
+	/** init task: extract or upgrade the PDF-AS configuration */
+	public static final String INIT_PDFAS_CONFIG = "pdfas-config";
+	/** init task: create the PDF-AS instance */
+	public static final String INIT_PDFAS = "pdfas";
+
 	private ArgumentHandler handler;
 
 	private ArgumentHandler configFileHandler;
@@ -81,6 +87,9 @@ public class PrepareConfigurationState extends State {
 		this.handler.addCLIArgument(EmblemArgument.class);
 		this.handler.addCLIArgument(AutomaticPositioningArgument.class);
 		this.handler.addCLIArgument(SkipFinishArgument.class);
+		this.handler.addCLIArgument(FlightRecordingArgument.class);
+		this.handler.addCLIArgument(ServiceArgument.class);
+		this.handler.addCLIArgument(WatchFolderArgument.class);
 		// adding config file argument to this handler so it appears in help
 		this.handler.addCLIArgument(ConfigFileArgument.class);
 		this.handler.addCLIArgument(InvisibleProfile.class);
@@ -105,7 +114,7 @@ public class PrepareConfigurationState extends State {
 		}
 	}
 
-	private void ensurePdfOverConfigExists() throws InitializationException {
+	private static void ensurePdfOverConfigExists() throws InitializationException {
 		try {
 			File pdfOverConfig = new File(Constants.CONFIG_DIRECTORY + File.separator + Constants.DEFAULT_CONFIG_FILENAME);
 			if (!pdfOverConfig.exists())
@@ -116,20 +125,6 @@ public class PrepareConfigurationState extends State {
 		}
 	}
 
-	private void unzipPdfAsConfig(File configDir) throws InitializationException {
-		InputStream is = getClass().getResourceAsStream(Constants.RES_CFG_ZIP);
-
-		try {
-			Zipper.unzip(is, configDir.getAbsolutePath());
-		} catch (IOException e) {
-			log.error(
-					"Failed to create local configuration directory!", e);
-			throw new InitializationException(
-					"Failed to create local configuration directory!",
-					e);
-		}
-	}
-
 	private static void updateVersionFile(File configDir) throws InitializationException {
 		File versionFile = new File(configDir, Constants.CONFIG_VERSION_FILENAME);
 		try {
@@ -146,25 +141,48 @@ public class PrepareConfigurationState extends State {
 		}
 	}
 
-	private void createConfiguration(File configDir) throws InitializationException {
-		boolean allOK = false;
+	/**
+	 * Create the configuration directory and an empty PDF-Over configuration, if necessary
+	 * @return whether the configuration had to be created
+	 */
+	private static boolean createConfigurationIfMissing(File configDir) throws InitializationException {
+		File configFile = new File(configDir, Constants.DEFAULT_CONFIG_FILENAME);
+		if (configDir.exists() && configFile.exists()) {
+			log.debug("Configuration directory exists!");
+			return false;
+		}
 
 		log.info("Creating configuration directory");
 		if (!configDir.exists()) {
 			configDir.mkdir();
 		}
+		ensurePdfOverConfigExists();
+		return true;
+	}
 
-		try {
-			ensurePdfOverConfigExists();
-			unzipPdfAsConfig(configDir);
-			updateVersionFile(configDir);
-
-			allOK = true;
-		} finally {
-			if (!allOK) {
-				configDir.delete();
-			}
+	/**
+	 * Extract the PDF-AS configuration if it is missing or outdated (slow, runs as init task)
+	 * @param created whether the configuration directory was just created
+	 */
+	private static void provisionPdfAsConfiguration(File configDir, boolean created) throws InitializationException {
+		if (!created) {
+			// Check PDF-AS config version
+			File versionFile = new File(configDir, Constants.CONFIG_VERSION_FILENAME);
+			String configVersion = getVersion(versionFile);
+			if (configVersion != null && !VersionComparator.lessThan(configVersion, Constants.MIN_PDF_AS_CONFIG_VERSION))
+				return;
 		}
+		updatePdfAsConfiguration(configDir);
+	}
+
+	/**
+	 * Create the configuration directory and extract the PDF-AS configuration if necessary (blocking,
+	 * for running without the user interface)
+	 * @param configDir the configuration directory
+	 * @throws InitializationException
+	 */
+	public static void prepareConfigurationDirectory(File configDir) throws InitializationException {
+		provisionPdfAsConfiguration(configDir, createConfigurationIfMissing(configDir));
 	}
 
 	/**
@@ -203,40 +221,31 @@ public class PrepareConfigurationState extends State {
 	}
 
 	/**
-	 * Backup old configuration, create new
+	 * Extract the files of the bundled PDF-AS configuration that are missing or changed,
+	 * backing up those that get overwritten
 	 * @param configDir
 	 * @throws InitializationException
 	 */
-	private void backupAndCreatePdfAsConfiguration(File configDir) throws InitializationException {
-		try {
-			File existingConfig = new File(configDir + File.separator + "cfg");
-			File backup = null;
-			if (existingConfig.exists()) {
-				backup = File.createTempFile(Constants.PDF_AS_CONFIG_BACKUP_FILENAME, ".zip");
-				try (OutputStream os = new FileOutputStream(backup)) {
-					Zipper.zip(existingConfig.getPath(), os, true);
-				}
-			}
-
-			unzipPdfAsConfig(configDir);
-
-			if (backup != null) {
-				File b = new File(configDir, Constants.PDF_AS_CONFIG_BACKUP_FILENAME + ".zip");
-				int i = 1;
-				while (b.exists()) {
-					b = new File(configDir, Constants.PDF_AS_CONFIG_BACKUP_FILENAME + i++ + ".zip");
-				}
-				backup.renameTo(b);
-			}
+	private static void updatePdfAsConfiguration(File configDir) throws InitializationException {
+		File backup = new File(configDir, Constants.PDF_AS_CONFIG_BACKUP_FILENAME + ".zip");
+		int i = 1;
+		while (backup.exists()) {
+			backup = new File(configDir, Constants.PDF_AS_CONFIG_BACKUP_FILENAME + i++ + ".zip");
+		}
 
-			updateVersionFile(configDir);
-		} catch (FileNotFoundException e) {
-			log.error("Backup file not found", e);
-			throw new InitializationException("Backup file not found", e);
+		try (InputStream manifest = PrepareConfigurationState.class.getResourceAsStream(Constants.RES_CFG_MANIFEST);
+				InputStream zip = PrepareConfigurationState.class.getResourceAsStream(Constants.RES_CFG_ZIP)) {
+			if (manifest == null || zip == null)
+				throw new FileNotFoundException(Constants.RES_CFG_ZIP);
+			long startedAt = System.nanoTime();
+			int extracted = new ConfigProvisioner(manifest).provision(zip, configDir, "cfg", backup);
+			log.info("Updated {} PDF-AS configuration files in {} ms", extracted, (System.nanoTime() - startedAt) / 1000000);
 		} catch (IOException e) {
-			log.error("Error creating configuration backup", e);
-			throw new InitializationException("Error creating configuration backup", e);
+			log.error("Failed to update PDF-AS configuration", e);
+			throw new InitializationException("Failed to update PDF-AS configuration", e);
 		}
+
+		updateVersionFile(configDir);
 	}
 
 	@Override
@@ -246,19 +255,12 @@ public class PrepareConfigurationState extends State {
 			StateMachine stateMachine = getStateMachine();
 			ConfigurationManager config = stateMachine.configProvider;
 			File configDir = new File(Constants.CONFIG_DIRECTORY);
-			File configFile = new File(configDir, Constants.DEFAULT_CONFIG_FILENAME);
-			if (!configDir.exists() || !configFile.exists()) {
-				log.debug("Creating configuration file");
-				createConfiguration(configDir);
-			} else {
-				log.debug("Configuration directory exists!");
-				// Check PDF-AS config version
-				File versionFile = new File(configDir, Constants.CONFIG_VERSION_FILENAME);
-				String configVersion = getVersion(versionFile);
-				if (configVersion == null || VersionComparator.lessThan(configVersion, Constants.MIN_PDF_AS_CONFIG_VERSION))
-					backupAndCreatePdfAsConfiguration(configDir);
-			}
+			final boolean created = createConfigurationIfMissing(configDir);
 
+			// PDF-AS is set up in the background: its configuration while ours is read, the instance while the main window is shown
+			stateMachine.startup
+				.add(INIT_PDFAS_CONFIG, () -> provisionPdfAsConfiguration(configDir, created))
+				.add(INIT_PDFAS, PdfAs4Helper::getPdfAs, INIT_PDFAS_CONFIG, Main.INIT_IAIK);
 
 			// Read cli arguments for config file location first
 			try {
@@ -299,6 +301,18 @@ public class PrepareConfigurationState extends State {
 				stateMachine.exit();
 			}
 
+			// everything after this point may need PDF-AS' configuration and the IAIK provider
+			stateMachine.startup.await(INIT_PDFAS_CONFIG);
+			stateMachine.startup.await(Main.INIT_IAIK);
+
+			// Start generating the signature placeholder now, it is slow and will most likely be needed for positioning
+			if (config.getSignatureProfile().isVisibleSignature()) {
+				final long precomputeStart = System.nanoTime();
+				PdfAs4SignaturePlaceholder.For(PositioningState.getPlaceholderParameter(config), (p) -> {
+					log.debug("Signature placeholder precomputed in {} ms", (System.nanoTime() - precomputeStart) / 1000000);
+				});
+			}
+
 			// Check for updates
 			if (config.getUpdateCheck())
 				UpdateCheckManager.checkNow(stateMachine.getMainShell());
@@ -18,9 +18,12 @@ package at.asit.pdfover.gui.workflow.states;
 //Imports
 import java.net.Authenticator;
 import java.net.PasswordAuthentication;
+import java.util.concurrent.CancellationException;
 
 import org.eclipse.swt.SWT;
 
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.commons.utils.TaskExecutor;
 import at.asit.pdfover.gui.MainWindow.Buttons;
 import at.asit.pdfover.gui.MainWindowBehavior;
 import at.asit.pdfover.gui.composites.WaitingComposite;
@@ -124,6 +127,8 @@ public class PrepareSigningState extends State {
 					});
 				}
 
+				this.state.cancellation.throwIfCancelled();
+
 				if (this.state.signatureParameter == null) {
 					this.state.signatureParameter = new PdfAs4SignatureParameter();
 				}
@@ -143,18 +148,25 @@ public class PrepareSigningState extends State {
 				}
 
 				this.state.signatureParameter.searchForPlaceholderSignatures = getStateMachine().status.searchForPlacehoderSignature;
+				this.state.signatureParameter.signatureFieldName = getStateMachine().status.signatureFieldName;
 				this.state.signatureParameter.signatureLanguage = configuration.getSignatureLocale().getLanguage();
 				this.state.signatureParameter.enablePDFACompat = configuration.getSignaturePdfACompat();
 				this.state.signatureParameter.signatureProfile = configuration.getSignatureProfile();
 				this.state.signatureParameter.targetLogoSize = configuration.getLogoOnlyTargetSize();
 
-				this.state.signingState = PdfAs4Signer.prepare(this.state.signatureParameter);
+				this.state.cancellation.throwIfCancelled();
+				this.state.signingState = PdfAs4Signer.prepare(this.state.signatureParameter, this.state.cancellation);
 
+			} catch (CancellationException e) {
+				log.debug("Document preparation cancelled");
 			} catch (Exception e) {
 				log.error("PrepareDocumentThread: ", e);
 				this.state.threadException = e;
 			} finally {
-				this.state.updateStateMachine();
+				if (this.state.cancellation.isCancelled())
+					this.state.releaseDocument();
+				else
+					this.state.updateStateMachine();
 			}
 		}
 	}
@@ -176,6 +188,18 @@ public class PrepareSigningState extends State {
 
 	Exception threadException = null;
 
+	/** cancelled when the user leaves this state while the document is being prepared */
+	final CancellationToken cancellation = new CancellationToken();
+
+	/**
+	 * Drop references to the document data, so an abandoned preparation does not keep it in memory
+	 */
+	void releaseDocument() {
+		this.signingState = null;
+		if (this.signatureParameter != null)
+			this.signatureParameter.inputDocument = null;
+	}
+
 	@Override
 	public void run() {
 		WaitingComposite waiting = this.getSelectionComposite();
@@ -189,8 +213,7 @@ public class PrepareSigningState extends State {
 		}
 
 		if (this.signingState == null && this.threadException == null) {
-			Thread t = new Thread(new PrepareDocumentThread(this));
-			t.start();
+			TaskExecutor.submit("prepare-document", new PrepareDocumentThread(this));
 			return;
 		}
 
@@ -210,6 +233,7 @@ public class PrepareSigningState extends State {
 
 		// We got the Request set it into status and move on to next state ...
 		status.signingState = this.signingState;
+		status.journal.prepared(status.document);
 
 		switch (status.bku)
 		{
@@ -238,6 +262,16 @@ public class PrepareSigningState extends State {
 			this.waitingComposite.dispose();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see at.asit.pdfover.gui.workflow.states.State#cancel()
+	 */
+	@Override
+	public void cancel() {
+		this.cancellation.cancel();
+		releaseDocument();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see at.asit.pdfover.gui.workflow.states.State#setMainWindowBehavior()
@@ -17,9 +17,11 @@ package at.asit.pdfover.gui.workflow.states;
 
 //Imports
 import java.net.ConnectException;
+import java.util.concurrent.CancellationException;
 
 import org.eclipse.swt.SWT;
 
+import at.asit.pdfover.commons.utils.TaskExecutor;
 import at.asit.pdfover.gui.MainWindowBehavior;
 import at.asit.pdfover.gui.MainWindow.Buttons;
 import at.asit.pdfover.gui.controls.Dialog.BUTTONS;
@@ -27,9 +29,11 @@ import at.asit.pdfover.gui.controls.ErrorDialog;
 import at.asit.pdfover.commons.Messages;
 import at.asit.pdfover.gui.workflow.StateMachine;
 import at.asit.pdfover.gui.workflow.Status;
+import at.asit.pdfover.signer.SignResult;
 import at.asit.pdfover.signer.SignatureException;
 import at.asit.pdfover.signer.UserCancelledException;
 import at.asit.pdfover.signer.pdfas.PdfAs4Signer;
+import at.asit.pdfover.signer.pdfas.PdfAs4SigningState;
 import at.gv.egiz.pdfas.common.exceptions.SLPdfAsException;
 import lombok.extern.slf4j.Slf4j;
 
@@ -45,23 +49,35 @@ public class SigningState extends State {
 	private final class FinishSignThread implements Runnable {
 
 		private SigningState state;
+		private PdfAs4SigningState signingState;
 
 		/**
+		 * @param state
 		 * @param signingState
 		 */
-		public FinishSignThread(SigningState signingState) {
-			this.state = signingState;
+		public FinishSignThread(SigningState state, PdfAs4SigningState signingState) {
+			this.state = state;
+			this.signingState = signingState;
+		}
+
+		private boolean isCancelled() {
+			return (this.signingState != null) && this.signingState.cancellation.isCancelled();
 		}
 
 		@Override
 		public void run() {
 			try {
-				Status status = this.state.getStateMachine().status;
-				status.signResult = PdfAs4Signer.sign(status.signingState);
+				SignResult result = PdfAs4Signer.sign(this.signingState);
+				if (!isCancelled())
+					this.state.getStateMachine().status.signResult = result;
+			} catch(CancellationException e) {
+				log.debug("Signing cancelled");
 			} catch(Exception e) {
-				this.state.threadException = e;
+				if (!isCancelled())
+					this.state.threadException = e;
 			} finally {
-				this.state.updateStateMachine();
+				if (!isCancelled())
+					this.state.updateStateMachine();
 			}
 		}
 	}
@@ -81,8 +97,7 @@ public class SigningState extends State {
 
 		if(status.signResult == null &&
 			this.threadException == null) {
-			Thread t = new Thread(new FinishSignThread(this));
-			t.start();
+			TaskExecutor.submit("finish-signature", new FinishSignThread(this, status.signingState));
 			return;
 		}
 
@@ -127,6 +142,7 @@ public class SigningState extends State {
 			return;
 		}
 
+		status.journal.signed(status.document);
 		this.setNextState(new OutputState(getStateMachine()));
 	}
 
@@ -138,6 +154,14 @@ public class SigningState extends State {
 		// No composite - no cleanup necessary
 	}
 
+	/* (non-Javadoc)
+	 * @see at.asit.pdfover.gui.workflow.states.State#cancel()
+	 */
+	@Override
+	public void cancel() {
+		getStateMachine().status.cancelSigning();
+	}
+
 	/* (non-Javadoc)
 	 * @see at.asit.pdfover.gui.workflow.states.State#setMainWindowBehavior()
 	 */
@@ -68,6 +68,15 @@ public abstract class State {
 	 */
 	public abstract void cleanUp();
 
+	/**
+	 * Abort background work started by this state
+	 * Called when the user jumps away from this state; results of the aborted
+	 * work must not be applied anymore
+	 */
+	public void cancel() {
+		// most states do not run background work
+	}
+
 	/**
 	 * Update the state machine
 	 */
@@ -0,0 +1,67 @@
+package at.asit.pdfover.commons.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class BufferAccountingTest {
+
+    private static final int ALLOCATION = 16 * 1024 * 1024;
+
+    @BeforeAll
+    public static void setUp() {
+        System.setProperty(BufferAccounting.ENABLE_PROPERTY, "true");
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        System.clearProperty(BufferAccounting.ENABLE_PROPERTY);
+    }
+
+    @Test
+    public void TestPeakBufferedBytes() {
+        BufferAccounting.Ledger ledger = BufferAccounting.open("document", 100);
+        ledger.allocate("input", 100);
+        ledger.allocate("output", 150);
+        ledger.release("input");
+        ledger.allocate("signed", 50);
+        ledger.close();
+        assertEquals(250, ledger.getPeakBufferedBytes());
+        assertEquals(2.5, ledger.getPeakBufferedRatio());
+        assertEquals(150, (long) ledger.getAllocatedBytes().get("output"));
+    }
+
+    @Test
+    public void TestThreadsStillInLedgerAreCountedOnClose() throws Exception {
+        assumeTrue(BufferAccounting.getCurrentThreadAllocatedBytes() >= 0, "the JVM does not measure allocations");
+        BufferAccounting.Ledger ledger = BufferAccounting.open("document", ALLOCATION);
+        ledger.leave();
+        CountDownLatch allocated = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            ledger.enter();
+            byte[] buffer = new byte[ALLOCATION];
+            allocated.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            buffer[0] = 1;
+        });
+        worker.start();
+        try {
+            allocated.await();
+            ledger.close();
+        } finally {
+            closed.countDown();
+            worker.join();
+        }
+        assertTrue(ledger.getHeapAllocatedBytes() >= ALLOCATION, ledger.getHeapAllocatedBytes() + " bytes counted");
+    }
+}
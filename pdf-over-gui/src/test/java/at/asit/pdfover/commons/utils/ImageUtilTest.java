@@ -0,0 +1,45 @@
+package at.asit.pdfover.commons.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ImageUtilTest {
+
+    @Test
+    public void TestSubsamplingFollowsTheLimitingDimension() {
+        assertEquals(1, ImageUtil.getSubsamplingFactor(800, 600, 1000, 1000));
+        assertEquals(4, ImageUtil.getSubsamplingFactor(4000, 4000, 1000, 1000));
+        assertEquals(20, ImageUtil.getSubsamplingFactor(20000, 100, 1000, 1000));
+        assertEquals(20, ImageUtil.getSubsamplingFactor(100, 20000, 1000, 1000));
+        assertEquals(2, ImageUtil.getSubsamplingFactor(2999, 10, 1000, 1000));
+    }
+
+    @Test
+    public void TestSubsampledImageIsNotSmallerThanTheResult() {
+        int[][] sizes = { { 20000, 100 }, { 100, 20000 }, { 20000, 1 }, { 30000, 20000 }, { 1001, 7 } };
+        for (int[] size : sizes) {
+            int subsampling = ImageUtil.getSubsamplingFactor(size[0], size[1], 1000, 1000);
+            double scale = Math.min(1000.0 / size[0], 1000.0 / size[1]);
+            assertTrue(Math.ceil((double) size[0] / subsampling) >= Math.floor(size[0] * scale), size[0] + "x" + size[1]);
+            assertTrue(Math.ceil((double) size[1] / subsampling) >= Math.floor(size[1] * scale), size[0] + "x" + size[1]);
+        }
+    }
+
+    @Test
+    public void TestExtremeAspectRatioIsReducedToFit(@TempDir Path dir) throws Exception {
+        File file = dir.resolve("wide.png").toFile();
+        ImageIO.write(new BufferedImage(20000, 100, BufferedImage.TYPE_INT_RGB), "png", file);
+
+        BufferedImage image = ImageUtil.readImageWithEXIFRotation(file, 1000, 1000);
+        assertEquals(1000, image.getWidth());
+        assertEquals(5, image.getHeight());
+    }
+}
@@ -0,0 +1,66 @@
+package at.asit.pdfover.gui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import at.asit.pdfover.gui.utils.StartupMetrics;
+
+/**
+ * Starts PDF-Over repeatedly (each time in a fresh JVM) and reports time-to-window and time-to-first-signature
+ *
+ * Usage: {@code StartupBenchmark <runs> <PDF-Over arguments...>}, with the test classpath. To measure
+ * time-to-first-signature without user interaction, sign with a keystore and skip the finish screen, e.g.
+ * {@code StartupBenchmark 10 -b KS -ks test.p12 -kstype PKCS12 -kspass 123456 -kskeypass 123456 -ksalias test -a -s -i in.pdf -o out}
+ */
+public class StartupBenchmark {
+
+    private static final Pattern VALUE = Pattern.compile("\"(\\w[\\w-]*)\":(\\d+)");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: StartupBenchmark <runs> <PDF-Over arguments...>");
+            System.exit(1);
+        }
+        int runs = Integer.parseInt(args[0]);
+        String[] appArgs = Arrays.copyOfRange(args, 1, args.length);
+
+        File report = File.createTempFile("pdfover-startup", ".jsonl");
+        report.deleteOnExit();
+        Files.write(report.toPath(), new byte[0]);
+
+        for (int i = 1; i <= runs; ++i) {
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("-D" + StartupMetrics.REPORT_PROPERTY + "=" + report.getAbsolutePath());
+            command.add(Main.class.getName());
+            command.addAll(Arrays.asList(appArgs));
+            int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+            System.out.println("Run " + i + "/" + runs + " exited with " + exit);
+        }
+
+        /* metric -> samples; "null" (event did not happen) is not matched and thus skipped */
+        Map<String, List<Long>> samples = new TreeMap<>();
+        for (String line : Files.readAllLines(report.toPath())) {
+            Matcher m = VALUE.matcher(line);
+            while (m.find())
+                samples.computeIfAbsent(m.group(1), (k) -> new ArrayList<>()).add(Long.parseLong(m.group(2)));
+        }
+        System.out.printf("%-24s %6s %8s %8s %8s%n", "metric (ms)", "n", "min", "median", "max");
+        for (Map.Entry<String, List<Long>> e : samples.entrySet()) {
+            List<Long> values = e.getValue();
+            values.sort(null);
+            System.out.printf("%-24s %6d %8d %8d %8d%n", e.getKey(), values.size(),
+                    values.get(0), values.get(values.size() / 2), values.get(values.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package at.asit.pdfover.gui.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import at.asit.pdfover.gui.workflow.config.ConfigurationManager;
+import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
+import at.asit.pdfover.signer.SignResult;
+import at.asit.pdfover.signer.SignatureException;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+
+/**
+ * Signs without PDF-AS for the service tests: appends " signed", or the signature note, instead of
+ * a signature
+ */
+class FakeSigner extends HeadlessSigner {
+
+    static final String SIGNATURE = " signed";
+
+    /**
+     * What documents starting with the marker's name in lower case do
+     */
+    enum Marker {
+        /** fail to sign */
+        FAIL,
+        /** end the process */
+        CRASH,
+        /** replace the document's file with a directory, so it cannot be removed */
+        KEEP
+    }
+
+    private final boolean appendNote;
+    private final Set<Marker> markers = EnumSet.noneOf(Marker.class);
+
+    /**
+     * @param appendNote whether to append the signature note rather than {@link #SIGNATURE}
+     * @param markers the markers to act on
+     */
+    FakeSigner(boolean appendNote, Marker... markers) {
+        super(null, createConfiguration());
+        this.appendNote = appendNote;
+        this.markers.addAll(Arrays.asList(markers));
+    }
+
+    /**
+     * @return a configuration with a signature locale, so the default locale needs no display
+     */
+    static ConfigurationManager createConfiguration() {
+        ConfigurationManager config = new ConfigurationManager();
+        config.setSignatureLocalePersistent(Locale.ENGLISH);
+        return config;
+    }
+
+    private boolean isMarked(String document, Marker marker) {
+        return this.markers.contains(marker) && document.startsWith(marker.name().toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public SignResult sign(PdfAs4SignatureParameter parameter) throws SignatureException {
+        String document = new String(parameter.inputDocument.getByteArray(), StandardCharsets.US_ASCII);
+        if (isMarked(document, Marker.FAIL))
+            throw new SignatureException("cannot sign this");
+        if (isMarked(document, Marker.CRASH))
+            System.exit(3);
+        if (isMarked(document, Marker.KEEP)) {
+            Path file = ((PDFFileDocumentSource) parameter.inputDocument).getFile().toPath();
+            try {
+                Files.delete(file);
+                Files.createDirectories(file.resolve("locked"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        String signed = document + (this.appendNote ? (" " + parameter.signatureNote) : SIGNATURE);
+        SignResult result = new SignResult();
+        result.setSignedDocument(new ByteArrayDocumentSource(signed.getBytes(StandardCharsets.US_ASCII)));
+        return result;
+    }
+}
@@ -0,0 +1,174 @@
+package at.asit.pdfover.gui.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.SignatureException;
+import at.asit.pdfover.signer.pdfas.PdfAs4SignatureParameter;
+
+public class ProcessPoolSignerTest {
+
+    /** system property naming a file; while it exists, worker processes fail to start */
+    private static final String BROKEN_PROPERTY = "pdfover.test.broken";
+    /** system property naming a file; while it exists, worker processes start but never answer */
+    private static final String HUNG_PROPERTY = "pdfover.test.hung";
+
+    /** worker process main class */
+    public static class FakeWorker {
+        public static void main(String[] args) throws Exception {
+            String broken = System.getProperty(BROKEN_PROPERTY);
+            if (broken != null && Files.exists(Path.of(broken)))
+                System.exit(2);
+            // like SigningWorker.main: the log must not end up in the protocol
+            PrintStream protocol = System.out;
+            System.setOut(System.err);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(protocol));
+            SigningWorker.readArguments(in);
+            String hung = System.getProperty(HUNG_PROPERTY);
+            if (hung != null && Files.exists(Path.of(hung))) {
+                out.writeByte(SigningWorker.READY);
+                out.flush();
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            SigningWorker.serve(new FakeSigner(false, FakeSigner.Marker.FAIL, FakeSigner.Marker.CRASH), in, out);
+        }
+    }
+
+    private static ProcessPoolSigner createPool(int processes) throws Exception {
+        return createPool(processes, Path.of("no-such-file"));
+    }
+
+    private static ProcessPoolSigner createPool(int processes, Path brokenMarker) throws Exception {
+        return createPool(processes, brokenMarker, Path.of("no-such-file"));
+    }
+
+    private static ProcessPoolSigner createPool(int processes, Path brokenMarker, Path hungMarker) throws Exception {
+        List<String> command = List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-D" + BROKEN_PROPERTY + "=" + brokenMarker.toAbsolutePath(),
+                "-D" + HUNG_PROPERTY + "=" + hungMarker.toAbsolutePath(),
+                "-cp", System.getProperty("java.class.path"), FakeWorker.class.getName());
+        ProcessPoolSigner pool = new ProcessPoolSigner(FakeSigner.createConfiguration(), processes, command, new String[] { "-kspass", "secret" }, 30000);
+        pool.start();
+        return pool;
+    }
+
+    private static String sign(ProcessPoolSigner pool, String document) throws Exception {
+        return sign(pool, document, null);
+    }
+
+    private static String sign(ProcessPoolSigner pool, String document, String note) throws Exception {
+        PdfAs4SignatureParameter parameter = pool.createParameter();
+        parameter.inputDocument = new ByteArrayDocumentSource(document.getBytes());
+        parameter.signatureNote = note;
+        return new String(pool.sign(parameter).getSignedDocument().getByteArray());
+    }
+
+    @Test
+    public void TestDocumentsAreSignedInWorkers() throws Exception {
+        ProcessPoolSigner pool = createPool(2);
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(2, pool.getParallelism());
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                String document = "document " + i;
+                results.add(clients.submit(() -> sign(pool, document)));
+            }
+            for (int i = 0; i < 8; ++i)
+                assertEquals("document " + i + " signed", results.get(i).get());
+
+            SignatureException e = assertThrows(SignatureException.class, () -> sign(pool, "fail"));
+            assertEquals("cannot sign this", e.getMessage());
+            assertEquals("document signed", sign(pool, "document"));
+        } finally {
+            clients.shutdownNow();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void TestCrashedWorkerIsRestarted() throws Exception {
+        ProcessPoolSigner pool = createPool(1);
+        try {
+            // handed to a second worker process once, which dies as well
+            assertThrows(SignatureException.class, () -> sign(pool, "crash"));
+            assertEquals("document signed", sign(pool, "document"));
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void TestTooLongNoteIsRejectedBeforeSending() throws Exception {
+        ProcessPoolSigner pool = createPool(1);
+        try {
+            SignatureException e = assertThrows(SignatureException.class, () -> sign(pool, "document", "\u20ac".repeat(30000)));
+            assertEquals("The signature note is too long", e.getMessage());
+            assertEquals("document signed", sign(pool, "document", "\u20ac".repeat(20000)));
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void TestQueuedDocumentsFailWhenNoWorkerCanStart(@TempDir Path dir) throws Exception {
+        Path broken = dir.resolve("broken");
+        ProcessPoolSigner pool = createPool(1, broken);
+        try {
+            Files.createFile(broken);
+            long started = System.nanoTime();
+            // the worker dies, and cannot be restarted for the second attempt
+            assertThrows(SignatureException.class, () -> sign(pool, "crash"));
+            assertThrows(SignatureException.class, () -> sign(pool, "document"));
+            assertTrue(System.nanoTime() - started < 20_000_000_000L);
+
+            Files.delete(broken);
+            long deadline = System.currentTimeMillis() + 20000;
+            while (true) {
+                try {
+                    assertEquals("document signed", sign(pool, "document"));
+                    break;
+                } catch (SignatureException e) {
+                    assertTrue(System.currentTimeMillis() < deadline, "the worker was not restarted");
+                    Thread.sleep(200);
+                }
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void TestHungWorkerIsRestartedByHealthCheck(@TempDir Path dir) throws Exception {
+        Path hung = dir.resolve("hung");
+        Files.createFile(hung);
+        ProcessPoolSigner pool = createPool(1, Path.of("no-such-file"), hung);
+        try {
+            Files.delete(hung);
+            // the first ping is not answered, and the worker is restarted well before the sign timeout
+            Thread.sleep(ProcessPoolSigner.HEALTH_CHECK_MILLIS + ProcessPoolSigner.PING_TIMEOUT_MILLIS + 3000);
+            long started = System.nanoTime();
+            assertEquals("document signed", sign(pool, "document"));
+            assertTrue(System.nanoTime() - started < 10_000_000_000L);
+        } finally {
+            pool.close();
+        }
+    }
+}
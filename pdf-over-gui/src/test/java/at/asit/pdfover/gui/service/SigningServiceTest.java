@@ -0,0 +1,215 @@
+package at.asit.pdfover.gui.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.asit.pdfover.signer.SignaturePosition;
+
+public class SigningServiceTest {
+
+    private static final byte[] DOCUMENT = { '%', 'P', 'D', 'F' };
+
+    private static SigningService start(Path dir, int workers, HeadlessSigner signer) throws Exception {
+        return start(dir, workers, 1024, signer);
+    }
+
+    private static SigningService start(Path dir, int workers, int maxBufferedBytes, HeadlessSigner signer) throws Exception {
+        SigningService service = new SigningService(0, workers, 1, 1024, maxBufferedBytes, signer, dir.resolve(SigningService.TOKEN_FILE));
+        service.start();
+        return service;
+    }
+
+    private static String readToken(Path dir) throws Exception {
+        return Files.readString(dir.resolve(SigningService.TOKEN_FILE));
+    }
+
+    private static HttpResponse<String> post(SigningService service, String query, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + service.getPort() + SigningService.SIGN_PATH + query))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(DOCUMENT));
+        if (headers.length > 0)
+            request.headers(headers);
+        return HttpClient.newHttpClient().send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> post(SigningService service, Path dir, String query) throws Exception {
+        return post(service, query, "Authorization", "Bearer " + readToken(dir));
+    }
+
+    @Test
+    public void TestDocumentIsSigned(@TempDir Path dir) throws Exception {
+        SigningService service = start(dir, 1, new FakeSigner(true));
+        try {
+            HttpResponse<String> response = post(service, dir, "?note=signed");
+            assertEquals(200, response.statusCode());
+            assertEquals("application/pdf", response.headers().firstValue("Content-Type").orElse(null));
+            assertEquals("%PDF signed", response.body());
+        } finally {
+            service.stop(0);
+        }
+        assertFalse(Files.exists(dir.resolve(SigningService.TOKEN_FILE)));
+    }
+
+    @Test
+    public void TestTokenIsPrivateAndNewOnEveryStart(@TempDir Path dir) throws Exception {
+        SigningService service = start(dir, 1, new FakeSigner(true));
+        String token = readToken(dir);
+        try {
+            assertTrue(token.length() >= 32);
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+                assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.resolve(SigningService.TOKEN_FILE))));
+        } finally {
+            service.stop(0);
+        }
+
+        service = start(dir, 1, new FakeSigner(true));
+        try {
+            assertNotEquals(token, readToken(dir));
+            assertEquals(401, post(service, "", "Authorization", "Bearer " + token).statusCode());
+        } finally {
+            service.stop(0);
+        }
+    }
+
+    @Test
+    public void TestUnauthenticatedRequestsAreRejected(@TempDir Path dir) throws Exception {
+        SigningService service = start(dir, 1, new FakeSigner(true));
+        try {
+            HttpResponse<String> response = post(service, "");
+            assertEquals(401, response.statusCode());
+            assertEquals("Bearer", response.headers().firstValue("WWW-Authenticate").orElse(null));
+            assertEquals(401, post(service, "", "Authorization", "Bearer wrong").statusCode());
+            assertEquals(401, post(service, "", "Authorization", readToken(dir)).statusCode());
+            // a web page that learned the token still gets nothing
+            assertEquals(403, post(service, "", "Authorization", "Bearer " + readToken(dir), "Origin", "http://localhost:" + service.getPort()).statusCode());
+        } finally {
+            service.stop(0);
+        }
+    }
+
+    @Test
+    public void TestForeignHostIsRejected(@TempDir Path dir) throws Exception {
+        SigningService service = start(dir, 1, new FakeSigner(true));
+        // the HTTP client does not allow setting Host, as a page rebinding its DNS name would send it
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), service.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST " + SigningService.SIGN_PATH + " HTTP/1.1\r\nHost: attacker.example:" + service.getPort()
+                    + "\r\nAuthorization: Bearer " + readToken(dir) + "\r\nContent-Length: " + DOCUMENT.length + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(DOCUMENT);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            String status = new String(in.readAllBytes(), StandardCharsets.US_ASCII).split("\r\n")[0];
+            assertTrue(status.startsWith("HTTP/1.1 403"), status);
+        } finally {
+            service.stop(0);
+        }
+    }
+
+    @Test
+    public void TestLoopbackHosts() {
+        assertTrue(SigningService.isLoopbackHost("localhost"));
+        assertTrue(SigningService.isLoopbackHost("LOCALHOST:8080"));
+        assertTrue(SigningService.isLoopbackHost("127.0.0.1:8080"));
+        assertTrue(SigningService.isLoopbackHost("[::1]:8080"));
+        assertFalse(SigningService.isLoopbackHost(null));
+        assertFalse(SigningService.isLoopbackHost("localhost.attacker.example"));
+        assertFalse(SigningService.isLoopbackHost("127.0.0.1.attacker.example:8080"));
+        assertFalse(SigningService.isLoopbackHost("[::1].attacker.example"));
+        assertFalse(SigningService.isLoopbackHost("192.168.0.1"));
+    }
+
+    @Test
+    public void TestFullQueueIsRejected(@TempDir Path dir) throws Exception {
+        // no workers and no queue: every request is turned away
+        SigningService service = new SigningService(0, 0, 0, 1024, 1024, new FakeSigner(true), dir.resolve(SigningService.TOKEN_FILE));
+        service.start();
+        try {
+            HttpResponse<String> response = post(service, dir, "");
+            assertEquals(429, response.statusCode());
+            assertTrue(response.headers().firstValue("Retry-After").isPresent());
+        } finally {
+            service.stop(0);
+        }
+    }
+
+    @Test
+    public void TestUploadsShareByteBudget(@TempDir Path dir) throws Exception {
+        SigningService service = start(dir, 1, DOCUMENT.length + 2, new FakeSigner(true));
+        // announces a document, which takes its length from the budget while the body is awaited
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), service.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST " + SigningService.SIGN_PATH + " HTTP/1.1\r\nHost: 127.0.0.1:" + service.getPort()
+                    + "\r\nAuthorization: Bearer " + readToken(dir) + "\r\nContent-Length: " + DOCUMENT.length + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            HttpResponse<String> response = null;
+            for (int i = 0; i < 50; ++i) {
+                response = post(service, dir, "");
+                if (response.statusCode() == 429)
+                    break;
+                Thread.sleep(100);
+            }
+            assertEquals(429, response.statusCode());
+            assertEquals("Too many bytes being uploaded\n", response.body());
+            assertTrue(response.headers().firstValue("Retry-After").isPresent());
+
+            out.write(DOCUMENT);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            String status = new String(in.readAllBytes(), StandardCharsets.US_ASCII).split("\r\n")[0];
+            assertTrue(status.startsWith("HTTP/1.1 200"), status);
+        }
+        try {
+            // returned once answered
+            assertEquals(200, post(service, dir, "").statusCode());
+        } finally {
+            service.stop(0);
+        }
+
+        service = start(dir, 1, DOCUMENT.length - 1, new FakeSigner(true));
+        try {
+            assertEquals(413, post(service, dir, "").statusCode());
+        } finally {
+            service.stop(0);
+        }
+    }
+
+    @Test
+    public void TestInvalidParametersAreRejected(@TempDir Path dir) throws Exception {
+        SigningService service = start(dir, 1, new FakeSigner(true));
+        try {
+            assertEquals(400, post(service, dir, "?profile=NO_SUCH_PROFILE").statusCode());
+            assertEquals(400, post(service, dir, "?position=1,2,3,4").statusCode());
+        } finally {
+            service.stop(0);
+        }
+    }
+
+    @Test
+    public void TestParsePosition() {
+        assertTrue(SigningService.parsePosition(null).useAutoPositioning());
+        assertTrue(SigningService.parsePosition("auto").useAutoPositioning());
+        SignaturePosition position = SigningService.parsePosition("100.5,200,3");
+        assertFalse(position.useAutoPositioning());
+        assertEquals(100.5, position.getX());
+        assertEquals(200, position.getY());
+        assertEquals(3, position.getPage());
+        assertThrows(IllegalArgumentException.class, () -> SigningService.parsePosition("left"));
+    }
+}
@@ -0,0 +1,130 @@
+package at.asit.pdfover.gui.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class WatchFolderServiceTest {
+
+    private static final int SETTLE_MILLIS = 300;
+
+    private static FakeSigner createSigner() {
+        return new FakeSigner(false, FakeSigner.Marker.FAIL, FakeSigner.Marker.KEEP);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void TestDocumentIsSignedOnceSettled(@TempDir Path dir) throws Exception {
+        Path input = Files.createDirectory(dir.resolve("in"));
+        WatchFolderService service = new WatchFolderService(input, dir.resolve("out"), dir.resolve("err"), 2, SETTLE_MILLIS, createSigner());
+        service.start();
+        try {
+            // written slowly, as by a copy over the network; must not be picked up half-written
+            Path document = input.resolve("document.pdf");
+            try (OutputStream out = Files.newOutputStream(document, StandardOpenOption.CREATE_NEW)) {
+                for (int i = 0; i < 8; ++i) {
+                    out.write("0123456789".getBytes());
+                    out.flush();
+                    Thread.sleep(SETTLE_MILLIS / 3);
+                }
+            }
+            Files.write(input.resolve("notes.txt"), "not a pdf".getBytes());
+
+            Path signed = dir.resolve("out").resolve("document_signed.pdf");
+            waitFor(() -> Files.exists(signed));
+            assertEquals("0123456789".repeat(8) + " signed", Files.readString(signed));
+            waitFor(() -> !Files.exists(document));
+            assertTrue(Files.exists(input.resolve("notes.txt")));
+            assertEquals(1, service.getSignedCount());
+            assertEquals(0, service.getFailedCount());
+        } finally {
+            service.stop(5);
+        }
+    }
+
+    @Test
+    public void TestFailedDocumentIsMovedToErrorFolder(@TempDir Path dir) throws Exception {
+        Path input = Files.createDirectory(dir.resolve("in"));
+        // documents already in the folder are signed at startup
+        Files.write(input.resolve("fail.pdf"), "fail".getBytes());
+        WatchFolderService service = new WatchFolderService(input, dir.resolve("out"), dir.resolve("err"), 1, SETTLE_MILLIS, createSigner());
+        service.start();
+        try {
+            waitFor(() -> service.getFailedCount() == 1);
+            assertFalse(Files.exists(input.resolve("fail.pdf")));
+            assertEquals("fail", Files.readString(dir.resolve("err").resolve("fail.pdf")));
+            assertTrue(Files.readString(dir.resolve("err").resolve("fail.pdf.error.txt")).contains("cannot sign this"));
+            assertEquals(0, service.getSignedCount());
+        } finally {
+            service.stop(5);
+        }
+    }
+
+    @Test
+    public void TestExistingFilesAreNotReplaced(@TempDir Path dir) throws Exception {
+        Path input = Files.createDirectory(dir.resolve("in"));
+        Path output = Files.createDirectory(dir.resolve("out"));
+        Path errors = Files.createDirectory(dir.resolve("err"));
+        Files.write(output.resolve("document_signed.pdf"), "earlier".getBytes());
+        Files.write(errors.resolve("fail.pdf"), "earlier".getBytes());
+        Files.write(errors.resolve("fail.pdf.error.txt"), "earlier".getBytes());
+        Files.write(errors.resolve("fail-2.pdf.error.txt"), "orphaned".getBytes());
+        Files.write(input.resolve("document.pdf"), "document".getBytes());
+        Files.write(input.resolve("fail.pdf"), "fail".getBytes());
+        WatchFolderService service = new WatchFolderService(input, output, errors, 2, SETTLE_MILLIS, createSigner());
+        service.start();
+        try {
+            waitFor(() -> service.getSignedCount() == 1 && service.getFailedCount() == 1);
+            assertEquals("earlier", Files.readString(output.resolve("document_signed.pdf")));
+            assertEquals("document signed", Files.readString(output.resolve("document_signed-2.pdf")));
+            assertEquals("earlier", Files.readString(errors.resolve("fail.pdf")));
+            assertEquals("earlier", Files.readString(errors.resolve("fail.pdf.error.txt")));
+            assertEquals("orphaned", Files.readString(errors.resolve("fail-2.pdf.error.txt")));
+            assertEquals("fail", Files.readString(errors.resolve("fail-3.pdf")));
+            assertTrue(Files.readString(errors.resolve("fail-3.pdf.error.txt")).contains("cannot sign this"));
+        } finally {
+            service.stop(5);
+        }
+    }
+
+    @Test
+    public void TestDocumentThatCannotBeRemovedIsStillSigned(@TempDir Path dir) throws Exception {
+        Path input = Files.createDirectory(dir.resolve("in"));
+        Files.write(input.resolve("keep.pdf"), "keep".getBytes());
+        WatchFolderService service = new WatchFolderService(input, dir.resolve("out"), dir.resolve("err"), 1, SETTLE_MILLIS, createSigner());
+        service.start();
+        try {
+            waitFor(() -> service.getSignedCount() == 1);
+            assertEquals("keep signed", Files.readString(dir.resolve("out").resolve("keep_signed.pdf")));
+            Thread.sleep(2 * SETTLE_MILLIS);
+            assertEquals(0, service.getFailedCount());
+            assertEquals(1, service.getSignedCount());
+            try (var failed = Files.list(dir.resolve("err"))) {
+                assertEquals(0, failed.count());
+            }
+        } finally {
+            service.stop(5);
+        }
+    }
+
+    @Test
+    public void TestOutputFolderMustDifferFromInput(@TempDir Path dir) {
+        assertThrows(IllegalArgumentException.class,
+                () -> new WatchFolderService(dir, dir, dir.resolve("err"), 1, SETTLE_MILLIS, createSigner()));
+    }
+}
@@ -0,0 +1,94 @@
+package at.asit.pdfover.gui.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.asit.pdfover.commons.Constants;
+
+public class ConfigProvisionerTest {
+
+    private static InputStream resource(String name) {
+        InputStream is = ConfigProvisionerTest.class.getResourceAsStream(name);
+        assertNotNull(is, name);
+        return is;
+    }
+
+    private static ConfigProvisioner provisioner() throws IOException {
+        try (InputStream manifest = resource(Constants.RES_CFG_MANIFEST)) {
+            return new ConfigProvisioner(manifest);
+        }
+    }
+
+    private static int provision(File dir, File backup) throws IOException {
+        try (InputStream zip = resource(Constants.RES_CFG_ZIP)) {
+            return provisioner().provision(zip, dir, "cfg", backup);
+        }
+    }
+
+    @Test
+    public void TestManifestMatchesBundledConfig() throws Exception {
+        Map<String, String> manifest;
+        try (InputStream is = resource(Constants.RES_CFG_MANIFEST)) {
+            manifest = ConfigProvisioner.readManifest(is);
+        }
+        Map<String, String> actual = new HashMap<>();
+        try (ZipInputStream zis = new ZipInputStream(resource(Constants.RES_CFG_ZIP))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory())
+                    continue;
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(zis.readAllBytes());
+                actual.put(entry.getName(), HexFormat.of().formatHex(digest.digest()));
+            }
+        }
+        assertEquals(actual, manifest, "PDFASConfig.sha256 is out of date, regenerate it from PDFASConfig.zip");
+    }
+
+    @Test
+    public void TestOnlyChangedFilesAreReplaced(@TempDir Path dir) throws Exception {
+        File backup = dir.resolve("backup.zip").toFile();
+        File target = dir.resolve("config").toFile();
+
+        int all = provision(target, backup);
+        assertTrue(all > 0);
+        assertFalse(backup.exists());
+
+        Path changed = target.toPath().resolve("cfg/config.properties");
+        Path obsolete = target.toPath().resolve("cfg/profiles/OBSOLETE.properties");
+        Files.writeString(changed, "changed", StandardCharsets.UTF_8);
+        Files.writeString(obsolete, "obsolete", StandardCharsets.UTF_8);
+        Files.delete(target.toPath().resolve("cfg/advancedconfig.properties"));
+
+        assertEquals(2, provision(target, backup));
+        assertNotEquals("changed", Files.readString(changed, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(obsolete));
+        try (ZipFile zip = new ZipFile(backup)) {
+            Set<String> names = new HashSet<>();
+            zip.stream().forEach(e -> names.add(e.getName()));
+            assertEquals(Set.of("cfg/config.properties", "cfg/profiles/OBSOLETE.properties"), names);
+        }
+
+        assertTrue(backup.delete());
+        assertEquals(0, provision(target, backup));
+        assertFalse(backup.exists());
+    }
+}
@@ -0,0 +1,76 @@
+package at.asit.pdfover.gui.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
+
+public class OutputWriterTest {
+
+    private static ByteArrayDocumentSource document(String content) {
+        return new ByteArrayDocumentSource(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+    }
+
+    private static long countFiles(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void TestWriteReplacesTarget(@TempDir Path dir) throws Exception {
+        Path target = dir.resolve("signed.pdf");
+        Files.write(target, "old".getBytes(StandardCharsets.US_ASCII));
+        new OutputWriter(false, null, null).write(document("new"), target.toFile());
+        assertEquals("new", read(target));
+        assertEquals(1, countFiles(dir));
+    }
+
+    @Test
+    public void TestWriteNewKeepsExistingTarget(@TempDir Path dir) throws Exception {
+        OutputWriter writer = new OutputWriter(false, null, null);
+        Path target = dir.resolve("signed.pdf");
+        writer.writeNew(document("first"), target.toFile());
+        assertEquals("first", read(target));
+
+        assertThrows(FileAlreadyExistsException.class, () -> writer.writeNew(document("second"), target.toFile()));
+        assertEquals("first", read(target));
+        assertEquals(1, countFiles(dir));
+    }
+
+    @Test
+    public void TestWriteNewMovesTemporaryDocument(@TempDir Path dir) throws Exception {
+        Path tmp = Files.createDirectory(dir.resolve("tmp"));
+        Path out = Files.createDirectory(dir.resolve("out"));
+        File temporary = tmp.resolve("document.pdf").toFile();
+        Files.write(temporary.toPath(), "signed".getBytes(StandardCharsets.US_ASCII));
+        OutputWriter writer = new OutputWriter(false, tmp.toFile(), null);
+
+        Path taken = out.resolve("taken.pdf");
+        Files.write(taken, "other".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(FileAlreadyExistsException.class, () -> writer.writeNew(new PDFFileDocumentSource(temporary), taken.toFile()));
+        assertEquals("other", read(taken));
+        assertTrue(temporary.exists());
+
+        Path target = out.resolve("signed.pdf");
+        writer.writeNew(new PDFFileDocumentSource(temporary), target.toFile());
+        assertEquals("signed", read(target));
+        assertFalse(temporary.exists());
+        assertEquals(0, countFiles(tmp));
+        assertEquals(2, countFiles(out));
+    }
+}
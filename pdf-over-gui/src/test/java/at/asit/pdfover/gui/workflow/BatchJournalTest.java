@@ -0,0 +1,142 @@
+package at.asit.pdfover.gui.workflow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BatchJournalTest {
+
+    private static List<File> createDocuments(Path dir, int count) throws Exception {
+        List<File> documents = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            Path document = dir.resolve("document " + i + ".pdf");
+            Files.write(document, ("%PDF " + i).getBytes());
+            documents.add(document.toFile());
+        }
+        return documents;
+    }
+
+    private static void sign(BatchJournal journal, File document) throws Exception {
+        File output = new File(document.getParentFile(), document.getName().replace(".pdf", "_signed.pdf"));
+        Files.copy(document.toPath(), output.toPath());
+        journal.prepared(document);
+        journal.signed(document);
+        journal.saved(document, output);
+    }
+
+    @Test
+    public void TestInterruptedBatchIsResumed(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("batch.journal");
+        List<File> documents = createDocuments(dir, 4);
+
+        BatchJournal journal = new BatchJournal(file.toFile());
+        journal.start(documents);
+        sign(journal, documents.get(0));
+        sign(journal, documents.get(1));
+        journal.prepared(documents.get(2));
+        journal.flush(5000);
+        // crashed while writing the next record
+        Files.write(file, "1700000000000\tSIG".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        BatchJournal restarted = new BatchJournal(file.toFile());
+        List<File> unfinished = restarted.getUnfinished();
+        assertEquals(documents.subList(2, 4), unfinished);
+        assertEquals(4, restarted.getDocumentCount());
+        assertEquals(2, restarted.getSavedCount());
+
+        restarted.resume(unfinished);
+        assertTrue(restarted.isActive());
+        sign(restarted, documents.get(2));
+        assertTrue(Files.exists(file));
+        sign(restarted, documents.get(3));
+        restarted.flush(5000);
+        assertFalse(restarted.isActive());
+        assertFalse(Files.exists(file), "journal of a finished batch is deleted");
+        assertTrue(new BatchJournal(file.toFile()).getUnfinished().isEmpty());
+    }
+
+    @Test
+    public void TestRecordsCarryHashes(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("batch.journal");
+        List<File> documents = createDocuments(dir, 2);
+
+        BatchJournal journal = new BatchJournal(file.toFile());
+        journal.start(documents);
+        sign(journal, documents.get(0));
+        journal.flush(5000);
+
+        String hash = BatchJournal.hash(documents.get(0).toPath());
+        assertEquals(64, hash.length());
+        List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.get(0).contains("\tBATCH"));
+        assertTrue(lines.stream().anyMatch((l) -> l.contains("\tPREPARED\t") && l.endsWith("\t" + hash)));
+        // the signed copy is identical here
+        assertTrue(lines.stream().anyMatch((l) -> l.contains("\tSAVED\t") && l.endsWith("\t" + hash)));
+    }
+
+    @Test
+    public void TestChangedDocumentsAreSignedAgain(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("batch.journal");
+        List<File> documents = createDocuments(dir, 5);
+
+        BatchJournal journal = new BatchJournal(file.toFile());
+        journal.start(documents);
+        for (int i = 0; i < 4; ++i)
+            sign(journal, documents.get(i));
+        journal.flush(5000);
+
+        // the signed copy of the first document was replaced with one of the same size
+        Files.write(dir.resolve("document 0_signed.pdf"), "%PDF X".getBytes());
+        // the signed copy of the second document is truncated
+        Files.write(dir.resolve("document 1_signed.pdf"), "%PDF".getBytes());
+        // the third document was changed after it was signed
+        Files.write(documents.get(2).toPath(), " changed".getBytes(), StandardOpenOption.APPEND);
+
+        BatchJournal restarted = new BatchJournal(file.toFile());
+        assertEquals(List.of(documents.get(0), documents.get(1), documents.get(2), documents.get(4)), restarted.getUnfinished());
+        assertEquals(4, restarted.getSavedCount());
+    }
+
+    @Test
+    public void TestSavedDocumentWithoutHashIsSignedAgain(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("batch.journal");
+        List<File> documents = createDocuments(dir, 2);
+        String document = documents.get(0).getAbsolutePath();
+        Path output = Files.copy(documents.get(0).toPath(), dir.resolve("document 0_signed.pdf"));
+        String hash = BatchJournal.hash(documents.get(0).toPath());
+        Files.write(file, List.of(
+                "1700000000000\tBATCH",
+                "1700000000000\tENQUEUED\t" + document,
+                "1700000000000\tENQUEUED\t" + documents.get(1).getAbsolutePath(),
+                "1700000001000\tPREPARED\t" + document + "\t6\t" + hash,
+                "1700000002000\tSIGNED\t" + document,
+                "1700000003000\tSAVED\t" + document + "\t" + output.toAbsolutePath() + "\t6\t-"));
+
+        assertEquals(documents, new BatchJournal(file.toFile()).getUnfinished());
+
+        // the same journal with the hash of the signed copy
+        List<String> lines = new ArrayList<>(Files.readAllLines(file));
+        lines.set(5, lines.get(5).replace("\t-", "\t" + hash));
+        Files.write(file, lines);
+        assertEquals(documents.subList(1, 2), new BatchJournal(file.toFile()).getUnfinished());
+    }
+
+    @Test
+    public void TestSingleDocumentIsNotJournaled(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("batch.journal");
+        BatchJournal journal = new BatchJournal(file.toFile());
+        journal.start(createDocuments(dir, 1));
+        journal.flush(5000);
+        assertFalse(journal.isActive());
+        assertFalse(Files.exists(file));
+    }
+}
@@ -0,0 +1,39 @@
+package at.asit.pdfover.gui.workflow.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigWriterTest {
+
+    @Test
+    public void TestWritesAreCoalesced(@TempDir Path dir) throws Exception {
+        File target = dir.resolve("test.properties").toFile();
+        CompletableFuture<Void> first = ConfigWriter.write(target, "first".getBytes(StandardCharsets.UTF_8));
+        CompletableFuture<Void> second = ConfigWriter.write(target, "second".getBytes(StandardCharsets.UTF_8));
+        assertSame(first, second);
+
+        second.get();
+        assertEquals("second", Files.readString(target.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void TestFlushWritesPendingContent(@TempDir Path dir) throws Exception {
+        File target = dir.resolve("test.properties").toFile();
+        Files.writeString(target.toPath(), "old", StandardCharsets.UTF_8);
+
+        ConfigWriter.write(target, "new".getBytes(StandardCharsets.UTF_8));
+        ConfigWriter.flush(5000);
+        assertEquals("new", Files.readString(target.toPath(), StandardCharsets.UTF_8));
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count(), "temporary file left behind");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package at.asit.pdfover.signer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PDFFileDocumentSourceTest {
+
+    private static byte[] createFile(Path file, int size) throws Exception {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        Files.write(file, content);
+        return content;
+    }
+
+    @Test
+    public void TestSmallFileIsReadFully(@TempDir Path dir) throws Exception {
+        byte[] content = createFile(dir.resolve("small.pdf"), 1000);
+        PDFFileDocumentSource source = new PDFFileDocumentSource(dir.resolve("small.pdf").toFile());
+
+        ByteBuffer buffer = source.getByteBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteBuffer.wrap(content), buffer);
+        assertArrayEquals(content, source.getByteArray());
+    }
+
+    /**
+     * Delete a file that was mapped; on Windows, that fails until the mapping is garbage collected
+     */
+    private static void deleteMapped(Path file) throws Exception {
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                Files.delete(file);
+                return;
+            } catch (IOException e) {
+                if (attempt >= 20)
+                    throw e;
+                System.gc();
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @Test
+    public void TestLargeFileIsMapped(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("large.pdf");
+        byte[] content = createFile(file, 3 * PDFFileDocumentSource.MAP_THRESHOLD + 17);
+        PDFFileDocumentSource source = new PDFFileDocumentSource(file.toFile());
+
+        ByteBuffer buffer = source.getByteBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertTrue(buffer.isDirect());
+        assertEquals(ByteBuffer.wrap(content), buffer);
+        assertArrayEquals(content, source.getByteArray());
+
+        buffer = null;
+        source = null;
+        deleteMapped(file);
+    }
+
+    @Test
+    public void TestTooLargeFileThrows(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("huge.pdf");
+        // sparse where the file system supports it
+        try (RandomAccessFile huge = new RandomAccessFile(file.toFile(), "rw")) {
+            huge.setLength(Integer.MAX_VALUE + 1L);
+        }
+        PDFFileDocumentSource source = new PDFFileDocumentSource(file.toFile());
+        assertEquals(PDFFileDocumentSource.MAX_LENGTH, source.getLength());
+        assertThrows(IOException.class, source::getByteBuffer);
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, source::getByteArray);
+        assertTrue(e.getCause().getMessage().contains("too large"), e.getCause().getMessage());
+    }
+
+    @Test
+    public void TestMissingFileThrows(@TempDir Path dir) {
+        PDFFileDocumentSource source = new PDFFileDocumentSource(dir.resolve("missing.pdf").toFile());
+        assertThrows(UncheckedIOException.class, source::getByteArray);
+    }
+}
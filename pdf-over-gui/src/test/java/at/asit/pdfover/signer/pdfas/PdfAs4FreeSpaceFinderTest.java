@@ -0,0 +1,144 @@
+package at.asit.pdfover.signer.pdfas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+
+import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.signer.SignaturePosition;
+
+public class PdfAs4FreeSpaceFinderTest {
+
+    private static final float WIDTH = PDRectangle.A4.getWidth();
+    private static final float HEIGHT = PDRectangle.A4.getHeight();
+    /** page margin, rounded up to whole cells */
+    private static final double MARGIN = Math.ceil(10 * Constants.PDF_UNITS_PER_MM / PdfAs4FreeSpaceFinder.CELL) * PdfAs4FreeSpaceFinder.CELL;
+    private static final double DELTA = 0.01;
+
+    /**
+     * @param rotation page rotation
+     * @param filled for each page, which part of it (from the bottom, in user space) is filled black; null for none
+     */
+    private static byte[] createDocument(int rotation, PDRectangle... filled) throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            for (PDRectangle rect : filled) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                page.setRotation(rotation);
+                document.addPage(page);
+                if (rect == null)
+                    continue;
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.addRect(rect.getLowerLeftX(), rect.getLowerLeftY(), rect.getWidth(), rect.getHeight());
+                    content.fill();
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static SignaturePosition find(byte[] document, float width, float height) throws Exception {
+        return new PdfAs4FreeSpaceFinder(document, new CancellationToken()).find(width, height);
+    }
+
+    @Test
+    public void TestEmptyPageOffersTopLeft() {
+        PdfAs4FreeSpaceFinder.OccupancyGrid grid = new PdfAs4FreeSpaceFinder.OccupancyGrid(WIDTH, HEIGHT);
+        Point2D free = grid.findFree(200, 80);
+        assertNotNull(free);
+        assertEquals(MARGIN, free.getX(), DELTA);
+        assertEquals(HEIGHT - MARGIN, free.getY(), DELTA);
+    }
+
+    @Test
+    public void TestBlockIsPlacedBelowContent() {
+        PdfAs4FreeSpaceFinder.OccupancyGrid grid = new PdfAs4FreeSpaceFinder.OccupancyGrid(WIDTH, HEIGHT);
+        grid.mark(100, 500, 300, 300);
+        Point2D free = grid.findFree(200, 80);
+        assertNotNull(free);
+        assertEquals(MARGIN, free.getX(), DELTA);
+        // right below the content and its padding, although there is room above it
+        assertTrue(free.getY() <= 494, "placed at " + free.getY());
+        assertTrue(free.getY() > 494 - PdfAs4FreeSpaceFinder.CELL, "placed at " + free.getY());
+    }
+
+    @Test
+    public void TestBlockIsPlacedAboveContentWithoutRoomBelow() {
+        PdfAs4FreeSpaceFinder.OccupancyGrid grid = new PdfAs4FreeSpaceFinder.OccupancyGrid(WIDTH, HEIGHT);
+        grid.mark(0, 0, WIDTH, 500);
+        Point2D free = grid.findFree(200, 80);
+        assertNotNull(free);
+        assertEquals(MARGIN, free.getX(), DELTA);
+        assertEquals(HEIGHT - MARGIN, free.getY(), DELTA);
+    }
+
+    @Test
+    public void TestBlockIsPlacedBesideContent() {
+        PdfAs4FreeSpaceFinder.OccupancyGrid grid = new PdfAs4FreeSpaceFinder.OccupancyGrid(WIDTH, HEIGHT);
+        grid.mark(0, 0, 250, HEIGHT);
+        Point2D free = grid.findFree(200, 80);
+        assertNotNull(free);
+        assertTrue(free.getX() >= 256, "placed at " + free.getX());
+        assertTrue(free.getX() + 200 <= WIDTH - MARGIN);
+    }
+
+    @Test
+    public void TestFullPageHasNoRoom() {
+        PdfAs4FreeSpaceFinder.OccupancyGrid grid = new PdfAs4FreeSpaceFinder.OccupancyGrid(WIDTH, HEIGHT);
+        grid.mark(0, 0, WIDTH, HEIGHT);
+        assertNull(grid.findFree(200, 80));
+    }
+
+    @Test
+    public void TestBlockLargerThanPageHasNoRoom() {
+        PdfAs4FreeSpaceFinder.OccupancyGrid grid = new PdfAs4FreeSpaceFinder.OccupancyGrid(WIDTH, HEIGHT);
+        assertNull(grid.findFree(WIDTH - 40, 80));
+        assertNull(grid.findFree(200, HEIGHT - 40));
+    }
+
+    @Test
+    public void TestLastPageIsPreferred() throws Exception {
+        byte[] document = createDocument(0, null, null, null);
+        SignaturePosition position = find(document, 200, 80);
+        assertNotNull(position);
+        assertEquals(3, position.getPage());
+        assertEquals(MARGIN, position.getX(), DELTA);
+        assertEquals(HEIGHT - MARGIN, position.getY(), DELTA);
+    }
+
+    @Test
+    public void TestLastPageWithRoomIsChosen() throws Exception {
+        PDRectangle full = new PDRectangle(WIDTH, HEIGHT);
+        // more pages than the finder searches in parallel
+        byte[] document = createDocument(0, null, null, null, null, null, full, full, full, full, full);
+        SignaturePosition position = find(document, 200, 80);
+        assertNotNull(position);
+        assertEquals(5, position.getPage());
+
+        assertNull(find(createDocument(0, full, full, full), 200, 80));
+    }
+
+    @Test
+    public void TestRotatedPageIsSearchedAsDisplayed() throws Exception {
+        // displayed rotated clockwise, the left half of the page is the upper half on screen
+        byte[] document = createDocument(90, new PDRectangle(0, 0, WIDTH / 2, HEIGHT));
+        // only fits across the page as displayed
+        SignaturePosition position = find(document, 600, 80);
+        assertNotNull(position);
+        assertEquals(1, position.getPage());
+        assertEquals(MARGIN, position.getX(), DELTA);
+        assertTrue(position.getY() <= WIDTH / 2 - 6, "placed at " + position.getY());
+        assertTrue(position.getY() - 80 >= MARGIN - DELTA, "placed at " + position.getY());
+
+        assertNull(find(createDocument(0, new PDRectangle(0, 0, WIDTH / 2, HEIGHT)), 600, 80));
+    }
+}
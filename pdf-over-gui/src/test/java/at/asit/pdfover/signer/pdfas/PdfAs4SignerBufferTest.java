@@ -0,0 +1,119 @@
+package at.asit.pdfover.signer.pdfas;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.asit.pdfover.commons.BKUs;
+import at.asit.pdfover.commons.utils.BufferAccounting;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
+import at.asit.pdfover.signer.SignResult;
+
+/**
+ * Guards the number of document copies allocated while signing
+ *
+ * Measures what the signing thread really allocates on the heap, independently of the buffers the
+ * signer accounts for. Comparing two document sizes cancels out what does not depend on the size.
+ */
+public class PdfAs4SignerBufferTest {
+
+    /**
+     * most bytes that may be allocated per additional byte of document, i.e. copies of it
+     *
+     * Not measured yet: the signer reads the document (1), PDF-AS parses it (about 1), writes the
+     * incremental update into the output buffer (1) and returns the signed document (1), plus what
+     * PDFBox copies on the way; about 6 copies, with a third on top. Lower it to the measured value
+     * (printed by the test) plus a margin once it has run against the real IAIK provider.
+     */
+    private static final double MAX_ALLOCATED_COPIES = 8.0;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        PdfAsTestHome.setUp();
+        System.setProperty(BufferAccounting.ENABLE_PROPERTY, "true");
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        System.clearProperty(BufferAccounting.ENABLE_PROPERTY);
+    }
+
+    /** uncompressed, so the content streams rather than the page objects make up the document */
+    private static File createDocument(Path dir, int pages) throws Exception {
+        File file = dir.resolve("document-" + pages + ".pdf").toFile();
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 1; i <= pages; ++i) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.OVERWRITE, false)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 11);
+                    content.setLeading(14);
+                    content.newLineAtOffset(72, PDRectangle.A4.getHeight() - 72);
+                    for (int line = 0; line < 400; ++line) {
+                        content.showText("Page " + i + ", line " + line + ": Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    /**
+     * @return the bytes the current thread allocated to prepare and sign the document
+     */
+    private static long sign(File document, File keystore) throws Exception {
+        PdfAs4SignatureParameter parameter = new PdfAs4SignatureParameter();
+        parameter.inputDocument = new PDFFileDocumentSource(document);
+        parameter.signatureDevice = BKUs.KS;
+
+        long before = BufferAccounting.getCurrentThreadAllocatedBytes();
+        PdfAs4SigningState state = PdfAs4Signer.prepare(parameter, new CancellationToken());
+        state.setKeystoreSigner(keystore.getAbsolutePath(), "test-applet signer", "storepass", "keypass", "JKS");
+        SignResult result = PdfAs4Signer.sign(state);
+        long allocated = BufferAccounting.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(result.getSignedDocument().getLength() > document.length());
+
+        BufferAccounting.Ledger accounting = state.accounting;
+        assertTrue(accounting.isEnabled());
+        assertEquals(document.length(), accounting.getDocumentSize());
+        assertEquals(document.length(), (long) accounting.getAllocatedBytes().get(PdfAs4Signer.STAGE_INPUT));
+        // the ledger measures the same thread, minus reading the input before it was opened
+        assertTrue(accounting.getHeapAllocatedBytes() > 0);
+        assertTrue(accounting.getHeapAllocatedBytes() <= allocated);
+        return allocated;
+    }
+
+    @Test
+    public void TestAllocatedCopiesStayWithinLimit(@TempDir Path dir) throws Exception {
+        assumeTrue(BufferAccounting.getCurrentThreadAllocatedBytes() >= 0, "the JVM does not measure allocations");
+        File keystore = PdfAsTestHome.extractKeystore(dir);
+        File small = createDocument(dir, 100);
+        File large = createDocument(dir, 400);
+        sign(small, keystore); // initialize PDF-AS and its caches
+
+        long smallAllocated = sign(small, keystore);
+        long largeAllocated = sign(large, keystore);
+        double copies = ((double) (largeAllocated - smallAllocated)) / (large.length() - small.length());
+        String measured = String.format("%.2f bytes allocated per byte of document, at most %.2f allowed (%d bytes for %d, %d bytes for %d)",
+                copies, MAX_ALLOCATED_COPIES, smallAllocated, small.length(), largeAllocated, large.length());
+        System.out.println(measured);
+        assertTrue(copies <= MAX_ALLOCATED_COPIES, measured);
+    }
+}
@@ -0,0 +1,86 @@
+package at.asit.pdfover.signer.pdfas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.asit.pdfover.commons.BKUs;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
+
+/**
+ * Signs the empty signature field the user picked
+ */
+public class PdfAs4SignerFieldTest {
+
+    private static final String[] FIELDS = { "first", "second" };
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        PdfAsTestHome.setUp();
+        // created during startup, before any field is selected
+        PdfAs4Helper.getPdfAs();
+    }
+
+    private static File createDocument(Path dir, String name) throws Exception {
+        File file = dir.resolve(name).toFile();
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            PDAcroForm form = new PDAcroForm(document);
+            document.getDocumentCatalog().setAcroForm(form);
+            for (int i = 0; i < FIELDS.length; ++i) {
+                PDSignatureField field = new PDSignatureField(form);
+                field.setPartialName(FIELDS[i]);
+                PDAnnotationWidget widget = field.getWidgets().get(0);
+                widget.setRectangle(new PDRectangle(50, 600 - 250 * i, 250, 120));
+                widget.setPage(page);
+                page.getAnnotations().add(widget);
+                form.getFields().add(field);
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    private static String signField(Path dir, String fieldName) throws Exception {
+        PdfAs4SignatureParameter parameter = new PdfAs4SignatureParameter();
+        parameter.inputDocument = new PDFFileDocumentSource(createDocument(dir, fieldName + ".pdf"));
+        parameter.signatureDevice = BKUs.KS;
+        parameter.searchForPlaceholderSignatures = true;
+        parameter.signatureFieldName = fieldName;
+
+        PdfAs4SigningState state = PdfAs4Signer.prepare(parameter, new CancellationToken());
+        state.setKeystoreSigner(PdfAsTestHome.extractKeystore(dir).getAbsolutePath(), "test-applet signer", "storepass", "keypass", "JKS");
+        byte[] signed = PdfAs4Signer.sign(state).getSignedDocument().getByteArray();
+
+        String signedField = null;
+        try (PDDocument document = PDDocument.load(signed)) {
+            for (String name : FIELDS) {
+                if (((PDSignatureField) document.getDocumentCatalog().getAcroForm().getField(name)).getSignature() != null) {
+                    assertNull(signedField, "more than one field signed");
+                    signedField = name;
+                }
+            }
+        }
+        return signedField;
+    }
+
+    @Test
+    public void TestFieldSelectedAfterStartupIsSigned(@TempDir Path dir) throws Exception {
+        assertEquals("second", signField(dir, "second"));
+        // the selection applies to one signature, not to all following ones
+        assertEquals("first", signField(dir, "first"));
+    }
+}
@@ -0,0 +1,50 @@
+package at.asit.pdfover.signer.pdfas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.gui.utils.ConfigProvisioner;
+import iaik.security.provider.IAIK;
+
+/**
+ * Home directory with the PDF-AS configuration, shared by all tests since PDF-AS is created only once per JVM
+ */
+final class PdfAsTestHome {
+
+    private static Path home;
+
+    private PdfAsTestHome() {
+    }
+
+    /**
+     * Provision the configuration and point user.home at it, unless done already
+     */
+    static synchronized void setUp() throws Exception {
+        if (home != null)
+            return;
+        home = Files.createTempDirectory("pdf-over-home");
+        // PDF-AS reads its configuration from ~/.pdf-over
+        System.setProperty("user.home", home.toString());
+        File configDir = home.resolve(".pdf-over").toFile();
+        try (InputStream manifest = PdfAsTestHome.class.getResourceAsStream(Constants.RES_CFG_MANIFEST);
+                InputStream zip = PdfAsTestHome.class.getResourceAsStream(Constants.RES_CFG_ZIP)) {
+            new ConfigProvisioner(manifest).provision(zip, configDir, "cfg", new File(configDir, "cfg_backup.zip"));
+        }
+        IAIK.addAsProvider();
+    }
+
+    static File extractKeystore(Path dir) throws Exception {
+        File keystore = dir.resolve("keystore.jks").toFile();
+        try (InputStream is = PdfAsTestHome.class.getResourceAsStream("/keystore.jks")) {
+            assertNotNull(is, "keystore.jks");
+            Files.copy(is, keystore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return keystore;
+    }
+}
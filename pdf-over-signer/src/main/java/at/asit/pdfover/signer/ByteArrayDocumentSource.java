@@ -18,6 +18,7 @@ package at.asit.pdfover.signer;
 //Imports
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A DocumentSource using a byte[] to store the document content
@@ -52,4 +53,9 @@ public class ByteArrayDocumentSource implements DocumentSource {
 		return this.data;
 	}
 
+	@Override
+	public ByteBuffer getByteBuffer() {
+		return ByteBuffer.wrap(this.data).asReadOnlyBuffer();
+	}
+
 }
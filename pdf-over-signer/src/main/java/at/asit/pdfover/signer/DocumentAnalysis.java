@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012 by A-SIT, Secure Information Technology Center Austria
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * http://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package at.asit.pdfover.signer;
+
+// Imports
+import at.asit.pdfover.commons.Constants;
+import at.gv.egiz.pdfas.common.exceptions.PdfAsException;
+import at.gv.egiz.pdfas.lib.impl.placeholder.SignaturePlaceholderData;
+import at.knowcenter.wag.egov.egiz.pdf.TablePos;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Facts about a document that are expensive to rediscover (page layout, encryption, existing
+ * signatures, signature placeholders), persisted in {@link #INDEX_DIR}
+ *
+ * Entries are keyed by (path, size, mtime, quick hash), where the quick hash covers only the
+ * first and last {@value #QUICK_HASH_BLOCK} bytes of the file; the least recently used entries
+ * are evicted once there are more than {@value #MAX_ENTRIES}.
+ *
+ * All facts are null (or false) while unknown. Fill in what you found out and {@link #save()} it.
+ */
+@Slf4j
+public class DocumentAnalysis {
+
+	private static final File INDEX_DIR = new File(Constants.CONFIG_DIRECTORY, "cache" + File.separator + "documents");
+	private static final String ENTRY_SUFFIX = ".properties";
+	/** maximum number of documents kept in the index */
+	private static final int MAX_ENTRIES = 256;
+	private static final int QUICK_HASH_BLOCK = 64 * 1024;
+	/** bump this if the meaning of a stored fact changes */
+	private static final int FORMAT = 1;
+
+	/**
+	 * Size and rotation of one page
+	 */
+	public static final class PageInfo {
+		/** crop box width, in PDF units (unrotated) */
+		public final float width;
+		/** crop box height, in PDF units (unrotated) */
+		public final float height;
+		/** page rotation, in degrees */
+		public final int rotation;
+
+		public PageInfo(float width, float height, int rotation) {
+			this.width = width;
+			this.height = height;
+			this.rotation = rotation;
+		}
+
+		/** @return the width as displayed, i.e. after applying the rotation */
+		public float getDisplayWidth() { return ((this.rotation % 180) == 90) ? this.height : this.width; }
+		/** @return the height as displayed, i.e. after applying the rotation */
+		public float getDisplayHeight() { return ((this.rotation % 180) == 90) ? this.width : this.height; }
+	}
+
+	/** whether the document needs a password to be opened */
+	public Boolean encrypted = null;
+	/** one entry per page */
+	public List<PageInfo> pages = null;
+	/** locations of the existing signatures, as reported by PDF-AS */
+	public List<String> existingSignatureLocations = null;
+	/** names of the signature fields that are not signed yet */
+	public List<String> emptySignatureFields = null;
+	/** whether the document was searched for QR code markers */
+	public boolean markerScanned = false;
+	/** the first marker not used by an existing signature, if {@link #markerScanned} */
+	public SignaturePlaceholderData unusedMarker = null;
+
+	/** null if the document could not be identified; such an analysis is not persisted */
+	private final File entryFile;
+
+	private DocumentAnalysis(File entryFile) {
+		this.entryFile = entryFile;
+	}
+
+	/**
+	 * Look up what is known about a document
+	 * @param document the document
+	 * @return the stored analysis, or an empty one if the document (in its current version) is unknown
+	 */
+	public static DocumentAnalysis of(File document) {
+		File entryFile;
+		try {
+			entryFile = new File(INDEX_DIR, getKey(document) + ENTRY_SUFFIX);
+		} catch (IOException e) {
+			log.debug("Can't identify document {}", document, e);
+			return new DocumentAnalysis(null);
+		}
+
+		DocumentAnalysis analysis = new DocumentAnalysis(entryFile);
+		if (!entryFile.isFile())
+			return analysis;
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(entryFile.toPath())) {
+			props.load(in);
+		} catch (IOException e) {
+			log.warn("Can't load document analysis {}", entryFile, e);
+			return analysis;
+		}
+		if (!Integer.toString(FORMAT).equals(props.getProperty("format")))
+			return analysis;
+		try {
+			analysis.read(props);
+			log.debug("Document analysis hit for {}", document);
+		} catch (RuntimeException | PdfAsException e) {
+			log.warn("Ignoring corrupt document analysis {}", entryFile, e);
+			return new DocumentAnalysis(entryFile);
+		}
+		entryFile.setLastModified(System.currentTimeMillis()); // keep recently used entries from being pruned
+		return analysis;
+	}
+
+	private static String getKey(File document) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(document.toPath(), BasicFileAttributes.class);
+		String key = FORMAT + "|" + document.getCanonicalPath() + "|" + attrs.size()
+				+ "|" + attrs.lastModifiedTime().toMillis() + "|" + getQuickHash(document, attrs.size());
+		return DigestUtils.sha1Hex(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** hash of the first and last block of the file; incremental updates (like signatures) change the latter */
+	private static String getQuickHash(File document, long size) throws IOException {
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		byte[] buffer = new byte[(int) Math.min(QUICK_HASH_BLOCK, size)];
+		try (RandomAccessFile in = new RandomAccessFile(document, "r")) {
+			in.readFully(buffer);
+			digest.update(buffer);
+			if (size > QUICK_HASH_BLOCK) {
+				in.seek(size - buffer.length);
+				in.readFully(buffer);
+				digest.update(buffer);
+			}
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	/**
+	 * Persist the known facts (failures are only logged)
+	 */
+	public void save() {
+		if (this.entryFile == null)
+			return;
+		try {
+			Files.createDirectories(INDEX_DIR.toPath());
+			File tmp = File.createTempFile("document", ".tmp", INDEX_DIR);
+			try {
+				try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+					write().store(out, null);
+				}
+				Files.move(tmp.toPath(), this.entryFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp.toPath());
+			}
+		} catch (IOException e) {
+			log.warn("Can't save document analysis", e);
+			return;
+		}
+		pruneIndex();
+	}
+
+	/** drop the least recently used entries */
+	private static void pruneIndex() {
+		File[] entries = INDEX_DIR.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+		if ((entries == null) || (entries.length <= MAX_ENTRIES))
+			return;
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < entries.length - MAX_ENTRIES; ++i) {
+			if (entries[i].delete())
+				log.debug("Evicted document analysis {}", entries[i].getName());
+		}
+	}
+
+	private Properties write() {
+		Properties props = new Properties();
+		props.setProperty("format", Integer.toString(FORMAT));
+		if (this.encrypted != null)
+			props.setProperty("encrypted", this.encrypted.toString());
+		if (this.pages != null) {
+			StringBuilder sb = new StringBuilder();
+			for (PageInfo page : this.pages) {
+				if (sb.length() > 0)
+					sb.append(';');
+				sb.append(page.width).append(' ').append(page.height).append(' ').append(page.rotation);
+			}
+			props.setProperty("pages.count", Integer.toString(this.pages.size()));
+			props.setProperty("pages", sb.toString());
+		}
+		writeList(props, "signatures", this.existingSignatureLocations);
+		writeList(props, "fields", this.emptySignatureFields);
+		if (this.markerScanned) {
+			props.setProperty("marker.scanned", "true");
+			SignaturePlaceholderData marker = this.unusedMarker;
+			if (marker != null) {
+				props.setProperty("marker.pos", marker.getTablePos().myposstring);
+				setIfNotNull(props, "marker.name", marker.getPlaceholderName());
+				setIfNotNull(props, "marker.id", marker.getId());
+				setIfNotNull(props, "marker.profile", marker.getProfile());
+				setIfNotNull(props, "marker.type", marker.getType());
+				setIfNotNull(props, "marker.key", marker.getKey());
+			}
+		}
+		return props;
+	}
+
+	private void read(Properties props) throws PdfAsException {
+		String encrypted = props.getProperty("encrypted");
+		if (encrypted != null)
+			this.encrypted = Boolean.valueOf(encrypted);
+		String pages = props.getProperty("pages");
+		if (pages != null) {
+			int count = Integer.parseInt(props.getProperty("pages.count"));
+			List<PageInfo> list = new ArrayList<>(count);
+			if (count > 0) {
+				for (String page : pages.split(";")) {
+					String[] values = page.split(" ");
+					list.add(new PageInfo(Float.parseFloat(values[0]), Float.parseFloat(values[1]), Integer.parseInt(values[2])));
+				}
+			}
+			if (list.size() != count)
+				throw new IllegalArgumentException("page count mismatch");
+			this.pages = Collections.unmodifiableList(list);
+		}
+		this.existingSignatureLocations = readList(props, "signatures");
+		this.emptySignatureFields = readList(props, "fields");
+		this.markerScanned = Boolean.parseBoolean(props.getProperty("marker.scanned"));
+		String pos = props.getProperty("marker.pos");
+		if (this.markerScanned && (pos != null)) {
+			SignaturePlaceholderData marker = new SignaturePlaceholderData(props.getProperty("marker.profile"),
+					props.getProperty("marker.type"), props.getProperty("marker.key"), props.getProperty("marker.id"));
+			marker.setTablePos(new TablePos(pos));
+			marker.setPlaceholderName(props.getProperty("marker.name"));
+			this.unusedMarker = marker;
+		}
+	}
+
+	private static void writeList(Properties props, String prefix, List<String> values) {
+		if (values == null)
+			return;
+		props.setProperty(prefix + ".count", Integer.toString(values.size()));
+		for (int i = 0; i < values.size(); ++i)
+			props.setProperty(prefix + "." + i, values.get(i));
+	}
+
+	private static List<String> readList(Properties props, String prefix) {
+		String count = props.getProperty(prefix + ".count");
+		if (count == null)
+			return null;
+		int n = Integer.parseInt(count);
+		List<String> values = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i) {
+			String value = props.getProperty(prefix + "." + i);
+			if (value == null)
+				throw new IllegalArgumentException("missing " + prefix + "." + i);
+			values.add(value);
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	private static void setIfNotNull(Properties props, String key, String value) {
+		if (value != null)
+			props.setProperty(key, value);
+	}
+}
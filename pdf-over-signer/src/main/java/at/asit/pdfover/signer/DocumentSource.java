@@ -17,6 +17,7 @@ package at.asit.pdfover.signer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A Document Source
@@ -39,6 +40,14 @@ public interface DocumentSource {
 	/**
 	 * Get Document as byte[]
 	 * @return byte[] of the Document
+	 * @throws java.io.UncheckedIOException if the document cannot be read
 	 */
 	public byte[] getByteArray();
+
+	/**
+	 * Get a read-only view of the Document, without copying it if possible
+	 * @return ByteBuffer positioned at the start of the document
+	 * @throws IOException
+	 */
+	public ByteBuffer getByteBuffer() throws IOException;
 }
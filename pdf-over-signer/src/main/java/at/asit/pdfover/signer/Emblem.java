@@ -20,17 +20,20 @@ import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.utils.ImageUtil;
 import lombok.extern.slf4j.Slf4j;
 
-import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.imageio.ImageIO;
@@ -38,21 +41,43 @@ import javax.imageio.ImageIO;
 import org.apache.commons.codec.digest.DigestUtils;
 
 /**
- * TODO all of this caching business is a bit of a mess
+ * An emblem (logo) image for the signature block
+ *
+ * Emblems are reduced to at most {@value #MAX_EMBLEM_WIDTH}x{@value #MAX_EMBLEM_HEIGHT} and cached
+ * as PNG in {@link #CACHE_DIR}, named by the MD5 of the original file's contents. A small index maps
+ * (path, size, mtime) to that hash, so unchanged files are not re-hashed; the decoded reduced images
+ * of recently used emblems are also kept in memory.
  */
 @Slf4j
 public class Emblem {
 
-	private static final String CACHE_DIR = Constants.CONFIG_DIRECTORY;
-	private static final String CACHE_IMG_FILENAME = ".emblem.png";
+	private static final File CACHE_DIR = new File(Constants.CONFIG_DIRECTORY, "cache" + File.separator + "emblems");
 	private static final String CACHE_IMG_FORMAT = "png";
-	private static final String CACHE_PROPS_FILENAME = ".emblem.properties";
+	private static final String CACHE_IMG_SUFFIX = ".png";
+	private static final String CACHE_INDEX_FILENAME = "index.properties";
+	/** maximum number of reduced emblems kept on disk */
+	private static final int MAX_CACHED_FILES = 16;
+	/** reduced emblems are pruned by modification time; a cache hit only updates it if it is older than this */
+	private static final long TOUCH_INTERVAL_MILLIS = 60 * 60 * 1000;
+	/** maximum number of decoded emblems kept in memory */
+	private static final int MAX_CACHED_IMAGES = 4;
 
-	private static final String PROPKEY_ORIG_PATH = "IMG";
-	private static final String PROPKEY_ORIG_DIGEST = "HSH";
 	private static final int MAX_EMBLEM_WIDTH  = 480;
 	private static final int MAX_EMBLEM_HEIGHT = 600;
 
+	/** original path -> "size;mtime;hash"; guarded by itself, persisted to {@link #CACHE_INDEX_FILENAME} */
+	private static final Properties index = new Properties();
+	private static boolean indexLoaded = false;
+
+	/** content hash -> reduced image; guarded by {@link #index} */
+	private static final Map<String, BufferedImage> decodedImages = new LinkedHashMap<String, BufferedImage>(8, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+			return size() > MAX_CACHED_IMAGES;
+		}
+	};
+
 	private String originalFileName = null;
 	private String originalFileHash = null;
 	private Image image = null; /* image data, if we have it */
@@ -62,9 +87,16 @@ public class Emblem {
 
 		String filename = getCachedFileName();
 		if (this.image != null) return; /* getCachedFileName may have re-generated the cache and populated this.image */
+		if (filename == null) return;
 
 		try {
-			this.image = ImageUtil.readImageWithEXIFRotation(new File(filename));
+			BufferedImage img = ImageUtil.readImageWithEXIFRotation(new File(filename));
+			this.image = img;
+			if (this.originalFileHash != null) {
+				synchronized (index) {
+					decodedImages.put(this.originalFileHash, img);
+				}
+			}
 		} catch (IOException e) {
 			log.warn("Failed to load Emblem image");
 		}
@@ -82,36 +114,91 @@ public class Emblem {
 	}
 
 	private static String getFileHash(String filename) throws IOException {
-		InputStream is = Files.newInputStream(Path.of(filename));
-		return DigestUtils.md5Hex(is);
+		try (InputStream is = Files.newInputStream(Path.of(filename))) {
+			return DigestUtils.md5Hex(is);
+		}
+	}
+
+	private static void loadIndexIfNecessary() {
+		if (indexLoaded)
+			return;
+		indexLoaded = true;
+		File indexFile = new File(CACHE_DIR, CACHE_INDEX_FILENAME);
+		if (!indexFile.exists())
+			return;
+		try (InputStream in = Files.newInputStream(indexFile.toPath())) {
+			index.load(in);
+		} catch (IOException e) {
+			log.warn("Can't load emblem cache index", e);
+		}
+	}
+
+	private static void storeIndex() {
+		try {
+			Files.createDirectories(CACHE_DIR.toPath());
+			File tmp = File.createTempFile("index", ".tmp", CACHE_DIR);
+			try {
+				try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+					index.store(out, null);
+				}
+				Files.move(tmp.toPath(), new File(CACHE_DIR, CACHE_INDEX_FILENAME).toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp.toPath());
+			}
+		} catch (IOException e) {
+			log.warn("Can't save emblem cache index", e);
+		}
 	}
 
-	private static BufferedImage reduceImageSizeIfNecessary(BufferedImage img, int maxWidth, int maxHeight) {
-		int oheight = img.getHeight();
-		int owidth = img.getWidth();
+	/**
+	 * Get the content hash of the given file, hashing it only if its size or mtime changed since we last did
+	 * @return the hash, or null if the file does not exist
+	 */
+	private static String lookupFileHash(String filename) throws IOException {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(Path.of(filename), BasicFileAttributes.class);
+		} catch (IOException e) {
+			return null;
+		}
+		String stamp = attrs.size() + ";" + attrs.lastModifiedTime().toMillis() + ";";
 
-		double ratio = (double)owidth/(double)oheight;
+		synchronized (index) {
+			loadIndexIfNecessary();
+			String entry = index.getProperty(filename);
+			if ((entry != null) && entry.startsWith(stamp))
+				return entry.substring(stamp.length());
+		}
 
-		int height = oheight;
-		int width = owidth;
-		if (height > maxHeight) {
-			height = maxHeight;
-			width = (int) (maxHeight * ratio);
+		String hash = getFileHash(filename);
+		synchronized (index) {
+			index.setProperty(filename, stamp + hash);
+			storeIndex();
 		}
-		if (width > maxWidth) {
-			width = maxWidth;
-			height = (int) (maxWidth / ratio);
+		return hash;
+	}
+
+	/** drop the least recently used emblems from the disk cache, and their index entries */
+	private static void pruneDiskCache() {
+		File[] cached = CACHE_DIR.listFiles((dir, name) -> name.endsWith(CACHE_IMG_SUFFIX));
+		if ((cached == null) || (cached.length <= MAX_CACHED_FILES))
+			return;
+		Arrays.sort(cached, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < cached.length - MAX_CACHED_FILES; ++i) {
+			String name = cached[i].getName();
+			String hash = name.substring(0, name.length() - CACHE_IMG_SUFFIX.length());
+			if (!cached[i].delete())
+				continue;
+			log.debug("Evicted emblem {} from cache", hash);
+			synchronized (index) {
+				index.values().removeIf(v -> ((String) v).endsWith(";" + hash));
+				decodedImages.remove(hash);
+			}
 		}
-		BufferedImage result = img;
-		if (width != owidth || height != oheight) {
-			//scale image
-			log.debug("Scaling emblem: " + owidth + "x" + oheight + " to " + width + "x" + height);
-			result = new BufferedImage(width, height, img.getType() == 0 ? BufferedImage.TYPE_INT_ARGB : img.getType());
-			Graphics2D g = result.createGraphics();
-			g.drawImage(img, 0, 0, width, height, null);
-			g.dispose();
+		synchronized (index) {
+			storeIndex();
 		}
-		return result;
 	}
 
 	/* (non-Javadoc)
@@ -119,53 +206,60 @@ public class Emblem {
 	 */
 	public String getCachedFileName() {
 		String emblemImg = this.originalFileName;
-		String emblemHsh = null;
-		String cachedEmblemFileName = CACHE_DIR + File.separator + CACHE_IMG_FILENAME;
-
-		if (emblemImg == null || !(new File(emblemImg).exists()))
+		if (emblemImg == null)
 			return null;
 
-		Properties emblemProps = new Properties();
-		// compare cache, try to load if match
+		String emblemHsh;
 		try {
-			File cacheProps = new File(CACHE_DIR, CACHE_PROPS_FILENAME);
-			if (cacheProps.exists()) {
-				InputStream in = new FileInputStream(cacheProps);
-				emblemProps.load(in);
-				if (emblemImg.equals(emblemProps.getProperty(PROPKEY_ORIG_PATH))) {
-					emblemHsh = getFileHash(emblemImg);
-					if (emblemHsh.equals(emblemProps.getProperty(PROPKEY_ORIG_DIGEST))) {
-						log.debug("Emblem cache hit: " + cachedEmblemFileName);
-						return cachedEmblemFileName;
-					}
-				}
+			emblemHsh = lookupFileHash(emblemImg);
+		} catch (IOException e) {
+			log.warn("Can't hash emblem file", e);
+			return this.originalFileName;
+		}
+		if (emblemHsh == null)
+			return null;
+		this.originalFileHash = emblemHsh;
+
+		File cachedEmblem = new File(CACHE_DIR, emblemHsh + CACHE_IMG_SUFFIX);
+		synchronized (index) {
+			BufferedImage decoded = decodedImages.get(emblemHsh);
+			if (decoded != null) {
+				this.image = decoded;
+				return cachedEmblem.getPath();
 			}
-			log.debug("Emblem cache miss");
-		} catch (Exception e) {
-			log.warn("Can't load emblem cache", e);
 		}
+		long modified = cachedEmblem.lastModified(); // 0 if it does not exist
+		if (modified != 0) {
+			log.debug("Emblem cache hit: " + cachedEmblem);
+			long now = System.currentTimeMillis();
+			if (now - modified > TOUCH_INTERVAL_MILLIS)
+				cachedEmblem.setLastModified(now); // keep recently used emblems from being pruned
+			return cachedEmblem.getPath();
+		}
+		log.debug("Emblem cache miss");
 
 		try {
-			// create new cache
-			if (emblemHsh == null)
-				emblemHsh = getFileHash(emblemImg);
-			emblemProps.setProperty(PROPKEY_ORIG_PATH, emblemImg);
-			emblemProps.setProperty(PROPKEY_ORIG_DIGEST, emblemHsh);
-			File imgFile = new File(emblemImg);
-
-			BufferedImage img = ImageUtil.readImageWithEXIFRotation(imgFile);
-			img = reduceImageSizeIfNecessary(img, MAX_EMBLEM_WIDTH, MAX_EMBLEM_HEIGHT);
-
-			File file = new File(CACHE_DIR, CACHE_IMG_FILENAME);
-			ImageIO.write(img, CACHE_IMG_FORMAT, file); // ignore returned boolean
+			BufferedImage img = ImageUtil.readImageWithEXIFRotation(new File(emblemImg), MAX_EMBLEM_WIDTH, MAX_EMBLEM_HEIGHT);
+
+			Files.createDirectories(CACHE_DIR.toPath());
+			File tmp = File.createTempFile("emblem", ".tmp", CACHE_DIR);
+			try {
+				ImageIO.write(img, CACHE_IMG_FORMAT, tmp); // ignore returned boolean
+				Files.move(tmp.toPath(), cachedEmblem.toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp.toPath());
+			}
 			this.image = img;
-			OutputStream out = new FileOutputStream(new File(CACHE_DIR, CACHE_PROPS_FILENAME));
-			emblemProps.store(out, null);
+			synchronized (index) {
+				decodedImages.put(emblemHsh, img);
+			}
+			pruneDiskCache();
 		} catch (IOException e) {
 			log.error("Can't save emblem cache", e);
 			return this.originalFileName;
 		}
-		return cachedEmblemFileName;
+		return cachedEmblem.getPath();
 	}
 
 	/**
@@ -182,10 +276,11 @@ public class Emblem {
 	 */
 	public String getOriginalFileHash() {
 		if (this.originalFileHash == null) {
-			if (this.originalFileName == null || !(new File(this.originalFileName).exists())) {
+			if (this.originalFileName == null) {
 				this.originalFileHash = "";
 			} else try {
-				this.originalFileHash = getFileHash(this.originalFileName);
+				String hash = lookupFileHash(this.originalFileName);
+				this.originalFileHash = (hash != null) ? hash : "";
 			} catch (IOException e) {
 				log.debug("Error getting file hash", e);
 				this.originalFileHash = "";
@@ -16,23 +16,40 @@
 package at.asit.pdfover.signer;
 
 // Imports
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
+ * A DocumentSource backed by a file
  *
+ * The file is only read into memory when {@link #getByteArray()} is called. {@link #getByteBuffer()}
+ * maps files of {@value #MAP_THRESHOLD} bytes or more instead; note that a mapped file cannot be
+ * deleted or replaced on Windows until the mapping has been garbage collected. Files larger than
+ * {@value #MAX_LENGTH} bytes fit into neither and cannot be read.
  */
 @Slf4j
 public class PDFFileDocumentSource implements DocumentSource {
 
+	/** files at least this large are mapped by {@link #getByteBuffer()} rather than read */
+	public static final int MAP_THRESHOLD = 1024 * 1024;
+	/** largest file that can be read, cf. the largest possible array */
+	public static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
 	private File file;
 
 	private byte[] data = null;
 
+	private ByteBuffer mapped = null;
+
 	private int len = 0;
 
 	/**
@@ -43,6 +60,14 @@ public class PDFFileDocumentSource implements DocumentSource {
 		this.file = file;
 	}
 
+	/**
+	 * Gets the file backing this document
+	 * @return the file
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
 	/* (non-Javadoc)
 	 * @see at.asit.pdfover.signator.DocumentSource#getInputStream()
 	 */
@@ -56,10 +81,12 @@ public class PDFFileDocumentSource implements DocumentSource {
 	 */
 	@Override
 	public int getLength() {
-		if(this.file.length() > Integer.MAX_VALUE) {
-			log.error("File size to big!" + this.file.length());
+		long length = this.file.length();
+		if(length > MAX_LENGTH) {
+			log.error("File size to big!" + length);
+			length = MAX_LENGTH;
 		}
-		this.len = (int) this.file.length();
+		this.len = (int) length;
 		return this.len;
 	}
 
@@ -67,18 +94,54 @@ public class PDFFileDocumentSource implements DocumentSource {
 	 * @see at.asit.pdfover.signator.DocumentSource#getByteArray()
 	 */
 	@Override
-	public byte[] getByteArray() {
+	public synchronized byte[] getByteArray() {
 		if(this.data == null) {
 			try {
-				InputStream stream = this.getInputStream();
-				this.data = new byte[this.getLength()];
-				stream.read(this.data);
-				stream.close();
+				this.data = readFully();
 			} catch(IOException ex) {
 				log.error("Failed to read file!", ex);
+				throw new UncheckedIOException("Failed to read " + this.file, ex);
 			}
 		}
 		return this.data;
 	}
 
+	/* (non-Javadoc)
+	 * @see at.asit.pdfover.signer.DocumentSource#getByteBuffer()
+	 */
+	@Override
+	public synchronized ByteBuffer getByteBuffer() throws IOException {
+		if (this.data != null)
+			return ByteBuffer.wrap(this.data).asReadOnlyBuffer();
+		if (this.mapped == null) {
+			checkLength();
+			if (this.file.length() < MAP_THRESHOLD) {
+				this.data = readFully();
+				return ByteBuffer.wrap(this.data).asReadOnlyBuffer();
+			}
+			try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)) {
+				this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+		}
+		return this.mapped.duplicate();
+	}
+
+	private void checkLength() throws IOException {
+		if (this.file.length() > MAX_LENGTH)
+			throw new IOException(this.file + " is too large (" + this.file.length() + " bytes, at most " + MAX_LENGTH + ")");
+	}
+
+	private byte[] readFully() throws IOException {
+		checkLength();
+		try (InputStream stream = this.getInputStream()) {
+			int length = this.getLength();
+			byte[] buffer = new byte[length];
+			/* a single read() may return fewer bytes than requested */
+			int read = stream.readNBytes(buffer, 0, length);
+			if (read < length)
+				throw new EOFException("Read " + read + " of " + length + " bytes");
+			return buffer;
+		}
+	}
+
 }
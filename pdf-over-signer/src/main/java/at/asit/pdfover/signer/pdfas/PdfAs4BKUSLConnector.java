@@ -19,6 +19,9 @@ package at.asit.pdfover.signer.pdfas;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 
+import at.asit.pdfover.commons.utils.BufferAccounting;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.commons.utils.FlightRecorderEvents;
 import at.asit.pdfover.signer.BkuSlConnector;
 import at.asit.pdfover.signer.SignatureException;
 import at.asit.pdfover.signer.UserCancelledException;
@@ -44,13 +47,43 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class PdfAs4BKUSLConnector extends BaseSLConnector {
 	private BkuSlConnector connector;
+	private CancellationToken cancellation;
+	private BufferAccounting.Ledger accounting;
 
 	/**
 	 * Constructor
 	 * @param connector the BKU SL Connector
+	 * @param cancellation once cancelled, further requests are reported as user cancellation
+	 * @param accounting ledger for the signature data buffers; may be null
 	 */
-	public PdfAs4BKUSLConnector(BkuSlConnector connector) {
+	public PdfAs4BKUSLConnector(BkuSlConnector connector, CancellationToken cancellation, BufferAccounting.Ledger accounting) {
 		this.connector = connector;
+		this.cancellation = cancellation;
+		this.accounting = (accounting != null) ? accounting : BufferAccounting.NONE;
+	}
+
+	private String handleSLRequest(PdfAs4SLRequest request) throws SignatureException, UserCancelledException {
+		if (this.cancellation.isCancelled())
+			throw new UserCancelledException();
+		FlightRecorderEvents.SLRequest event = new FlightRecorderEvents.SLRequest();
+		event.begin();
+		String response = null;
+		try {
+			response = this.connector.handleSLRequest(request);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.connector = this.connector.getClass().getSimpleName();
+				/* the XML parts are counted in characters, they are (nearly) ASCII */
+				event.bytesSent = request.xmlRequest.length() +
+						((request.signatureData != null) ? request.signatureData.getLength() : 0);
+				event.bytesReceived = (response != null) ? response.length() : 0;
+				event.commit();
+			}
+		}
+		if (this.cancellation.isCancelled())
+			throw new UserCancelledException();
+		return response;
 	}
 
 
@@ -66,7 +99,7 @@ public class PdfAs4BKUSLConnector extends BaseSLConnector {
 			try {
 				String slRequestString = SLMarschaller.marshalToString(this.of.createInfoboxReadRequest(request));
 
-				String slResponse = this.connector.handleSLRequest(new PdfAs4SLRequest(slRequestString, null));
+				String slResponse = handleSLRequest(new PdfAs4SLRequest(slRequestString, null));
 
 				element = (JAXBElement<?>) SLMarschaller.unmarshalFromString(slResponse);
 			} catch (SignatureException e) {
@@ -117,13 +150,18 @@ try { try {
 			String slRequestString = SLMarschaller.marshalToString(this.of.createCreateCMSSignatureRequest(pack.getRequestType()));
 
 			byte[] signatureData = pack.getSignatureData();
-			if (IConfigurationConstants.SL_REQUEST_TYPE_UPLOAD.equals(parameter.getConfiguration().getValue(IConfigurationConstants.SL_REQUEST_TYPE)))
+			if (signatureData != null)
+				this.accounting.allocate(PdfAs4Signer.STAGE_SL_SIGNATURE_DATA, signatureData.length);
+			if (IConfigurationConstants.SL_REQUEST_TYPE_UPLOAD.equals(parameter.getConfiguration().getValue(IConfigurationConstants.SL_REQUEST_TYPE))) {
 				signatureData = PDFUtils.blackOutSignature(signatureData, pack.getByteRange());
+				this.accounting.allocate(PdfAs4Signer.STAGE_SL_BLACKOUT, signatureData.length);
+			}
 
+			/* the connectors stream the upload from this buffer, the request body is not another copy */
 			PdfAs4SLRequest slRequest = new PdfAs4SLRequest(slRequestString, signatureData);
 
 			try {
-				String slResponse = this.connector.handleSLRequest(slRequest);
+				String slResponse = handleSLRequest(slRequest);
 
 				element = (JAXBElement<?>) SLMarschaller.unmarshalFromString(slResponse);
 			} catch (SignatureException e) {
@@ -143,6 +181,10 @@ try { try {
 			throw new PDFIOException("error.pdf.io.03", e);
 		} catch (UserCancelledException e) {
 			throw new SLPdfAsException(6001, "Vorgang durch den Benutzer abgebrochen.");
+		} finally {
+			/* PDF-AS drops the request package once the CMS signature is returned */
+			this.accounting.release(PdfAs4Signer.STAGE_SL_BLACKOUT);
+			this.accounting.release(PdfAs4Signer.STAGE_SL_SIGNATURE_DATA);
 		}
 
 		if (element == null) {
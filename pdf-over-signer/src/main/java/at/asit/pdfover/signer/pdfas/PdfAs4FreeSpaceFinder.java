@@ -0,0 +1,448 @@
+package at.asit.pdfover.signer.pdfas;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationPopup;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+import at.asit.pdfover.commons.Constants;
+import at.asit.pdfover.commons.utils.BufferAccounting;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.signer.SignaturePosition;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds room for a signature block, as an explicit position for what PDF-AS' automatic positioning
+ * would do (which often appends a new page)
+ *
+ * Everything a page draws (text, paths, images, shadings and annotations) is marked in an occupancy
+ * grid of {@value #CELL} x {@value #CELL} PDF units, and the grid is searched for a free rectangle of
+ * the block's size, preferably below the content. Pages are searched from the last one backwards,
+ * several in parallel (see {@link PdfBoxWorkerPool}); the search stops once the last page with room
+ * is known.
+ *
+ * Positions are in the coordinates of the page as displayed (i.e. after applying its rotation),
+ * like those chosen in the positioning view.
+ */
+@Slf4j
+public final class PdfAs4FreeSpaceFinder {
+
+	/** grid resolution, in PDF units */
+	static final float CELL = 4;
+	/** distance kept from the page edges, in PDF units */
+	private static final float MARGIN = (float) (10 * Constants.PDF_UNITS_PER_MM);
+	/** distance kept from the content, in PDF units */
+	private static final float PADDING = 6;
+
+	private final byte[] document;
+	private final CancellationToken cancellation;
+	private final BufferAccounting.Ledger accounting;
+
+	/**
+	 * @param document the document contents
+	 * @param cancellation checked between pages
+	 */
+	public PdfAs4FreeSpaceFinder(byte[] document, CancellationToken cancellation) {
+		this(document, cancellation, BufferAccounting.NONE);
+	}
+
+	/**
+	 * @param document the document contents
+	 * @param cancellation checked between pages
+	 * @param accounting the ledger of the signature; the workers' allocations are counted towards it
+	 */
+	public PdfAs4FreeSpaceFinder(byte[] document, CancellationToken cancellation, BufferAccounting.Ledger accounting) {
+		this.document = document;
+		this.cancellation = cancellation;
+		this.accounting = accounting;
+	}
+
+	/**
+	 * Find room for a signature block on the last page that has some
+	 * @param width the width of the signature block, in PDF units
+	 * @param height the height of the signature block, in PDF units
+	 * @return the position of the block's top left corner, or null if no page has room
+	 * @throws IOException if the document cannot be parsed
+	 * @throws java.util.concurrent.CancellationException if the search was cancelled
+	 */
+	public SignaturePosition find(float width, float height) throws IOException {
+		long start = System.nanoTime();
+		SearchState state;
+		/* the copy parsed for counting the pages is searched here, the other workers parse their own */
+		try (PDDocument pdf = PdfBoxWorkerPool.load(this.document)) {
+			state = new SearchState(pdf.getNumberOfPages());
+			ForkJoinPool pool = PdfBoxWorkerPool.get();
+			int workers = Math.max(1, Math.min(state.pageCount, pool.getParallelism()));
+			List<Future<Void>> tasks = new ArrayList<>(workers - 1);
+			for (int i = 1; i < workers; ++i) {
+				int first = i;
+				tasks.add(pool.submit(() -> searchCopy(state, first, workers, width, height)));
+			}
+			search(pdf, state, 0, workers, width, height);
+			for (Future<Void> task : tasks) {
+				try {
+					task.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+		}
+		this.cancellation.throwIfCancelled();
+
+		SignaturePosition result = state.getResult();
+		log.debug("Free space search in {} pages took {} ms, found {}", state.pageCount,
+				(System.nanoTime() - start) / 1000000, (result != null) ? ("page " + result.getPage()) : "nothing");
+		return result;
+	}
+
+	/**
+	 * Runs {@link #search} in a worker, on its own copy of the document
+	 */
+	private Void searchCopy(SearchState state, int first, int step, float width, float height) throws IOException {
+		if (skip(state, first))
+			return null;
+		this.accounting.enter();
+		try (PDDocument pdf = PdfBoxWorkerPool.load(this.document)) {
+			search(pdf, state, first, step, width, height);
+		} finally {
+			this.accounting.leave();
+		}
+		return null;
+	}
+
+	/**
+	 * Searches every step-th page, counted from the last one
+	 */
+	private void search(PDDocument pdf, SearchState state, int first, int step, float width, float height) throws IOException {
+		for (int i = first; i < state.pageCount; i += step) {
+			if (skip(state, i))
+				return;
+			int pageNr = state.pageCount - i;
+			PDPage page = pdf.getPage(pageNr - 1);
+			Point2D free = new ContentCollector(page).collect().findFree(width, height);
+			if (free != null) {
+				state.hits.set(i, new SignaturePosition(free.getX(), free.getY(), pageNr));
+				state.firstHit.accumulateAndGet(i, Math::min);
+				return;
+			}
+		}
+	}
+
+	private boolean skip(SearchState state, int i) {
+		return this.cancellation.isCancelled() || (i > state.firstHit.get());
+	}
+
+	/**
+	 * State shared between the workers of one search; pages are indexed from the last one
+	 */
+	private static final class SearchState {
+		final int pageCount;
+		/** index of the last page known to have room; earlier pages need not be searched */
+		final AtomicInteger firstHit;
+		final AtomicReferenceArray<SignaturePosition> hits;
+
+		SearchState(int pageCount) {
+			this.pageCount = pageCount;
+			this.firstHit = new AtomicInteger(pageCount);
+			this.hits = new AtomicReferenceArray<>(pageCount);
+		}
+
+		SignaturePosition getResult() {
+			int i = this.firstHit.get();
+			return (i < this.pageCount) ? this.hits.get(i) : null;
+		}
+	}
+
+	/**
+	 * Which cells of a page are taken, in display coordinates; row 0 is at the top of the page
+	 */
+	static final class OccupancyGrid {
+		private final float height;
+		final int columns;
+		final int rows;
+		private final boolean[] occupied;
+		/** lowest row with content, -1 for an empty page */
+		private int lastRow = -1;
+
+		/**
+		 * @param width page width (as displayed), in PDF units
+		 * @param height page height (as displayed), in PDF units
+		 */
+		OccupancyGrid(float width, float height) {
+			this.height = height;
+			this.columns = Math.max(0, (int) Math.floor(width / CELL));
+			this.rows = Math.max(0, (int) Math.floor(height / CELL));
+			this.occupied = new boolean[this.columns * this.rows];
+		}
+
+		/**
+		 * Mark a rectangle as taken, including the padding around it
+		 * @param x left, in display coordinates (origin at the bottom left)
+		 * @param y bottom, in display coordinates
+		 */
+		void mark(double x, double y, double w, double h) {
+			if (!(w >= 0 && h >= 0))
+				return; /* also NaN */
+			int c0 = Math.max(0, (int) Math.floor((x - PADDING) / CELL));
+			int c1 = Math.min(this.columns - 1, (int) Math.floor((x + w + PADDING) / CELL));
+			int r0 = Math.max(0, (int) Math.floor((this.height - (y + h) - PADDING) / CELL));
+			int r1 = Math.min(this.rows - 1, (int) Math.floor((this.height - y + PADDING) / CELL));
+			if (c0 > c1 || r0 > r1)
+				return;
+			for (int r = r0; r <= r1; ++r)
+				Arrays.fill(this.occupied, r * this.columns + c0, r * this.columns + c1 + 1, true);
+			this.lastRow = Math.max(this.lastRow, r1);
+		}
+
+		/**
+		 * Find a free rectangle, preferably right below the content, otherwise as far up as possible;
+		 * always on the left, and never within the page margin
+		 * @return the top left corner in display coordinates (origin at the bottom left), or null
+		 */
+		Point2D findFree(float w, float h) {
+			int margin = (int) Math.ceil(MARGIN / CELL);
+			int wc = (int) Math.ceil(w / CELL);
+			int hc = (int) Math.ceil(h / CELL);
+			int maxRow = this.rows - margin - hc;
+			int maxColumn = this.columns - margin - wc;
+			if (maxRow < margin || maxColumn < margin)
+				return null;
+
+			/* summed-area table, so every candidate is checked in constant time */
+			int stride = this.columns + 1;
+			int[] sum = new int[stride * (this.rows + 1)];
+			for (int r = 0; r < this.rows; ++r) {
+				int line = 0;
+				for (int c = 0; c < this.columns; ++c) {
+					if (this.occupied[r * this.columns + c])
+						++line;
+					sum[(r + 1) * stride + c + 1] = sum[r * stride + c + 1] + line;
+				}
+			}
+
+			int below = Math.max(margin, this.lastRow + 1);
+			for (int pass = 0; pass < 2; ++pass) {
+				for (int r = (pass == 0) ? below : margin; r <= maxRow; ++r) {
+					for (int c = margin; c <= maxColumn; ++c) {
+						int taken = sum[(r + hc) * stride + c + wc] - sum[r * stride + c + wc]
+								- sum[(r + hc) * stride + c] + sum[r * stride + c];
+						if (taken == 0)
+							return new Point2D.Float(c * CELL, this.height - r * CELL);
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Marks the bounds of everything a page draws in an {@link OccupancyGrid}
+	 */
+	private static final class ContentCollector extends PDFGraphicsStreamEngine {
+		private final PDPage page;
+		private final OccupancyGrid grid;
+		/** crop box and rotation, to get from user space to display coordinates */
+		private final float originX, originY, cropWidth, cropHeight;
+		private final int rotation;
+
+		/** bounds of the current path, in user space */
+		private float minX, minY, maxX, maxY;
+		private boolean hasPath = false;
+		private final Point2D.Float currentPoint = new Point2D.Float();
+
+		ContentCollector(PDPage page) {
+			super(page);
+			this.page = page;
+			PDRectangle cropBox = page.getCropBox();
+			this.originX = cropBox.getLowerLeftX();
+			this.originY = cropBox.getLowerLeftY();
+			this.cropWidth = cropBox.getWidth();
+			this.cropHeight = cropBox.getHeight();
+			this.rotation = ((page.getRotation() % 360) + 360) % 360;
+			boolean rotated = (this.rotation % 180) == 90;
+			this.grid = new OccupancyGrid(rotated ? this.cropHeight : this.cropWidth, rotated ? this.cropWidth : this.cropHeight);
+		}
+
+		OccupancyGrid collect() throws IOException {
+			processPage(this.page);
+			for (PDAnnotation annotation : this.page.getAnnotations()) {
+				if (annotation.isHidden() || annotation.isNoView() || (annotation instanceof PDAnnotationPopup))
+					continue;
+				PDRectangle rect = annotation.getRectangle();
+				if (rect != null)
+					markUserSpace(rect.getLowerLeftX(), rect.getLowerLeftY(), rect.getUpperRightX(), rect.getUpperRightY());
+			}
+			return this.grid;
+		}
+
+		/** mark a rectangle given by two corners in user space */
+		private void markUserSpace(float x0, float y0, float x1, float y1) {
+			Point2D a = toDisplay(x0, y0);
+			Point2D b = toDisplay(x1, y1);
+			double x = Math.min(a.getX(), b.getX());
+			double y = Math.min(a.getY(), b.getY());
+			this.grid.mark(x, y, Math.abs(a.getX() - b.getX()), Math.abs(a.getY() - b.getY()));
+		}
+
+		private void markUserSpace(Point2D... corners) {
+			float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+			for (Point2D p : corners) {
+				x0 = Math.min(x0, (float) p.getX());
+				y0 = Math.min(y0, (float) p.getY());
+				x1 = Math.max(x1, (float) p.getX());
+				y1 = Math.max(y1, (float) p.getY());
+			}
+			markUserSpace(x0, y0, x1, y1);
+		}
+
+		/** the page is displayed rotated clockwise by its rotation */
+		private Point2D toDisplay(float x, float y) {
+			float ux = x - this.originX;
+			float uy = y - this.originY;
+			switch (this.rotation) {
+				case 90: return new Point2D.Float(uy, this.cropWidth - ux);
+				case 180: return new Point2D.Float(this.cropWidth - ux, this.cropHeight - uy);
+				case 270: return new Point2D.Float(this.cropHeight - uy, ux);
+				default: return new Point2D.Float(ux, uy);
+			}
+		}
+
+		private void extendPath(float x, float y) {
+			if (!this.hasPath) {
+				this.minX = this.maxX = x;
+				this.minY = this.maxY = y;
+				this.hasPath = true;
+			} else {
+				this.minX = Math.min(this.minX, x);
+				this.minY = Math.min(this.minY, y);
+				this.maxX = Math.max(this.maxX, x);
+				this.maxY = Math.max(this.maxY, y);
+			}
+		}
+
+		private void markPath(float grow) {
+			if (this.hasPath)
+				markUserSpace(this.minX - grow, this.minY - grow, this.maxX + grow, this.maxY + grow);
+			this.hasPath = false;
+		}
+
+		/** white fills are typically page backgrounds, which don't keep a signature from being placed there */
+		private boolean isWhiteFill() {
+			try {
+				return getGraphicsState().getNonStrokingColor().toRGB() == 0xFFFFFF;
+			} catch (IOException | RuntimeException e) {
+				return false; /* e.g. patterns */
+			}
+		}
+
+		@Override
+		protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, String unicode, Vector displacement) throws IOException {
+			/* glyph space is scaled to text space already; approximate descent and ascent */
+			float advance = displacement.getX();
+			markUserSpace(textRenderingMatrix.transformPoint(0, -0.25f), textRenderingMatrix.transformPoint(advance, -0.25f),
+					textRenderingMatrix.transformPoint(0, 1), textRenderingMatrix.transformPoint(advance, 1));
+		}
+
+		@Override
+		public void drawImage(PDImage pdImage) throws IOException {
+			Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+			markUserSpace(ctm.transformPoint(0, 0), ctm.transformPoint(1, 0), ctm.transformPoint(0, 1), ctm.transformPoint(1, 1));
+		}
+
+		@Override
+		public void shadingFill(COSName shadingName) throws IOException {
+			Rectangle2D clip = getGraphicsState().getCurrentClippingPath().getBounds2D();
+			markUserSpace((float) clip.getMinX(), (float) clip.getMinY(), (float) clip.getMaxX(), (float) clip.getMaxY());
+		}
+
+		@Override
+		public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+			for (Point2D p : new Point2D[] { p0, p1, p2, p3 })
+				extendPath((float) p.getX(), (float) p.getY());
+			this.currentPoint.setLocation(p0);
+		}
+
+		@Override
+		public void moveTo(float x, float y) throws IOException {
+			extendPath(x, y);
+			this.currentPoint.setLocation(x, y);
+		}
+
+		@Override
+		public void lineTo(float x, float y) throws IOException {
+			extendPath(x, y);
+			this.currentPoint.setLocation(x, y);
+		}
+
+		@Override
+		public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+			/* the control points bound the curve */
+			extendPath(x1, y1);
+			extendPath(x2, y2);
+			extendPath(x3, y3);
+			this.currentPoint.setLocation(x3, y3);
+		}
+
+		@Override
+		public Point2D getCurrentPoint() throws IOException {
+			return this.currentPoint;
+		}
+
+		@Override
+		public void closePath() throws IOException {
+			// the path's bounds don't change
+		}
+
+		@Override
+		public void endPath() throws IOException {
+			this.hasPath = false;
+		}
+
+		@Override
+		public void clip(int windingRule) throws IOException {
+			// the path is still painted or ended
+		}
+
+		@Override
+		public void strokePath() throws IOException {
+			markPath(getGraphicsState().getLineWidth() / 2);
+		}
+
+		@Override
+		public void fillPath(int windingRule) throws IOException {
+			if (isWhiteFill())
+				this.hasPath = false;
+			else
+				markPath(0);
+		}
+
+		@Override
+		public void fillAndStrokePath(int windingRule) throws IOException {
+			markPath(getGraphicsState().getLineWidth() / 2);
+		}
+	}
+}
@@ -21,6 +21,7 @@ import java.io.File;
 import at.asit.pdfover.signer.SignatureException;
 import at.gv.egiz.pdfas.lib.api.PdfAs;
 import at.gv.egiz.pdfas.lib.api.PdfAsFactory;
+import at.gv.egiz.sl.util.SLMarschaller;
 
 /**
  * PDF-AS 4 Helper
@@ -57,6 +58,14 @@ public class PdfAs4Helper {
 		return PdfAsFactory.createPdfAs(new File(getWorkDir()));
 	}
 
+	/**
+	 * Create the JAXB context for security layer requests (which happens on first use otherwise)
+	 * @throws ClassNotFoundException
+	 */
+	public static void initializeSLMarshaller() throws ClassNotFoundException {
+		Class.forName(SLMarschaller.class.getName(), true, SLMarschaller.class.getClassLoader());
+	}
+
 	/**
 	 * Provides the working directory
 	 * @return the working directory
@@ -0,0 +1,421 @@
+package at.asit.pdfover.signer.pdfas;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.gv.egiz.pdfas.common.exceptions.PdfAsException;
+import at.gv.egiz.pdfas.lib.impl.pdfbox2.placeholder.SignatureFieldsAndPlaceHolderExtractor;
+import at.gv.egiz.pdfas.lib.impl.placeholder.PlaceholderExtractorConstants;
+import at.gv.egiz.pdfas.lib.impl.placeholder.SignaturePlaceholderData;
+import at.knowcenter.wag.egov.egiz.pdf.TablePos;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds signature placeholders (empty signature fields and QR code markers) in a document
+ *
+ * Equivalent to PDF-AS' SignatureFieldsAndPlaceHolderExtractor, but QR code markers are searched
+ * for on several pages in parallel, pages without images are skipped, and the search stops as soon
+ * as the first unused marker is known. Results are cached by document content, so re-opening the
+ * same document does not scan it again.
+ */
+@Slf4j
+public final class PdfAs4PlaceholderScanner {
+
+	/**
+	 * Receives scan progress (from any thread)
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param done number of pages with images that have been dealt with
+		 * @param total number of pages with images
+		 */
+		void pagesScanned(int done, int total);
+	}
+
+	private enum Mode { SIGNATURE_FIELDS, MARKER }
+
+	/** cached scan results; the value is the list of empty fields, or the unused marker (or NO_MARKER); guarded by itself */
+	private static final Map<String, Object> cache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return size() > MAX_CACHED_RESULTS;
+		}
+	};
+	private static final int MAX_CACHED_RESULTS = 32;
+	private static final Object NO_MARKER = new Object();
+
+	private final byte[] document;
+	private final String documentHash;
+	private final CancellationToken cancellation;
+	private List<String> existingSignatureLocations = null;
+
+	/**
+	 * @param document the document contents
+	 * @param cancellation checked between pages
+	 */
+	public PdfAs4PlaceholderScanner(byte[] document, CancellationToken cancellation) {
+		this.document = document;
+		this.documentHash = DigestUtils.sha256Hex(document);
+		this.cancellation = cancellation;
+	}
+
+	private String getCacheKey(Mode mode) {
+		return mode + "|" + this.documentHash;
+	}
+
+	private static Object getCached(String key) {
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	private static void putCached(String key, Object value) {
+		synchronized (cache) {
+			cache.put(key, value);
+		}
+	}
+
+	/**
+	 * @return the names of all signature fields that are not signed yet
+	 * @throws IOException if the document cannot be parsed
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> findEmptySignatureFields() throws IOException {
+		String key = getCacheKey(Mode.SIGNATURE_FIELDS);
+		Object cached = getCached(key);
+		if (cached != null) {
+			log.debug("Using cached signature fields for document {}", this.documentHash);
+			return (List<String>) cached;
+		}
+		List<String> fields;
+		try (PDDocument pdf = PDDocument.load(this.document)) {
+			fields = Collections.unmodifiableList(SignatureFieldsAndPlaceHolderExtractor.findEmptySignatureFields(pdf));
+		}
+		putCached(key, fields);
+		return fields;
+	}
+
+	/**
+	 * Find the first QR code marker (in page order) that has not been used by an existing signature yet
+	 * @param progress progress listener, may be null
+	 * @return the marker, or null if there is none
+	 * @throws IOException if the document cannot be parsed
+	 * @throws java.util.concurrent.CancellationException if the scan was cancelled
+	 */
+	public SignaturePlaceholderData findFirstUnusedPlaceholder(ProgressListener progress) throws IOException {
+		String key = getCacheKey(Mode.MARKER);
+		Object cached = getCached(key);
+		if (cached != null) {
+			log.debug("Using cached placeholder for document {}", this.documentHash);
+			return (cached == NO_MARKER) ? null : (SignaturePlaceholderData) cached;
+		}
+
+		List<Integer> imagePages = new ArrayList<>();
+		List<String> usedLocations;
+		try (PDDocument pdf = PDDocument.load(this.document)) {
+			int pageNr = 0;
+			for (PDPage page : pdf.getPages()) {
+				if (hasImages(page))
+					imagePages.add(pageNr);
+				++pageNr;
+			}
+			usedLocations = SignatureFieldsAndPlaceHolderExtractor.getExistingSignatureLocations(pdf);
+		}
+		this.existingSignatureLocations = Collections.unmodifiableList(usedLocations);
+		log.debug("{} pages with images to scan for placeholders", imagePages.size());
+
+		SignaturePlaceholderData result = null;
+		if (!imagePages.isEmpty()) {
+			ScanState state = new ScanState(imagePages, usedLocations, progress);
+			ForkJoinPool pool = PdfBoxWorkerPool.get();
+			int chunks = Math.min(imagePages.size(), pool.getParallelism());
+			int chunkSize = (imagePages.size() + chunks - 1) / chunks;
+			try {
+				pool.invoke(new ScanTask(state, 0, imagePages.size(), chunkSize));
+			} catch (ScanFailure e) {
+				throw e.getCause();
+			}
+			this.cancellation.throwIfCancelled();
+			result = state.getResult();
+		}
+
+		putCached(key, (result == null) ? NO_MARKER : result);
+		return result;
+	}
+
+	/**
+	 * @return the locations of the existing signatures, if {@link #findFirstUnusedPlaceholder} had to
+	 * scan the document (null if its result was cached)
+	 */
+	public List<String> getExistingSignatureLocations() {
+		return this.existingSignatureLocations;
+	}
+
+	/**
+	 * Only image XObjects used directly by the page content can be markers, cf. PDF-AS' SignaturePlaceholderExtractor
+	 */
+	private static boolean hasImages(PDPage page) {
+		PDResources resources = page.getResources();
+		if ((resources == null) || !page.hasContents())
+			return false;
+		for (COSName name : resources.getXObjectNames()) {
+			if (resources.isImageXObject(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * State shared between the workers of one scan
+	 */
+	private final class ScanState {
+		final List<Integer> pages;
+		final List<String> usedLocations;
+		final ProgressListener progress;
+		/** index (into pages) of the first page known to have an unused marker; later pages need not be scanned */
+		final AtomicInteger firstHit;
+		final AtomicReferenceArray<SignaturePlaceholderData> hits;
+		final AtomicInteger done = new AtomicInteger();
+
+		ScanState(List<Integer> pages, List<String> usedLocations, ProgressListener progress) {
+			this.pages = pages;
+			this.usedLocations = usedLocations;
+			this.progress = progress;
+			this.firstHit = new AtomicInteger(pages.size());
+			this.hits = new AtomicReferenceArray<>(pages.size());
+		}
+
+		void pageDone() {
+			int d = this.done.incrementAndGet();
+			if (this.progress != null)
+				this.progress.pagesScanned(d, this.pages.size());
+		}
+
+		SignaturePlaceholderData getResult() {
+			int i = this.firstHit.get();
+			return (i < this.pages.size()) ? this.hits.get(i) : null;
+		}
+	}
+
+	/** wraps IOException so it can leave a fork/join task */
+	private static final class ScanFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		ScanFailure(IOException cause) { super(cause); }
+		@Override public synchronized IOException getCause() { return (IOException) super.getCause(); }
+	}
+
+	/**
+	 * Scans the pages [from, to) of the page list; splits itself into chunks, each of which parses
+	 * its own copy of the document
+	 */
+	private final class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ScanState state;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+
+		ScanTask(ScanState state, int from, int to, int chunkSize) {
+			this.state = state;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if ((this.to - this.from) > this.chunkSize) {
+				int mid = this.from + this.chunkSize;
+				invokeAll(new ScanTask(this.state, this.from, mid, this.chunkSize),
+						new ScanTask(this.state, mid, this.to, this.chunkSize));
+				return;
+			}
+
+			if (skip(this.from))
+				return;
+			try (PDDocument pdf = PdfBoxWorkerPool.load(PdfAs4PlaceholderScanner.this.document)) {
+				for (int i = this.from; i < this.to; ++i) {
+					if (skip(i))
+						return;
+					int pageNr = this.state.pages.get(i);
+					SignaturePlaceholderData hit = new PageScanner(pageNr + 1).findFirstUnused(pdf.getPage(pageNr), this.state.usedLocations);
+					if (hit != null) {
+						this.state.hits.set(i, hit);
+						this.state.firstHit.accumulateAndGet(i, Math::min);
+						return;
+					}
+					this.state.pageDone();
+				}
+			} catch (IOException e) {
+				throw new ScanFailure(e);
+			}
+		}
+
+		private boolean skip(int i) {
+			return PdfAs4PlaceholderScanner.this.cancellation.isCancelled() || (i > this.state.firstHit.get());
+		}
+	}
+
+	/**
+	 * Decodes the QR codes of the images drawn on one page
+	 */
+	private static final class PageScanner extends PDFStreamEngine {
+		private static final Map<DecodeHintType, Object> QR_HINTS = new EnumMap<>(DecodeHintType.class);
+		static {
+			QR_HINTS.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+		}
+
+		private final int pageNr;
+		private final List<SignaturePlaceholderData> placeholders = new ArrayList<>();
+
+		/**
+		 * @param pageNr the 1-based page number (for the table position)
+		 */
+		PageScanner(int pageNr) {
+			this.pageNr = pageNr;
+			/* track the transformation matrix, that's all we need */
+			addOperator(new Save());
+			addOperator(new Restore());
+			addOperator(new Concatenate());
+		}
+
+		SignaturePlaceholderData findFirstUnused(PDPage page, List<String> usedLocations) throws IOException {
+			processPage(page);
+			for (SignaturePlaceholderData placeholder : this.placeholders) {
+				if (!usedLocations.contains(placeholder.getPlaceholderName()))
+					return placeholder;
+			}
+			return null;
+		}
+
+		@Override
+		protected void processOperator(Operator operator, List<COSBase> arguments) throws IOException {
+			if (!"Do".equals(operator.getName())) {
+				super.processOperator(operator, arguments);
+				return;
+			}
+			if (arguments.isEmpty() || !(arguments.get(0) instanceof COSName))
+				return;
+			COSName objectName = (COSName) arguments.get(0);
+			PDXObject xobject = getResources().getXObject(objectName);
+			if (!(xobject instanceof PDImageXObject))
+				return;
+
+			SignaturePlaceholderData data = decode((PDImageXObject) xobject);
+			if (data == null)
+				return;
+			try {
+				data.setTablePos(new TablePos(getPosition()));
+			} catch (PdfAsException | NoninvertibleTransformException e) {
+				throw new IOException(e);
+			}
+			data.setPlaceholderName(objectName.getName());
+			this.placeholders.add(data);
+		}
+
+		/**
+		 * position of the current image, in PDF-AS' table position syntax (same computation as PDF-AS)
+		 */
+		private String getPosition() throws NoninvertibleTransformException {
+			PDPage page = getCurrentPage();
+			Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+			int pageRotation = page.getRotation() % 360;
+
+			AffineTransform rotation = new AffineTransform();
+			rotation.setToRotation(Math.toRadians(pageRotation));
+			Matrix rotationInverseMatrix = new Matrix();
+			rotationInverseMatrix.setFromAffineTransform(rotation.createInverse());
+			Matrix unrotatedCTM = ctm.multiply(rotationInverseMatrix);
+
+			float x = unrotatedCTM.getXPosition();
+			float y = unrotatedCTM.getYPosition() + unrotatedCTM.getScaleY();
+			float w = unrotatedCTM.getScaleX();
+
+			if (pageRotation == 90) {
+				y = page.getCropBox().getWidth() + y;
+			} else if (pageRotation == 180) {
+				x = page.getCropBox().getWidth() + x;
+				y = page.getCropBox().getHeight() + y;
+			} else if (pageRotation == 270) {
+				x = page.getCropBox().getHeight() + x;
+			}
+			return "p:" + this.pageNr + ";x:" + x + ";y:" + y + ";w:" + w;
+		}
+
+		private static SignaturePlaceholderData decode(PDImageXObject image) throws IOException {
+			/* skip the (expensive) decoding for images too small to hold a QR code */
+			if ((image.getWidth() < 10) || (image.getHeight() < 10))
+				return null;
+			BufferedImage bimg = image.getImage();
+			if (bimg == null)
+				return null;
+
+			String text;
+			try {
+				BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(bimg)));
+				text = new MultiFormatReader().decode(bitmap, QR_HINTS).getText();
+			} catch (ReaderException | ArrayIndexOutOfBoundsException e) {
+				return null; /* not a QR code */
+			}
+			if ((text == null) || !text.startsWith(PlaceholderExtractorConstants.QR_PLACEHOLDER_IDENTIFIER)) {
+				if (text != null)
+					log.debug("Ignoring QR code that is not a placeholder");
+				return null;
+			}
+
+			String profile = null, type = null, sigKey = null, id = null;
+			String[] data = text.split(";");
+			for (int i = 1; i < data.length; ++i) {
+				String[] kv = data[i].split("=");
+				if (kv.length != 2)
+					continue;
+				if (kv[0].equalsIgnoreCase(SignaturePlaceholderData.ID_KEY))
+					id = kv[1];
+				else if (kv[0].equalsIgnoreCase(SignaturePlaceholderData.PROFILE_KEY))
+					profile = kv[1];
+				else if (kv[0].equalsIgnoreCase(SignaturePlaceholderData.SIG_KEY_KEY))
+					sigKey = kv[1];
+				else if (kv[0].equalsIgnoreCase(SignaturePlaceholderData.TYPE_KEY))
+					type = kv[1];
+			}
+			return new SignaturePlaceholderData(profile, type, sigKey, id);
+		}
+	}
+}
@@ -23,7 +23,6 @@ import lombok.extern.slf4j.Slf4j;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.image.BufferedImage;
 import java.util.Locale;
 
 import at.asit.pdfover.signer.DocumentSource;
@@ -76,12 +75,19 @@ public class PdfAs4SignatureParameter {
 	/** Whether so look for placeholder signatures or not. */
 	public boolean searchForPlaceholderSignatures = false;
 
+	/** The name of the empty signature field to sign, if any */
+	public String signatureFieldName = null;
+
     /** The size to scale the logo to (in mm) */
     public double targetLogoSize = Constants.DEFAULT_LOGO_ONLY_SIZE;
 
     /** The signature profile in use */
     public Profile signatureProfile = Profile.getDefaultProfile();
 
+    /**
+     * Render the signature block for this set of parameters (slow!)
+     * @return the placeholder image, or null if it could not be generated
+     */
     Image getPlaceholder() {
         String sigProfile = getPdfAsSignatureProfileId();
 
@@ -118,7 +124,7 @@ public class PdfAs4SignatureParameter {
                 SignParameter param = PdfAsFactory.createSignParameter(conf, null, null);
                 param.setSignatureProfileId(sigProfile);
                 
-                Image placeholder = pdfas.generateVisibleSignaturePreview(param, cert, 72 * 4);
+                Image placeholder = pdfas.generateVisibleSignaturePreview(param, cert, 72 * PdfAs4SignaturePlaceholder.PIXELS_PER_PDF_UNIT);
 
                 // WORKAROUND for #5, manually paint a black border
                 if ((placeholder != null) && !this.signatureProfile.equals(Profile.BASE_LOGO))
@@ -132,7 +138,7 @@ public class PdfAs4SignatureParameter {
             }
         } catch (Exception e) {
             log.error("Failed to get signature placeholder", e);
-            return new BufferedImage(229, 77, BufferedImage.TYPE_INT_RGB);
+            return null;
         }
     }
 
@@ -142,8 +148,16 @@ public class PdfAs4SignatureParameter {
      * @return Signature Position String
      */
     public String getPdfAsSignaturePosition() {
-        SignaturePosition in_pos = this.signaturePosition;
+        return getPdfAsSignaturePosition(this.signaturePosition);
+    }
 
+    /**
+     * Gets the Signature Position String for PDF-AS
+     *
+     * @param in_pos the signature position
+     * @return Signature Position String
+     */
+    static String getPdfAsSignaturePosition(SignaturePosition in_pos) {
         if (in_pos.useAutoPositioning())
 			return "p:auto;x:auto;y:auto";
 
@@ -159,6 +173,20 @@ public class PdfAs4SignatureParameter {
 		}
     }
 
+    /**
+     * @return the parameters that determine the signature block, without document or position
+     */
+    public PdfAs4SignatureParameter getPlaceholderParameter() {
+        PdfAs4SignatureParameter param = new PdfAs4SignatureParameter();
+        param.signatureProfile = this.signatureProfile;
+        param.emblem = this.emblem;
+        param.signatureNote = this.signatureNote;
+        param.signatureLanguage = this.signatureLanguage;
+        param.enablePDFACompat = this.enablePDFACompat;
+        param.targetLogoSize = this.targetLogoSize;
+        return param;
+    }
+
     /**
      * Get the Signature Profile ID for this set of parameters
      *
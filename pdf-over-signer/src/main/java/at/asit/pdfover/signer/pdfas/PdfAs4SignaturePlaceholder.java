@@ -1,48 +1,171 @@
 package at.asit.pdfover.signer.pdfas;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.TreeMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
+import javax.imageio.ImageIO;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.Profile;
+import at.asit.pdfover.commons.utils.FlightRecorderEvents;
 import at.asit.pdfover.commons.utils.ImageUtil;
+import at.asit.pdfover.commons.utils.TaskExecutor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * caches placeholders for signature parameters (placeholder generation is pretty slow)
+ *
+ * placeholders are kept in a size-bounded in-memory LRU, and persisted as PNG to
+ * {@link #DISK_CACHE_DIR} so they survive restarts; the disk cache is bounded as well, and entries
+ * made by another version or for another PDF-AS configuration are deleted
  */
+@Slf4j
 public final class PdfAs4SignaturePlaceholder implements Runnable {
-    private static TreeMap<PdfAs4SignatureParameter, PdfAs4SignaturePlaceholder> cache = new TreeMap<>(
-        Comparator
-          .comparing(PdfAs4SignatureParameter::getPdfAsSignatureProfileId)
-          .thenComparing((p) -> { return (p.emblem != null) ? p.emblem.getOriginalFileHash() : ""; })
-          .thenComparing((p) -> { return p.signatureNote; }, Comparator.nullsFirst(String::compareTo))
-          .thenComparing((p) -> { return p.targetLogoSize; })
-    );
+    /** resolution of the placeholder images */
+    public static final int PIXELS_PER_PDF_UNIT = 4;
+    /** upper bound for the (AWT + SWT) image data held in memory */
+    private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+    /** on-disk placeholder cache; entries are named by a hash of the stamp and a hash of {@link #getCacheKey} */
+    private static final File DISK_CACHE_DIR = new File(Constants.CONFIG_DIRECTORY, "cache" + File.separator + "placeholders");
+    /** bump this if the rendering of placeholders changes in a way not covered by the cache key */
+    private static final int DISK_CACHE_FORMAT = 2;
+    /** upper bound for the PNG files on disk; the least recently used ones are deleted */
+    private static final long MAX_DISK_CACHE_BYTES = 16L * 1024 * 1024;
+    private static final String DISK_CACHE_SUFFIX = ".png";
+    /** whether stale entries have been deleted since startup; guarded by {@link #DISK_CACHE_DIR} */
+    private static boolean diskCachePruned = false;
+
+    private static final LinkedHashMap<String, PdfAs4SignaturePlaceholder> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes = 0;
 
     /**
      * request a placeholder for the specified parameter asynchronously
      * @param callback the callback to be invoked on completion (may also be invoked before this function returns!)
      */
     public static void For(PdfAs4SignatureParameter param, Consumer<PdfAs4SignaturePlaceholder> callback) {
+        For(param, true, callback);
+    }
+
+    /**
+     * request a placeholder for the specified parameter asynchronously
+     * @param persist whether to keep the placeholder in the disk cache; false for transient previews (e.g. while typing)
+     * @param callback the callback to be invoked on completion (may also be invoked before this function returns!)
+     */
+    public static void For(PdfAs4SignatureParameter param, boolean persist, Consumer<PdfAs4SignaturePlaceholder> callback) {
+        String key = getCacheKey(param);
+        PdfAs4SignaturePlaceholder placeholder;
+        boolean created = false;
         synchronized(cache) {
-            cache.computeIfAbsent(param, (p) -> new PdfAs4SignaturePlaceholder(p)).AddCallback(callback);
+            placeholder = cache.get(key);
+            if (placeholder == null) {
+                placeholder = new PdfAs4SignaturePlaceholder(param, key, persist);
+                cache.put(key, placeholder);
+                created = true;
+            }
+        }
+        if (created)
+            TaskExecutor.submit("placeholder", placeholder);
+        else if (persist)
+            placeholder.requestPersist();
+        placeholder.AddCallback(callback);
+    }
+
+    /** drop all placeholders held in memory (the disk cache is kept) */
+    static void clearMemoryCache() {
+        synchronized (cache) {
+            cache.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private static String getCacheKey(PdfAs4SignatureParameter p) {
+        return p.getPdfAsSignatureProfileId()
+            + "|" + ((p.emblem != null) ? p.emblem.getOriginalFileHash() : "")
+            + "|" + ((p.signatureNote != null) ? ("+" + p.signatureNote) : "-")
+            + "|" + p.targetLogoSize;
+    }
+
+    /** account for a finished placeholder, and drop the least recently used ones until we are within budget again */
+    private static void addToCacheWeight(PdfAs4SignaturePlaceholder placeholder) {
+        synchronized (cache) {
+            if (cache.get(placeholder.key) != placeholder)
+                return; /* evicted while still generating */
+            placeholder.weight = placeholder.computeWeight();
+            cachedBytes += placeholder.weight;
+
+            Iterator<Map.Entry<String, PdfAs4SignaturePlaceholder>> it = cache.entrySet().iterator();
+            while ((cachedBytes > MAX_CACHED_BYTES) && it.hasNext()) {
+                PdfAs4SignaturePlaceholder eldest = it.next().getValue();
+                if (eldest == placeholder)
+                    continue;
+                cachedBytes -= eldest.weight;
+                it.remove();
+            }
         }
     }
 
     private final PdfAs4SignatureParameter param;
-    private PdfAs4SignaturePlaceholder(PdfAs4SignatureParameter param) {
+    private final String key;
+    /** bytes accounted for this entry in {@link #cachedBytes}; guarded by {@link #cache} */
+    private long weight = 0;
+    /** whether the placeholder is to be kept in the disk cache; guarded by this */
+    private boolean persist;
+    /** whether the image was rendered (rather than read from disk or left empty); guarded by this */
+    private boolean rendered = false;
+    private PdfAs4SignaturePlaceholder(PdfAs4SignatureParameter param, String key, boolean persist) {
         this.param = param;
-        new Thread(this).start();
+        this.key = key;
+        this.persist = persist;
     }
 
-    private java.awt.image.BufferedImage awtImageData;
+    /** a transient placeholder is wanted persistently after all */
+    private void requestPersist() {
+        synchronized (this) {
+            if (this.persist)
+                return;
+            this.persist = true;
+            if (!this.rendered)
+                return; /* still rendering (it is stored then), or nothing to store */
+        }
+        TaskExecutor.submit("placeholder-store", () -> storeToDisk());
+    }
+
+    private BufferedImage awtImageData;
     public boolean hasImage() { return ((this.awtImageData != null) && (this.swtImageData != null)); }
     /** AWT image data for the placeholder */
-    public java.awt.image.BufferedImage getAWTImage() { return this.awtImageData; }
+    public BufferedImage getAWTImage() { return this.awtImageData; }
     private org.eclipse.swt.graphics.ImageData swtImageData;
     /** SWT image data for the placeholder */
     public org.eclipse.swt.graphics.ImageData getSWTImage() { return this.swtImageData; }
+    /** width of the signature block, in PDF units */
+    public float getWidth() { return (float) this.awtImageData.getWidth() / PIXELS_PER_PDF_UNIT; }
+    /** height of the signature block, in PDF units */
+    public float getHeight() { return (float) this.awtImageData.getHeight() / PIXELS_PER_PDF_UNIT; }
+
+    private long computeWeight() {
+        long w = 0;
+        if (this.awtImageData != null)
+            w += 4L * this.awtImageData.getWidth() * this.awtImageData.getHeight();
+        if (this.swtImageData != null) {
+            w += this.swtImageData.data.length;
+            if (this.swtImageData.alphaData != null)
+                w += this.swtImageData.alphaData.length;
+        }
+        return w;
+    }
 
     private ArrayList<Consumer<PdfAs4SignaturePlaceholder>> callbacks = new ArrayList<>();
     private void AddCallback(Consumer<PdfAs4SignaturePlaceholder> c) {
@@ -57,16 +180,132 @@ public final class PdfAs4SignaturePlaceholder implements Runnable {
         c.accept(this);
     }
 
+    /** identifies what the rendering depends on besides the cache key; entries with another stamp are stale */
+    private static String getDiskCacheStamp() {
+        String configStamp = "";
+        File pdfAsConfig = new File(PdfAs4Helper.getWorkDir(), "cfg" + File.separator + "config.properties");
+        if (pdfAsConfig.exists())
+            configStamp = Long.toString(pdfAsConfig.lastModified());
+        String stamp = DISK_CACHE_FORMAT + "|" + Constants.APP_VERSION + "|" + configStamp;
+        return DigestUtils.sha1Hex(stamp.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+    }
+
+    private File getDiskCacheFile(String stamp) {
+        return new File(DISK_CACHE_DIR, stamp + "-" + DigestUtils.sha1Hex(this.key.getBytes(StandardCharsets.UTF_8)) + DISK_CACHE_SUFFIX);
+    }
+
+    /**
+     * Delete entries with another stamp, and the least recently used entries beyond {@link #MAX_DISK_CACHE_BYTES}
+     * @param stamp the current stamp
+     */
+    static void pruneDiskCache(String stamp) {
+        synchronized (DISK_CACHE_DIR) {
+            File[] entries = DISK_CACHE_DIR.listFiles((dir, name) -> name.endsWith(DISK_CACHE_SUFFIX));
+            if (entries == null)
+                return;
+            List<File> current = new ArrayList<>();
+            for (File entry : entries) {
+                if (entry.getName().startsWith(stamp + "-"))
+                    current.add(entry);
+                else if (entry.delete())
+                    log.debug("Deleted stale placeholder {}", entry.getName());
+            }
+            current.sort(Comparator.comparingLong(File::lastModified).reversed());
+            long size = 0;
+            for (File entry : current) {
+                size += entry.length();
+                if ((size > MAX_DISK_CACHE_BYTES) && entry.delete())
+                    log.debug("Evicted placeholder {}", entry.getName());
+            }
+        }
+    }
+
+    private static void pruneDiskCacheOnce(String stamp) {
+        synchronized (DISK_CACHE_DIR) {
+            if (diskCachePruned)
+                return;
+            diskCachePruned = true;
+        }
+        pruneDiskCache(stamp);
+    }
+
+    private BufferedImage loadFromDisk(File file) {
+        if (!file.isFile())
+            return null;
+        try {
+            BufferedImage img = ImageIO.read(file);
+            if (img != null) {
+                log.debug("Placeholder disk cache hit: {}", file.getName());
+                file.setLastModified(System.currentTimeMillis()); // keep recently used entries from being evicted
+            }
+            return img;
+        } catch (IOException e) {
+            log.warn("Failed to read cached placeholder {}", file, e);
+            return null;
+        }
+    }
+
+    private void storeToDisk() {
+        String stamp = getDiskCacheStamp();
+        storeToDisk(getDiskCacheFile(stamp), this.awtImageData);
+        pruneDiskCache(stamp);
+    }
+
+    private void storeToDisk(File file, BufferedImage img) {
+        try {
+            Files.createDirectories(DISK_CACHE_DIR.toPath());
+            File tmp = File.createTempFile("placeholder", ".tmp", DISK_CACHE_DIR);
+            try {
+                if (!ImageIO.write(img, "png", tmp))
+                    return;
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to persist placeholder to {}", file, e);
+        }
+    }
 
     @Override
     public void run() {
-        if (!Profile.INVISIBLE.name().equals(this.param.getPdfAsSignatureProfileId())) {
-            this.awtImageData = (java.awt.image.BufferedImage) this.param.getPlaceholder();
-            this.swtImageData = ImageUtil.convertToSWT(this.awtImageData);
-        } else {
-            this.awtImageData = null;
-            this.swtImageData = null;
+        FlightRecorderEvents.PlaceholderGeneration event = new FlightRecorderEvents.PlaceholderGeneration();
+        event.begin();
+        boolean rendered = false;
+        try {
+            event.profile = this.param.getPdfAsSignatureProfileId();
+            if (!Profile.INVISIBLE.name().equals(event.profile)) {
+                String stamp = getDiskCacheStamp();
+                pruneDiskCacheOnce(stamp);
+                File cacheFile = getDiskCacheFile(stamp);
+                BufferedImage img = loadFromDisk(cacheFile);
+                event.cached = (img != null);
+                if (img == null) {
+                    img = (BufferedImage) this.param.getPlaceholder();
+                    if (img != null)
+                        rendered = true;
+                    else
+                        img = new BufferedImage(229, 77, BufferedImage.TYPE_INT_RGB);
+                }
+                this.awtImageData = img;
+                this.swtImageData = ImageUtil.convertToSWT(this.awtImageData);
+            } else {
+                this.awtImageData = null;
+                this.swtImageData = null;
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to generate signature placeholder", e);
+        }
+        event.commit();
+        boolean store;
+        synchronized (this) {
+            this.rendered = rendered;
+            store = rendered && this.persist;
         }
+        if (store)
+            storeToDisk();
+        addToCacheWeight(this);
+
         ArrayList<Consumer<PdfAs4SignaturePlaceholder>> _callbacks;
         synchronized (this) {
             _callbacks = this.callbacks;
@@ -74,5 +313,5 @@ public final class PdfAs4SignaturePlaceholder implements Runnable {
         }
         _callbacks.forEach((c) -> c.accept(this));
     }
-    
+
 }
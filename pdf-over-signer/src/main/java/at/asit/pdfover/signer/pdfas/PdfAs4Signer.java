@@ -1,14 +1,25 @@
 package at.asit.pdfover.signer.pdfas;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.activation.DataSource;
 
 import at.asit.pdfover.commons.Constants;
 import at.asit.pdfover.commons.Profile;
+import at.asit.pdfover.commons.utils.BufferAccounting;
+import at.asit.pdfover.commons.utils.CancellationToken;
+import at.asit.pdfover.commons.utils.FlightRecorderEvents;
 import at.asit.pdfover.signer.ByteArrayDocumentSource;
+import at.asit.pdfover.signer.PDFFileDocumentSource;
 import at.asit.pdfover.signer.SignResult;
 import at.asit.pdfover.signer.SignatureException;
 import at.asit.pdfover.signer.SignaturePosition;
@@ -26,10 +37,12 @@ import at.gv.egiz.pdfas.lib.api.sign.SignParameter;
 import at.gv.egiz.pdfas.sigs.pades.PAdESSigner;
 import at.gv.egiz.sl.util.ISLConnector;
 import at.knowcenter.wag.egov.egiz.pdf.TablePos;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * PDF AS Signer Implementation
  */
+@Slf4j
 public class PdfAs4Signer {
 
 	/**
@@ -43,11 +56,59 @@ public class PdfAs4Signer {
 	protected static final String LOC_REF = "<sl:LocRefContent>" + URL_TEMPLATE
 			+ "</sl:LocRefContent>";
 
-	public static PdfAs4SigningState prepare(PdfAs4SignatureParameter parameter) throws SignatureException {
+	/**
+	 * Room for the signature (incremental update, signature block, CMS container) in the output buffer
+	 */
+	static final int OUTPUT_RESERVE = 256 * 1024;
+
+	/** how long to wait for the signature block to be rendered, to know its size */
+	private static final long PLACEHOLDER_TIMEOUT_SECONDS = 30;
+
+	/**
+	 * room reserved beyond the size of the rendered block: the preview is rendered with the example
+	 * certificate, and the signer's name and issuer may well need more lines than its
+	 */
+	private static final float BLOCK_SIZE_RESERVE = 1.25f;
 
+	/** buffer accounting stages, see {@link BufferAccounting} */
+	public static final String STAGE_INPUT = "input";
+	public static final String STAGE_OUTPUT = "output";
+	public static final String STAGE_SIGNED = "signed";
+	public static final String STAGE_SL_SIGNATURE_DATA = "sl-signature-data";
+	public static final String STAGE_SL_BLACKOUT = "sl-blackout";
+
+	/**
+	 * Prepare a document for signing
+	 * @param parameter the signature parameters
+	 * @param cancellation checked between steps; becomes the cancellation token of the returned signing state
+	 * @return the signing state
+	 * @throws SignatureException
+	 * @throws java.util.concurrent.CancellationException if cancellation was requested
+	 */
+	public static PdfAs4SigningState prepare(PdfAs4SignatureParameter parameter, CancellationToken cancellation) throws SignatureException {
+		FlightRecorderEvents.SigningPhase event = new FlightRecorderEvents.SigningPhase();
+		event.begin();
+		try {
+			return doPrepare(parameter, cancellation);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = FlightRecorderEvents.SigningPhase.PREPARE;
+				if (parameter != null) {
+					event.profile = String.valueOf(parameter.signatureProfile);
+					if (parameter.inputDocument != null)
+						event.documentSize = parameter.inputDocument.getLength();
+				}
+				event.commit();
+			}
+		}
+	}
+
+	private static PdfAs4SigningState doPrepare(PdfAs4SignatureParameter parameter, CancellationToken cancellation) throws SignatureException {
 		if (parameter == null) {
 			throw new SignatureException("Incorrect SignatureParameter!");
 		}
+		cancellation.throwIfCancelled();
 
 		String sigProfile = parameter.getPdfAsSignatureProfileId();
 		String sigEmblem = (parameter.emblem == null ? null : parameter.emblem.getCachedFileName());
@@ -57,8 +118,28 @@ public class PdfAs4Signer {
 			sigPos = parameter.getPdfAsSignaturePosition();
 		}
 
+		/* read the document before taking the PDF-AS lock, this is the slow part for big files */
+		byte[] inputData;
+		try {
+			inputData = parameter.inputDocument.getByteArray();
+		} catch (UncheckedIOException e) {
+			throw new SignatureException(e.getCause());
+		}
+		cancellation.throwIfCancelled();
+		String documentName = (parameter.inputDocument instanceof PDFFileDocumentSource) ?
+				((PDFFileDocumentSource) parameter.inputDocument).getFile().getName() : "document";
+		BufferAccounting.Ledger accounting = BufferAccounting.open(documentName, inputData.length);
+		accounting.allocate(STAGE_INPUT, inputData.length);
+		if ((parameter.signaturePosition != null) && parameter.signaturePosition.useAutoPositioning()
+				&& !parameter.searchForPlaceholderSignatures && !Profile.INVISIBLE.name().equals(sigProfile)) {
+			SignaturePosition free = findFreeSpace(parameter, inputData, cancellation, accounting);
+			if (free != null)
+				sigPos = PdfAs4SignatureParameter.getPdfAsSignaturePosition(free);
+		}
+
 		PdfAs pdfas = PdfAs4Helper.getPdfAs();
 		synchronized (PdfAs4Helper.class) {
+			cancellation.throwIfCancelled();
 			Configuration config = pdfas.getConfiguration();
 			if (sigEmblem != null && !sigEmblem.trim().isEmpty()) {
 				config.setValue("sig_obj." + sigProfile + ".value.SIG_LABEL", sigEmblem);
@@ -86,8 +167,12 @@ public class PdfAs4Signer {
 			}
 
 			PdfAs4SigningState state = new PdfAs4SigningState();
-			ByteArrayOutputStream output = new ByteArrayOutputStream();
-			DataSource input = new ByteArrayDataSource(parameter.inputDocument.getByteArray());
+			state.cancellation = cancellation;
+			state.accounting = accounting;
+			/* sized so the signed document fits without the buffer doubling */
+			ByteArrayOutputStream output = new OutputBuffer((int) Math.min((long) inputData.length + OUTPUT_RESERVE, Integer.MAX_VALUE - 8));
+			/* wraps the input without copying it */
+			DataSource input = new ByteArrayDataSource(inputData);
 			SignParameter param = PdfAsFactory.createSignParameter(config, input, output);
 			if (sigPos != null) {
 				param.setSignaturePosition(sigPos);
@@ -100,21 +185,87 @@ public class PdfAs4Signer {
 				param.getConfiguration().setValue(IConfigurationConstants.PLACEHOLDER_MODE, "1");
 				param.getConfiguration().setValue(IConfigurationConstants.PLACEHOLDER_SEARCH_ENABLED, IConfigurationConstants.TRUE);
 			}
+			/* per signature: PDF-AS reads its settings only once, when it is created */
+			if (parameter.signatureFieldName != null) {
+				param.getConfiguration().setValue(Constants.SIGNATURE_FIELD_NAME_CONF, parameter.signatureFieldName);
+			}
 
 			state.signParameter = param;
 			state.output = output;
+			/* signing may well happen on another thread */
+			accounting.leave();
 			return state;
 		}
 	}
 
+	/**
+	 * Find room for the signature block ourselves; PDF-AS' automatic positioning often appends a page
+	 * @return the position, or null to leave it to PDF-AS
+	 */
+	private static SignaturePosition findFreeSpace(PdfAs4SignatureParameter parameter, byte[] inputData, CancellationToken cancellation,
+			BufferAccounting.Ledger accounting) {
+		CompletableFuture<PdfAs4SignaturePlaceholder> rendered = new CompletableFuture<>();
+		PdfAs4SignaturePlaceholder.For(parameter.getPlaceholderParameter(), rendered::complete);
+		try {
+			PdfAs4SignaturePlaceholder placeholder = rendered.get(PLACEHOLDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			if (!placeholder.hasImage())
+				return null;
+			return new PdfAs4FreeSpaceFinder(inputData, cancellation, accounting).find(placeholder.getWidth() * BLOCK_SIZE_RESERVE,
+					placeholder.getHeight() * BLOCK_SIZE_RESERVE);
+		} catch (CancellationException e) {
+			throw e;
+		} catch (IOException | ExecutionException | TimeoutException | RuntimeException e) {
+			log.warn("Failed to find room for the signature, leaving it to PDF-AS", e);
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Sign a prepared document
+	 *
+	 * Cancelling the signing state's token aborts pending BKU requests, which releases the PDF-AS lock.
+	 * @param state the signing state obtained from {@link #prepare}
+	 * @return the signature result
+	 * @throws SignatureException
+	 * @throws UserCancelledException
+	 * @throws java.util.concurrent.CancellationException if cancellation was requested
+	 */
 	public static SignResult sign(PdfAs4SigningState state) throws SignatureException, UserCancelledException {
+		FlightRecorderEvents.SigningPhase event = new FlightRecorderEvents.SigningPhase();
+		event.begin();
+		if ((state != null) && (state.accounting != null))
+			state.accounting.enter();
+		try {
+			return doSign(state);
+		} finally {
+			if ((state != null) && (state.accounting != null))
+				state.accounting.close();
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = FlightRecorderEvents.SigningPhase.SIGN;
+				if ((state != null) && (state.signParameter != null))
+					event.profile = state.signParameter.getSignatureProfileId();
+				/* the signed document */
+				if ((state != null) && (state.output != null))
+					event.documentSize = state.output.size();
+				event.commit();
+			}
+		}
+	}
+
+	private static SignResult doSign(PdfAs4SigningState state) throws SignatureException, UserCancelledException {
 		try {
 			if (state == null) {
 				throw new SignatureException("Incorrect SigningState!");
 			}
+			state.cancellation.throwIfCancelled();
 
 			PdfAs pdfas = PdfAs4Helper.getPdfAs();
 			synchronized (PdfAs4Helper.class) {
+				state.cancellation.throwIfCancelled();
 				// Retrieve objects
 				SignParameter param = state.signParameter;
 
@@ -126,7 +277,7 @@ public class PdfAs4Signer {
 
 				IPlainSigner signer;
 				if (state.bkuConnector != null) {
-					ISLConnector connector = new PdfAs4BKUSLConnector(state.bkuConnector);
+					ISLConnector connector = new PdfAs4BKUSLConnector(state.bkuConnector, state.cancellation, state.accounting);
 					signer = new PAdESSigner(connector);
 				} else if (state.hasKeystoreSigner()) {
 					signer = state.getKeystoreSigner();
@@ -136,6 +287,11 @@ public class PdfAs4Signer {
 				param.setPlainSigner(signer);
 
 				pdfas.sign(param);
+				state.cancellation.throwIfCancelled();
+				if (state.output instanceof OutputBuffer)
+					state.accounting.allocate(STAGE_OUTPUT, ((OutputBuffer) state.output).capacity());
+				else
+					state.accounting.allocate(STAGE_OUTPUT, state.output.size());
 
 				SignResult result = new SignResult();
 
@@ -153,7 +309,9 @@ public class PdfAs4Signer {
 					result.setSignaturePosition(sp);
 				}
 
-				result.setSignedDocument(new ByteArrayDocumentSource(state.output.toByteArray()));
+				byte[] signedDocument = state.output.toByteArray();
+				state.accounting.allocate(STAGE_SIGNED, signedDocument.length);
+				result.setSignedDocument(new ByteArrayDocumentSource(signedDocument));
 				return result;
 			}
 		} catch (PdfAsException | PDFASError ex) {
@@ -180,4 +338,17 @@ public class PdfAs4Signer {
 			throw new SignatureException(e);
 		}
 	}
+
+	/**
+	 * Output buffer whose capacity can be accounted
+	 */
+	private static final class OutputBuffer extends ByteArrayOutputStream {
+		OutputBuffer(int size) {
+			super(size);
+		}
+
+		int capacity() {
+			return this.buf.length;
+		}
+	}
 }
@@ -18,6 +18,8 @@ package at.asit.pdfover.signer.pdfas;
 //Imports
 import java.io.ByteArrayOutputStream;
 
+import at.asit.pdfover.commons.utils.BufferAccounting;
+import at.asit.pdfover.commons.utils.CancellationToken;
 import at.asit.pdfover.signer.BkuSlConnector;
 import at.asit.pdfover.signer.SignatureException;
 import at.gv.egiz.pdfas.common.exceptions.PDFASError;
@@ -47,19 +49,52 @@ public class PdfAs4SigningState {
 
 	public ByteArrayOutputStream output;
 
+	/**
+	 * Accounts the document buffers of this signature (if enabled)
+	 */
+	public BufferAccounting.Ledger accounting;
+
 	public BkuSlConnector bkuConnector = null;
 
 	private IPlainSigner keystoreSigner = null;
 
 	public boolean useBase64Request;
 
+	/**
+	 * Cancelled when the user abandons this signing process; BKU roundtrips check it
+	 */
+	public CancellationToken cancellation = new CancellationToken();
+
 	/* (non-Javadoc)
 	 * @see at.asit.pdfover.signator.SigningState#setKSSigner(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
 	 */
 	public void setKeystoreSigner(String file, String alias, String kspassword,
 			String keypassword, String type) throws SignatureException {
+		this.keystoreSigner = createKeystoreSigner(file, alias, kspassword, keypassword, type);
+	}
+
+	/**
+	 * Use a keystore signer that has already been created, e.g. one shared by many signatures
+	 * @param signer the signer from {@link #createKeystoreSigner}
+	 */
+	public void setKeystoreSigner(IPlainSigner signer) {
+		this.keystoreSigner = signer;
+	}
+
+	/**
+	 * Load a key from a keystore
+	 * @param file keystore file
+	 * @param alias key alias
+	 * @param kspassword keystore password
+	 * @param keypassword key password
+	 * @param type keystore type
+	 * @return the signer, which can be used for any number of signatures
+	 * @throws SignatureException if the key cannot be loaded
+	 */
+	public static IPlainSigner createKeystoreSigner(String file, String alias, String kspassword,
+			String keypassword, String type) throws SignatureException {
 		try {
-			this.keystoreSigner = new PAdESSignerKeystore(file, alias, kspassword, keypassword, type);
+			return new PAdESSignerKeystore(file, alias, kspassword, keypassword, type);
 		} catch (PDFASError e) {
 			throw new SignatureException(e);
 		}
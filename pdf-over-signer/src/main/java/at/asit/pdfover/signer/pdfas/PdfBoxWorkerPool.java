@@ -0,0 +1,46 @@
+package at.asit.pdfover.signer.pdfas;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Threads for searching the pages of a document in parallel with PDFBox, shared by
+ * {@link PdfAs4PlaceholderScanner} and {@link PdfAs4FreeSpaceFinder}
+ *
+ * PDFBox documents must not be shared between threads, so every worker parses its own copy of the
+ * document. More workers mostly cost memory, which is why there are at most {@value #MAX_PARALLELISM},
+ * and why stream data beyond {@value #MAX_MAIN_MEMORY_BYTES} bytes per copy goes to a scratch file.
+ */
+final class PdfBoxWorkerPool {
+
+	/** at most this many copies of a document are parsed at the same time */
+	static final int MAX_PARALLELISM = 4;
+	/** stream data each copy may keep in memory */
+	private static final long MAX_MAIN_MEMORY_BYTES = 4 * 1024 * 1024;
+
+	private static ForkJoinPool pool = null;
+
+	/**
+	 * @return the pool
+	 */
+	static synchronized ForkJoinPool get() {
+		if (pool == null)
+			pool = new ForkJoinPool(Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+		return pool;
+	}
+
+	/**
+	 * Parse a copy of a document for one worker
+	 * @param document the document contents
+	 * @return the parsed document
+	 * @throws IOException if the document cannot be parsed
+	 */
+	static PDDocument load(byte[] document) throws IOException {
+		return PDDocument.load(document, "", null, null, MemoryUsageSetting.setupMixed(MAX_MAIN_MEMORY_BYTES));
+	}
+
+	private PdfBoxWorkerPool() {}
+}